@@ -0,0 +1,208 @@
+package Bench;
+
+import Models.HistoriaClinica;
+import Models.HistoriaClinica.GrupoSanguineo;
+import Models.Paciente;
+import Service.PacienteService;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Base de datos embebida (H2 en memoria, modo MySQL) que reemplaza a MySQL
+ * en los benchmarks.
+ *
+ * Crea las tablas a partir de database/schema.sql (salteando las sentencias
+ * propias del servidor: CREATE DATABASE, USE, SHOW y las opciones de tabla
+ * ENGINE / CHARSET / COLLATE, y prefijando los índices con el nombre de su
+ * tabla) y carga N pacientes sintéticos, cada uno con
+ * su historia clínica, usando el alta masiva del servicio.
+ *
+ * Debe llamarse a {@link #configurar(String)} ANTES de usar cualquier DAO o
+ * servicio, porque DatabaseConnection lee la URL una sola vez.
+ *
+ * @author Grupo 49
+ */
+public final class BaseDeDatosEmbebida {
+
+    private static final Path SCHEMA = Paths.get(System.getProperty("clinica.bench.schema", "database/schema.sql"));
+
+    private static final String[] NOMBRES = {"Ricardo", "Natalia", "Leonardo", "Scarlett", "Robert", "Lucía", "Martín", "Sofía"};
+    private static final String[] APELLIDOS = {"Darin", "Oreiro", "DiCaprio", "Johansson", "Downey", "Gómez", "Pérez", "Fernández"};
+    private static final GrupoSanguineo[] GRUPOS = GrupoSanguineo.values();
+
+    private BaseDeDatosEmbebida() {
+    }
+
+    /**
+     * Apunta DatabaseConnection a una base H2 en memoria y crea el esquema.
+     *
+     * @param nombre nombre de la base en memoria
+     * @return la URL JDBC configurada
+     */
+    public static String configurar(String nombre) throws SQLException, IOException {
+        String url = crearBase(nombre);
+        System.setProperty("clinica.db.url", url);
+        System.setProperty("clinica.db.user", "sa");
+        System.setProperty("clinica.db.pass", "");
+        return url;
+    }
+
+    /**
+     * Crea bases H2 adicionales que hacen de réplicas de lectura
+     * (clinica.db.replicas). No se replican solas: usar
+     * {@link #sincronizarReplicas()} para copiarles el contenido de la primaria.
+     * Llamar junto con {@link #configurar(String)}, antes de usar DAOs o servicios.
+     *
+     * @param nombre prefijo de los nombres de las bases ("nombre_r1", "nombre_r2", ...)
+     * @param cantidad cantidad de réplicas
+     * @return las URLs JDBC de las réplicas
+     */
+    public static List<String> configurarReplicas(String nombre, int cantidad) throws SQLException, IOException {
+        List<String> urls = new ArrayList<>();
+        for (int i = 1; i <= cantidad; i++) {
+            urls.add(crearBase(nombre + "_r" + i));
+        }
+        System.setProperty("clinica.db.replicas", String.join(",", urls));
+        return urls;
+    }
+
+    /**
+     * Crea bases H2 adicionales que hacen de shards 1..cantidad-1
+     * (clinica.db.shards); el shard 0 es la base de {@link #configurar(String)}.
+     * Llamar junto con {@link #configurar(String)}, antes de usar DAOs o servicios.
+     *
+     * @param nombre prefijo de los nombres de las bases ("nombre_s1", "nombre_s2", ...)
+     * @param cantidad cantidad total de shards, incluido el 0
+     * @return las URLs JDBC de los shards adicionales
+     */
+    public static List<String> configurarShards(String nombre, int cantidad) throws SQLException, IOException {
+        List<String> urls = new ArrayList<>();
+        for (int i = 1; i < cantidad; i++) {
+            urls.add(crearBase(nombre + "_s" + i));
+        }
+        System.setProperty("clinica.db.shards", String.join(",", urls));
+        return urls;
+    }
+
+    /**
+     * Copia el contenido actual de la primaria a cada réplica (reemplaza lo que tenían).
+     */
+    public static void sincronizarReplicas() throws SQLException, IOException {
+        Path volcado = Files.createTempFile("clinica-replica", ".sql");
+        try {
+            try (Connection primaria = DriverManager.getConnection(System.getProperty("clinica.db.url"), "sa", "");
+                    Statement st = primaria.createStatement()) {
+                st.execute("SCRIPT TO '" + volcado.toAbsolutePath() + "'");
+            }
+            for (String url : System.getProperty("clinica.db.replicas", "").split(",")) {
+                if (url.isEmpty()) {
+                    continue;
+                }
+                try (Connection replica = DriverManager.getConnection(url, "sa", "");
+                        Statement st = replica.createStatement()) {
+                    st.execute("DROP ALL OBJECTS");
+                    st.execute("RUNSCRIPT FROM '" + volcado.toAbsolutePath() + "'");
+                }
+            }
+        } finally {
+            Files.deleteIfExists(volcado);
+        }
+    }
+
+    private static String crearBase(String nombre) throws SQLException, IOException {
+        String url = "jdbc:h2:mem:" + nombre + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+                Statement st = conn.createStatement()) {
+            for (String sentencia : leerSentencias(SCHEMA)) {
+                st.execute(sentencia);
+            }
+        }
+        return url;
+    }
+
+    /**
+     * Carga pacientes sintéticos con DNI = 10000000 + i (i desde 0).
+     *
+     * @param cantidad cantidad de pacientes a crear
+     */
+    public static void cargarPacientes(int cantidad) throws Exception {
+        PacienteService service = new PacienteService();
+        int lote = 5_000;
+        for (int desde = 0; desde < cantidad; desde += lote) {
+            List<Paciente> pacientes = new ArrayList<>(lote);
+            for (int i = desde; i < Math.min(desde + lote, cantidad); i++) {
+                pacientes.add(nuevoPaciente(i));
+            }
+            service.insertarPacientesCompletos(pacientes);
+        }
+    }
+
+    /**
+     * @return un paciente sintético (con historia clínica) para el índice dado
+     */
+    public static Paciente nuevoPaciente(long i) {
+        Paciente p = new Paciente();
+        p.setNombre(NOMBRES[(int) (i % NOMBRES.length)]);
+        p.setApellido(APELLIDOS[(int) ((i / NOMBRES.length) % APELLIDOS.length)]);
+        p.setDni(dni(i));
+        p.setFechaNacimiento(LocalDate.of(1940, 1, 1).plusDays(i % 30_000));
+        p.setEliminado(false);
+
+        HistoriaClinica hc = new HistoriaClinica();
+        hc.setNroHistoria("HC-" + i);
+        hc.setGrupoSanguineo(GRUPOS[(int) (i % GRUPOS.length)]);
+        hc.setAntecedentes("Antecedentes del paciente " + i + ": hipertensión, asma leve.");
+        hc.setMedicacionActual("Enalapril 10 mg, salbutamol a demanda.");
+        hc.setObservaciones("Control anual sin novedades.");
+        hc.setEliminado(false);
+        p.setHistoriaClinica(hc);
+        return p;
+    }
+
+    public static String dni(long i) {
+        return Long.toString(10_000_000L + i);
+    }
+
+    /**
+     * Lee el script SQL y devuelve las sentencias que entiende H2.
+     */
+    static List<String> leerSentencias(Path script) throws IOException {
+        StringBuilder sinComentarios = new StringBuilder();
+        for (String linea : Files.readAllLines(script, StandardCharsets.UTF_8)) {
+            String recortada = linea.trim();
+            if (!recortada.startsWith("--")) {
+                sinComentarios.append(linea).append('\n');
+            }
+        }
+
+        List<String> sentencias = new ArrayList<>();
+        for (String sentencia : sinComentarios.toString().split(";")) {
+            String sql = sentencia.trim();
+            String mayus = sql.toUpperCase(Locale.ROOT);
+            if (sql.isEmpty() || mayus.startsWith("CREATE DATABASE") || mayus.startsWith("USE ")
+                    || mayus.startsWith("SHOW ") || mayus.startsWith("DESCRIBE ")) {
+                continue;
+            }
+            if (mayus.startsWith("CREATE TABLE")) {
+                // Quitar las opciones de tabla de MySQL que siguen al último paréntesis
+                sql = sql.substring(0, sql.lastIndexOf(')') + 1);
+                // En H2 los nombres de índice son únicos por esquema, no por tabla
+                String tabla = sql.split("\\s+")[mayus.contains("IF NOT EXISTS") ? 5 : 2];
+                sql = sql.replaceAll("(?i)\\bINDEX\\s+(\\w+)", "INDEX " + tabla + "_$1");
+            }
+            sentencias.add(sql);
+        }
+        return sentencias;
+    }
+}
@@ -0,0 +1,80 @@
+package Bench;
+
+import Dao.PacienteDao;
+import Models.Paciente;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks de las lecturas de PacienteDao contra la base embebida.
+ *
+ * leer y buscarPorDni eligen un paciente al azar en cada invocación;
+ * leerTodos y leerTodosStream recorren la tabla completa.
+ *
+ * @author Grupo 49
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class PacienteDaoBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int cantidad;
+
+    private PacienteDao dao;
+
+    @Setup(Level.Trial)
+    public void cargar() throws Exception {
+        BaseDeDatosEmbebida.configurar("dao");
+        BaseDeDatosEmbebida.cargarPacientes(cantidad);
+        dao = new PacienteDao();
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        Config.DatabaseConnection.shutdown();
+    }
+
+    @Benchmark
+    public Paciente leer() throws Exception {
+        return dao.leer(1L + ThreadLocalRandom.current().nextInt(cantidad));
+    }
+
+    @Benchmark
+    public Paciente buscarPorDni() throws Exception {
+        return dao.buscarPorDni(BaseDeDatosEmbebida.dni(ThreadLocalRandom.current().nextInt(cantidad)));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Paciente> leerTodos() throws Exception {
+        return dao.leerTodos();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void leerTodosStream(Blackhole bh) throws Exception {
+        try (Stream<Paciente> pacientes = dao.leerTodosStream()) {
+            pacientes.forEach(bh::consume);
+        }
+    }
+}
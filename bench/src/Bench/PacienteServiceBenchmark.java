@@ -0,0 +1,75 @@
+package Bench;
+
+import Models.Paciente;
+import Service.PacienteService;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks de PacienteService contra la base embebida.
+ *
+ * insertarPacienteCompleto agrega pacientes nuevos (DNI a partir de la
+ * cantidad cargada), así que la tabla crece durante la medición.
+ * buscarPorDni pasa por la caché de DNI: con el tamaño por defecto de la
+ * caché, en los datasets grandes casi todas las búsquedas son fallos.
+ *
+ * @author Grupo 49
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class PacienteServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int cantidad;
+
+    private PacienteService service;
+    private AtomicLong siguiente;
+
+    @Setup(Level.Trial)
+    public void cargar() throws Exception {
+        BaseDeDatosEmbebida.configurar("service");
+        BaseDeDatosEmbebida.cargarPacientes(cantidad);
+        service = new PacienteService();
+        siguiente = new AtomicLong(cantidad);
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        Config.DatabaseConnection.shutdown();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Paciente> getAllConHistoria() throws Exception {
+        return service.getAllConHistoria();
+    }
+
+    @Benchmark
+    public Paciente buscarPorDni() throws Exception {
+        return service.buscarPorDni(BaseDeDatosEmbebida.dni(ThreadLocalRandom.current().nextInt(cantidad)));
+    }
+
+    @Benchmark
+    public Paciente insertarPacienteCompleto() throws Exception {
+        return service.insertarPacienteCompleto(BaseDeDatosEmbebida.nuevoPaciente(siguiente.getAndIncrement()));
+    }
+}
@@ -0,0 +1,156 @@
+package Bench;
+
+import Dao.PacienteConHistoriaRowMapper;
+import Dao.PacienteRowMapper;
+import Models.HistoriaClinica;
+import Models.HistoriaClinica.GrupoSanguineo;
+import Models.Paciente;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks del mapeo de filas, aislado de la consulta.
+ *
+ * El resultado del LEFT JOIN paciente / historia_clinica se ejecuta una sola
+ * vez con un ResultSet desplazable; cada invocación vuelve al principio y
+ * mapea todas las filas. Los métodos "porNombre" reproducen el mapeo por
+ * nombre de columna que usaban los DAOs antes de los RowMapper, como
+ * referencia.
+ *
+ * @author Grupo 49
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class RowMapperBenchmark {
+
+    // Mismas columnas y alias que PacienteDao.SELECT_ALL_CON_HISTORIA_SQL
+    private static final String SELECT_CON_HISTORIA_SQL =
+        "SELECT p.id, p.nombre, p.apellido, p.dni, p.fecha_nacimiento, p.eliminado, p.version, " +
+        "hc.id AS hc_id, hc.nro_historia AS hc_nro_historia, hc.grupo_sanguineo AS hc_grupo_sanguineo, " +
+        "hc.antecedentes AS hc_antecedentes, hc.medicacion_actual AS hc_medicacion_actual, " +
+        "hc.observaciones AS hc_observaciones, hc.eliminado AS hc_eliminado, hc.version AS hc_version " +
+        "FROM paciente p LEFT JOIN historia_clinica hc ON hc.paciente_id = p.id AND hc.eliminado = false " +
+        "WHERE p.eliminado = false";
+
+    @Param({"1000", "100000", "1000000"})
+    public int cantidad;
+
+    private Connection conn;
+    private PreparedStatement pstmt;
+    private ResultSet rs;
+
+    @Setup(Level.Trial)
+    public void cargar() throws Exception {
+        String url = BaseDeDatosEmbebida.configurar("mapper");
+        BaseDeDatosEmbebida.cargarPacientes(cantidad);
+        Config.DatabaseConnection.shutdown();
+
+        conn = DriverManager.getConnection(url, "sa", "");
+        pstmt = conn.prepareStatement(SELECT_CON_HISTORIA_SQL,
+                ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        rs = pstmt.executeQuery();
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() throws SQLException {
+        rs.close();
+        pstmt.close();
+        conn.close();
+    }
+
+    @Benchmark
+    public void paciente(Blackhole bh) throws SQLException {
+        // Un mapper nuevo por recorrido, como en cada consulta de los DAOs
+        PacienteRowMapper mapper = new PacienteRowMapper();
+        rs.beforeFirst();
+        while (rs.next()) {
+            bh.consume(mapper.mapRow(rs));
+        }
+    }
+
+    @Benchmark
+    public void pacientePorNombre(Blackhole bh) throws SQLException {
+        rs.beforeFirst();
+        while (rs.next()) {
+            bh.consume(mapearPacientePorNombre(rs));
+        }
+    }
+
+    @Benchmark
+    public void pacienteConHistoria(Blackhole bh) throws SQLException {
+        PacienteConHistoriaRowMapper mapper = new PacienteConHistoriaRowMapper();
+        rs.beforeFirst();
+        while (rs.next()) {
+            bh.consume(mapper.mapRow(rs));
+        }
+    }
+
+    @Benchmark
+    public void pacienteConHistoriaPorNombre(Blackhole bh) throws SQLException {
+        rs.beforeFirst();
+        while (rs.next()) {
+            bh.consume(mapearConHistoriaPorNombre(rs));
+        }
+    }
+
+    private static Paciente mapearPacientePorNombre(ResultSet rs) throws SQLException {
+        Paciente paciente = new Paciente();
+        paciente.setId(rs.getLong("id"));
+        paciente.setNombre(rs.getString("nombre"));
+        paciente.setApellido(rs.getString("apellido"));
+        paciente.setDni(rs.getString("dni"));
+        Date fechaNacSQL = rs.getDate("fecha_nacimiento");
+        if (fechaNacSQL != null) {
+            paciente.setFechaNacimiento(fechaNacSQL.toLocalDate());
+        }
+        paciente.setEliminado(rs.getBoolean("eliminado"));
+        paciente.setVersion(rs.getLong("version"));
+        return paciente;
+    }
+
+    private static Paciente mapearConHistoriaPorNombre(ResultSet rs) throws SQLException {
+        Paciente paciente = mapearPacientePorNombre(rs);
+        long hcId = rs.getLong("hc_id");
+        if (rs.wasNull()) {
+            return paciente;
+        }
+        HistoriaClinica hc = new HistoriaClinica();
+        hc.setId(hcId);
+        hc.setNroHistoria(rs.getString("hc_nro_historia"));
+        String grupoSangStr = rs.getString("hc_grupo_sanguineo");
+        if (grupoSangStr != null) {
+            hc.setGrupoSanguineo(GrupoSanguineo.valueOf(grupoSangStr));
+        }
+        hc.setAntecedentes(rs.getString("hc_antecedentes"));
+        hc.setMedicacionActual(rs.getString("hc_medicacion_actual"));
+        hc.setObservaciones(rs.getString("hc_observaciones"));
+        hc.setEliminado(rs.getBoolean("hc_eliminado"));
+        hc.setVersion(rs.getLong("hc_version"));
+        hc.setPaciente(paciente);
+        paciente.setHistoriaClinica(hc);
+        return paciente;
+    }
+}
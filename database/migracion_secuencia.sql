@@ -0,0 +1,15 @@
+-- ================================================================
+-- Migración: tabla secuencia (IDs y números de historia en bloques)
+-- Base de Datos: clinica_db
+-- Motor: MySQL 5.7+
+--
+-- Solo para bases creadas con una versión anterior de schema.sql.
+-- Las secuencias se crean solas la primera vez que se usan.
+-- ================================================================
+
+USE clinica_db;
+
+CREATE TABLE IF NOT EXISTS secuencia (
+    nombre VARCHAR(40) PRIMARY KEY,
+    proximo BIGINT NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
@@ -0,0 +1,16 @@
+-- ================================================================
+-- Migración: columna version para concurrencia optimista
+-- Base de Datos: clinica_db
+-- Motor: MySQL 5.7+
+--
+-- Solo para bases creadas con una versión anterior de schema.sql.
+-- Las filas existentes quedan en la versión 0.
+-- ================================================================
+
+USE clinica_db;
+
+ALTER TABLE paciente
+    ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE historia_clinica
+    ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -22,6 +22,8 @@ CREATE TABLE IF NOT EXISTS paciente (
     apellido VARCHAR(80) NOT NULL,
     dni VARCHAR(15) NOT NULL UNIQUE,
     fecha_nacimiento DATE,
+    -- Concurrencia optimista: cada UPDATE la incrementa
+    version BIGINT NOT NULL DEFAULT 0,
     
     -- Índices para mejorar el rendimiento
     INDEX idx_dni (dni),
@@ -43,6 +45,8 @@ CREATE TABLE IF NOT EXISTS historia_clinica (
     medicacion_actual TEXT,
     observaciones TEXT,
     paciente_id BIGINT NOT NULL UNIQUE,
+    -- Concurrencia optimista: cada UPDATE la incrementa
+    version BIGINT NOT NULL DEFAULT 0,
     
     -- Clave foránea con restricción de integridad referencial
     CONSTRAINT fk_historia_paciente 
@@ -57,6 +61,16 @@ CREATE TABLE IF NOT EXISTS historia_clinica (
     INDEX idx_paciente_id (paciente_id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
+-- ================================================================
+-- Tabla: secuencia
+-- Descripción: Próximo valor libre de cada secuencia de la aplicación
+-- (IDs y números de historia), que se reservan en bloques
+-- ================================================================
+CREATE TABLE IF NOT EXISTS secuencia (
+    nombre VARCHAR(40) PRIMARY KEY,
+    proximo BIGINT NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
 -- ================================================================
 -- Datos de prueba (OPCIONAL - comentar si no se necesitan)
 -- ================================================================
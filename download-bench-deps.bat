@@ -0,0 +1,33 @@
+@echo off
+REM Script para descargar las dependencias de los benchmarks (JMH + H2) en Windows
+
+echo Descargando dependencias de los benchmarks...
+
+REM Crear directorio lib\bench si no existe
+if not exist lib\bench mkdir lib\bench
+
+set REPO=https://repo1.maven.org/maven2
+set ERROR=0
+
+for %%J in (
+    org/openjdk/jmh/jmh-core/1.37/jmh-core-1.37.jar
+    org/openjdk/jmh/jmh-generator-annprocess/1.37/jmh-generator-annprocess-1.37.jar
+    net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar
+    org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar
+    com/h2database/h2/2.2.224/h2-2.2.224.jar
+) do (
+    powershell -Command "& {Invoke-WebRequest -Uri '%REPO%/%%J' -OutFile 'lib/bench/%%~nxJ'}"
+    if errorlevel 1 set ERROR=1
+)
+
+if %ERROR% EQU 0 (
+    echo [OK] Dependencias descargadas exitosamente en: lib\bench\
+    echo.
+    echo Ahora puedes ejecutar los benchmarks con: ant bench
+) else (
+    echo [ERROR] No se pudo descargar alguna dependencia
+    echo Por favor descargalas manualmente desde %REPO%
+    echo Y colocalas en la carpeta lib\bench\
+)
+
+pause
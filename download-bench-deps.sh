@@ -0,0 +1,28 @@
+#!/bin/bash
+# Script para descargar las dependencias de los benchmarks (JMH + H2)
+
+echo "Descargando dependencias de los benchmarks..."
+
+# Crear directorio lib/bench si no existe
+mkdir -p lib/bench
+
+REPO=https://repo1.maven.org/maven2
+JARS="org/openjdk/jmh/jmh-core/1.37/jmh-core-1.37.jar
+org/openjdk/jmh/jmh-generator-annprocess/1.37/jmh-generator-annprocess-1.37.jar
+net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar
+org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar
+com/h2database/h2/2.2.224/h2-2.2.224.jar"
+
+ERROR=0
+for JAR in $JARS; do
+    curl -fL -o "lib/bench/$(basename "$JAR")" "$REPO/$JAR" || ERROR=1
+done
+
+if [ $ERROR -eq 0 ]; then
+    echo "✓ Dependencias descargadas exitosamente en: lib/bench/"
+    echo ""
+    echo "Ahora puedes ejecutar los benchmarks con: ant bench"
+else
+    echo "✗ Error al descargar alguna dependencia"
+    echo "Por favor descárgalas manualmente desde $REPO y colócalas en lib/bench/"
+fi
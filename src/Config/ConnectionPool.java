@@ -0,0 +1,443 @@
+package Config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool acotado de conexiones JDBC.
+ *
+ * Mantiene entre {@code minSize} y {@code maxSize} conexiones físicas abiertas
+ * y entrega a los DAOs una conexión "lógica" cuyo {@code close()} devuelve la
+ * conexión física al pool en lugar de cerrarla. Así cada operación evita el
+ * handshake TCP + autenticación de MySQL una vez que el pool está caliente.
+ *
+ * Características:
+ * - Tamaño mínimo / máximo configurable
+ * - Timeout de adquisición ({@link PoolAgotadoException} si no hay conexión libre)
+ * - Validación al prestar las conexiones que estuvieron ociosas
+ * - Desalojo periódico de conexiones ociosas por encima del mínimo
+ * - Caché LRU de PreparedStatements por conexión (ver {@link StatementCache})
+ * - Estadísticas de uso (ver {@link Stats})
+ *
+ * @author Grupo 49
+ */
+public class ConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String pass;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMs;
+    private final long acquireTimeoutMs;
+    private final long validationIntervalMs;
+    private final int statementCacheSize;
+
+    // Conexiones libres: se usa como pila (LIFO) para reutilizar las más "calientes"
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+
+    // Un permiso por cada conexión que puede estar prestada al mismo tiempo
+    private final Semaphore permits;
+
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    // Estadísticas
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public ConnectionPool(String url, String user, String pass, int minSize, int maxSize,
+            long idleTimeoutMs, long acquireTimeoutMs, long validationIntervalMs, int statementCacheSize) {
+        if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Tamaños de pool inválidos: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.pass = pass;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.validationIntervalMs = validationIntervalMs;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "clinica-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000L, Math.min(idleTimeoutMs, 30_000L));
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Presta una conexión del pool. Cerrarla (try-with-resources) la devuelve.
+     *
+     * @return conexión lógica respaldada por una conexión física del pool
+     * @throws SQLException si no se pudo obtener una conexión dentro del timeout
+     */
+    public Connection getConnection() throws SQLException {
+        return getConnection(null);
+    }
+
+    /**
+     * Igual que {@link #getConnection()}, y además ejecuta {@code onReturn} en
+     * el hilo que cierra la conexión, después de devolverla al pool.
+     *
+     * @param onReturn acción a ejecutar al devolver la conexión (puede ser null)
+     * @return conexión lógica respaldada por una conexión física del pool
+     * @throws SQLException si no se pudo obtener una conexión dentro del timeout
+     */
+    public Connection getConnection(Runnable onReturn) throws SQLException {
+        if (closed) {
+            throw new SQLException("El pool de conexiones está cerrado.");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new PoolAgotadoException("No se obtuvo una conexión del pool en " + acquireTimeoutMs
+                        + " ms (máximo " + maxSize + " conexiones en uso).");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido mientras se esperaba una conexión del pool.", e);
+        }
+
+        try {
+            PooledConnection pc = takeValidIdle();
+            if (pc == null) {
+                pc = create();
+            }
+            long waited = System.nanoTime() - start;
+            totalWaitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            borrowCount.incrementAndGet();
+            return pc.borrow(onReturn);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Toma la conexión ociosa más reciente que siga siendo válida.
+     * Las que estuvieron ociosas más de {@code validationIntervalMs} se validan
+     * con {@link Connection#isValid(int)} antes de entregarse.
+     */
+    private PooledConnection takeValidIdle() {
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - pc.lastUsed < validationIntervalMs) {
+                return pc;
+            }
+            try {
+                if (pc.physical.isValid(2)) {
+                    return pc;
+                }
+            } catch (SQLException e) {
+                // Conexión rota: se descarta y se intenta con la siguiente
+            }
+            validationFailures.incrementAndGet();
+            destroy(pc);
+        }
+        return null;
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, pass);
+        totalConnections.incrementAndGet();
+        createdCount.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void destroy(PooledConnection pc) {
+        totalConnections.decrementAndGet();
+        destroyedCount.incrementAndGet();
+        if (pc.statementCache != null) {
+            pc.statementCache.clear();
+        }
+        try {
+            pc.physical.close();
+        } catch (SQLException e) {
+            // Ya no se puede hacer nada con esta conexión
+        }
+    }
+
+    /**
+     * Devuelve la conexión física al pool, restaurando su estado por defecto.
+     */
+    private void release(PooledConnection pc) {
+        try {
+            boolean reusable = !closed && !pc.physical.isClosed();
+            if (reusable && !pc.physical.getAutoCommit()) {
+                // Transacción que quedó abierta: se descarta su trabajo
+                pc.physical.rollback();
+                pc.physical.setAutoCommit(true);
+            }
+            if (reusable) {
+                if (pc.statementCache != null) {
+                    pc.statementCache.releaseLeaked();
+                }
+                pc.physical.clearWarnings();
+                pc.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pc);
+            } else {
+                destroy(pc);
+            }
+        } catch (SQLException e) {
+            destroy(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Cierra las conexiones ociosas que superan el timeout (respetando el
+     * mínimo) y repone conexiones hasta alcanzar {@code minSize}.
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && totalConnections.get() > minSize) {
+            PooledConnection pc = it.next();
+            if (now - pc.lastUsed > idleTimeoutMs && idle.removeFirstOccurrence(pc)) {
+                destroy(pc);
+            }
+        }
+        try {
+            while (!closed && totalConnections.get() < minSize) {
+                PooledConnection pc = create();
+                pc.lastUsed = System.currentTimeMillis();
+                idle.offerLast(pc);
+            }
+        } catch (SQLException e) {
+            // La base no está disponible: se reintentará en la próxima pasada
+        }
+    }
+
+    /**
+     * Cierra el pool y todas sus conexiones ociosas. Las conexiones prestadas
+     * se cierran físicamente cuando se devuelven.
+     */
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            destroy(pc);
+        }
+    }
+
+    /**
+     * @return instantánea de las estadísticas del pool
+     */
+    public Stats getStats() {
+        int active = maxSize - permits.availablePermits();
+        return new Stats(totalConnections.get(), idle.size(), active, permits.getQueueLength(),
+                borrowCount.get(), createdCount.get(), destroyedCount.get(), timeoutCount.get(),
+                validationFailures.get(), totalWaitNanos.get(), maxWaitNanos.get());
+    }
+
+    /**
+     * Conexión física administrada por el pool.
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statementCache;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statementCache = statementCacheSize > 0 ? new StatementCache(physical, statementCacheSize) : null;
+        }
+
+        /**
+         * Crea un nuevo "handle" lógico para este préstamo. Cada handle se puede
+         * cerrar una sola vez; usarlo después de cerrado lanza SQLException.
+         */
+        private Connection borrow(Runnable onReturn) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new LogicalHandler(this, onReturn));
+        }
+    }
+
+    /**
+     * Intercepta {@code close()} / {@code isClosed()} y
+     * {@code prepareStatement(sql)} / {@code prepareStatement(sql, autoGeneratedKeys)}
+     * (que pasan por la caché de statements) y delega el resto de los métodos
+     * en la conexión física.
+     */
+    private final class LogicalHandler implements InvocationHandler {
+        private final PooledConnection pc;
+        private final Runnable onReturn;
+        private boolean logicallyClosed = false;
+
+        private LogicalHandler(PooledConnection pc, Runnable onReturn) {
+            this.pc = pc;
+            this.onReturn = onReturn;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!logicallyClosed) {
+                        logicallyClosed = true;
+                        release(pc);
+                        if (onReturn != null) {
+                            onReturn.run();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return logicallyClosed || pc.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pc.physical + (logicallyClosed ? ", devuelta" : "") + "]";
+                default:
+                    break;
+            }
+            if (logicallyClosed) {
+                throw new SQLException("La conexión ya fue devuelta al pool.");
+            }
+            if (pc.statementCache != null && "prepareStatement".equals(method.getName())) {
+                Class<?>[] params = method.getParameterTypes();
+                if (params.length == 1) {
+                    return pc.statementCache.prepare((String) args[0], Statement.NO_GENERATED_KEYS);
+                }
+                if (params.length == 2 && params[1] == int.class) {
+                    return pc.statementCache.prepare((String) args[0], (Integer) args[1]);
+                }
+            }
+            try {
+                return method.invoke(pc.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Se agotó la espera por una conexión porque todas están prestadas: el
+     * pool está saturado, no necesariamente la base caída.
+     */
+    public static final class PoolAgotadoException extends SQLTimeoutException {
+        private static final long serialVersionUID = 1L;
+
+        private PoolAgotadoException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Instantánea inmutable de las estadísticas del pool.
+     */
+    public static final class Stats {
+        private final int total;
+        private final int idle;
+        private final int active;
+        private final int waiting;
+        private final long borrows;
+        private final long created;
+        private final long destroyed;
+        private final long timeouts;
+        private final long validationFailures;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+
+        private Stats(int total, int idle, int active, int waiting, long borrows, long created,
+                long destroyed, long timeouts, long validationFailures, long totalWaitNanos, long maxWaitNanos) {
+            this.total = total;
+            this.idle = idle;
+            this.active = active;
+            this.waiting = waiting;
+            this.borrows = borrows;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.timeouts = timeouts;
+            this.validationFailures = validationFailures;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getWaiting() {
+            return waiting;
+        }
+
+        public long getBorrows() {
+            return borrows;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public long getDestroyed() {
+            return destroyed;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getValidationFailures() {
+            return validationFailures;
+        }
+
+        public double getAverageWaitMillis() {
+            return borrows == 0 ? 0 : totalWaitNanos / 1_000_000.0 / borrows;
+        }
+
+        public double getMaxWaitMillis() {
+            return maxWaitNanos / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return "Pool{total=" + total + ", ociosas=" + idle + ", en uso=" + active
+                    + ", esperando=" + waiting + ", préstamos=" + borrows + ", creadas=" + created
+                    + ", cerradas=" + destroyed + ", timeouts=" + timeouts
+                    + ", validaciones fallidas=" + validationFailures
+                    + String.format(", espera prom=%.3f ms, espera máx=%.3f ms", getAverageWaitMillis(), getMaxWaitMillis())
+                    + '}';
+        }
+    }
+}
@@ -7,9 +7,13 @@ package Config;
  * @author matia
  */
 
+import Metrics.Metricas;
+import Metrics.RegistroMetricas;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DatabaseConnection {
     
@@ -19,25 +23,356 @@ public class DatabaseConnection {
     
     // IMPORTANTE: Reemplazar con las credenciales reales de tu servidor MySQL
     // URL formato: jdbc:mysql://[host]:[puerto]/[nombre_base_datos]?parámetros
-    private static final String URL = "jdbc:mysql://localhost:3307/clinica_db?useSSL=false&serverTimezone=UTC";
+    // rewriteBatchedStatements=true: el driver reescribe los lotes de INSERT (addBatch)
+    // como un único INSERT multi-fila, en lugar de un viaje a la base por fila
+    // useCursorFetch=true: las consultas con fetch size > 0 usan un cursor del servidor
+    // y traen las filas de a bloques (lecturas en streaming sin cargar toda la tabla)
+    // useServerPrepStmts=true: los PreparedStatement se preparan en el servidor una sola vez
+    // (el pool los mantiene abiertos en su caché de statements por conexión)
+    // Se puede reemplazar con -Dclinica.db.url=... (por ejemplo, para los benchmarks)
+    private static final String URL = System.getProperty("clinica.db.url",
+            "jdbc:mysql://localhost:3307/clinica_db?useSSL=false&serverTimezone=UTC"
+            + "&rewriteBatchedStatements=true&useCursorFetch=true&useServerPrepStmts=true");
     
     // Usuario de MySQL (por defecto "root", cambiar según tu configuración)
-    private static final String USER = "root"; 
+    private static final String USER = System.getProperty("clinica.db.user", "root"); 
     
     // Contraseña de MySQL (DEBE configurarse según tu instalación)
     // IMPORTANTE: En producción, nunca dejar contraseñas en el código
     // Considerar usar variables de entorno o archivos de configuración externos
-    private static final String PASS = "hola123"; 
+    private static final String PASS = System.getProperty("clinica.db.pass", "hola123"); 
+
+    // ========================================
+    // Configuración del pool de conexiones
+    // ========================================
+    // Cada valor puede sobrescribirse con una propiedad del sistema,
+    // por ejemplo: java -Dclinica.pool.max=20 -jar ...
+    
+    private static final int POOL_MIN = Integer.getInteger("clinica.pool.min", 2);
+    private static final int POOL_MAX = Integer.getInteger("clinica.pool.max", 10);
+    private static final long POOL_IDLE_TIMEOUT_MS = Long.getLong("clinica.pool.idleTimeoutMs", 300_000L);
+    private static final long POOL_ACQUIRE_TIMEOUT_MS = Long.getLong("clinica.pool.acquireTimeoutMs", 10_000L);
+    private static final long POOL_VALIDATION_INTERVAL_MS = Long.getLong("clinica.pool.validationIntervalMs", 1_000L);
+    // Statements preparados que se conservan por conexión (0 desactiva la caché)
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("clinica.pool.statementCacheSize", 64);
+
+    // ========================================
+    // Réplicas de lectura (opcional)
+    // ========================================
+    // URLs JDBC separadas por coma; mismo usuario y contraseña que la primaria.
+    // Sin réplicas, getConnectionLectura() es igual a getConnection().
+    // Ejemplo: -Dclinica.db.replicas=jdbc:mysql://localhost:3308/clinica_db,jdbc:mysql://localhost:3309/clinica_db
+    private static final String REPLICAS = System.getProperty("clinica.db.replicas", "");
+    // round-robin o least-loaded (la réplica con menos conexiones prestadas)
+    private static final String REPLICAS_POLITICA = System.getProperty("clinica.db.replicas.politica", "round-robin");
+    // Después de escribir, el mismo hilo lee de la primaria durante este tiempo
+    // (la réplica puede no tener todavía lo que se acaba de escribir)
+    private static final long VENTANA_LECTURA_PROPIA_MS = Long.getLong("clinica.db.replicas.ventanaMs", 2_000L);
+    // Tiempo que se saltea una réplica que falló
+    private static final long REPLICAS_REINTENTO_MS = Long.getLong("clinica.db.replicas.reintentoMs", 5_000L);
+    // Espera máxima por una conexión de réplica antes de ir a la primaria
+    private static final long REPLICAS_ACQUIRE_TIMEOUT_MS = Long.getLong("clinica.db.replicas.acquireTimeoutMs", 500L);
+
+    // ========================================
+    // Shards (opcional)
+    // ========================================
+    // URLs JDBC de los shards adicionales separadas por coma; mismo usuario y
+    // contraseña. El shard 0 es clinica.db.url (con sus réplicas) y estos son
+    // los shards 1, 2, ... Sin shards todo va a clinica.db.url.
+    // Cómo se reparten las filas: ver Dao.Shards
+    private static final List<String> SHARDS = separarUrls(System.getProperty("clinica.db.shards", ""));
+
+    // Ventana de lectura propia de cada hilo. Un hilo que trabaja en nombre de
+    // otro (llamadas asíncronas, escritor agrupado, consultas por shard) usa
+    // la del hilo que lo llamó: ver usarLecturaPropia()
+    private static final ThreadLocal<LecturaPropia> LECTURA_PROPIA = ThreadLocal.withInitial(LecturaPropia::new);
+    private static final Runnable MARCAR_ESCRITURA = () -> LECTURA_PROPIA.get().marcarEscritura();
+    private static final AtomicLong LECTURAS_EN_PRIMARIA = new AtomicLong();
+
+    /**
+     * Inicialización perezosa del pool (idiom "holder"): el pool se crea la
+     * primera vez que se pide una conexión.
+     */
+    private static final class PoolHolder {
+        private static final ConnectionPool POOL = new ConnectionPool(URL, USER, PASS,
+                POOL_MIN, POOL_MAX, POOL_IDLE_TIMEOUT_MS, POOL_ACQUIRE_TIMEOUT_MS, POOL_VALIDATION_INTERVAL_MS,
+                STATEMENT_CACHE_SIZE);
+
+        static {
+            RegistroMetricas registro = RegistroMetricas.getInstance();
+            registro.registrarIndicador("clinica_pool_conexiones_en_uso", "Conexiones prestadas.",
+                    () -> POOL.getStats().getActive());
+            registro.registrarIndicador("clinica_pool_conexiones_ociosas", "Conexiones abiertas disponibles.",
+                    () -> POOL.getStats().getIdle());
+            registro.registrarIndicador("clinica_pool_hilos_esperando", "Hilos esperando una conexión.",
+                    () -> POOL.getStats().getWaiting());
+            registro.registrarIndicador("clinica_pool_timeouts", "Pedidos de conexión que agotaron la espera.",
+                    () -> POOL.getStats().getTimeouts());
+            registro.registrarIndicador("clinica_statement_cache_tasa_aciertos", "Tasa de aciertos de la caché de statements.",
+                    () -> StatementCache.getStats().getHitRatio());
+        }
+    }
+
+    /**
+     * Pools de las réplicas, también creados la primera vez que se usan.
+     */
+    private static final class ReplicaHolder {
+        private static final ReplicaRouter ROUTER = new ReplicaRouter(urlsReplicas(),
+                ReplicaRouter.Policy.desde(REPLICAS_POLITICA), REPLICAS_REINTENTO_MS,
+                url -> new ConnectionPool(url, USER, PASS, Math.min(POOL_MIN, 1), POOL_MAX, POOL_IDLE_TIMEOUT_MS,
+                        REPLICAS_ACQUIRE_TIMEOUT_MS, POOL_VALIDATION_INTERVAL_MS, STATEMENT_CACHE_SIZE));
+
+        static {
+            RegistroMetricas registro = RegistroMetricas.getInstance();
+            registro.registrarIndicador("clinica_replicas_lecturas", "Lecturas atendidas por réplicas.",
+                    ROUTER::getReads);
+            registro.registrarIndicador("clinica_replicas_lecturas_en_primaria",
+                    "Lecturas que fueron a la primaria (ventana de lectura propia o réplicas no disponibles).",
+                    LECTURAS_EN_PRIMARIA::get);
+        }
+
+        private static List<String> urlsReplicas() {
+            return separarUrls(REPLICAS);
+        }
+    }
+
+    /**
+     * Pools de los shards 1..N-1 (el shard 0 usa el pool principal), creados
+     * la primera vez que se usan.
+     */
+    private static final class ShardHolder {
+        private static final List<ConnectionPool> POOLS = new ArrayList<>();
+
+        static {
+            for (String url : SHARDS) {
+                POOLS.add(new ConnectionPool(url, USER, PASS, POOL_MIN, POOL_MAX, POOL_IDLE_TIMEOUT_MS,
+                        POOL_ACQUIRE_TIMEOUT_MS, POOL_VALIDATION_INTERVAL_MS, STATEMENT_CACHE_SIZE));
+            }
+            RegistroMetricas registro = RegistroMetricas.getInstance();
+            for (int i = 0; i < POOLS.size(); i++) {
+                ConnectionPool pool = POOLS.get(i);
+                registro.registrarIndicador("clinica_shard_" + (i + 1) + "_conexiones_en_uso",
+                        "Conexiones prestadas del shard " + (i + 1) + ".", () -> pool.getStats().getActive());
+            }
+        }
+    }
+
+    private static List<String> separarUrls(String valor) {
+        List<String> urls = new ArrayList<>();
+        for (String url : valor.split(",")) {
+            if (!url.trim().isEmpty()) {
+                urls.add(url.trim());
+            }
+        }
+        return urls;
+    }
 
     /**
-     * Obtiene una conexión a la base de datos
+     * Obtiene una conexión a la base de datos desde el pool.
+     * Al cerrarla (close) la conexión vuelve al pool en lugar de cerrarse,
+     * por lo que los DAOs pueden seguir usando try-with-resources / finally.
+     * El tiempo de espera queda en la métrica "DatabaseConnection.getConnection".
      * 
      * @return Connection objeto de conexión a la base de datos
-     * @throws SQLException si ocurre un error al conectar
+     * @throws SQLException si ocurre un error al conectar o se agota el timeout del pool
      */
     public static Connection getConnection() throws SQLException {
-        // Retorna la conexión usando DriverManager
-        return DriverManager.getConnection(URL, USER, PASS);
+        // Cualquier conexión de la primaria puede escribir: al devolverla empieza
+        // la ventana en la que este hilo no lee de las réplicas
+        return Metricas.medir("DatabaseConnection.getConnection", () -> PoolHolder.POOL.getConnection(MARCAR_ESCRITURA));
+    }
+    
+    /**
+     * Obtiene una conexión para una lectura. Si hay réplicas configuradas
+     * (clinica.db.replicas) la toma de una réplica, salvo que este hilo haya
+     * escrito hace menos de clinica.db.replicas.ventanaMs (para que lea lo que
+     * acaba de escribir) o que ninguna réplica esté disponible: en esos casos
+     * usa la primaria.
+     * 
+     * Solo para consultas: no escribir con esta conexión.
+     * 
+     * @return Connection de una réplica o de la primaria
+     * @throws SQLException si no se pudo obtener una conexión de la primaria
+     */
+    public static Connection getConnectionLectura() throws SQLException {
+        if (REPLICAS.isEmpty()) {
+            return getConnection();
+        }
+        return Metricas.medir("DatabaseConnection.getConnectionLectura", () -> {
+            if (!LECTURA_PROPIA.get().enVentana()) {
+                Connection replica = ReplicaHolder.ROUTER.getConnection();
+                if (replica != null) {
+                    return replica;
+                }
+            }
+            LECTURAS_EN_PRIMARIA.incrementAndGet();
+            // Sin marcar escritura: una lectura en la primaria no extiende la ventana
+            return PoolHolder.POOL.getConnection();
+        });
+    }
+    
+    /**
+     * Ventana de lectura propia: el momento de la última escritura de un
+     * hilo (o de quien lo llamó). Mientras no pasen clinica.db.replicas.ventanaMs
+     * desde esa escritura, las lecturas van a la primaria.
+     */
+    public static final class LecturaPropia {
+        private final AtomicLong ultimaEscritura = new AtomicLong();
+
+        private LecturaPropia() {
+        }
+
+        /**
+         * Registra una escritura confirmada ahora (por ejemplo, la que hizo
+         * otro hilo en nombre del dueño de esta ventana).
+         */
+        public void marcarEscritura() {
+            ultimaEscritura.accumulateAndGet(System.currentTimeMillis(), Math::max);
+        }
+
+        private boolean enVentana() {
+            return System.currentTimeMillis() - ultimaEscritura.get() < VENTANA_LECTURA_PROPIA_MS;
+        }
+    }
+
+    /**
+     * @return la ventana de lectura propia de este hilo, para pasarla a un
+     *         hilo que trabaje en su nombre
+     */
+    public static LecturaPropia getLecturaPropia() {
+        return LECTURA_PROPIA.get();
+    }
+
+    /**
+     * Hace que este hilo use la ventana de lectura propia de otro: sus
+     * escrituras la marcan y sus lecturas la respetan. Así, lo que un hilo
+     * escribe a través de otro lo vuelve a leer de la primaria.
+     *
+     * @param lecturaPropia la ventana del hilo que delegó el trabajo
+     * @return la ventana que este hilo usaba, para restaurarla al terminar
+     */
+    public static LecturaPropia usarLecturaPropia(LecturaPropia lecturaPropia) {
+        LecturaPropia anterior = LECTURA_PROPIA.get();
+        LECTURA_PROPIA.set(lecturaPropia);
+        return anterior;
+    }
+
+    /**
+     * @return cantidad de shards (1 si no hay shards configurados)
+     */
+    public static int getCantidadShards() {
+        return SHARDS.size() + 1;
+    }
+    
+    /**
+     * Obtiene una conexión de un shard. El shard 0 es la primaria de
+     * siempre (igual que {@link #getConnection()}).
+     * 
+     * @param shard Número de shard, de 0 a getCantidadShards() - 1
+     * @return Connection del shard
+     * @throws SQLException si ocurre un error al conectar o se agota el timeout del pool
+     */
+    public static Connection getConnection(int shard) throws SQLException {
+        if (shard == 0) {
+            return getConnection();
+        }
+        return Metricas.medir("DatabaseConnection.getConnection", () -> ShardHolder.POOLS.get(shard - 1).getConnection());
+    }
+    
+    /**
+     * Obtiene una conexión para una lectura en un shard. En el shard 0 puede
+     * ser de una réplica (ver {@link #getConnectionLectura()}); los demás
+     * shards no tienen réplicas.
+     * 
+     * @param shard Número de shard, de 0 a getCantidadShards() - 1
+     * @return Connection de una réplica o del shard
+     * @throws SQLException si no se pudo obtener una conexión
+     */
+    public static Connection getConnectionLectura(int shard) throws SQLException {
+        return shard == 0 ? getConnectionLectura() : getConnection(shard);
+    }
+    
+    /**
+     * Obtiene una conexión de la base principal de un shard para una lectura
+     * que no puede ir a una réplica (por ejemplo, releer una fila que otro
+     * acaba de modificar). A diferencia de {@link #getConnection(int)}, no
+     * abre la ventana de lectura propia del hilo.
+     * 
+     * Solo para consultas: no escribir con esta conexión.
+     * 
+     * @param shard Número de shard, de 0 a getCantidadShards() - 1
+     * @return Connection de la base principal del shard
+     * @throws SQLException si ocurre un error al conectar o se agota el timeout del pool
+     */
+    public static Connection getConnectionPrimaria(int shard) throws SQLException {
+        if (shard != 0) {
+            return getConnection(shard);
+        }
+        return Metricas.medir("DatabaseConnection.getConnection", () -> PoolHolder.POOL.getConnection());
+    }
+    
+    /**
+     * @return una línea por shard con su URL y el estado de su pool, o null si no hay shards
+     */
+    public static String getShardStats() {
+        if (SHARDS.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder("Shards (" + getCantidadShards() + "):");
+        sb.append(System.lineSeparator()).append("  0 ").append(URL).append(' ').append(PoolHolder.POOL.getStats());
+        for (int i = 0; i < SHARDS.size(); i++) {
+            sb.append(System.lineSeparator()).append("  ").append(i + 1).append(' ').append(SHARDS.get(i))
+                    .append(' ').append(ShardHolder.POOLS.get(i).getStats());
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * @return las réplicas con sus lecturas y el estado de sus pools, o null si no hay réplicas
+     */
+    public static String getReplicaStats() {
+        return REPLICAS.isEmpty() ? null : ReplicaHolder.ROUTER.toString();
+    }
+    
+    /**
+     * Devuelve las estadísticas actuales del pool de conexiones
+     * 
+     * @return instantánea de las estadísticas
+     */
+    public static ConnectionPool.Stats getPoolStats() {
+        return PoolHolder.POOL.getStats();
+    }
+    
+    /**
+     * Devuelve los contadores de la caché de PreparedStatements
+     * (aciertos = consultas que no tuvieron que volver a prepararse)
+     * 
+     * @return instantánea de los contadores
+     */
+    public static StatementCache.Stats getStatementCacheStats() {
+        return StatementCache.getStats();
+    }
+    
+    /**
+     * @return cantidad máxima de conexiones que presta el pool (clinica.pool.max)
+     */
+    public static int getTamanioMaximoPool() {
+        return POOL_MAX;
+    }
+    
+    /**
+     * Cierra el pool y todas sus conexiones. Llamar al finalizar la aplicación.
+     */
+    public static void shutdown() {
+        if (!REPLICAS.isEmpty()) {
+            ReplicaHolder.ROUTER.close();
+        }
+        if (!SHARDS.isEmpty()) {
+            for (ConnectionPool pool : ShardHolder.POOLS) {
+                pool.close();
+            }
+        }
+        PoolHolder.POOL.close();
     }
     
     /**
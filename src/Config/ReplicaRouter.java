@@ -0,0 +1,168 @@
+package Config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Reparte las lecturas entre las réplicas de la base.
+ *
+ * Cada réplica tiene su propio {@link ConnectionPool}. La réplica se elige
+ * por turnos (round-robin) o por la que tiene menos conexiones prestadas
+ * (least-loaded). Si el pool de una réplica está agotado (todas sus
+ * conexiones prestadas) se prueba con la siguiente; si la réplica no
+ * entrega una conexión por otro motivo (caída, conexión rechazada), además se
+ * la saltea durante {@code retryMs}. Si ninguna responde,
+ * {@link #getConnection()} devuelve null y quien llama usa la primaria.
+ *
+ * @author Grupo 49
+ */
+public class ReplicaRouter {
+
+    /**
+     * Cómo se elige la réplica para cada lectura.
+     */
+    public enum Policy {
+        ROUND_ROBIN, LEAST_LOADED;
+
+        /**
+         * @param valor "round-robin" o "least-loaded" (sin distinguir mayúsculas)
+         * @return la política correspondiente
+         */
+        public static Policy desde(String valor) {
+            return Policy.valueOf(valor.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Policy policy;
+    private final long retryMs;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param urls URLs JDBC de las réplicas
+     * @param policy política de selección
+     * @param retryMs tiempo que se saltea una réplica después de un error
+     * @param crearPool crea el pool de cada réplica a partir de su URL
+     */
+    public ReplicaRouter(List<String> urls, Policy policy, long retryMs, Function<String, ConnectionPool> crearPool) {
+        this.policy = policy;
+        this.retryMs = retryMs;
+        for (String url : urls) {
+            replicas.add(new Replica(url, crearPool.apply(url)));
+        }
+    }
+
+    public boolean isEmpty() {
+        return replicas.isEmpty();
+    }
+
+    /**
+     * Presta una conexión de alguna réplica disponible.
+     *
+     * @return la conexión, o null si ninguna réplica está disponible
+     */
+    public Connection getConnection() {
+        int n = replicas.size();
+        if (n == 0) {
+            return null;
+        }
+        long ahora = System.currentTimeMillis();
+        int inicio = policy == Policy.LEAST_LOADED ? menosCargada(ahora) : Math.floorMod(next.getAndIncrement(), n);
+        for (int i = 0; i < n; i++) {
+            Replica replica = replicas.get((inicio + i) % n);
+            if (replica.unavailableUntil > ahora) {
+                continue;
+            }
+            try {
+                Connection conn = replica.pool.getConnection();
+                replica.reads.incrementAndGet();
+                return conn;
+            } catch (ConnectionPool.PoolAgotadoException e) {
+                // Réplica ocupada, no caída: no se la saltea en las próximas lecturas
+                replica.saturations.incrementAndGet();
+            } catch (SQLException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // Se interrumpió la espera: no es un problema de la réplica
+                    return null;
+                }
+                replica.failures.incrementAndGet();
+                replica.unavailableUntil = ahora + retryMs;
+                System.err.println("Réplica no disponible (" + replica.url + "): " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private int menosCargada(long ahora) {
+        int mejor = 0;
+        int menosActivas = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(i);
+            if (replica.unavailableUntil > ahora) {
+                continue;
+            }
+            int activas = replica.pool.getStats().getActive();
+            if (activas < menosActivas) {
+                menosActivas = activas;
+                mejor = i;
+            }
+        }
+        return mejor;
+    }
+
+    /**
+     * Cierra los pools de todas las réplicas.
+     */
+    public void close() {
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    /**
+     * @return una línea por réplica con sus lecturas, errores y estado del pool
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Réplicas (" + policy + "):");
+        long ahora = System.currentTimeMillis();
+        for (Replica replica : replicas) {
+            sb.append(System.lineSeparator()).append("  ").append(replica.url)
+                    .append(" lecturas=").append(replica.reads.get())
+                    .append(" errores=").append(replica.failures.get())
+                    .append(" saturada=").append(replica.saturations.get())
+                    .append(replica.unavailableUntil > ahora ? " (salteada)" : "")
+                    .append(' ').append(replica.pool.getStats());
+        }
+        return sb.toString();
+    }
+
+    public long getReads() {
+        long total = 0;
+        for (Replica replica : replicas) {
+            total += replica.reads.get();
+        }
+        return total;
+    }
+
+    private static final class Replica {
+        private final String url;
+        private final ConnectionPool pool;
+        private final AtomicLong reads = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        // Pedidos que encontraron el pool agotado
+        private final AtomicLong saturations = new AtomicLong();
+        private volatile long unavailableUntil;
+
+        private Replica(String url, ConnectionPool pool) {
+            this.url = url;
+            this.pool = pool;
+        }
+    }
+}
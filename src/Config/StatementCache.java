@@ -0,0 +1,245 @@
+package Config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché LRU de PreparedStatements de una conexión física del pool.
+ *
+ * Los DAOs siguen llamando a {@code conn.prepareStatement(SQL)} y
+ * {@code pstmt.close()} como siempre: el pool intercepta esas llamadas y
+ * entrega el statement ya preparado para ese SQL (sin volver a parsearlo en
+ * el servidor), y su {@code close()} solo lo devuelve a la caché.
+ *
+ * Cada conexión física tiene su propia caché; como una conexión prestada la
+ * usa un solo hilo a la vez, la caché no necesita sincronización. Los
+ * contadores de aciertos / fallos son globales (todas las conexiones).
+ *
+ * @author Grupo 49
+ */
+public final class StatementCache {
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+    private static final AtomicLong EVICTIONS = new AtomicLong();
+
+    private final Connection physical;
+    private final LinkedHashMap<String, CachedStatement> entries;
+
+    StatementCache(Connection physical, int maxSize) {
+        this.physical = physical;
+        // accessOrder = true: el orden de iteración va del menos al más recientemente usado
+        this.entries = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+                EVICTIONS.incrementAndGet();
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Devuelve un PreparedStatement para el SQL dado, reutilizando el de la
+     * caché si está libre.
+     *
+     * @param sql la consulta a preparar
+     * @param autoGeneratedKeys {@code Statement.RETURN_GENERATED_KEYS} / {@code NO_GENERATED_KEYS}
+     * @return un statement cuyo close() lo devuelve a la caché
+     * @throws SQLException si falla la preparación
+     */
+    PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys + "|" + sql;
+        CachedStatement cached = entries.get(key);
+
+        if (cached != null && !cached.inUse && !cached.real.isClosed()) {
+            HITS.incrementAndGet();
+            return cached.checkout();
+        }
+
+        MISSES.incrementAndGet();
+        PreparedStatement real = physical.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null && cached.inUse) {
+            // El mismo SQL ya está abierto en esta conexión (uso anidado):
+            // se entrega un statement común, sin cachear
+            return real;
+        }
+        CachedStatement nuevo = new CachedStatement(real);
+        entries.put(key, nuevo);
+        return nuevo.checkout();
+    }
+
+    /**
+     * Llamado cuando la conexión vuelve al pool: los statements que quedaron
+     * sin cerrar se descartan para que nadie los use fuera de su préstamo.
+     */
+    void releaseLeaked() {
+        Iterator<CachedStatement> it = entries.values().iterator();
+        while (it.hasNext()) {
+            CachedStatement cached = it.next();
+            if (cached.inUse) {
+                cached.evict();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Cierra todos los statements (al cerrar físicamente la conexión).
+     */
+    void clear() {
+        for (CachedStatement cached : entries.values()) {
+            cached.evict();
+        }
+        entries.clear();
+    }
+
+    static Stats getStats() {
+        return new Stats(HITS.get(), MISSES.get(), EVICTIONS.get());
+    }
+
+    /**
+     * Statement físico cacheado y su estado.
+     */
+    private static final class CachedStatement {
+        private final PreparedStatement real;
+        private boolean inUse = false;
+        private boolean evicted = false;
+
+        private CachedStatement(PreparedStatement real) {
+            this.real = real;
+        }
+
+        private PreparedStatement checkout() {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new LogicalStatementHandler(this));
+        }
+
+        /**
+         * Se quita de la caché: si está en uso se cierra cuando lo devuelvan.
+         */
+        private void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly();
+            }
+        }
+
+        private void checkin() {
+            inUse = false;
+            if (evicted) {
+                closeQuietly();
+                return;
+            }
+            try {
+                real.clearParameters();
+                real.clearBatch();
+                real.clearWarnings();
+            } catch (SQLException e) {
+                evicted = true;
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                real.close();
+            } catch (SQLException e) {
+                // La conexión pudo haberse cerrado antes; no hay nada que liberar
+            }
+        }
+    }
+
+    /**
+     * Handle lógico de un préstamo del statement: close() lo devuelve a la caché.
+     */
+    private static final class LogicalStatementHandler implements InvocationHandler {
+        private final CachedStatement cached;
+        private boolean closed = false;
+
+        private LogicalStatementHandler(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        cached.checkin();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || cached.real.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + cached.real + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("El statement ya fue cerrado.");
+            }
+            try {
+                return method.invoke(cached.real, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Instantánea de los contadores globales de la caché de statements.
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        private Stats(long hits, long misses, long evictions) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public double getHitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("StatementCache{aciertos=%d, fallos=%d, desalojos=%d, tasa de aciertos=%.1f%%}",
+                    hits, misses, evictions, getHitRatio() * 100);
+        }
+    }
+}
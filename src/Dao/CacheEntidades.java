@@ -0,0 +1,63 @@
+package Dao;
+
+import Models.HistoriaClinica;
+import Models.Paciente;
+
+/**
+ * Cachés de segundo nivel por ID compartidas por los servicios.
+ *
+ * Son únicas por proceso: los servicios crean sus propios DAOs, pero una
+ * escritura hecha desde {@code PacienteService} tiene que invalidar lo que
+ * leyó {@code HistoriaClinicaService} y al revés.
+ *
+ * Desactivadas por defecto. Se habilitan con la propiedad
+ * {@code clinica.cache.entidades.max} (cantidad máxima de entidades de cada
+ * tipo, por ejemplo {@code -Dclinica.cache.entidades.max=10000}).
+ *
+ * @author Grupo 49
+ */
+public final class CacheEntidades {
+
+    private static final int MAX_ENTRADAS = Integer.getInteger("clinica.cache.entidades.max", 0);
+
+    public static final CachedDao<Paciente> PACIENTES = new CachedDao<>(
+            "paciente", new PacienteDao(), MAX_ENTRADAS, Paciente::getId, CacheEntidades::copiar);
+
+    public static final CachedDao<HistoriaClinica> HISTORIAS = new CachedDao<>(
+            "historia", new HistoriaClinicaDao(), MAX_ENTRADAS, HistoriaClinica::getId, CacheEntidades::copiar);
+
+    private CacheEntidades() {
+    }
+
+    /**
+     * Copia de un paciente leído por {@link PacienteDao#leer(Long)}: sin la
+     * historia, que se cachea aparte.
+     */
+    private static Paciente copiar(Paciente original) {
+        Paciente copia = new Paciente(original.getId(), original.getEliminado(), original.getNombre(),
+                original.getApellido(), original.getDni(), original.getFechaNacimiento(), null);
+        copia.setVersion(original.getVersion());
+        // La copia refleja lo que hay en la base: sin cambios pendientes
+        copia.limpiarCambios();
+        return copia;
+    }
+
+    /**
+     * Copia de una historia: el paciente queda como referencia con solo el ID,
+     * igual que en {@link HistoriaClinicaRowMapper}.
+     */
+    private static HistoriaClinica copiar(HistoriaClinica original) {
+        Paciente paciente = null;
+        if (original.getPaciente() != null) {
+            paciente = new Paciente();
+            paciente.setId(original.getPaciente().getId());
+        }
+        HistoriaClinica copia = new HistoriaClinica(original.getId(), original.getEliminado(),
+                original.getNroHistoria(), original.getGrupoSanguineo(), original.getAntecedentes(),
+                original.getMedicacionActual(), original.getObservaciones(), paciente);
+        copia.setDetalleCargado(original.isDetalleCargado());
+        copia.setVersion(original.getVersion());
+        copia.limpiarCambios();
+        return copia;
+    }
+}
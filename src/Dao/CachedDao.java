@@ -0,0 +1,351 @@
+package Dao;
+
+import Metrics.RegistroMetricas;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Caché de segundo nivel por ID que envuelve a cualquier {@link GenericDao}.
+ *
+ * Las lecturas por ID ({@link #leer(Long)} y {@link #leerPorIds(Collection)})
+ * se sirven desde memoria si la entidad ya se leyó; el resto de las lecturas
+ * (listados, páginas, streams) van siempre al DAO. Lo que falta en la caché
+ * se lee de la base principal y no de una réplica de lectura, para no
+ * guardar una fila atrasada. Las escrituras hechas a
+ * través de esta instancia invalidan la entrada afectada. Las escrituras que
+ * se hacen por otro camino (por ejemplo, una transacción del servicio) deben
+ * llamar a {@link #invalidar(Long)}.
+ *
+ * Tamaño máximo por cantidad de entradas, con desalojo LRU. Para que los
+ * hilos no compitan por un único lock, las entradas se reparten en segmentos
+ * según el ID y cada segmento tiene su propio lock y su propio LRU.
+ *
+ * Se guardan y se devuelven copias (función {@code copiar}), así quien
+ * modifica la entidad recibida no altera lo que quedó en la caché.
+ *
+ * @param <T> El tipo de entidad
+ * @author Grupo 49
+ */
+public final class CachedDao<T> implements GenericDao<T> {
+
+    private static final int SEGMENTOS = 16;
+
+    private final String nombre;
+    private final GenericDao<T> dao;
+    private final Function<T, Long> obtenerId;
+    private final UnaryOperator<T> copiar;
+    private final Segmento<T>[] segmentos;
+    private final boolean habilitada;
+
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder desalojos = new LongAdder();
+    private final LongAdder invalidaciones = new LongAdder();
+
+    /**
+     * @param nombre nombre de la entidad (para las métricas, por ejemplo "paciente")
+     * @param dao DAO que se envuelve
+     * @param maxEntradas cantidad máxima de entidades en memoria (0 desactiva la caché)
+     * @param obtenerId devuelve el ID de una entidad
+     * @param copiar devuelve una copia independiente de una entidad
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public CachedDao(String nombre, GenericDao<T> dao, int maxEntradas, Function<T, Long> obtenerId, UnaryOperator<T> copiar) {
+        this.nombre = nombre;
+        this.dao = dao;
+        this.obtenerId = obtenerId;
+        this.copiar = copiar;
+        this.habilitada = maxEntradas > 0;
+        this.segmentos = new Segmento[SEGMENTOS];
+        int porSegmento = Math.max(1, (maxEntradas + SEGMENTOS - 1) / SEGMENTOS);
+        for (int i = 0; i < SEGMENTOS; i++) {
+            segmentos[i] = new Segmento<>(porSegmento);
+        }
+        RegistroMetricas.getInstance().registrarIndicador("clinica_cache_" + nombre + "_tasa_aciertos",
+                "Tasa de aciertos de la caché de entidades (" + nombre + ").", () -> getEstadisticas().getTasaAciertos());
+    }
+
+    // --- Lecturas por ID: pasan por la caché ---
+
+    @Override
+    public T leer(Long id) throws Exception {
+        if (!habilitada || id == null) {
+            return dao.leer(id);
+        }
+        Segmento<T> segmento = segmento(id);
+        long version;
+        synchronized (segmento) {
+            T cacheada = segmento.entradas.get(id);
+            if (cacheada != null) {
+                aciertos.increment();
+                return copiar.apply(cacheada);
+            }
+            version = segmento.version;
+        }
+        fallos.increment();
+
+        // De la primaria: una réplica atrasada podría devolver la fila de antes
+        // de una escritura que ya invalidó la entrada, y quedaría cacheada
+        T leida = dao.leerDePrimaria(id);
+        if (leida != null) {
+            guardar(segmento, id, leida, version);
+        }
+        return leida;
+    }
+
+    @Override
+    public Map<Long, T> leerPorIds(Collection<Long> ids) throws Exception {
+        if (!habilitada) {
+            return dao.leerPorIds(ids);
+        }
+        Map<Long, T> resultado = new HashMap<>();
+        List<Long> faltantes = new ArrayList<>();
+        Map<Long, Long> versiones = new HashMap<>();
+        for (Long id : ids) {
+            if (id == null || resultado.containsKey(id) || versiones.containsKey(id)) {
+                continue;
+            }
+            Segmento<T> segmento = segmento(id);
+            synchronized (segmento) {
+                T cacheada = segmento.entradas.get(id);
+                if (cacheada != null) {
+                    aciertos.increment();
+                    resultado.put(id, copiar.apply(cacheada));
+                    continue;
+                }
+                versiones.put(id, segmento.version);
+            }
+            fallos.increment();
+            faltantes.add(id);
+        }
+
+        if (!faltantes.isEmpty()) {
+            for (Map.Entry<Long, T> entrada : dao.leerPorIdsDePrimaria(faltantes).entrySet()) {
+                Long id = entrada.getKey();
+                guardar(segmento(id), id, entrada.getValue(), versiones.get(id));
+                resultado.put(id, entrada.getValue());
+            }
+        }
+        return resultado;
+    }
+
+    // --- Lecturas de la primaria y de varias filas: siempre van al DAO ---
+
+    @Override
+    public T leerDePrimaria(Long id) throws Exception {
+        return dao.leerDePrimaria(id);
+    }
+
+    @Override
+    public Map<Long, T> leerPorIdsDePrimaria(Collection<Long> ids) throws Exception {
+        return dao.leerPorIdsDePrimaria(ids);
+    }
+
+    @Override
+    public List<T> leerTodos() throws Exception {
+        return dao.leerTodos();
+    }
+
+    @Override
+    public Stream<T> leerTodosStream() throws Exception {
+        return dao.leerTodosStream();
+    }
+
+    @Override
+    public List<T> leerPagina(Long despuesDeId, int limite) throws Exception {
+        return dao.leerPagina(despuesDeId, limite);
+    }
+
+    // --- Escrituras: se delegan e invalidan la entrada ---
+
+    // Las altas no tocan la caché: el ID es nuevo y la transacción todavía puede revertirse
+
+    @Override
+    public T crear(T entity) throws Exception {
+        return dao.crear(entity);
+    }
+
+    @Override
+    public T crear(T entity, Connection conn) throws Exception {
+        return dao.crear(entity, conn);
+    }
+
+    @Override
+    public List<T> crearLote(List<T> entities, Connection conn) throws Exception {
+        return dao.crearLote(entities, conn);
+    }
+
+    @Override
+    public List<T> crearLote(List<T> entities, int tamanioLote, Connection conn) throws Exception {
+        return dao.crearLote(entities, tamanioLote, conn);
+    }
+
+    @Override
+    public void actualizar(T entity) throws Exception {
+        try {
+            dao.actualizar(entity);
+        } finally {
+            invalidar(obtenerId.apply(entity));
+        }
+    }
+
+    @Override
+    public void eliminar(Long id) throws Exception {
+        try {
+            dao.eliminar(id);
+        } finally {
+            invalidar(id);
+        }
+    }
+
+    // --- Administración ---
+
+    /**
+     * Quita la entidad de la caché. Llamar después de modificarla por fuera
+     * de este DAO (también si la escritura falló: el estado es incierto).
+     *
+     * @param id ID de la entidad modificada
+     */
+    public void invalidar(Long id) {
+        if (!habilitada || id == null) {
+            return;
+        }
+        Segmento<T> segmento = segmento(id);
+        synchronized (segmento) {
+            // Una lectura en curso que empezó antes no debe guardar su valor viejo
+            segmento.version++;
+            if (segmento.entradas.remove(id) != null) {
+                invalidaciones.increment();
+            }
+        }
+    }
+
+    /**
+     * Vacía la caché.
+     */
+    public void limpiar() {
+        for (Segmento<T> segmento : segmentos) {
+            synchronized (segmento) {
+                segmento.version++;
+                invalidaciones.add(segmento.entradas.size());
+                segmento.entradas.clear();
+            }
+        }
+    }
+
+    public Estadisticas getEstadisticas() {
+        int entradas = 0;
+        for (Segmento<T> segmento : segmentos) {
+            synchronized (segmento) {
+                entradas += segmento.entradas.size();
+            }
+        }
+        return new Estadisticas(nombre, entradas, aciertos.sum(), fallos.sum(), desalojos.sum(), invalidaciones.sum());
+    }
+
+    private Segmento<T> segmento(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return segmentos[(int) (h >>> 60) & (SEGMENTOS - 1)];
+    }
+
+    /**
+     * Guarda una copia de lo leído, salvo que la entrada se haya invalidado
+     * mientras se leía de la base
+     */
+    private void guardar(Segmento<T> segmento, Long id, T entidad, long versionLeida) {
+        T copia = copiar.apply(entidad);
+        synchronized (segmento) {
+            if (segmento.version != versionLeida) {
+                return;
+            }
+            segmento.entradas.put(id, copia);
+            if (segmento.entradas.size() > segmento.maxEntradas) {
+                // El primero en el orden de acceso es el menos usado
+                Long masAntiguo = segmento.entradas.keySet().iterator().next();
+                segmento.entradas.remove(masAntiguo);
+                desalojos.increment();
+            }
+        }
+    }
+
+    /**
+     * Un segmento: LRU propio protegido por su monitor
+     */
+    private static final class Segmento<T> {
+        private final int maxEntradas;
+        // accessOrder = true: el orden de iteración va del menos al más recientemente usado
+        private final LinkedHashMap<Long, T> entradas = new LinkedHashMap<>(16, 0.75f, true);
+        // Cambia con cada invalidación del segmento
+        private long version;
+
+        private Segmento(int maxEntradas) {
+            this.maxEntradas = maxEntradas;
+        }
+    }
+
+    /**
+     * Instantánea de las métricas de la caché.
+     */
+    public static final class Estadisticas {
+        private final String nombre;
+        private final int entradas;
+        private final long aciertos;
+        private final long fallos;
+        private final long desalojos;
+        private final long invalidaciones;
+
+        private Estadisticas(String nombre, int entradas, long aciertos, long fallos, long desalojos, long invalidaciones) {
+            this.nombre = nombre;
+            this.entradas = entradas;
+            this.aciertos = aciertos;
+            this.fallos = fallos;
+            this.desalojos = desalojos;
+            this.invalidaciones = invalidaciones;
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+
+        public int getEntradas() {
+            return entradas;
+        }
+
+        public long getAciertos() {
+            return aciertos;
+        }
+
+        public long getFallos() {
+            return fallos;
+        }
+
+        public long getDesalojos() {
+            return desalojos;
+        }
+
+        public long getInvalidaciones() {
+            return invalidaciones;
+        }
+
+        public double getTasaAciertos() {
+            long total = aciertos + fallos;
+            return total == 0 ? 0 : (double) aciertos / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("CacheEntidades[%s]{entradas=%d, aciertos=%d, fallos=%d, tasa de aciertos=%.1f%%, "
+                    + "desalojos=%d, invalidaciones=%d}",
+                    nombre, entradas, aciertos, fallos, getTasaAciertos() * 100, desalojos, invalidaciones);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package Dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Un UPDATE condicionado por versión no encontró la fila en la versión
+ * esperada: otra transacción la modificó después de que se leyó.
+ *
+ * Quien la recibe tiene que volver a leer la entidad (con la versión nueva)
+ * y reintentar; ver {@code PacienteService.actualizarFusionando}.
+ *
+ * @author Grupo 49
+ */
+public class ConflictoVersionException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String tabla;
+    private final long id;
+    private final long versionEsperada;
+    private final long versionActual;
+
+    public ConflictoVersionException(String tabla, long id, long versionEsperada, long versionActual) {
+        super("La fila " + id + " de " + tabla + " fue modificada por otra transacción (versión esperada "
+                + versionEsperada + ", actual " + versionActual + ").");
+        this.tabla = tabla;
+        this.id = id;
+        this.versionEsperada = versionEsperada;
+        this.versionActual = versionActual;
+    }
+
+    public String getTabla() {
+        return tabla;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getVersionEsperada() {
+        return versionEsperada;
+    }
+
+    public long getVersionActual() {
+        return versionActual;
+    }
+
+    /**
+     * Explica por qué un UPDATE condicionado por versión no modificó ninguna
+     * fila: la fila no existe o tiene otra versión. Se consulta con la misma
+     * conexión, así se ve el estado dentro de la transacción.
+     *
+     * @param conn La conexión del UPDATE
+     * @param tabla La tabla actualizada
+     * @param id El ID de la fila
+     * @param versionEsperada La versión con la que se leyó la entidad
+     * @return la excepción a lanzar
+     * @throws SQLException Si falla la consulta
+     */
+    static Exception sinFilaActualizada(Connection conn, String tabla, long id, long versionEsperada)
+            throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT version FROM " + tabla + " WHERE id = ?")) {
+            pstmt.setLong(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return new Exception("Error al actualizar " + tabla + ", no se encontró el registro.");
+                }
+                return new ConflictoVersionException(tabla, id, versionEsperada, rs.getLong(1));
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package Dao;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Utilidades para consultas con listas {@code IN (?, ?, ...)}.
+ * 
+ * Los IDs (o DNIs) se dividen en bloques de hasta {@link GenericDao#TAMANIO_LISTA_IN}
+ * elementos. La cantidad de parámetros de cada bloque se redondea a la
+ * siguiente potencia de 2 (repitiendo el último ID), sin pasar de
+ * TAMANIO_LISTA_IN, así solo existen unas pocas variantes del SQL y la caché
+ * de statements las reutiliza.
+ * 
+ * @author Grupo 49
+ */
+final class ConsultaIn {
+    
+    private ConsultaIn() {
+    }
+    
+    /**
+     * Divide los valores (sin nulos ni repetidos) en bloques del tamaño máximo dado
+     */
+    static <T> List<List<T>> dividir(Collection<T> ids, int tamanioBloque) {
+        List<T> unicos = new ArrayList<>(new LinkedHashSet<>(ids));
+        unicos.removeIf(id -> id == null);
+        
+        List<List<T>> bloques = new ArrayList<>();
+        for (int desde = 0; desde < unicos.size(); desde += tamanioBloque) {
+            bloques.add(unicos.subList(desde, Math.min(desde + tamanioBloque, unicos.size())));
+        }
+        return bloques;
+    }
+    
+    /**
+     * @return la cantidad de parámetros a usar para un bloque de n IDs: la
+     *         siguiente potencia de 2, o TAMANIO_LISTA_IN si la supera (con el
+     *         valor por defecto, un bloque completo de 500 IDs usa 500 y no 512)
+     */
+    static int parametrosPara(int n) {
+        int parametros = Integer.highestOneBit(n);
+        if (parametros == n) {
+            return n;
+        }
+        return Math.max(n, Math.min(parametros << 1, GenericDao.TAMANIO_LISTA_IN));
+    }
+    
+    /**
+     * @return "?, ?, ..., ?" con la cantidad indicada de parámetros
+     */
+    static String marcadores(int cantidad) {
+        StringBuilder sb = new StringBuilder(cantidad * 3);
+        for (int i = 0; i < cantidad; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('?');
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Carga los IDs del bloque a partir del parámetro 1, completando con el
+     * último ID hasta llegar a la cantidad de parámetros del SQL
+     */
+    static void cargarParametros(PreparedStatement pstmt, List<Long> bloque, int parametros) throws SQLException {
+        for (int i = 0; i < parametros; i++) {
+            pstmt.setLong(i + 1, bloque.get(Math.min(i, bloque.size() - 1)));
+        }
+    }
+    
+    /**
+     * Igual que {@link #cargarParametros}, para un bloque de textos
+     */
+    static void cargarTextos(PreparedStatement pstmt, List<String> bloque, int parametros) throws SQLException {
+        for (int i = 0; i < parametros; i++) {
+            pstmt.setString(i + 1, bloque.get(Math.min(i, bloque.size() - 1)));
+        }
+    }
+}
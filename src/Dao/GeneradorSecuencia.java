@@ -0,0 +1,93 @@
+package Dao;
+
+import Metrics.RegistroMetricas;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Entrega valores de una secuencia reservándolos en bloques.
+ *
+ * Cada {@link #siguiente()} toma un valor del bloque actual con un
+ * incremento atómico, sin locks ni consultas. Solo cuando el bloque se
+ * agota se reserva el siguiente en la tabla secuencia (ver
+ * {@link SecuenciaDao}): una consulta cada {@code tamanioBloque} valores, y
+ * un único hilo la hace mientras los demás esperan ese bloque.
+ *
+ * Los valores son únicos entre procesos (cada uno reserva rangos
+ * distintos), pero no consecutivos: un proceso que termina pierde lo que
+ * quedaba de su bloque.
+ *
+ * @author Grupo 49
+ */
+public class GeneradorSecuencia {
+
+    private final String nombre;
+    private final int tamanioBloque;
+    private final String consultaInicial;
+    private final SecuenciaDao dao = new SecuenciaDao();
+
+    // Bloque vacío hasta la primera reserva
+    private final AtomicReference<Bloque> actual = new AtomicReference<>(new Bloque(0, 0));
+    private final Object lockReserva = new Object();
+
+    private final AtomicLong reservas = new AtomicLong();
+
+    /**
+     * @param nombre Nombre de la secuencia en la tabla (y en las métricas)
+     * @param tamanioBloque Cantidad de valores que se reservan por consulta
+     * @param consultaInicial Consulta con el primer valor si la secuencia no
+     *        existe todavía (ver {@link SecuenciaDao#reservar})
+     */
+    public GeneradorSecuencia(String nombre, int tamanioBloque, String consultaInicial) {
+        this.nombre = nombre;
+        this.tamanioBloque = Math.max(1, tamanioBloque);
+        this.consultaInicial = consultaInicial;
+
+        RegistroMetricas.getInstance().registrarIndicador("clinica_secuencia_" + nombre + "_reservas",
+                "Bloques reservados de la secuencia " + nombre + ".", reservas::get);
+    }
+
+    /**
+     * @return el próximo valor de la secuencia
+     * @throws Exception Si hace falta reservar un bloque y la reserva falla
+     */
+    public long siguiente() throws Exception {
+        while (true) {
+            Bloque bloque = actual.get();
+            long valor = bloque.siguiente.getAndIncrement();
+            if (valor < bloque.fin) {
+                return valor;
+            }
+            reservarSiAgotado(bloque);
+        }
+    }
+
+    /**
+     * Reserva un bloque nuevo si {@code agotado} sigue siendo el actual (si
+     * otro hilo ya lo reemplazó, no hace nada)
+     */
+    private void reservarSiAgotado(Bloque agotado) throws Exception {
+        synchronized (lockReserva) {
+            if (actual.get() != agotado) {
+                return;
+            }
+            long inicio = dao.reservar(nombre, tamanioBloque, consultaInicial);
+            actual.set(new Bloque(inicio, inicio + tamanioBloque));
+            reservas.incrementAndGet();
+        }
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    private static final class Bloque {
+        private final AtomicLong siguiente;
+        private final long fin;
+
+        private Bloque(long inicio, long fin) {
+            this.siguiente = new AtomicLong(inicio);
+            this.fin = fin;
+        }
+    }
+}
@@ -5,7 +5,10 @@
 package Dao;
 
 import java.sql.Connection;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Interfaz genérica para operaciones CRUD (Create, Read, Update, Delete)
@@ -16,6 +19,23 @@ import java.util.List;
  */
 public interface GenericDao<T> {
     
+    /**
+     * Cantidad de filas por lote por defecto para las inserciones masivas
+     * Se puede ajustar con la propiedad del sistema "clinica.batch.size"
+     */
+    int TAMANIO_LOTE = Integer.getInteger("clinica.batch.size", 500);
+    
+    /**
+     * Cantidad de filas que se traen por viaje al servidor en las lecturas en streaming
+     * Se puede ajustar con la propiedad del sistema "clinica.fetch.size"
+     */
+    int TAMANIO_FETCH = Integer.getInteger("clinica.fetch.size", 1000);
+    
+    /**
+     * Cantidad máxima de IDs por consulta en las lecturas "WHERE id IN (...)"
+     */
+    int TAMANIO_LISTA_IN = Integer.getInteger("clinica.in.size", 500);
+    
     /**
      * Crea una nueva entidad en la base de datos
      * Método sin conexión compartida (crea su propia conexión)
@@ -37,6 +57,29 @@ public interface GenericDao<T> {
      */
     T crear(T entity, Connection conn) throws Exception;
     
+    /**
+     * Crea varias entidades usando lotes JDBC (addBatch / executeBatch)
+     * sobre una conexión compartida, con el tamaño de lote por defecto
+     * El manejo de la transacción queda a cargo de quien llama
+     * 
+     * @param entities Las entidades a crear (se les asigna el ID generado)
+     * @param conn La conexión compartida para transacciones
+     * @return Las mismas entidades, con sus IDs generados
+     * @throws Exception Si ocurre un error durante la creación
+     */
+    List<T> crearLote(List<T> entities, Connection conn) throws Exception;
+    
+    /**
+     * Crea varias entidades usando lotes JDBC de hasta {@code tamanioLote} filas
+     * 
+     * @param entities Las entidades a crear (se les asigna el ID generado)
+     * @param tamanioLote Cantidad máxima de filas enviadas en cada executeBatch
+     * @param conn La conexión compartida para transacciones
+     * @return Las mismas entidades, con sus IDs generados
+     * @throws Exception Si ocurre un error durante la creación
+     */
+    List<T> crearLote(List<T> entities, int tamanioLote, Connection conn) throws Exception;
+    
     /**
      * Lee una entidad de la base de datos por su ID
      * 
@@ -46,6 +89,38 @@ public interface GenericDao<T> {
      */
     T leer(Long id) throws Exception;
     
+    /**
+     * Igual que leer(id), pero siempre de la base principal (la del shard de
+     * la entidad), nunca de una réplica de lectura
+     * Para releer una fila que otro hilo o proceso acaba de modificar
+     * 
+     * @param id El ID de la entidad a buscar
+     * @return La entidad encontrada, o null si no existe
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    T leerDePrimaria(Long id) throws Exception;
+    
+    /**
+     * Lee varias entidades por sus IDs con pocas consultas "WHERE id IN (...)"
+     * (los IDs se agrupan en bloques de hasta TAMANIO_LISTA_IN)
+     * Los IDs que no existen simplemente no aparecen en el resultado
+     * 
+     * @param ids Los IDs a buscar (se ignoran nulos y repetidos)
+     * @return Mapa ID -> entidad encontrada
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    Map<Long, T> leerPorIds(Collection<Long> ids) throws Exception;
+    
+    /**
+     * Igual que leerPorIds(ids), pero siempre de la base principal, nunca de
+     * una réplica de lectura
+     * 
+     * @param ids Los IDs a buscar (se ignoran nulos y repetidos)
+     * @return Mapa ID -> entidad encontrada
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    Map<Long, T> leerPorIdsDePrimaria(Collection<Long> ids) throws Exception;
+    
     /**
      * Lee todas las entidades de la base de datos
      * IMPORTANTE: Solo retorna entidades con eliminado = false (borrado lógico)
@@ -55,6 +130,30 @@ public interface GenericDao<T> {
      */
     List<T> leerTodos() throws Exception;
     
+    /**
+     * Lee todas las entidades no eliminadas como un Stream, ordenadas por ID
+     * Las filas se traen del servidor a medida que se consumen (cursor),
+     * sin cargar la tabla completa en memoria
+     * IMPORTANTE: el Stream retiene una conexión; cerrarlo con try-with-resources
+     * 
+     * @return Stream de entidades no eliminadas
+     * @throws Exception Si ocurre un error al abrir el cursor
+     */
+    Stream<T> leerTodosStream() throws Exception;
+    
+    /**
+     * Lee una página de entidades no eliminadas usando paginación por clave
+     * (keyset): devuelve las primeras {@code limite} entidades con ID mayor a
+     * {@code despuesDeId}, ordenadas por ID. Para la primera página usar null
+     * y para las siguientes el ID de la última entidad recibida
+     * 
+     * @param despuesDeId El último ID de la página anterior (null para empezar)
+     * @param limite Cantidad máxima de entidades a devolver
+     * @return La página de entidades (vacía cuando no hay más)
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    List<T> leerPagina(Long despuesDeId, int limite) throws Exception;
+    
     /**
      * Actualiza una entidad existente en la base de datos
      * 
@@ -5,14 +5,21 @@
 package Dao;
 
 import Config.DatabaseConnection;
+import Metrics.Metricas;
 import Models.HistoriaClinica;
-import Models.HistoriaClinica.GrupoSanguineo;
+import Models.HistoriaClinicaResumen;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * DAO (Data Access Object) para la entidad HistoriaClinica
@@ -27,25 +34,64 @@ public class HistoriaClinicaDao implements GenericDao<HistoriaClinica> {
         "INSERT INTO historia_clinica (nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, eliminado) " +
         "VALUES (?, ?, ?, ?, ?, ?, ?)";
     
+    // Con IDs asignados por la aplicación (ver Secuencias): el ID va al final
+    private static final String INSERT_CON_ID_SQL = 
+        "INSERT INTO historia_clinica (nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, eliminado, id) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    
     private static final String SELECT_BY_ID_SQL = 
-        "SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, eliminado " +
+        "SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, eliminado, version " +
         "FROM historia_clinica WHERE id = ?";
     
     private static final String SELECT_ALL_SQL = 
-        "SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, eliminado " +
+        "SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, eliminado, version " +
         "FROM historia_clinica WHERE eliminado = false";
     
+    // Concurrencia optimista: los UPDATE solo afectan la fila si sigue en la
+    // versión con la que se leyó, y la incrementan
     private static final String UPDATE_SQL = 
         "UPDATE historia_clinica SET nro_historia = ?, grupo_sanguineo = ?, antecedentes = ?, " +
-        "medicacion_actual = ?, observaciones = ?, paciente_id = ?, eliminado = ? WHERE id = ?";
+        "medicacion_actual = ?, observaciones = ?, paciente_id = ?, eliminado = ?, version = version + 1 " +
+        "WHERE id = ? AND version = ?";
     
     private static final String DELETE_LOGICAL_SQL = 
-        "UPDATE historia_clinica SET eliminado = true WHERE id = ?";
+        "UPDATE historia_clinica SET eliminado = true, version = version + 1 WHERE id = ?";
     
     private static final String SELECT_BY_PACIENTE_ID_SQL = 
-        "SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, eliminado " +
+        "SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, eliminado, version " +
         "FROM historia_clinica WHERE paciente_id = ? AND eliminado = false";
     
+    // Lecturas en streaming y paginación por clave (keyset), ordenadas por PK
+    private static final String SELECT_ALL_ORDERED_SQL = 
+        SELECT_ALL_SQL + " ORDER BY id";
+    
+    private static final String SELECT_PAGE_SQL = 
+        "SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, eliminado, version " +
+        "FROM historia_clinica WHERE eliminado = false AND id > ? ORDER BY id LIMIT ?";
+    
+    // Lecturas por lista de IDs: se completan con "(?, ?, ...)" según el tamaño del bloque
+    private static final String SELECT_BY_IDS_SQL = 
+        "SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, eliminado, version " +
+        "FROM historia_clinica WHERE id IN (";
+    
+    private static final String SELECT_BY_PACIENTE_IDS_SQL = 
+        "SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, eliminado, version " +
+        "FROM historia_clinica WHERE eliminado = false AND paciente_id IN (";
+    
+    // Resumen para listados: sin las columnas TEXT (antecedentes, medicación, observaciones)
+    private static final String SELECT_RESUMEN_SQL = 
+        "SELECT id, nro_historia, grupo_sanguineo, paciente_id FROM historia_clinica WHERE eliminado = false";
+    
+    private static final String SELECT_RESUMEN_ORDERED_SQL = 
+        SELECT_RESUMEN_SQL + " ORDER BY id";
+    
+    private static final String SELECT_RESUMEN_PAGE_SQL = 
+        SELECT_RESUMEN_SQL + " AND id > ? ORDER BY id LIMIT ?";
+    
+    // Columnas TEXT de una historia, para completar un resumen al abrirla
+    private static final String SELECT_DETALLE_SQL = 
+        "SELECT antecedentes, medicacion_actual, observaciones FROM historia_clinica WHERE id = ?";
+    
     /**
      * Crea una nueva historia clínica en la base de datos (sin conexión compartida)
      * 
@@ -55,7 +101,13 @@ public class HistoriaClinicaDao implements GenericDao<HistoriaClinica> {
      */
     @Override
     public HistoriaClinica crear(HistoriaClinica entity) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection()) {
+        // La historia va en el shard de su paciente (ver Shards)
+        Long pacienteId = entity.getPaciente() != null ? entity.getPaciente().getId() : null;
+        if (Secuencias.IDS && entity.getId() == null && pacienteId != null) {
+            entity.setId(Secuencias.siguienteIdHistoria(pacienteId));
+        }
+        int shard = pacienteId != null ? Shards.deId(pacienteId) : 0;
+        try (Connection conn = DatabaseConnection.getConnection(shard)) {
             return crear(entity, conn);
         }
     }
@@ -70,56 +122,175 @@ public class HistoriaClinicaDao implements GenericDao<HistoriaClinica> {
      */
     @Override
     public HistoriaClinica crear(HistoriaClinica entity, Connection conn) throws Exception {
-        PreparedStatement pstmt = null;
-        ResultSet rs = null;
+        return Metricas.medir("HistoriaClinicaDao.crear", () -> {
+            PreparedStatement pstmt = null;
+            ResultSet rs = null;
         
-        try {
-            pstmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
-            
-            pstmt.setString(1, entity.getNroHistoria());
-            
-            // Convertir el ENUM a String para MySQL
-            if (entity.getGrupoSanguineo() != null) {
-                pstmt.setString(2, entity.getGrupoSanguineo().name());
-            } else {
-                throw new Exception("El grupo sanguíneo es obligatorio.");
+            try {
+                boolean conId = Secuencias.IDS;
+                if (conId) {
+                    if (entity.getId() == null) {
+                        entity.setId(Secuencias.siguienteIdHistoria(pacienteIdObligatorio(entity)));
+                    }
+                    pstmt = conn.prepareStatement(INSERT_CON_ID_SQL);
+                } else {
+                    pstmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+                }
+                setInsertParameters(pstmt, entity);
+                if (conId) {
+                    pstmt.setLong(8, entity.getId());
+                }
+            
+                int affectedRows = pstmt.executeUpdate();
+            
+                if (affectedRows == 0) {
+                    throw new Exception("Error al crear la historia clínica, no se insertó ningún registro.");
+                }
+                if (conId) {
+                    entity.limpiarCambios();
+                    return entity;
+                }
+            
+                // Obtener el ID generado
+                rs = pstmt.getGeneratedKeys();
+                if (rs.next()) {
+                    entity.setId(rs.getLong(1));
+                    entity.limpiarCambios();
+                } else {
+                    throw new Exception("Error al crear la historia clínica, no se obtuvo el ID.");
+                }
+            
+                return entity;
+            
+            } finally {
+                if (rs != null) rs.close();
+                if (pstmt != null) pstmt.close();
             }
-            
-            pstmt.setString(3, entity.getAntecedentes());
-            pstmt.setString(4, entity.getMedicacionActual());
-            pstmt.setString(5, entity.getObservaciones());
-            
-            // paciente_id es obligatorio
-            if (entity.getPaciente() != null && entity.getPaciente().getId() != null) {
-                pstmt.setLong(6, entity.getPaciente().getId());
-            } else {
-                throw new Exception("El ID del paciente es obligatorio para crear una historia clínica.");
+        });
+    }
+    
+    /**
+     * Crea varias historias clínicas con el tamaño de lote por defecto
+     * 
+     * @param entities Las historias clínicas a crear
+     * @param conn La conexión compartida
+     * @return Las historias clínicas creadas con sus IDs generados
+     * @throws Exception Si ocurre un error durante la creación
+     */
+    @Override
+    public List<HistoriaClinica> crearLote(List<HistoriaClinica> entities, Connection conn) throws Exception {
+        return crearLote(entities, TAMANIO_LOTE, conn);
+    }
+    
+    /**
+     * Crea varias historias clínicas usando lotes JDBC sobre una conexión compartida
+     * Con rewriteBatchedStatements cada lote viaja como un único INSERT multi-fila
+     * 
+     * @param entities Las historias clínicas a crear (con paciente ya persistido)
+     * @param tamanioLote Cantidad máxima de filas por executeBatch
+     * @param conn La conexión compartida
+     * @return Las historias clínicas creadas con sus IDs generados (en el mismo orden)
+     * @throws Exception Si ocurre un error durante la creación
+     */
+    @Override
+    public List<HistoriaClinica> crearLote(List<HistoriaClinica> entities, int tamanioLote, Connection conn) throws Exception {
+        return Metricas.medir("HistoriaClinicaDao.crearLote", () -> {
+            if (tamanioLote <= 0) {
+                throw new IllegalArgumentException("El tamaño de lote debe ser mayor a cero.");
             }
-            
-            pstmt.setBoolean(7, Boolean.TRUE.equals(entity.getEliminado()));
-            
-            int affectedRows = pstmt.executeUpdate();
-            
-            if (affectedRows == 0) {
-                throw new Exception("Error al crear la historia clínica, no se insertó ningún registro.");
+            PreparedStatement pstmt = null;
+        
+            try {
+                boolean conId = Secuencias.IDS;
+                pstmt = conId ? conn.prepareStatement(INSERT_CON_ID_SQL)
+                        : conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+            
+                int inicioLote = 0;
+                for (int i = 0; i < entities.size(); i++) {
+                    setInsertParameters(pstmt, entities.get(i));
+                    if (conId) {
+                        if (entities.get(i).getId() == null) {
+                            entities.get(i).setId(Secuencias.siguienteIdHistoria(pacienteIdObligatorio(entities.get(i))));
+                        }
+                        pstmt.setLong(8, entities.get(i).getId());
+                    }
+                    pstmt.addBatch();
+                
+                    if (i + 1 - inicioLote == tamanioLote || i == entities.size() - 1) {
+                        ejecutarLote(pstmt, entities.subList(inicioLote, i + 1), conId);
+                        inicioLote = i + 1;
+                    }
+                }
+            
+                return entities;
+            
+            } finally {
+                if (pstmt != null) pstmt.close();
             }
-            
-            // Obtener el ID generado
-            rs = pstmt.getGeneratedKeys();
-            if (rs.next()) {
-                entity.setId(rs.getLong(1));
-            } else {
-                throw new Exception("Error al crear la historia clínica, no se obtuvo el ID.");
+        });
+    }
+    
+    /**
+     * Ejecuta el lote acumulado y asigna los IDs generados a cada historia,
+     * en el mismo orden en que se agregaron al lote (si no venían asignados)
+     */
+    private void ejecutarLote(PreparedStatement pstmt, List<HistoriaClinica> lote, boolean idsAsignados) throws Exception {
+        int[] resultados = pstmt.executeBatch();
+        for (int resultado : resultados) {
+            if (resultado == Statement.EXECUTE_FAILED) {
+                throw new Exception("Error al crear el lote de historias clínicas, una fila no se insertó.");
+            }
+        }
+        if (idsAsignados) {
+            for (HistoriaClinica entity : lote) {
+                entity.limpiarCambios();
+            }
+            return;
+        }
+        
+        try (ResultSet rs = pstmt.getGeneratedKeys()) {
+            int i = 0;
+            while (i < lote.size() && rs.next()) {
+                lote.get(i).setId(rs.getLong(1));
+                lote.get(i++).limpiarCambios();
+            }
+            if (i < lote.size()) {
+                throw new Exception("Error al crear el lote de historias clínicas, no se obtuvieron todos los IDs.");
             }
-            
-            return entity;
-            
-        } finally {
-            if (rs != null) rs.close();
-            if (pstmt != null) pstmt.close();
         }
     }
     
+    /**
+     * Carga los parámetros del INSERT_SQL a partir de la historia clínica
+     */
+    private void setInsertParameters(PreparedStatement pstmt, HistoriaClinica entity) throws Exception {
+        pstmt.setString(1, entity.getNroHistoria());
+        
+        // Convertir el ENUM a String para MySQL
+        if (entity.getGrupoSanguineo() != null) {
+            pstmt.setString(2, entity.getGrupoSanguineo().name());
+        } else {
+            throw new Exception("El grupo sanguíneo es obligatorio.");
+        }
+        
+        pstmt.setString(3, entity.getAntecedentes());
+        pstmt.setString(4, entity.getMedicacionActual());
+        pstmt.setString(5, entity.getObservaciones());
+        
+        pstmt.setLong(6, pacienteIdObligatorio(entity));
+        pstmt.setBoolean(7, Boolean.TRUE.equals(entity.getEliminado()));
+    }
+    
+    /**
+     * paciente_id es obligatorio
+     */
+    private static long pacienteIdObligatorio(HistoriaClinica entity) throws Exception {
+        if (entity.getPaciente() != null && entity.getPaciente().getId() != null) {
+            return entity.getPaciente().getId();
+        }
+        throw new Exception("El ID del paciente es obligatorio para crear una historia clínica.");
+    }
+    
     /**
      * Lee una historia clínica por su ID
      * 
@@ -129,23 +300,39 @@ public class HistoriaClinicaDao implements GenericDao<HistoriaClinica> {
      */
     @Override
     public HistoriaClinica leer(Long id) throws Exception {
+        return Metricas.medir("HistoriaClinicaDao.leer", () -> leer(id, false));
+    }
+    
+    /**
+     * Lee una historia clínica por su ID de la base principal, nunca de una réplica
+     * 
+     * @param id El ID de la historia clínica a buscar
+     * @return La historia clínica encontrada, o null si no existe
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    @Override
+    public HistoriaClinica leerDePrimaria(Long id) throws Exception {
+        return Metricas.medir("HistoriaClinicaDao.leerDePrimaria", () -> leer(id, true));
+    }
+    
+    private HistoriaClinica leer(Long id, boolean dePrimaria) throws Exception {
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
-            conn = DatabaseConnection.getConnection();
+            conn = conexionLectura(Shards.deId(id), dePrimaria);
             pstmt = conn.prepareStatement(SELECT_BY_ID_SQL);
             pstmt.setLong(1, id);
-            
+        
             rs = pstmt.executeQuery();
-            
+        
             if (rs.next()) {
-                return mapResultSetToHistoriaClinica(rs);
+                return new HistoriaClinicaRowMapper().mapRow(rs);
             }
-            
+        
             return null;
-            
+        
         } finally {
             if (rs != null) rs.close();
             if (pstmt != null) pstmt.close();
@@ -153,6 +340,38 @@ public class HistoriaClinicaDao implements GenericDao<HistoriaClinica> {
         }
     }
     
+    /**
+     * Lee varias historias clínicas por sus IDs usando consultas "WHERE id IN (...)"
+     * 
+     * @param ids Los IDs de las historias clínicas a buscar
+     * @return Mapa ID -> historia clínica (los IDs inexistentes no aparecen)
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    @Override
+    public Map<Long, HistoriaClinica> leerPorIds(Collection<Long> ids) throws Exception {
+        return Metricas.medir("HistoriaClinicaDao.leerPorIds", () -> leerPorIds(ids, false));
+    }
+    
+    /**
+     * Igual que leerPorIds(ids), pero de la base principal, nunca de una réplica
+     * 
+     * @param ids Los IDs de las historias clínicas a buscar
+     * @return Mapa ID -> historia clínica (los IDs inexistentes no aparecen)
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    @Override
+    public Map<Long, HistoriaClinica> leerPorIdsDePrimaria(Collection<Long> ids) throws Exception {
+        return Metricas.medir("HistoriaClinicaDao.leerPorIdsDePrimaria", () -> leerPorIds(ids, true));
+    }
+    
+    private Map<Long, HistoriaClinica> leerPorIds(Collection<Long> ids, boolean dePrimaria) throws Exception {
+        Map<Long, HistoriaClinica> historias = new HashMap<>();
+        for (HistoriaClinica hc : leerPorListaIn(SELECT_BY_IDS_SQL, ids, dePrimaria)) {
+            historias.put(hc.getId(), hc);
+        }
+        return historias;
+    }
+    
     /**
      * Lee todas las historias clínicas NO eliminadas
      * 
@@ -161,18 +380,31 @@ public class HistoriaClinicaDao implements GenericDao<HistoriaClinica> {
      */
     @Override
     public List<HistoriaClinica> leerTodos() throws Exception {
+        return Metricas.medir("HistoriaClinicaDao.leerTodos", () -> {
+            if (Shards.cantidad() == 1) {
+                return leerTodos(0, SELECT_ALL_SQL);
+            }
+            // Con varios shards, ordenadas por ID como el resto de las lecturas distribuidas
+            return Shards.fusionar(Shards.enTodos(shard -> leerTodos(shard, SELECT_ALL_ORDERED_SQL)),
+                    HistoriaClinica::getId, Integer.MAX_VALUE);
+        });
+    }
+    
+    private List<HistoriaClinica> leerTodos(int shard, String sql) throws Exception {
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         List<HistoriaClinica> historiasClinicas = new ArrayList<>();
         
         try {
-            conn = DatabaseConnection.getConnection();
-            pstmt = conn.prepareStatement(SELECT_ALL_SQL);
+            conn = DatabaseConnection.getConnectionLectura(shard);
+            pstmt = conn.prepareStatement(sql);
             rs = pstmt.executeQuery();
             
+            // Los índices de las columnas se resuelven una sola vez (primera fila)
+            HistoriaClinicaRowMapper mapper = new HistoriaClinicaRowMapper();
             while (rs.next()) {
-                historiasClinicas.add(mapResultSetToHistoriaClinica(rs));
+                historiasClinicas.add(mapper.mapRow(rs));
             }
             
             return historiasClinicas;
@@ -185,54 +417,281 @@ public class HistoriaClinicaDao implements GenericDao<HistoriaClinica> {
     }
     
     /**
-     * Actualiza una historia clínica existente
+     * Lee todas las historias clínicas NO eliminadas como un Stream (cursor del servidor)
+     * IMPORTANTE: cerrar el Stream (try-with-resources) para liberar la conexión
      * 
-     * @param entity La historia clínica con los datos actualizados
-     * @throws Exception Si ocurre un error durante la actualización
+     * @return Stream de historias clínicas activas ordenadas por ID
+     * @throws Exception Si ocurre un error al abrir el cursor
      */
     @Override
-    public void actualizar(HistoriaClinica entity) throws Exception {
+    public Stream<HistoriaClinica> leerTodosStream() throws Exception {
+        // Se mide la apertura del cursor; el recorrido corre por cuenta de quien consume el stream
+        return Metricas.medir("HistoriaClinicaDao.leerTodosStream",
+                () -> Shards.fusionarEnTodos(shard -> ResultSetStream.abrir(shard, SELECT_ALL_ORDERED_SQL,
+                        TAMANIO_FETCH, new HistoriaClinicaRowMapper()), HistoriaClinica::getId));
+    }
+    
+    /**
+     * Lee una página de historias clínicas NO eliminadas con ID mayor a despuesDeId
+     * 
+     * @param despuesDeId El último ID de la página anterior (null para la primera)
+     * @param limite Cantidad máxima de historias clínicas
+     * @return La página de historias clínicas ordenada por ID
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    @Override
+    public List<HistoriaClinica> leerPagina(Long despuesDeId, int limite) throws Exception {
+        return Metricas.medir("HistoriaClinicaDao.leerPagina", () -> {
+            if (limite <= 0) {
+                throw new IllegalArgumentException("El límite de la página debe ser mayor a cero.");
+            }
+            // Cada shard aporta a lo sumo "limite" filas: los primeros "limite" IDs son la página
+            return Shards.fusionar(Shards.enTodos(shard -> leerPagina(shard, despuesDeId, limite)),
+                    HistoriaClinica::getId, limite);
+        });
+    }
+    
+    private List<HistoriaClinica> leerPagina(int shard, Long despuesDeId, int limite) throws Exception {
         Connection conn = null;
         PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        List<HistoriaClinica> historiasClinicas = new ArrayList<>(limite);
         
         try {
-            conn = DatabaseConnection.getConnection();
-            pstmt = conn.prepareStatement(UPDATE_SQL);
-            
-            pstmt.setString(1, entity.getNroHistoria());
-            
-            // Convertir el ENUM a String para MySQL
-            if (entity.getGrupoSanguineo() != null) {
-                pstmt.setString(2, entity.getGrupoSanguineo().name());
-            } else {
-                throw new Exception("El grupo sanguíneo es obligatorio.");
-            }
-            
-            pstmt.setString(3, entity.getAntecedentes());
-            pstmt.setString(4, entity.getMedicacionActual());
-            pstmt.setString(5, entity.getObservaciones());
+            conn = DatabaseConnection.getConnectionLectura(shard);
+            pstmt = conn.prepareStatement(SELECT_PAGE_SQL);
+            pstmt.setLong(1, despuesDeId != null ? despuesDeId : 0L);
+            pstmt.setInt(2, limite);
+            rs = pstmt.executeQuery();
             
-            if (entity.getPaciente() != null && entity.getPaciente().getId() != null) {
-                pstmt.setLong(6, entity.getPaciente().getId());
-            } else {
-                throw new Exception("El ID del paciente es obligatorio.");
+            // Los índices de las columnas se resuelven una sola vez (primera fila)
+            HistoriaClinicaRowMapper mapper = new HistoriaClinicaRowMapper();
+            while (rs.next()) {
+                historiasClinicas.add(mapper.mapRow(rs));
             }
             
-            pstmt.setBoolean(7, entity.getEliminado());
-            pstmt.setLong(8, entity.getId());
-            
-            int affectedRows = pstmt.executeUpdate();
-            
-            if (affectedRows == 0) {
-                throw new Exception("Error al actualizar la historia clínica, no se encontró el registro.");
-            }
+            return historiasClinicas;
             
         } finally {
+            if (rs != null) rs.close();
             if (pstmt != null) pstmt.close();
             if (conn != null) conn.close();
         }
     }
     
+    /**
+     * Lee una página de resúmenes de historias clínicas NO eliminadas (keyset),
+     * sin las columnas TEXT
+     * 
+     * @param despuesDeId El último ID de la página anterior (null para la primera)
+     * @param limite Cantidad máxima de historias clínicas
+     * @return La página de resúmenes ordenada por ID
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    public List<HistoriaClinicaResumen> leerPaginaResumen(Long despuesDeId, int limite) throws Exception {
+        return Metricas.medir("HistoriaClinicaDao.leerPaginaResumen", () -> {
+            if (limite <= 0) {
+                throw new IllegalArgumentException("El límite de la página debe ser mayor a cero.");
+            }
+            return Shards.fusionar(Shards.enTodos(shard -> leerPaginaResumen(shard, despuesDeId, limite)),
+                    HistoriaClinicaResumen::getId, limite);
+        });
+    }
+    
+    private List<HistoriaClinicaResumen> leerPaginaResumen(int shard, Long despuesDeId, int limite) throws Exception {
+        List<HistoriaClinicaResumen> resumenes = new ArrayList<>(limite);
+        
+        try (Connection conn = DatabaseConnection.getConnectionLectura(shard);
+             PreparedStatement pstmt = conn.prepareStatement(SELECT_RESUMEN_PAGE_SQL)) {
+            pstmt.setLong(1, despuesDeId != null ? despuesDeId : 0L);
+            pstmt.setInt(2, limite);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                HistoriaClinicaResumenRowMapper mapper = new HistoriaClinicaResumenRowMapper();
+                while (rs.next()) {
+                    resumenes.add(mapper.mapRow(rs));
+                }
+            }
+        }
+        
+        return resumenes;
+    }
+    
+    /**
+     * Lee los resúmenes de todas las historias clínicas NO eliminadas como un
+     * Stream (cursor del servidor), sin las columnas TEXT
+     * IMPORTANTE: cerrar el Stream (try-with-resources) para liberar la conexión
+     * 
+     * @return Stream de resúmenes ordenados por ID
+     * @throws Exception Si ocurre un error al abrir el cursor
+     */
+    public Stream<HistoriaClinicaResumen> leerResumenesStream() throws Exception {
+        // Se mide la apertura del cursor; el recorrido corre por cuenta de quien consume el stream
+        return Metricas.medir("HistoriaClinicaDao.leerResumenesStream",
+                () -> Shards.fusionarEnTodos(shard -> ResultSetStream.abrir(shard, SELECT_RESUMEN_ORDERED_SQL,
+                        TAMANIO_FETCH, new HistoriaClinicaResumenRowMapper()), HistoriaClinicaResumen::getId));
+    }
+    
+    /**
+     * Completa las columnas TEXT de una historia leída sin detalle (listados).
+     * No hace nada si el detalle ya está cargado
+     * 
+     * @param entity La historia clínica (con ID)
+     * @throws Exception Si la historia no existe o falla la lectura
+     */
+    public void cargarDetalle(HistoriaClinica entity) throws Exception {
+        if (entity.isDetalleCargado()) {
+            return;
+        }
+        Metricas.ejecutar("HistoriaClinicaDao.cargarDetalle", () -> {
+            try (Connection conn = DatabaseConnection.getConnectionLectura(Shards.deId(entity.getId()));
+                 PreparedStatement pstmt = conn.prepareStatement(SELECT_DETALLE_SQL)) {
+                pstmt.setLong(1, entity.getId());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new Exception("No se encontró la historia clínica " + entity.getId() + ".");
+                    }
+                    entity.cargarDetalle(rs.getString(1), rs.getString(2), rs.getString(3));
+                }
+            }
+        });
+    }
+    
+    /**
+     * Actualiza una historia clínica existente (todas las columnas), si sigue
+     * en la versión con la que se leyó. Al terminar, la entidad queda con la
+     * versión nueva
+     * 
+     * @param entity La historia clínica con los datos actualizados
+     * @throws ConflictoVersionException Si otra transacción modificó la fila
+     *         después de leerla
+     * @throws Exception Si ocurre un error durante la actualización, o si la
+     *         historia se leyó sin detalle (se borrarían las columnas TEXT)
+     */
+    @Override
+    public void actualizar(HistoriaClinica entity) throws Exception {
+        Metricas.ejecutar("HistoriaClinicaDao.actualizar", () -> {
+            if (!entity.isDetalleCargado()) {
+                throw new Exception("La historia clínica se leyó sin detalle; use actualizarCambios o cargue el detalle antes de actualizarla.");
+            }
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+        
+            try {
+                conn = DatabaseConnection.getConnection(Shards.deId(entity.getId()));
+                pstmt = conn.prepareStatement(UPDATE_SQL);
+            
+                pstmt.setString(1, entity.getNroHistoria());
+            
+                // Convertir el ENUM a String para MySQL
+                if (entity.getGrupoSanguineo() != null) {
+                    pstmt.setString(2, entity.getGrupoSanguineo().name());
+                } else {
+                    throw new Exception("El grupo sanguíneo es obligatorio.");
+                }
+            
+                pstmt.setString(3, entity.getAntecedentes());
+                pstmt.setString(4, entity.getMedicacionActual());
+                pstmt.setString(5, entity.getObservaciones());
+            
+                if (entity.getPaciente() != null && entity.getPaciente().getId() != null) {
+                    pstmt.setLong(6, entity.getPaciente().getId());
+                } else {
+                    throw new Exception("El ID del paciente es obligatorio.");
+                }
+            
+                pstmt.setBoolean(7, entity.getEliminado());
+                pstmt.setLong(8, entity.getId());
+                pstmt.setLong(9, entity.getVersion());
+            
+                int affectedRows = pstmt.executeUpdate();
+            
+                if (affectedRows == 0) {
+                    throw ConflictoVersionException.sinFilaActualizada(conn, "historia_clinica", entity.getId(), entity.getVersion());
+                }
+                entity.setVersion(entity.getVersion() + 1);
+            
+            } finally {
+                if (pstmt != null) pstmt.close();
+                if (conn != null) conn.close();
+            }
+        });
+    }
+    
+    /**
+     * Actualiza solo las columnas modificadas de la historia clínica (ver
+     * {@link HistoriaClinica#getCambios()}), usando una conexión compartida.
+     * No ejecuta nada si la historia no tiene cambios.
+     * Solo actualiza la fila si sigue en la versión de la entidad, y la
+     * incrementa.
+     * IMPORTANTE: no limpia los cambios ni incrementa la versión de la
+     * entidad; quien confirma la transacción debe llamar a
+     * {@code limpiarCambios()} y {@code setVersion(getVersion() + 1)} después
+     * del commit
+     * 
+     * @param entity La historia clínica modificada
+     * @param conn La conexión compartida
+     * @return true si se ejecutó el UPDATE
+     * @throws ConflictoVersionException Si otra transacción modificó la fila
+     *         después de leerla
+     * @throws Exception Si la historia no existe o falla la actualización
+     */
+    public boolean actualizarCambios(HistoriaClinica entity, Connection conn) throws Exception {
+        return Metricas.medir("HistoriaClinicaDao.actualizarCambios", () -> {
+            EnumSet<HistoriaClinica.Campo> cambios = entity.getCambios();
+            if (cambios.isEmpty()) {
+                return false;
+            }
+            
+            StringBuilder sql = new StringBuilder("UPDATE historia_clinica SET ");
+            for (HistoriaClinica.Campo campo : cambios) {
+                sql.append(campo.getColumna()).append(" = ?, ");
+            }
+            sql.append("version = version + 1 WHERE id = ? AND version = ?");
+            
+            try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                int i = 1;
+                for (HistoriaClinica.Campo campo : cambios) {
+                    switch (campo) {
+                        case NRO_HISTORIA:
+                            pstmt.setString(i++, entity.getNroHistoria());
+                            break;
+                        case GRUPO_SANGUINEO:
+                            if (entity.getGrupoSanguineo() == null) {
+                                throw new Exception("El grupo sanguíneo es obligatorio.");
+                            }
+                            pstmt.setString(i++, entity.getGrupoSanguineo().name());
+                            break;
+                        case ANTECEDENTES:
+                            pstmt.setString(i++, entity.getAntecedentes());
+                            break;
+                        case MEDICACION_ACTUAL:
+                            pstmt.setString(i++, entity.getMedicacionActual());
+                            break;
+                        case OBSERVACIONES:
+                            pstmt.setString(i++, entity.getObservaciones());
+                            break;
+                        case PACIENTE_ID:
+                            if (entity.getPaciente() == null || entity.getPaciente().getId() == null) {
+                                throw new Exception("El ID del paciente es obligatorio.");
+                            }
+                            pstmt.setLong(i++, entity.getPaciente().getId());
+                            break;
+                        case ELIMINADO:
+                            pstmt.setBoolean(i++, Boolean.TRUE.equals(entity.getEliminado()));
+                            break;
+                    }
+                }
+                pstmt.setLong(i++, entity.getId());
+                pstmt.setLong(i, entity.getVersion());
+                
+                if (pstmt.executeUpdate() == 0) {
+                    throw ConflictoVersionException.sinFilaActualizada(conn, "historia_clinica", entity.getId(), entity.getVersion());
+                }
+                return true;
+            }
+        });
+    }
+    
     /**
      * Realiza un borrado lógico de la historia clínica (establece eliminado = true)
      * 
@@ -241,24 +700,26 @@ public class HistoriaClinicaDao implements GenericDao<HistoriaClinica> {
      */
     @Override
     public void eliminar(Long id) throws Exception {
-        Connection conn = null;
-        PreparedStatement pstmt = null;
+        Metricas.ejecutar("HistoriaClinicaDao.eliminar", () -> {
+            Connection conn = null;
+            PreparedStatement pstmt = null;
         
-        try {
-            conn = DatabaseConnection.getConnection();
-            pstmt = conn.prepareStatement(DELETE_LOGICAL_SQL);
-            pstmt.setLong(1, id);
+            try {
+                conn = DatabaseConnection.getConnection(Shards.deId(id));
+                pstmt = conn.prepareStatement(DELETE_LOGICAL_SQL);
+                pstmt.setLong(1, id);
             
-            int affectedRows = pstmt.executeUpdate();
+                int affectedRows = pstmt.executeUpdate();
             
-            if (affectedRows == 0) {
-                throw new Exception("Error al eliminar la historia clínica, no se encontró el registro.");
-            }
+                if (affectedRows == 0) {
+                    throw new Exception("Error al eliminar la historia clínica, no se encontró el registro.");
+                }
             
-        } finally {
-            if (pstmt != null) pstmt.close();
-            if (conn != null) conn.close();
-        }
+            } finally {
+                if (pstmt != null) pstmt.close();
+                if (conn != null) conn.close();
+            }
+        });
     }
     
     /**
@@ -270,66 +731,100 @@ public class HistoriaClinicaDao implements GenericDao<HistoriaClinica> {
      * @throws Exception Si ocurre un error durante la búsqueda
      */
     public HistoriaClinica buscarPorPacienteId(Long pacienteId) throws Exception {
-        Connection conn = null;
-        PreparedStatement pstmt = null;
-        ResultSet rs = null;
+        return Metricas.medir("HistoriaClinicaDao.buscarPorPacienteId", () -> {
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+            ResultSet rs = null;
         
-        try {
-            conn = DatabaseConnection.getConnection();
-            pstmt = conn.prepareStatement(SELECT_BY_PACIENTE_ID_SQL);
-            pstmt.setLong(1, pacienteId);
+            try {
+                // La historia está en el shard de su paciente
+                conn = DatabaseConnection.getConnectionLectura(Shards.deId(pacienteId));
+                pstmt = conn.prepareStatement(SELECT_BY_PACIENTE_ID_SQL);
+                pstmt.setLong(1, pacienteId);
             
-            rs = pstmt.executeQuery();
+                rs = pstmt.executeQuery();
             
-            if (rs.next()) {
-                return mapResultSetToHistoriaClinica(rs);
-            }
+                if (rs.next()) {
+                    return new HistoriaClinicaRowMapper().mapRow(rs);
+                }
             
-            return null;
+                return null;
             
-        } finally {
-            if (rs != null) rs.close();
-            if (pstmt != null) pstmt.close();
-            if (conn != null) conn.close();
-        }
+            } finally {
+                if (rs != null) rs.close();
+                if (pstmt != null) pstmt.close();
+                if (conn != null) conn.close();
+            }
+        });
     }
     
     /**
-     * Mapea un ResultSet a un objeto HistoriaClinica
-     * Método auxiliar privado
+     * Busca las historias clínicas NO eliminadas de varios pacientes
+     * Método adicional específico de HistoriaClinicaDao
      * 
-     * @param rs El ResultSet con los datos de la historia clínica
-     * @return El objeto HistoriaClinica mapeado
-     * @throws Exception Si ocurre un error durante el mapeo
+     * @param pacienteIds Los IDs de los pacientes
+     * @return Mapa ID de paciente -> historia clínica (sin entrada si no tiene)
+     * @throws Exception Si ocurre un error durante la búsqueda
      */
-    private HistoriaClinica mapResultSetToHistoriaClinica(ResultSet rs) throws Exception {
-        HistoriaClinica hc = new HistoriaClinica();
-        
-        hc.setId(rs.getLong("id"));
-        hc.setNroHistoria(rs.getString("nro_historia"));
-        
-        // Convertir String de MySQL a ENUM de Java
-        String grupoSangStr = rs.getString("grupo_sanguineo");
-        if (grupoSangStr != null) {
-            hc.setGrupoSanguineo(GrupoSanguineo.valueOf(grupoSangStr));
+    public Map<Long, HistoriaClinica> buscarPorPacienteIds(Collection<Long> pacienteIds) throws Exception {
+        return Metricas.medir("HistoriaClinicaDao.buscarPorPacienteIds", () -> {
+            Map<Long, HistoriaClinica> historias = new HashMap<>();
+            for (HistoriaClinica hc : leerPorListaIn(SELECT_BY_PACIENTE_IDS_SQL, pacienteIds, false)) {
+                historias.put(hc.getPaciente().getId(), hc);
+            }
+            return historias;
+        });
+    }
+    
+    /**
+     * Ejecuta una consulta "... IN (" por bloques de IDs, con una sola conexión
+     * por shard (los shards en paralelo). Sirve para IDs de historias y de
+     * pacientes: una historia está en el mismo shard que su paciente
+     */
+    private List<HistoriaClinica> leerPorListaIn(String sqlBase, Collection<Long> ids, boolean dePrimaria) throws Exception {
+        List<HistoriaClinica> historias = new ArrayList<>();
+        if (ids.isEmpty()) {
+            return historias;
         }
+        Map<Integer, List<Long>> porShard = Shards.agrupar(ids, Shards::deId);
+        for (List<HistoriaClinica> parte : Shards.en(porShard.keySet(),
+                shard -> leerPorListaIn(shard, sqlBase, porShard.get(shard), dePrimaria))) {
+            historias.addAll(parte);
+        }
+        return historias;
+    }
+    
+    private List<HistoriaClinica> leerPorListaIn(int shard, String sqlBase, List<Long> ids, boolean dePrimaria)
+            throws Exception {
+        List<HistoriaClinica> historias = new ArrayList<>();
+        List<List<Long>> bloques = ConsultaIn.dividir(ids, TAMANIO_LISTA_IN);
         
-        hc.setAntecedentes(rs.getString("antecedentes"));
-        hc.setMedicacionActual(rs.getString("medicacion_actual"));
-        hc.setObservaciones(rs.getString("observaciones"));
-        hc.setEliminado(rs.getBoolean("eliminado"));
+        HistoriaClinicaRowMapper mapper = new HistoriaClinicaRowMapper();
         
-        // Obtener el paciente_id (sin cargar el objeto Paciente completo - lazy loading)
-        // Si se necesita el objeto Paciente completo, debe obtenerse por separado
-        Long pacienteId = rs.getLong("paciente_id");
-        if (pacienteId > 0) {
-            // Crear un objeto Paciente solo con el ID
-            Models.Paciente paciente = new Models.Paciente();
-            paciente.setId(pacienteId);
-            hc.setPaciente(paciente);
+        try (Connection conn = conexionLectura(shard, dePrimaria)) {
+            for (List<Long> bloque : bloques) {
+                int parametros = ConsultaIn.parametrosPara(bloque.size());
+                String sql = sqlBase + ConsultaIn.marcadores(parametros) + ")";
+                
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    ConsultaIn.cargarParametros(pstmt, bloque, parametros);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            historias.add(mapper.mapRow(rs));
+                        }
+                    }
+                }
+            }
         }
         
-        return hc;
+        return historias;
+    }
+    
+    /**
+     * Conexión para una lectura: de una réplica si se puede, o de la base
+     * principal del shard si {@code dePrimaria}
+     */
+    private static Connection conexionLectura(int shard, boolean dePrimaria) throws SQLException {
+        return dePrimaria ? DatabaseConnection.getConnectionPrimaria(shard) : DatabaseConnection.getConnectionLectura(shard);
     }
 }
-
@@ -0,0 +1,45 @@
+package Dao;
+
+import Models.HistoriaClinica.GrupoSanguineo;
+import Models.HistoriaClinicaResumen;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Mapper de las consultas de resumen de historia_clinica
+ * (id, nro_historia, grupo_sanguineo, paciente_id).
+ *
+ * Igual que {@link HistoriaClinicaRowMapper}: resuelve los índices de las
+ * columnas una vez por ResultSet. No es thread-safe.
+ *
+ * @author Grupo 49
+ */
+public final class HistoriaClinicaResumenRowMapper implements RowMapper<HistoriaClinicaResumen> {
+
+    // ResultSet para el que se resolvieron los índices
+    private ResultSet enlazado;
+    private int colId;
+    private int colNroHistoria;
+    private int colGrupoSanguineo;
+    private int colPacienteId;
+
+    @Override
+    public HistoriaClinicaResumen mapRow(ResultSet rs) throws SQLException {
+        if (rs != enlazado) {
+            colId = rs.findColumn("id");
+            colNroHistoria = rs.findColumn("nro_historia");
+            colGrupoSanguineo = rs.findColumn("grupo_sanguineo");
+            colPacienteId = rs.findColumn("paciente_id");
+            enlazado = rs;
+        }
+
+        long pacienteId = rs.getLong(colPacienteId);
+        Long pacienteIdONulo = rs.wasNull() ? null : pacienteId;
+        String grupoSangStr = rs.getString(colGrupoSanguineo);
+        return new HistoriaClinicaResumen(
+                rs.getLong(colId),
+                rs.getString(colNroHistoria),
+                grupoSangStr != null ? GrupoSanguineo.desdeCodigo(grupoSangStr) : null,
+                pacienteIdONulo);
+    }
+}
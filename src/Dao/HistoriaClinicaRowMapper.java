@@ -0,0 +1,135 @@
+package Dao;
+
+import Models.HistoriaClinica;
+import Models.HistoriaClinica.GrupoSanguineo;
+import Models.Paciente;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Mapper de filas de la tabla historia_clinica.
+ * 
+ * Igual que {@link PacienteRowMapper}: resuelve los índices de las columnas una
+ * vez por ResultSet y decodifica el grupo sanguíneo con la tabla precalculada
+ * de {@link GrupoSanguineo#desdeCodigo(String)}.
+ * 
+ * Una instancia se usa para una consulta a la vez (no es thread-safe).
+ * 
+ * @author Grupo 49
+ */
+public final class HistoriaClinicaRowMapper implements RowMapper<HistoriaClinica> {
+    
+    private final String prefijo;
+    private final boolean conPacienteId;
+    private final boolean conDetalle;
+    
+    // ResultSet para el que se resolvieron los índices
+    private ResultSet enlazado;
+    private int colId;
+    private int colNroHistoria;
+    private int colGrupoSanguineo;
+    private int colAntecedentes;
+    private int colMedicacionActual;
+    private int colObservaciones;
+    private int colPacienteId;
+    private int colEliminado;
+    private int colVersion;
+    
+    /**
+     * Mapper para consultas directas sobre historia_clinica (incluye paciente_id)
+     */
+    public HistoriaClinicaRowMapper() {
+        this("", true);
+    }
+    
+    /**
+     * @param prefijo Prefijo de los alias de las columnas (por ejemplo "hc_" en un JOIN), o ""
+     * @param conPacienteId Si la consulta incluye la columna paciente_id
+     */
+    public HistoriaClinicaRowMapper(String prefijo, boolean conPacienteId) {
+        this(prefijo, conPacienteId, true);
+    }
+    
+    /**
+     * @param prefijo Prefijo de los alias de las columnas (por ejemplo "hc_" en un JOIN), o ""
+     * @param conPacienteId Si la consulta incluye la columna paciente_id
+     * @param conDetalle Si la consulta incluye las columnas TEXT; si no, la
+     *        historia queda con {@code isDetalleCargado() == false}
+     */
+    public HistoriaClinicaRowMapper(String prefijo, boolean conPacienteId, boolean conDetalle) {
+        this.prefijo = prefijo;
+        this.conPacienteId = conPacienteId;
+        this.conDetalle = conDetalle;
+    }
+    
+    @Override
+    public HistoriaClinica mapRow(ResultSet rs) throws SQLException {
+        if (rs != enlazado) {
+            enlazar(rs);
+        }
+        return mapear(rs, rs.getLong(colId));
+    }
+    
+    /**
+     * Variante para LEFT JOIN: devuelve null si la fila no tiene historia
+     * (columna id en NULL)
+     */
+    public HistoriaClinica mapRowOpcional(ResultSet rs) throws SQLException {
+        if (rs != enlazado) {
+            enlazar(rs);
+        }
+        long id = rs.getLong(colId);
+        return rs.wasNull() ? null : mapear(rs, id);
+    }
+    
+    private HistoriaClinica mapear(ResultSet rs, long id) throws SQLException {
+        HistoriaClinica hc = new HistoriaClinica();
+        
+        hc.setId(id);
+        hc.setNroHistoria(rs.getString(colNroHistoria));
+        
+        // Convertir String de MySQL a ENUM de Java (tabla precalculada)
+        String grupoSangStr = rs.getString(colGrupoSanguineo);
+        if (grupoSangStr != null) {
+            hc.setGrupoSanguineo(GrupoSanguineo.desdeCodigo(grupoSangStr));
+        }
+        
+        if (conDetalle) {
+            hc.setAntecedentes(rs.getString(colAntecedentes));
+            hc.setMedicacionActual(rs.getString(colMedicacionActual));
+            hc.setObservaciones(rs.getString(colObservaciones));
+        } else {
+            hc.setDetalleCargado(false);
+        }
+        hc.setEliminado(rs.getBoolean(colEliminado));
+        hc.setVersion(rs.getLong(colVersion));
+        
+        // Lazy loading: solo un Paciente con el ID
+        if (conPacienteId) {
+            long pacienteId = rs.getLong(colPacienteId);
+            if (pacienteId > 0) {
+                Paciente paciente = new Paciente();
+                paciente.setId(pacienteId);
+                hc.setPaciente(paciente);
+            }
+        }
+        
+        hc.limpiarCambios();
+        return hc;
+    }
+    
+    private void enlazar(ResultSet rs) throws SQLException {
+        colId = rs.findColumn(prefijo + "id");
+        colNroHistoria = rs.findColumn(prefijo + "nro_historia");
+        colGrupoSanguineo = rs.findColumn(prefijo + "grupo_sanguineo");
+        if (conDetalle) {
+            colAntecedentes = rs.findColumn(prefijo + "antecedentes");
+            colMedicacionActual = rs.findColumn(prefijo + "medicacion_actual");
+            colObservaciones = rs.findColumn(prefijo + "observaciones");
+        }
+        colPacienteId = conPacienteId ? rs.findColumn(prefijo + "paciente_id") : 0;
+        colEliminado = rs.findColumn(prefijo + "eliminado");
+        colVersion = rs.findColumn(prefijo + "version");
+        enlazado = rs;
+    }
+}
@@ -0,0 +1,47 @@
+package Dao;
+
+import Models.HistoriaClinica;
+import Models.Paciente;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Mapper de filas del LEFT JOIN paciente / historia_clinica.
+ * 
+ * Las columnas del paciente van sin prefijo y las de la historia con alias
+ * "hc_". Si el paciente no tiene historia activa, las columnas "hc_" vienen
+ * en NULL y el paciente queda sin historia.
+ * 
+ * Con {@code conDetalle = false} se usa para los listados, cuya consulta no
+ * trae las columnas TEXT de la historia.
+ * 
+ * @author Grupo 49
+ */
+public final class PacienteConHistoriaRowMapper implements RowMapper<Paciente> {
+    
+    private final PacienteRowMapper pacienteMapper = new PacienteRowMapper();
+    private final HistoriaClinicaRowMapper historiaMapper;
+    
+    public PacienteConHistoriaRowMapper() {
+        this(true);
+    }
+    
+    /**
+     * @param conDetalle Si la consulta incluye las columnas TEXT de la historia
+     */
+    public PacienteConHistoriaRowMapper(boolean conDetalle) {
+        this.historiaMapper = new HistoriaClinicaRowMapper("hc_", false, conDetalle);
+    }
+    
+    @Override
+    public Paciente mapRow(ResultSet rs) throws SQLException {
+        Paciente paciente = pacienteMapper.mapRow(rs);
+        HistoriaClinica hc = historiaMapper.mapRowOpcional(rs);
+        if (hc != null) {
+            hc.setPaciente(paciente);
+            hc.limpiarCambios();
+            paciente.setHistoriaClinica(hc);
+        }
+        return paciente;
+    }
+}
@@ -5,14 +5,25 @@
 package Dao;
 
 import Config.DatabaseConnection;
+import Metrics.Metricas;
 import Models.Paciente;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * DAO (Data Access Object) para la entidad Paciente
@@ -26,20 +37,83 @@ public class PacienteDao implements GenericDao<Paciente> {
     private static final String INSERT_SQL = 
         "INSERT INTO paciente (nombre, apellido, dni, fecha_nacimiento, eliminado) VALUES (?, ?, ?, ?, ?)";
     
+    // Con IDs asignados por la aplicación (ver Secuencias): el ID va al final
+    private static final String INSERT_CON_ID_SQL = 
+        "INSERT INTO paciente (nombre, apellido, dni, fecha_nacimiento, eliminado, id) VALUES (?, ?, ?, ?, ?, ?)";
+    
     private static final String SELECT_BY_ID_SQL = 
-        "SELECT id, nombre, apellido, dni, fecha_nacimiento, eliminado FROM paciente WHERE id = ?";
+        "SELECT id, nombre, apellido, dni, fecha_nacimiento, eliminado, version FROM paciente WHERE id = ?";
     
     private static final String SELECT_ALL_SQL = 
-        "SELECT id, nombre, apellido, dni, fecha_nacimiento, eliminado FROM paciente WHERE eliminado = false";
+        "SELECT id, nombre, apellido, dni, fecha_nacimiento, eliminado, version FROM paciente WHERE eliminado = false";
     
+    // Concurrencia optimista: los UPDATE solo afectan la fila si sigue en la
+    // versión con la que se leyó, y la incrementan
     private static final String UPDATE_SQL = 
-        "UPDATE paciente SET nombre = ?, apellido = ?, dni = ?, fecha_nacimiento = ?, eliminado = ? WHERE id = ?";
+        "UPDATE paciente SET nombre = ?, apellido = ?, dni = ?, fecha_nacimiento = ?, eliminado = ?, " +
+        "version = version + 1 WHERE id = ? AND version = ?";
     
     private static final String DELETE_LOGICAL_SQL = 
-        "UPDATE paciente SET eliminado = true WHERE id = ?";
+        "UPDATE paciente SET eliminado = true, version = version + 1 WHERE id = ?";
     
     private static final String SELECT_BY_DNI_SQL = 
-        "SELECT id, nombre, apellido, dni, fecha_nacimiento, eliminado FROM paciente WHERE dni = ? AND eliminado = false";
+        "SELECT id, nombre, apellido, dni, fecha_nacimiento, eliminado, version FROM paciente WHERE dni = ? AND eliminado = false";
+    
+    // El UNIQUE de dni incluye a los eliminados: estas consultas no los filtran
+    private static final String EXISTE_DNI_SQL = 
+        "SELECT 1 FROM paciente WHERE dni = ?";
+    
+    private static final String SELECT_DNIS_IN_SQL = 
+        "SELECT dni FROM paciente WHERE dni IN (";
+    
+    private static final String SELECT_DNIS_SQL = 
+        "SELECT dni FROM paciente";
+    
+    // Paciente + su historia clínica activa en una sola consulta (LEFT JOIN)
+    // Las columnas de la historia llevan alias "hc_" para no chocar con las del paciente
+    private static final String SELECT_CON_HISTORIA_SQL = 
+        "SELECT p.id, p.nombre, p.apellido, p.dni, p.fecha_nacimiento, p.eliminado, p.version, " +
+        "hc.id AS hc_id, hc.nro_historia AS hc_nro_historia, hc.grupo_sanguineo AS hc_grupo_sanguineo, " +
+        "hc.antecedentes AS hc_antecedentes, hc.medicacion_actual AS hc_medicacion_actual, " +
+        "hc.observaciones AS hc_observaciones, hc.eliminado AS hc_eliminado, hc.version AS hc_version " +
+        "FROM paciente p LEFT JOIN historia_clinica hc ON hc.paciente_id = p.id AND hc.eliminado = false ";
+    
+    // Listados: la historia sin sus columnas TEXT
+    private static final String SELECT_CON_RESUMEN_SQL = 
+        "SELECT p.id, p.nombre, p.apellido, p.dni, p.fecha_nacimiento, p.eliminado, p.version, " +
+        "hc.id AS hc_id, hc.nro_historia AS hc_nro_historia, hc.grupo_sanguineo AS hc_grupo_sanguineo, " +
+        "hc.eliminado AS hc_eliminado, hc.version AS hc_version " +
+        "FROM paciente p LEFT JOIN historia_clinica hc ON hc.paciente_id = p.id AND hc.eliminado = false ";
+    
+    private static final String SELECT_PAGE_CON_RESUMEN_SQL = 
+        SELECT_CON_RESUMEN_SQL + "WHERE p.eliminado = false AND p.id > ? ORDER BY p.id LIMIT ?";
+    
+    private static final String SELECT_BY_ID_CON_HISTORIA_SQL = 
+        SELECT_CON_HISTORIA_SQL + "WHERE p.id = ?";
+    
+    private static final String SELECT_ALL_CON_HISTORIA_SQL = 
+        SELECT_CON_HISTORIA_SQL + "WHERE p.eliminado = false";
+    
+    private static final String SELECT_BY_DNI_CON_HISTORIA_SQL = 
+        SELECT_CON_HISTORIA_SQL + "WHERE p.dni = ? AND p.eliminado = false";
+    
+    // Lecturas en streaming y paginación por clave (keyset), ordenadas por PK
+    private static final String SELECT_ALL_ORDERED_SQL = 
+        SELECT_ALL_SQL + " ORDER BY id";
+    
+    private static final String SELECT_PAGE_SQL = 
+        "SELECT id, nombre, apellido, dni, fecha_nacimiento, eliminado, version FROM paciente " +
+        "WHERE eliminado = false AND id > ? ORDER BY id LIMIT ?";
+    
+    private static final String SELECT_ALL_CON_HISTORIA_ORDERED_SQL = 
+        SELECT_ALL_CON_HISTORIA_SQL + " ORDER BY p.id";
+    
+    private static final String SELECT_PAGE_CON_HISTORIA_SQL = 
+        SELECT_CON_HISTORIA_SQL + "WHERE p.eliminado = false AND p.id > ? ORDER BY p.id LIMIT ?";
+    
+    // Lectura por lista de IDs: se completa con "(?, ?, ...)" según el tamaño del bloque
+    private static final String SELECT_BY_IDS_SQL = 
+        "SELECT id, nombre, apellido, dni, fecha_nacimiento, eliminado, version FROM paciente WHERE id IN (";
     
     /**
      * Crea un nuevo paciente en la base de datos (sin conexión compartida)
@@ -50,7 +124,11 @@ public class PacienteDao implements GenericDao<Paciente> {
      */
     @Override
     public Paciente crear(Paciente entity) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection()) {
+        // Con IDs de la aplicación, el ID decide el shard (ver Shards)
+        if (Secuencias.IDS && entity.getId() == null) {
+            entity.setId(Secuencias.siguienteIdPaciente(entity.getDni()));
+        }
+        try (Connection conn = DatabaseConnection.getConnection(Shards.dePaciente(entity))) {
             return crear(entity, conn);
         }
     }
@@ -65,45 +143,160 @@ public class PacienteDao implements GenericDao<Paciente> {
      */
     @Override
     public Paciente crear(Paciente entity, Connection conn) throws Exception {
-        PreparedStatement pstmt = null;
-        ResultSet rs = null;
+        return Metricas.medir("PacienteDao.crear", () -> {
+            PreparedStatement pstmt = null;
+            ResultSet rs = null;
         
-        try {
-            pstmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+            try {
+                boolean conId = Secuencias.IDS;
+                if (conId) {
+                    if (entity.getId() == null) {
+                        entity.setId(Secuencias.siguienteIdPaciente(entity.getDni()));
+                    }
+                    pstmt = conn.prepareStatement(INSERT_CON_ID_SQL);
+                } else {
+                    pstmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+                }
+                setInsertParameters(pstmt, entity);
+                if (conId) {
+                    pstmt.setLong(6, entity.getId());
+                }
             
-            pstmt.setString(1, entity.getNombre());
-            pstmt.setString(2, entity.getApellido());
-            pstmt.setString(3, entity.getDni());
+                int affectedRows = pstmt.executeUpdate();
             
-            // Convertir LocalDate a java.sql.Date
-            if (entity.getFechaNacimiento() != null) {
-                pstmt.setDate(4, Date.valueOf(entity.getFechaNacimiento()));
-            } else {
-                pstmt.setNull(4, java.sql.Types.DATE);
-            }
+                if (affectedRows == 0) {
+                    throw new Exception("Error al crear el paciente, no se insertó ningún registro.");
+                }
+                if (conId) {
+                    entity.limpiarCambios();
+                    return entity;
+                }
             
-            pstmt.setBoolean(5, Boolean.TRUE.equals(entity.getEliminado()));
+                // Obtener el ID generado
+                rs = pstmt.getGeneratedKeys();
+                if (rs.next()) {
+                    entity.setId(rs.getLong(1));
+                    entity.limpiarCambios();
+                } else {
+                    throw new Exception("Error al crear el paciente, no se obtuvo el ID.");
+                }
             
-            int affectedRows = pstmt.executeUpdate();
+                return entity;
             
-            if (affectedRows == 0) {
-                throw new Exception("Error al crear el paciente, no se insertó ningún registro.");
+            } finally {
+                if (rs != null) rs.close();
+                if (pstmt != null) pstmt.close();
             }
-            
-            // Obtener el ID generado
-            rs = pstmt.getGeneratedKeys();
-            if (rs.next()) {
-                entity.setId(rs.getLong(1));
-            } else {
-                throw new Exception("Error al crear el paciente, no se obtuvo el ID.");
+        });
+    }
+    
+    /**
+     * Crea varios pacientes con el tamaño de lote por defecto
+     * 
+     * @param entities Los pacientes a crear
+     * @param conn La conexión compartida
+     * @return Los pacientes creados con sus IDs generados
+     * @throws Exception Si ocurre un error durante la creación
+     */
+    @Override
+    public List<Paciente> crearLote(List<Paciente> entities, Connection conn) throws Exception {
+        return crearLote(entities, TAMANIO_LOTE, conn);
+    }
+    
+    /**
+     * Crea varios pacientes usando lotes JDBC sobre una conexión compartida
+     * Con rewriteBatchedStatements cada lote viaja como un único INSERT multi-fila
+     * 
+     * @param entities Los pacientes a crear
+     * @param tamanioLote Cantidad máxima de filas por executeBatch
+     * @param conn La conexión compartida
+     * @return Los pacientes creados con sus IDs generados (en el mismo orden)
+     * @throws Exception Si ocurre un error durante la creación
+     */
+    @Override
+    public List<Paciente> crearLote(List<Paciente> entities, int tamanioLote, Connection conn) throws Exception {
+        return Metricas.medir("PacienteDao.crearLote", () -> {
+            if (tamanioLote <= 0) {
+                throw new IllegalArgumentException("El tamaño de lote debe ser mayor a cero.");
             }
+            PreparedStatement pstmt = null;
+        
+            try {
+                boolean conId = Secuencias.IDS;
+                pstmt = conId ? conn.prepareStatement(INSERT_CON_ID_SQL)
+                        : conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
             
-            return entity;
+                int inicioLote = 0;
+                for (int i = 0; i < entities.size(); i++) {
+                    setInsertParameters(pstmt, entities.get(i));
+                    if (conId) {
+                        if (entities.get(i).getId() == null) {
+                            entities.get(i).setId(Secuencias.siguienteIdPaciente(entities.get(i).getDni()));
+                        }
+                        pstmt.setLong(6, entities.get(i).getId());
+                    }
+                    pstmt.addBatch();
+                
+                    if (i + 1 - inicioLote == tamanioLote || i == entities.size() - 1) {
+                        ejecutarLote(pstmt, entities.subList(inicioLote, i + 1), conId);
+                        inicioLote = i + 1;
+                    }
+                }
             
-        } finally {
-            if (rs != null) rs.close();
-            if (pstmt != null) pstmt.close();
+                return entities;
+            
+            } finally {
+                if (pstmt != null) pstmt.close();
+            }
+        });
+    }
+    
+    /**
+     * Ejecuta el lote acumulado y asigna los IDs generados a cada paciente,
+     * en el mismo orden en que se agregaron al lote (si no venían asignados)
+     */
+    private void ejecutarLote(PreparedStatement pstmt, List<Paciente> lote, boolean idsAsignados) throws Exception {
+        int[] resultados = pstmt.executeBatch();
+        for (int resultado : resultados) {
+            if (resultado == Statement.EXECUTE_FAILED) {
+                throw new Exception("Error al crear el lote de pacientes, una fila no se insertó.");
+            }
+        }
+        if (idsAsignados) {
+            for (Paciente entity : lote) {
+                entity.limpiarCambios();
+            }
+            return;
+        }
+        
+        try (ResultSet rs = pstmt.getGeneratedKeys()) {
+            int i = 0;
+            while (i < lote.size() && rs.next()) {
+                lote.get(i).setId(rs.getLong(1));
+                lote.get(i++).limpiarCambios();
+            }
+            if (i < lote.size()) {
+                throw new Exception("Error al crear el lote de pacientes, no se obtuvieron todos los IDs.");
+            }
+        }
+    }
+    
+    /**
+     * Carga los parámetros del INSERT_SQL a partir del paciente
+     */
+    private void setInsertParameters(PreparedStatement pstmt, Paciente entity) throws Exception {
+        pstmt.setString(1, entity.getNombre());
+        pstmt.setString(2, entity.getApellido());
+        pstmt.setString(3, entity.getDni());
+        
+        // Convertir LocalDate a java.sql.Date
+        if (entity.getFechaNacimiento() != null) {
+            pstmt.setDate(4, Date.valueOf(entity.getFechaNacimiento()));
+        } else {
+            pstmt.setNull(4, java.sql.Types.DATE);
         }
+        
+        pstmt.setBoolean(5, Boolean.TRUE.equals(entity.getEliminado()));
     }
     
     /**
@@ -116,23 +309,40 @@ public class PacienteDao implements GenericDao<Paciente> {
      */
     @Override
     public Paciente leer(Long id) throws Exception {
+        return Metricas.medir("PacienteDao.leer", () -> leer(id, false));
+    }
+    
+    /**
+     * Lee un paciente por su ID de la base principal, nunca de una réplica
+     * IMPORTANTE: igual que leer(id), NO carga la HistoriaClinica
+     * 
+     * @param id El ID del paciente a buscar
+     * @return El paciente encontrado, o null si no existe
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    @Override
+    public Paciente leerDePrimaria(Long id) throws Exception {
+        return Metricas.medir("PacienteDao.leerDePrimaria", () -> leer(id, true));
+    }
+    
+    private Paciente leer(Long id, boolean dePrimaria) throws Exception {
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
-            conn = DatabaseConnection.getConnection();
+            conn = conexionLectura(Shards.deId(id), dePrimaria);
             pstmt = conn.prepareStatement(SELECT_BY_ID_SQL);
             pstmt.setLong(1, id);
-            
+        
             rs = pstmt.executeQuery();
-            
+        
             if (rs.next()) {
-                return mapResultSetToPaciente(rs);
+                return new PacienteRowMapper().mapRow(rs);
             }
-            
+        
             return null;
-            
+        
         } finally {
             if (rs != null) rs.close();
             if (pstmt != null) pstmt.close();
@@ -141,74 +351,233 @@ public class PacienteDao implements GenericDao<Paciente> {
     }
     
     /**
-     * Lee todos los pacientes NO eliminados
+     * Lee varios pacientes por sus IDs usando consultas "WHERE id IN (...)"
+     * Todos los bloques de un shard se leen con una sola conexión del pool
+     * (los shards en paralelo)
+     * IMPORTANTE: igual que leer(id), NO carga la HistoriaClinica
      * 
-     * @return Lista de pacientes activos (eliminado = false)
+     * @param ids Los IDs de los pacientes a buscar
+     * @return Mapa ID -> paciente (los IDs inexistentes no aparecen)
      * @throws Exception Si ocurre un error durante la lectura
      */
     @Override
-    public List<Paciente> leerTodos() throws Exception {
-        Connection conn = null;
-        PreparedStatement pstmt = null;
-        ResultSet rs = null;
-        List<Paciente> pacientes = new ArrayList<>();
+    public Map<Long, Paciente> leerPorIds(Collection<Long> ids) throws Exception {
+        return Metricas.medir("PacienteDao.leerPorIds", () -> leerPorIds(ids, false));
+    }
+    
+    /**
+     * Igual que leerPorIds(ids), pero de la base principal, nunca de una réplica
+     * 
+     * @param ids Los IDs de los pacientes a buscar
+     * @return Mapa ID -> paciente (los IDs inexistentes no aparecen)
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    @Override
+    public Map<Long, Paciente> leerPorIdsDePrimaria(Collection<Long> ids) throws Exception {
+        return Metricas.medir("PacienteDao.leerPorIdsDePrimaria", () -> leerPorIds(ids, true));
+    }
+    
+    private Map<Long, Paciente> leerPorIds(Collection<Long> ids, boolean dePrimaria) throws Exception {
+        Map<Long, Paciente> pacientes = new HashMap<>();
+        if (ids.isEmpty()) {
+            return pacientes;
+        }
+        Map<Integer, List<Long>> porShard = Shards.agrupar(ids, Shards::deId);
+        for (Map<Long, Paciente> parte : Shards.en(porShard.keySet(),
+                shard -> leerPorIds(shard, porShard.get(shard), dePrimaria))) {
+            pacientes.putAll(parte);
+        }
+        return pacientes;
+    }
+    
+    private Map<Long, Paciente> leerPorIds(int shard, List<Long> ids, boolean dePrimaria) throws Exception {
+        Map<Long, Paciente> pacientes = new HashMap<>();
+        List<List<Long>> bloques = ConsultaIn.dividir(ids, TAMANIO_LISTA_IN);
+        PacienteRowMapper mapper = new PacienteRowMapper();
         
-        try {
-            conn = DatabaseConnection.getConnection();
-            pstmt = conn.prepareStatement(SELECT_ALL_SQL);
-            rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                pacientes.add(mapResultSetToPaciente(rs));
+        try (Connection conn = conexionLectura(shard, dePrimaria)) {
+            for (List<Long> bloque : bloques) {
+                int parametros = ConsultaIn.parametrosPara(bloque.size());
+                String sql = SELECT_BY_IDS_SQL + ConsultaIn.marcadores(parametros) + ")";
+                
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    ConsultaIn.cargarParametros(pstmt, bloque, parametros);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            Paciente paciente = mapper.mapRow(rs);
+                            pacientes.put(paciente.getId(), paciente);
+                        }
+                    }
+                }
             }
-            
-            return pacientes;
-            
-        } finally {
-            if (rs != null) rs.close();
-            if (pstmt != null) pstmt.close();
-            if (conn != null) conn.close();
         }
+        
+        return pacientes;
     }
     
     /**
-     * Actualiza un paciente existente
+     * Conexión para una lectura: de una réplica si se puede, o de la base
+     * principal del shard si {@code dePrimaria}
+     */
+    private static Connection conexionLectura(int shard, boolean dePrimaria) throws SQLException {
+        return dePrimaria ? DatabaseConnection.getConnectionPrimaria(shard) : DatabaseConnection.getConnectionLectura(shard);
+    }
+    
+    /**
+     * Lee todos los pacientes NO eliminados
+     * 
+     * @return Lista de pacientes activos (eliminado = false)
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    @Override
+    public List<Paciente> leerTodos() throws Exception {
+        return Metricas.medir("PacienteDao.leerTodos",
+                () -> leerTodos(SELECT_ALL_SQL, SELECT_ALL_ORDERED_SQL, PacienteRowMapper::new));
+    }
+    
+    /**
+     * Lee todos los pacientes NO eliminados como un Stream (cursor del servidor)
+     * IMPORTANTE: cerrar el Stream (try-with-resources) para liberar la conexión
+     * 
+     * @return Stream de pacientes activos ordenados por ID
+     * @throws Exception Si ocurre un error al abrir el cursor
+     */
+    @Override
+    public Stream<Paciente> leerTodosStream() throws Exception {
+        // Se mide la apertura del cursor; el recorrido corre por cuenta de quien consume el stream
+        return Metricas.medir("PacienteDao.leerTodosStream",
+                () -> Shards.fusionarEnTodos(shard -> ResultSetStream.abrir(shard, SELECT_ALL_ORDERED_SQL,
+                        TAMANIO_FETCH, new PacienteRowMapper()), Paciente::getId));
+    }
+    
+    /**
+     * Lee una página de pacientes NO eliminados con ID mayor a despuesDeId
+     * 
+     * @param despuesDeId El último ID de la página anterior (null para la primera)
+     * @param limite Cantidad máxima de pacientes
+     * @return La página de pacientes ordenada por ID
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    @Override
+    public List<Paciente> leerPagina(Long despuesDeId, int limite) throws Exception {
+        return Metricas.medir("PacienteDao.leerPagina",
+                () -> leerPagina(SELECT_PAGE_SQL, despuesDeId, limite, PacienteRowMapper::new));
+    }
+    
+    /**
+     * Actualiza un paciente existente, si sigue en la versión con la que se
+     * leyó. Al terminar, la entidad queda con la versión nueva
      * 
      * @param entity El paciente con los datos actualizados
+     * @throws ConflictoVersionException Si otra transacción modificó la fila
+     *         después de leerla
      * @throws Exception Si ocurre un error durante la actualización
      */
     @Override
     public void actualizar(Paciente entity) throws Exception {
-        Connection conn = null;
-        PreparedStatement pstmt = null;
+        Metricas.ejecutar("PacienteDao.actualizar", () -> {
+            Connection conn = null;
+            PreparedStatement pstmt = null;
         
-        try {
-            conn = DatabaseConnection.getConnection();
-            pstmt = conn.prepareStatement(UPDATE_SQL);
+            try {
+                conn = DatabaseConnection.getConnection(Shards.deId(entity.getId()));
+                pstmt = conn.prepareStatement(UPDATE_SQL);
             
-            pstmt.setString(1, entity.getNombre());
-            pstmt.setString(2, entity.getApellido());
-            pstmt.setString(3, entity.getDni());
+                pstmt.setString(1, entity.getNombre());
+                pstmt.setString(2, entity.getApellido());
+                pstmt.setString(3, entity.getDni());
             
-            if (entity.getFechaNacimiento() != null) {
-                pstmt.setDate(4, Date.valueOf(entity.getFechaNacimiento()));
-            } else {
-                pstmt.setNull(4, java.sql.Types.DATE);
-            }
+                if (entity.getFechaNacimiento() != null) {
+                    pstmt.setDate(4, Date.valueOf(entity.getFechaNacimiento()));
+                } else {
+                    pstmt.setNull(4, java.sql.Types.DATE);
+                }
             
-            pstmt.setBoolean(5, entity.getEliminado());
-            pstmt.setLong(6, entity.getId());
+                pstmt.setBoolean(5, entity.getEliminado());
+                pstmt.setLong(6, entity.getId());
+                pstmt.setLong(7, entity.getVersion());
             
-            int affectedRows = pstmt.executeUpdate();
+                int affectedRows = pstmt.executeUpdate();
             
-            if (affectedRows == 0) {
-                throw new Exception("Error al actualizar el paciente, no se encontró el registro.");
+                if (affectedRows == 0) {
+                    throw ConflictoVersionException.sinFilaActualizada(conn, "paciente", entity.getId(), entity.getVersion());
+                }
+                entity.setVersion(entity.getVersion() + 1);
+            
+            } finally {
+                if (pstmt != null) pstmt.close();
+                if (conn != null) conn.close();
+            }
+        });
+    }
+    
+    /**
+     * Actualiza solo las columnas modificadas del paciente (ver
+     * {@link Paciente#getCambios()}), usando una conexión compartida.
+     * No ejecuta nada si el paciente no tiene cambios.
+     * Solo actualiza la fila si sigue en la versión de la entidad, y la
+     * incrementa.
+     * IMPORTANTE: no limpia los cambios ni incrementa la versión de la
+     * entidad; quien confirma la transacción debe llamar a
+     * {@code limpiarCambios()} y {@code setVersion(getVersion() + 1)} después
+     * del commit
+     * 
+     * @param entity El paciente modificado
+     * @param conn La conexión compartida
+     * @return true si se ejecutó el UPDATE
+     * @throws ConflictoVersionException Si otra transacción modificó la fila
+     *         después de leerla
+     * @throws Exception Si el paciente no existe o falla la actualización
+     */
+    public boolean actualizarCambios(Paciente entity, Connection conn) throws Exception {
+        return Metricas.medir("PacienteDao.actualizarCambios", () -> {
+            EnumSet<Paciente.Campo> cambios = entity.getCambios();
+            if (cambios.isEmpty()) {
+                return false;
             }
             
-        } finally {
-            if (pstmt != null) pstmt.close();
-            if (conn != null) conn.close();
-        }
+            // El SQL depende solo del conjunto de columnas (a lo sumo 2^5 variantes),
+            // así que la caché de statements lo reutiliza
+            StringBuilder sql = new StringBuilder("UPDATE paciente SET ");
+            for (Paciente.Campo campo : cambios) {
+                sql.append(campo.getColumna()).append(" = ?, ");
+            }
+            sql.append("version = version + 1 WHERE id = ? AND version = ?");
+            
+            try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                int i = 1;
+                for (Paciente.Campo campo : cambios) {
+                    switch (campo) {
+                        case NOMBRE:
+                            pstmt.setString(i++, entity.getNombre());
+                            break;
+                        case APELLIDO:
+                            pstmt.setString(i++, entity.getApellido());
+                            break;
+                        case DNI:
+                            pstmt.setString(i++, entity.getDni());
+                            break;
+                        case FECHA_NACIMIENTO:
+                            if (entity.getFechaNacimiento() != null) {
+                                pstmt.setDate(i++, Date.valueOf(entity.getFechaNacimiento()));
+                            } else {
+                                pstmt.setNull(i++, java.sql.Types.DATE);
+                            }
+                            break;
+                        case ELIMINADO:
+                            pstmt.setBoolean(i++, Boolean.TRUE.equals(entity.getEliminado()));
+                            break;
+                    }
+                }
+                pstmt.setLong(i++, entity.getId());
+                pstmt.setLong(i, entity.getVersion());
+                
+                if (pstmt.executeUpdate() == 0) {
+                    throw ConflictoVersionException.sinFilaActualizada(conn, "paciente", entity.getId(), entity.getVersion());
+                }
+                return true;
+            }
+        });
     }
     
     /**
@@ -219,48 +588,226 @@ public class PacienteDao implements GenericDao<Paciente> {
      */
     @Override
     public void eliminar(Long id) throws Exception {
+        Metricas.ejecutar("PacienteDao.eliminar", () -> {
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+        
+            try {
+                conn = DatabaseConnection.getConnection(Shards.deId(id));
+                pstmt = conn.prepareStatement(DELETE_LOGICAL_SQL);
+                pstmt.setLong(1, id);
+            
+                int affectedRows = pstmt.executeUpdate();
+            
+                if (affectedRows == 0) {
+                    throw new Exception("Error al eliminar el paciente, no se encontró el registro.");
+                }
+            
+            } finally {
+                if (pstmt != null) pstmt.close();
+                if (conn != null) conn.close();
+            }
+        });
+    }
+    
+    /**
+     * Busca un paciente por su DNI
+     * Método adicional específico de PacienteDao
+     * 
+     * @param dni El DNI del paciente a buscar
+     * @return El paciente encontrado, o null si no existe
+     * @throws Exception Si ocurre un error durante la búsqueda
+     */
+    public Paciente buscarPorDni(String dni) throws Exception {
+        return Metricas.medir("PacienteDao.buscarPorDni", () -> Shards.buscarPorDni(dni,
+                shard -> buscarPorDni(shard, SELECT_BY_DNI_SQL, dni, new PacienteRowMapper())));
+    }
+    
+    /**
+     * Indica si el DNI ya está registrado, incluso en un paciente eliminado
+     * (la restricción UNIQUE los incluye). Usa el índice de dni.
+     * 
+     * @param dni El DNI a buscar
+     * @return true si existe alguna fila con ese DNI
+     * @throws Exception Si ocurre un error durante la consulta
+     */
+    public boolean existeDni(String dni) throws Exception {
+        return Metricas.medir("PacienteDao.existeDni", () -> Shards.buscarPorDni(dni, shard -> {
+            try (Connection conn = DatabaseConnection.getConnectionPrimaria(shard);
+                 PreparedStatement pstmt = conn.prepareStatement(EXISTE_DNI_SQL)) {
+                pstmt.setString(1, dni);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? Boolean.TRUE : null;
+                }
+            }
+        }) != null);
+    }
+    
+    /**
+     * Igual que {@link #existeDni(String)} para varios DNIs, con una sola
+     * conexión por shard (los shards en paralelo) y consultas
+     * "WHERE dni IN (...)" en bloques de hasta TAMANIO_LISTA_IN DNIs.
+     * 
+     * @param dnis Los DNIs a buscar
+     * @return Los DNIs de la colección que ya están registrados
+     * @throws Exception Si ocurre un error durante la consulta
+     */
+    public Set<String> existenDnis(Collection<String> dnis) throws Exception {
+        return Metricas.medir("PacienteDao.existenDnis", () -> {
+            Set<String> registrados = new HashSet<>();
+            if (dnis.isEmpty()) {
+                return registrados;
+            }
+            for (Set<String> parte : Shards.enTodos(shard -> existenDnis(shard, dnis))) {
+                registrados.addAll(parte);
+            }
+            return registrados;
+        });
+    }
+    
+    private Set<String> existenDnis(int shard, Collection<String> dnis) throws Exception {
+        // La columna dni no distingue mayúsculas: lo que devuelve la base se
+        // compara con lo pedido sin distinguirlas
+        Map<String, List<String>> pedidos = new HashMap<>();
+        for (String dni : dnis) {
+            if (dni != null) {
+                pedidos.computeIfAbsent(normalizarDni(dni), k -> new ArrayList<>()).add(dni);
+            }
+        }
+        Set<String> registrados = new HashSet<>();
+        
+        // De la primaria: es una verificación antes de escribir, no debe leer
+        // una réplica atrasada ni abrir la ventana de lectura propia
+        try (Connection conn = DatabaseConnection.getConnectionPrimaria(shard)) {
+            for (List<String> bloque : ConsultaIn.dividir(dnis, TAMANIO_LISTA_IN)) {
+                int parametros = ConsultaIn.parametrosPara(bloque.size());
+                String sql = SELECT_DNIS_IN_SQL + ConsultaIn.marcadores(parametros) + ")";
+                
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    ConsultaIn.cargarTextos(pstmt, bloque, parametros);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            List<String> coincidentes = pedidos.get(normalizarDni(rs.getString(1)));
+                            if (coincidentes != null) {
+                                registrados.addAll(coincidentes);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return registrados;
+    }
+    
+    private static String normalizarDni(String dni) {
+        return dni.trim().toUpperCase(Locale.ROOT);
+    }
+    
+    /**
+     * Lee los DNIs de todos los pacientes, incluidos los eliminados, como un
+     * Stream (cursor del servidor)
+     * IMPORTANTE: cerrar el Stream (try-with-resources) para liberar la conexión
+     * 
+     * @return Stream de DNIs
+     * @throws Exception Si ocurre un error al abrir el cursor
+     */
+    public Stream<String> leerDnisStream() throws Exception {
+        return Metricas.medir("PacienteDao.leerDnisStream",
+                () -> Shards.concatenarEnTodos(
+                        shard -> ResultSetStream.abrir(shard, SELECT_DNIS_SQL, TAMANIO_FETCH, rs -> rs.getString(1))));
+    }
+    
+    /**
+     * Lee un paciente por su ID junto con su historia clínica activa (si existe)
+     * Usa un único LEFT JOIN en lugar de una segunda consulta por paciente
+     * 
+     * @param id El ID del paciente a buscar
+     * @return El paciente con su historia clínica cargada, o null si no existe
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    public Paciente leerConHistoria(Long id) throws Exception {
+        return Metricas.medir("PacienteDao.leerConHistoria", () -> leerConHistoria(id, false));
+    }
+    
+    /**
+     * Igual que leerConHistoria(id), pero de la base principal, nunca de una réplica
+     * Para releer el paciente después de un conflicto de versión
+     * 
+     * @param id El ID del paciente a buscar
+     * @return El paciente con su historia clínica cargada, o null si no existe
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    public Paciente leerConHistoriaDePrimaria(Long id) throws Exception {
+        return Metricas.medir("PacienteDao.leerConHistoriaDePrimaria", () -> leerConHistoria(id, true));
+    }
+    
+    private Paciente leerConHistoria(Long id, boolean dePrimaria) throws Exception {
         Connection conn = null;
         PreparedStatement pstmt = null;
+        ResultSet rs = null;
         
         try {
-            conn = DatabaseConnection.getConnection();
-            pstmt = conn.prepareStatement(DELETE_LOGICAL_SQL);
+            conn = conexionLectura(Shards.deId(id), dePrimaria);
+            pstmt = conn.prepareStatement(SELECT_BY_ID_CON_HISTORIA_SQL);
             pstmt.setLong(1, id);
-            
-            int affectedRows = pstmt.executeUpdate();
-            
-            if (affectedRows == 0) {
-                throw new Exception("Error al eliminar el paciente, no se encontró el registro.");
+        
+            rs = pstmt.executeQuery();
+        
+            if (rs.next()) {
+                return new PacienteConHistoriaRowMapper().mapRow(rs);
             }
-            
+        
+            return null;
+        
         } finally {
+            if (rs != null) rs.close();
             if (pstmt != null) pstmt.close();
             if (conn != null) conn.close();
         }
     }
     
     /**
-     * Busca un paciente por su DNI
-     * Método adicional específico de PacienteDao
+     * Lee todos los pacientes NO eliminados junto con sus historias clínicas activas
+     * Una sola consulta y una sola conexión (evita el problema N+1)
+     * 
+     * @return Lista de pacientes activos con su historia clínica (o null si no tienen)
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    public List<Paciente> leerTodosConHistoria() throws Exception {
+        return Metricas.medir("PacienteDao.leerTodosConHistoria",
+                () -> leerTodos(SELECT_ALL_CON_HISTORIA_SQL, SELECT_ALL_CON_HISTORIA_ORDERED_SQL,
+                        PacienteConHistoriaRowMapper::new));
+    }
+    
+    /**
+     * Busca un paciente por su DNI junto con su historia clínica activa (si existe)
      * 
      * @param dni El DNI del paciente a buscar
-     * @return El paciente encontrado, o null si no existe
+     * @return El paciente con su historia clínica cargada, o null si no existe
      * @throws Exception Si ocurre un error durante la búsqueda
      */
-    public Paciente buscarPorDni(String dni) throws Exception {
+    public Paciente buscarPorDniConHistoria(String dni) throws Exception {
+        return Metricas.medir("PacienteDao.buscarPorDniConHistoria", () -> Shards.buscarPorDni(dni,
+                shard -> buscarPorDni(shard, SELECT_BY_DNI_CON_HISTORIA_SQL, dni, new PacienteConHistoriaRowMapper())));
+    }
+    
+    /**
+     * Busca un paciente por DNI en un shard (parámetro: DNI)
+     */
+    private Paciente buscarPorDni(int shard, String sql, String dni, RowMapper<Paciente> mapper) throws Exception {
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
-            conn = DatabaseConnection.getConnection();
-            pstmt = conn.prepareStatement(SELECT_BY_DNI_SQL);
+            conn = DatabaseConnection.getConnectionLectura(shard);
+            pstmt = conn.prepareStatement(sql);
             pstmt.setString(1, dni);
             
             rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                return mapResultSetToPaciente(rs);
+                return mapper.mapRow(rs);
             }
             
             return null;
@@ -273,33 +820,124 @@ public class PacienteDao implements GenericDao<Paciente> {
     }
     
     /**
-     * Mapea un ResultSet a un objeto Paciente
-     * Método auxiliar privado
+     * Lee todos los pacientes NO eliminados con su historia clínica como un Stream
+     * IMPORTANTE: cerrar el Stream (try-with-resources) para liberar la conexión
      * 
-     * @param rs El ResultSet con los datos del paciente
-     * @return El objeto Paciente mapeado
-     * @throws Exception Si ocurre un error durante el mapeo
+     * @return Stream de pacientes activos con historia, ordenados por ID
+     * @throws Exception Si ocurre un error al abrir el cursor
      */
-    private Paciente mapResultSetToPaciente(ResultSet rs) throws Exception {
-        Paciente paciente = new Paciente();
-        
-        paciente.setId(rs.getLong("id"));
-        paciente.setNombre(rs.getString("nombre"));
-        paciente.setApellido(rs.getString("apellido"));
-        paciente.setDni(rs.getString("dni"));
-        
-        // Convertir java.sql.Date a LocalDate
-        Date fechaNacSQL = rs.getDate("fecha_nacimiento");
-        if (fechaNacSQL != null) {
-            paciente.setFechaNacimiento(fechaNacSQL.toLocalDate());
+    public Stream<Paciente> leerTodosConHistoriaStream() throws Exception {
+        // Se mide la apertura del cursor; el recorrido corre por cuenta de quien consume el stream
+        return Metricas.medir("PacienteDao.leerTodosConHistoriaStream", () -> {
+            return Shards.fusionarEnTodos(shard -> ResultSetStream.abrir(shard, SELECT_ALL_CON_HISTORIA_ORDERED_SQL,
+                    TAMANIO_FETCH, new PacienteConHistoriaRowMapper()), Paciente::getId);
+        });
+    }
+    
+    /**
+     * Lee una página de pacientes NO eliminados con su historia clínica (keyset)
+     * 
+     * @param despuesDeId El último ID de la página anterior (null para la primera)
+     * @param limite Cantidad máxima de pacientes
+     * @return La página de pacientes con historia, ordenada por ID
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    public List<Paciente> leerPaginaConHistoria(Long despuesDeId, int limite) throws Exception {
+        return Metricas.medir("PacienteDao.leerPaginaConHistoria",
+                () -> leerPagina(SELECT_PAGE_CON_HISTORIA_SQL, despuesDeId, limite, PacienteConHistoriaRowMapper::new));
+    }
+    
+    /**
+     * Lee una página de pacientes NO eliminados con el resumen de su historia
+     * clínica (keyset): la historia viene sin las columnas TEXT
+     * ({@code isDetalleCargado() == false})
+     * 
+     * @param despuesDeId El último ID de la página anterior (null para la primera)
+     * @param limite Cantidad máxima de pacientes
+     * @return La página de pacientes, ordenada por ID
+     * @throws Exception Si ocurre un error durante la lectura
+     */
+    public List<Paciente> leerPaginaConResumen(Long despuesDeId, int limite) throws Exception {
+        return Metricas.medir("PacienteDao.leerPaginaConResumen",
+                () -> leerPagina(SELECT_PAGE_CON_RESUMEN_SQL, despuesDeId, limite, () -> new PacienteConHistoriaRowMapper(false)));
+    }
+    
+    /**
+     * Lee todas las filas de una consulta sin parámetros. Con varios shards
+     * usa la variante ordenada por ID y fusiona los resultados
+     * 
+     * @param mapper Un RowMapper nuevo por shard (resuelven columnas por ResultSet)
+     */
+    private List<Paciente> leerTodos(String sql, String sqlOrdenado, Supplier<RowMapper<Paciente>> mapper) throws Exception {
+        if (Shards.cantidad() == 1) {
+            return leerTodos(0, sql, mapper.get());
         }
+        return Shards.fusionar(Shards.enTodos(shard -> leerTodos(shard, sqlOrdenado, mapper.get())),
+                Paciente::getId, Integer.MAX_VALUE);
+    }
+    
+    private List<Paciente> leerTodos(int shard, String sql, RowMapper<Paciente> mapper) throws Exception {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        List<Paciente> pacientes = new ArrayList<>();
         
-        paciente.setEliminado(rs.getBoolean("eliminado"));
-        
-        // Lazy loading: NO cargamos la HistoriaClinica aquí
-        // Si se necesita, debe cargarse explícitamente usando HistoriaClinicaDao
+        try {
+            conn = DatabaseConnection.getConnectionLectura(shard);
+            pstmt = conn.prepareStatement(sql);
+            rs = pstmt.executeQuery();
+            
+            // Los índices de las columnas se resuelven una sola vez (primera fila)
+            while (rs.next()) {
+                pacientes.add(mapper.mapRow(rs));
+            }
+            
+            return pacientes;
+            
+        } finally {
+            if (rs != null) rs.close();
+            if (pstmt != null) pstmt.close();
+            if (conn != null) conn.close();
+        }
+    }
+    
+    /**
+     * Ejecuta una consulta de paginación por clave (parámetros: último ID, límite)
+     * en todos los shards y fusiona las páginas: cada shard aporta a lo sumo
+     * {@code limite} filas, así que los primeros {@code limite} IDs del
+     * conjunto son la página global
+     */
+    private List<Paciente> leerPagina(String sql, Long despuesDeId, int limite, Supplier<RowMapper<Paciente>> mapper) throws Exception {
+        if (limite <= 0) {
+            throw new IllegalArgumentException("El límite de la página debe ser mayor a cero.");
+        }
+        return Shards.fusionar(Shards.enTodos(shard -> leerPagina(shard, sql, despuesDeId, limite, mapper.get())),
+                Paciente::getId, limite);
+    }
+    
+    private List<Paciente> leerPagina(int shard, String sql, Long despuesDeId, int limite, RowMapper<Paciente> mapper) throws Exception {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        List<Paciente> pacientes = new ArrayList<>(limite);
         
-        return paciente;
+        try {
+            conn = DatabaseConnection.getConnectionLectura(shard);
+            pstmt = conn.prepareStatement(sql);
+            pstmt.setLong(1, despuesDeId != null ? despuesDeId : 0L);
+            pstmt.setInt(2, limite);
+            rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                pacientes.add(mapper.mapRow(rs));
+            }
+            
+            return pacientes;
+            
+        } finally {
+            if (rs != null) rs.close();
+            if (pstmt != null) pstmt.close();
+            if (conn != null) conn.close();
+        }
     }
 }
-
@@ -0,0 +1,75 @@
+package Dao;
+
+import Models.Paciente;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Mapper de filas de la tabla paciente.
+ * 
+ * Resuelve la posición de cada columna una sola vez por ResultSet (la primera
+ * fila) y luego lee por índice, en lugar de buscar cada columna por nombre en
+ * todas las filas. La fecha se lee directamente como LocalDate, sin pasar por
+ * java.sql.Date.
+ * 
+ * Una instancia se usa para una consulta a la vez (no es thread-safe).
+ * 
+ * @author Grupo 49
+ */
+public final class PacienteRowMapper implements RowMapper<Paciente> {
+    
+    private final String prefijo;
+    
+    // ResultSet para el que se resolvieron los índices
+    private ResultSet enlazado;
+    private int colId;
+    private int colNombre;
+    private int colApellido;
+    private int colDni;
+    private int colFechaNacimiento;
+    private int colEliminado;
+    private int colVersion;
+    
+    public PacienteRowMapper() {
+        this("");
+    }
+    
+    /**
+     * @param prefijo Prefijo de los alias de las columnas (por ejemplo "p_"), o ""
+     */
+    public PacienteRowMapper(String prefijo) {
+        this.prefijo = prefijo;
+    }
+    
+    @Override
+    public Paciente mapRow(ResultSet rs) throws SQLException {
+        if (rs != enlazado) {
+            enlazar(rs);
+        }
+        
+        Paciente paciente = new Paciente();
+        paciente.setId(rs.getLong(colId));
+        paciente.setNombre(rs.getString(colNombre));
+        paciente.setApellido(rs.getString(colApellido));
+        paciente.setDni(rs.getString(colDni));
+        paciente.setFechaNacimiento(rs.getObject(colFechaNacimiento, LocalDate.class));
+        paciente.setEliminado(rs.getBoolean(colEliminado));
+        paciente.setVersion(rs.getLong(colVersion));
+        
+        // Lazy loading: NO cargamos la HistoriaClinica aquí
+        paciente.limpiarCambios();
+        return paciente;
+    }
+    
+    private void enlazar(ResultSet rs) throws SQLException {
+        colId = rs.findColumn(prefijo + "id");
+        colNombre = rs.findColumn(prefijo + "nombre");
+        colApellido = rs.findColumn(prefijo + "apellido");
+        colDni = rs.findColumn(prefijo + "dni");
+        colFechaNacimiento = rs.findColumn(prefijo + "fecha_nacimiento");
+        colEliminado = rs.findColumn(prefijo + "eliminado");
+        colVersion = rs.findColumn(prefijo + "version");
+        enlazado = rs;
+    }
+}
@@ -0,0 +1,113 @@
+package Dao;
+
+import Config.DatabaseConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Expone una consulta como un Stream que se lee fila por fila desde un
+ * cursor del servidor (forward-only, read-only, con fetch size), sin
+ * materializar el resultado completo en memoria.
+ * 
+ * El Stream retiene una conexión del pool hasta que se cierra, por lo que
+ * SIEMPRE debe usarse con try-with-resources:
+ * 
+ * <pre>
+ * try (Stream&lt;Paciente&gt; pacientes = pacienteDao.leerTodosStream()) {
+ *     pacientes.forEach(...);
+ * }
+ * </pre>
+ * 
+ * @author Grupo 49
+ */
+final class ResultSetStream {
+    
+    private ResultSetStream() {
+    }
+    
+    /**
+     * Ejecuta la consulta y devuelve sus filas como un Stream perezoso
+     * 
+     * @param sql La consulta SELECT a ejecutar (sin parámetros)
+     * @param fetchSize Cantidad de filas que el driver trae por viaje al servidor
+     * @param mapper Conversión de cada fila a entidad
+     * @return Stream que debe cerrarse para liberar cursor y conexión
+     * @throws SQLException Si ocurre un error al abrir el cursor
+     */
+    static <T> Stream<T> abrir(String sql, int fetchSize, RowMapper<T> mapper) throws SQLException {
+        return abrir(0, sql, fetchSize, mapper);
+    }
+    
+    /**
+     * Igual que {@link #abrir(String, int, RowMapper)}, en un shard (ver {@link Shards})
+     * 
+     * @param shard Shard donde se ejecuta la consulta
+     * @param sql La consulta SELECT a ejecutar (sin parámetros)
+     * @param fetchSize Cantidad de filas que el driver trae por viaje al servidor
+     * @param mapper Conversión de cada fila a entidad
+     * @return Stream que debe cerrarse para liberar cursor y conexión
+     * @throws SQLException Si ocurre un error al abrir el cursor
+     */
+    static <T> Stream<T> abrir(int shard, String sql, int fetchSize, RowMapper<T> mapper) throws SQLException {
+        Connection conn = DatabaseConnection.getConnectionLectura(shard);
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            rs = pstmt.executeQuery();
+            
+            final ResultSet cursor = rs;
+            final PreparedStatement statement = pstmt;
+            Spliterator<T> filas = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                    Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super T> action) {
+                    try {
+                        if (!cursor.next()) {
+                            return false;
+                        }
+                        action.accept(mapper.mapRow(cursor));
+                        return true;
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Error al leer la fila: " + e.getMessage(), e);
+                    }
+                }
+            };
+            
+            return StreamSupport.stream(filas, false).onClose(() -> cerrar(cursor, statement, conn));
+            
+        } catch (SQLException | RuntimeException e) {
+            cerrar(rs, pstmt, conn);
+            throw e;
+        }
+    }
+    
+    private static void cerrar(ResultSet rs, PreparedStatement pstmt, Connection conn) {
+        try {
+            if (rs != null) rs.close();
+        } catch (SQLException e) {
+            System.err.println("Error al cerrar el cursor: " + e.getMessage());
+        }
+        try {
+            if (pstmt != null) pstmt.close();
+        } catch (SQLException e) {
+            System.err.println("Error al cerrar la consulta: " + e.getMessage());
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            System.err.println("Error al devolver la conexión: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package Dao;
+
+import java.sql.ResultSet;
+
+/**
+ * Convierte la fila actual de un ResultSet en una entidad
+ * 
+ * @param <T> El tipo de entidad que produce el mapper
+ * @author Grupo 49
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+    
+    /**
+     * Mapea la fila en la que está posicionado el ResultSet
+     * (no debe llamar a rs.next())
+     * 
+     * @param rs El ResultSet posicionado en la fila a mapear
+     * @return La entidad mapeada
+     * @throws Exception Si ocurre un error durante el mapeo
+     */
+    T mapRow(ResultSet rs) throws Exception;
+}
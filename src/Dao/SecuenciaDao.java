@@ -0,0 +1,122 @@
+package Dao;
+
+import Config.DatabaseConnection;
+import Metrics.Metricas;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+
+/**
+ * DAO de la tabla secuencia: reserva rangos de valores consecutivos.
+ *
+ * Cada fila guarda el próximo valor libre de una secuencia. Reservar un
+ * bloque bloquea la fila (SELECT ... FOR UPDATE), la avanza y confirma en
+ * su propia transacción, así el rango queda reservado aunque la transacción
+ * que después use los valores haga rollback (los valores no se reutilizan;
+ * pueden quedar huecos).
+ *
+ * @author Grupo 49
+ */
+public class SecuenciaDao {
+
+    private static final String SELECT_FOR_UPDATE_SQL =
+        "SELECT proximo FROM secuencia WHERE nombre = ? FOR UPDATE";
+
+    private static final String UPDATE_SQL =
+        "UPDATE secuencia SET proximo = ? WHERE nombre = ?";
+
+    private static final String INSERT_SQL =
+        "INSERT INTO secuencia (nombre, proximo) VALUES (?, ?)";
+
+    /**
+     * Reserva {@code cantidad} valores consecutivos de una secuencia. Si la
+     * secuencia no existe, se crea empezando por el valor que devuelve
+     * {@code consultaInicial}.
+     *
+     * @param nombre Nombre de la secuencia
+     * @param cantidad Cantidad de valores a reservar
+     * @param consultaInicial Consulta de una fila y una columna con el primer
+     *        valor de una secuencia nueva (por ejemplo, el ID máximo + 1)
+     * @return el primer valor reservado; el rango es [valor, valor + cantidad)
+     * @throws Exception Si falla la reserva
+     */
+    public long reservar(String nombre, int cantidad, String consultaInicial) throws Exception {
+        return Metricas.medir("SecuenciaDao.reservar", () -> {
+            if (cantidad <= 0) {
+                throw new IllegalArgumentException("La cantidad a reservar debe ser mayor a cero.");
+            }
+            try {
+                return reservarEnTransaccion(nombre, cantidad, consultaInicial);
+            } catch (SQLIntegrityConstraintViolationException e) {
+                // Otro proceso creó la misma secuencia al mismo tiempo: ahora ya existe
+                return reservarEnTransaccion(nombre, cantidad, consultaInicial);
+            }
+        });
+    }
+
+    private long reservarEnTransaccion(String nombre, int cantidad, String consultaInicial) throws SQLException {
+        Connection conn = null;
+        try {
+            // Siempre la primaria (del shard 0), en una transacción corta y propia
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+
+            Long proximo = leerParaActualizar(conn, nombre);
+            long inicio;
+            if (proximo != null) {
+                inicio = proximo;
+                try (PreparedStatement pstmt = conn.prepareStatement(UPDATE_SQL)) {
+                    pstmt.setLong(1, inicio + cantidad);
+                    pstmt.setString(2, nombre);
+                    pstmt.executeUpdate();
+                }
+            } else {
+                inicio = valorInicial(conn, consultaInicial);
+                try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SQL)) {
+                    pstmt.setString(1, nombre);
+                    pstmt.setLong(2, inicio + cantidad);
+                    pstmt.executeUpdate();
+                }
+            }
+
+            conn.commit();
+            return inicio;
+        } catch (SQLException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    System.err.println("Error al hacer rollback: " + ex.getMessage());
+                }
+            }
+            throw e;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) {
+                    System.err.println("Error al cerrar la conexión: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static Long leerParaActualizar(Connection conn, String nombre) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(SELECT_FOR_UPDATE_SQL)) {
+            pstmt.setString(1, nombre);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+
+    private static long valorInicial(Connection conn, String consultaInicial) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(consultaInicial);
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? Math.max(1, rs.getLong(1)) : 1;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package Dao;
+
+import Models.HistoriaClinica;
+import Models.Paciente;
+
+/**
+ * Secuencias de la aplicación, compartidas por todos los DAOs y servicios
+ * del proceso.
+ *
+ * <ul>
+ *   <li>{@link #NRO_HISTORIA}: números de historia clínica ("HC-00000001"),
+ *       para no tener que escribirlos a mano.</li>
+ *   <li>{@link #PACIENTE_ID} y {@link #HISTORIA_ID}: con
+ *       {@code -Dclinica.secuencias.ids=true} los DAOs insertan con el ID ya
+ *       asignado en lugar de usar AUTO_INCREMENT, sin leer las claves
+ *       generadas. Solo se debe habilitar si todos los procesos que insertan
+ *       usan las secuencias: un INSERT con AUTO_INCREMENT puede tomar un ID
+ *       de un bloque ya reservado. Con varios shards (ver {@link Shards})
+ *       siempre se asignan en la aplicación, con el shard codificado en el
+ *       ID; la tabla secuencia vive en el shard 0.</li>
+ * </ul>
+ *
+ * Los valores se reservan de a {@code clinica.secuencias.bloque} (100).
+ *
+ * @author Grupo 49
+ */
+public final class Secuencias {
+
+    private static final int TAMANIO_BLOQUE = Integer.getInteger("clinica.secuencias.bloque", 100);
+
+    /**
+     * true si los IDs se asignan en la aplicación (ver {@link #asignarIds(Paciente)})
+     */
+    public static final boolean IDS = Boolean.getBoolean("clinica.secuencias.ids") || Shards.cantidad() > 1;
+
+    // Una secuencia nueva de IDs empieza después del mayor ID existente
+    public static final GeneradorSecuencia PACIENTE_ID = new GeneradorSecuencia(
+            "paciente_id", TAMANIO_BLOQUE, "SELECT COALESCE(MAX(id), 0) + 1 FROM paciente");
+
+    public static final GeneradorSecuencia HISTORIA_ID = new GeneradorSecuencia(
+            "historia_clinica_id", TAMANIO_BLOQUE, "SELECT COALESCE(MAX(id), 0) + 1 FROM historia_clinica");
+
+    public static final GeneradorSecuencia NRO_HISTORIA = new GeneradorSecuencia(
+            "nro_historia", TAMANIO_BLOQUE, "SELECT 1");
+
+    private Secuencias() {
+    }
+
+    /**
+     * @return un número de historia clínica nuevo, por ejemplo "HC-00000042"
+     * @throws Exception Si falla la reserva de un bloque
+     */
+    public static String siguienteNroHistoria() throws Exception {
+        return String.format("HC-%08d", NRO_HISTORIA.siguiente());
+    }
+
+    /**
+     * Asigna IDs al paciente y a su historia si no tienen y los IDs se
+     * asignan en la aplicación. Los servicios lo llaman antes de abrir la
+     * transacción, así la reserva de un bloque no ocurre con una conexión
+     * tomada.
+     *
+     * @param paciente Paciente a insertar (con o sin historia)
+     * @throws Exception Si falla la reserva de un bloque
+     */
+    public static void asignarIds(Paciente paciente) throws Exception {
+        if (!IDS) {
+            return;
+        }
+        if (paciente.getId() == null) {
+            paciente.setId(siguienteIdPaciente(paciente.getDni()));
+        }
+        if (paciente.getHistoriaClinica() != null) {
+            asignarId(paciente.getHistoriaClinica(), paciente.getId());
+        }
+    }
+
+    /**
+     * @param hc Historia a insertar
+     * @param pacienteId ID del paciente de la historia (la historia va en su shard)
+     * @throws Exception Si falla la reserva de un bloque
+     * @see #asignarIds(Paciente)
+     */
+    public static void asignarId(HistoriaClinica hc, long pacienteId) throws Exception {
+        if (IDS && hc.getId() == null) {
+            hc.setId(siguienteIdHistoria(pacienteId));
+        }
+    }
+
+    /**
+     * @param dni DNI del paciente nuevo
+     * @return un ID de paciente en el shard del DNI
+     * @throws Exception Si falla la reserva de un bloque
+     */
+    static long siguienteIdPaciente(String dni) throws Exception {
+        return Shards.componerId(PACIENTE_ID.siguiente(), Shards.deDni(dni));
+    }
+
+    /**
+     * @param pacienteId ID del paciente de la historia
+     * @return un ID de historia en el shard del paciente
+     * @throws Exception Si falla la reserva de un bloque
+     */
+    static long siguienteIdHistoria(long pacienteId) throws Exception {
+        return Shards.componerId(HISTORIA_ID.siguiente(), Shards.deId(pacienteId));
+    }
+}
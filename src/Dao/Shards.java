@@ -0,0 +1,364 @@
+package Dao;
+
+import Config.DatabaseConnection;
+import Models.Paciente;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reparto de pacientes e historias entre los shards (clinica.db.shards).
+ *
+ * Un paciente vive en el shard que le toca por un hash estable de su DNI al
+ * crearlo, y su historia clínica en el mismo shard, así el alta completa es
+ * una transacción de un solo shard. El shard queda codificado en los IDs:
+ * {@code id = secuencia * N + shard} (ver {@link Secuencias}), por lo que
+ * cualquier lectura por ID va directo a un shard sin consultar a los demás.
+ *
+ * Las lecturas sin clave (listados, páginas, streams) se hacen en todos los
+ * shards en paralelo y se fusionan ordenadas por ID.
+ *
+ * Con un solo shard (sin clinica.db.shards) todo va al shard 0 y los
+ * métodos de este tipo no agregan hilos ni consultas.
+ *
+ * @author Grupo 49
+ */
+public final class Shards {
+
+    private static final int CANTIDAD = DatabaseConnection.getCantidadShards();
+
+    // Una consulta por shard a la vez por cada lectura distribuida: hilos virtuales
+    private static final ExecutorService EJECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("clinica-shard-", 0).factory());
+
+    /**
+     * Consulta que se ejecuta en un shard.
+     */
+    @FunctionalInterface
+    public interface ConsultaShard<R> {
+        R ejecutar(int shard) throws Exception;
+    }
+
+    private Shards() {
+    }
+
+    public static int cantidad() {
+        return CANTIDAD;
+    }
+
+    /**
+     * @param id ID de un paciente o de una historia
+     * @return el shard donde está la fila
+     */
+    public static int deId(long id) {
+        return (int) Math.floorMod(id, (long) CANTIDAD);
+    }
+
+    /**
+     * Shard que le corresponde a un DNI (donde se crea un paciente nuevo).
+     * Sin espacios y en mayúsculas, igual que la comparación de la base.
+     *
+     * @param dni DNI del paciente
+     * @return el shard
+     */
+    public static int deDni(String dni) {
+        if (CANTIDAD == 1) {
+            return 0;
+        }
+        String normalizado = dni.trim().toUpperCase(Locale.ROOT);
+        long h = 0xcbf29ce484222325L; // FNV-1a: estable entre procesos y versiones de Java
+        for (int i = 0; i < normalizado.length(); i++) {
+            h = (h ^ normalizado.charAt(i)) * 0x100000001b3L;
+        }
+        return (int) Math.floorMod(h, (long) CANTIDAD);
+    }
+
+    /**
+     * @param paciente Paciente nuevo o existente
+     * @return el shard de su ID si ya tiene, o el de su DNI
+     */
+    public static int dePaciente(Paciente paciente) {
+        return paciente.getId() != null ? deId(paciente.getId()) : deDni(paciente.getDni());
+    }
+
+    /**
+     * @param secuencia Valor de la secuencia de IDs
+     * @param shard Shard donde se va a guardar la fila
+     * @return el ID, que cumple {@code deId(id) == shard}
+     */
+    static long componerId(long secuencia, int shard) {
+        return secuencia * CANTIDAD + shard;
+    }
+
+    // --- Distribución de consultas ---
+
+    /**
+     * Ejecuta la consulta en todos los shards, en paralelo si hay más de uno.
+     *
+     * @return los resultados, en el orden de los shards
+     * @throws Exception La primera excepción de algún shard
+     */
+    public static <R> List<R> enTodos(ConsultaShard<R> consulta) throws Exception {
+        List<Integer> todos = new ArrayList<>(CANTIDAD);
+        for (int shard = 0; shard < CANTIDAD; shard++) {
+            todos.add(shard);
+        }
+        return en(todos, consulta);
+    }
+
+    /**
+     * Ejecuta la consulta en los shards indicados, en paralelo si son más de uno.
+     *
+     * @return los resultados, en el orden de {@code shards}
+     * @throws Exception La primera excepción de algún shard
+     */
+    public static <R> List<R> en(Collection<Integer> shards, ConsultaShard<R> consulta) throws Exception {
+        List<R> resultados = new ArrayList<>(shards.size());
+        if (shards.size() == 1) {
+            resultados.add(consulta.ejecutar(shards.iterator().next()));
+            return resultados;
+        }
+        List<Future<R>> futuros = new ArrayList<>(shards.size());
+        // Las consultas respetan la ventana de lectura propia de quien las pide
+        DatabaseConnection.LecturaPropia lecturaPropia = DatabaseConnection.getLecturaPropia();
+        for (int shard : shards) {
+            futuros.add(EJECUTOR.submit(() -> {
+                DatabaseConnection.usarLecturaPropia(lecturaPropia);
+                return consulta.ejecutar(shard);
+            }));
+        }
+        Exception error = null;
+        for (Future<R> futuro : futuros) {
+            try {
+                resultados.add(futuro.get());
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+                resultados.add(null);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return resultados;
+    }
+
+    /**
+     * Agrupa claves por shard, conservando el orden dentro de cada grupo.
+     */
+    public static <K> Map<Integer, List<K>> agrupar(Collection<K> claves, ToIntFunction<K> shardDe) {
+        Map<Integer, List<K>> grupos = new LinkedHashMap<>();
+        for (K clave : claves) {
+            grupos.computeIfAbsent(shardDe.applyAsInt(clave), s -> new ArrayList<>()).add(clave);
+        }
+        return grupos;
+    }
+
+    // --- Fusión ordenada ---
+
+    /**
+     * Fusiona listas ordenadas por ID en una sola lista ordenada.
+     *
+     * @param partes Una lista por shard, cada una ordenada por ID
+     * @param id ID de cada elemento
+     * @param limite Cantidad máxima de elementos del resultado
+     * @return los primeros {@code limite} elementos en orden de ID
+     */
+    public static <T> List<T> fusionar(List<List<T>> partes, ToLongFunction<T> id, int limite) {
+        if (partes.size() == 1) {
+            List<T> unica = partes.get(0);
+            return unica.size() <= limite ? unica : new ArrayList<>(unica.subList(0, limite));
+        }
+        List<Iterator<T>> iteradores = new ArrayList<>(partes.size());
+        int total = 0;
+        for (List<T> parte : partes) {
+            iteradores.add(parte.iterator());
+            total += parte.size();
+        }
+        List<T> resultado = new ArrayList<>(Math.min(total, limite));
+        Iterator<T> fusion = new Fusion<>(iteradores, id);
+        while (resultado.size() < limite && fusion.hasNext()) {
+            resultado.add(fusion.next());
+        }
+        return resultado;
+    }
+
+    /**
+     * Fusiona streams ordenados por ID en un stream ordenado, sin
+     * materializarlos. Cerrar el stream resultante cierra todos.
+     *
+     * @param streams Un stream por shard, cada uno ordenado por ID
+     * @param id ID de cada elemento
+     * @return el stream fusionado
+     */
+    public static <T> Stream<T> fusionar(List<Stream<T>> streams, ToLongFunction<T> id) {
+        if (streams.size() == 1) {
+            return streams.get(0);
+        }
+        List<Iterator<T>> iteradores = new ArrayList<>(streams.size());
+        for (Stream<T> stream : streams) {
+            iteradores.add(stream.iterator());
+        }
+        Spliterator<T> fusion = Spliterators.spliteratorUnknownSize(new Fusion<>(iteradores, id),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(fusion, false).onClose(() -> cerrarTodos(streams));
+    }
+
+    /**
+     * Abre un stream en cada shard (en paralelo) y los fusiona por ID.
+     *
+     * @param abrir Apertura del stream en un shard, ordenado por ID
+     * @param id ID de cada elemento
+     * @return el stream fusionado, que hay que cerrar
+     * @throws Exception Si falla la apertura en algún shard
+     */
+    public static <T> Stream<T> fusionarEnTodos(ConsultaShard<Stream<T>> abrir, ToLongFunction<T> id) throws Exception {
+        if (CANTIDAD == 1) {
+            return abrir.ejecutar(0);
+        }
+        return fusionar(abrirEnTodos(abrir), id);
+    }
+
+    /**
+     * Abre un stream en cada shard (en paralelo) y los concatena, sin orden
+     * entre shards. Cerrar el stream resultante cierra todos.
+     *
+     * @param abrir Apertura del stream en un shard
+     * @return el stream concatenado, que hay que cerrar
+     * @throws Exception Si falla la apertura en algún shard
+     */
+    public static <T> Stream<T> concatenarEnTodos(ConsultaShard<Stream<T>> abrir) throws Exception {
+        if (CANTIDAD == 1) {
+            return abrir.ejecutar(0);
+        }
+        List<Stream<T>> streams = abrirEnTodos(abrir);
+        return streams.stream().flatMap(s -> s).onClose(() -> cerrarTodos(streams));
+    }
+
+    /**
+     * Si alguno falla al abrirse, cierra los que ya se abrieron
+     */
+    private static <T> List<Stream<T>> abrirEnTodos(ConsultaShard<Stream<T>> abrir) throws Exception {
+        List<Stream<T>> abiertos = Collections.synchronizedList(new ArrayList<>(CANTIDAD));
+        try {
+            return enTodos(shard -> {
+                Stream<T> stream = abrir.ejecutar(shard);
+                abiertos.add(stream);
+                return stream;
+            });
+        } catch (Exception e) {
+            cerrarTodos(abiertos);
+            throw e;
+        }
+    }
+
+    /**
+     * Busca primero en el shard del DNI y, si no lo encuentra, en los demás:
+     * un paciente queda en el shard donde se creó aunque después le cambien
+     * el DNI.
+     *
+     * @param dni DNI buscado
+     * @param consulta Búsqueda en un shard (null si no lo encuentra)
+     * @return el primer resultado no nulo, o null
+     * @throws Exception Si falla la búsqueda en algún shard
+     */
+    public static <R> R buscarPorDni(String dni, ConsultaShard<R> consulta) throws Exception {
+        int propio = deDni(dni);
+        R encontrado = consulta.ejecutar(propio);
+        if (encontrado != null || CANTIDAD == 1) {
+            return encontrado;
+        }
+        List<Integer> otros = new ArrayList<>(CANTIDAD - 1);
+        for (int shard = 0; shard < CANTIDAD; shard++) {
+            if (shard != propio) {
+                otros.add(shard);
+            }
+        }
+        for (R resultado : en(otros, consulta)) {
+            if (resultado != null) {
+                return resultado;
+            }
+        }
+        return null;
+    }
+
+    private static <T> void cerrarTodos(List<Stream<T>> streams) {
+        for (Stream<T> stream : new ArrayList<>(streams)) {
+            try {
+                stream.close();
+            } catch (RuntimeException e) {
+                System.err.println("Error al cerrar el stream de un shard: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fusión de k iteradores ordenados con una cola de prioridad por ID
+     */
+    private static final class Fusion<T> implements Iterator<T> {
+        private final PriorityQueue<Cabeza<T>> cola;
+
+        private Fusion(List<Iterator<T>> iteradores, ToLongFunction<T> id) {
+            this.cola = new PriorityQueue<>(Math.max(1, iteradores.size()),
+                    Comparator.comparingLong(c -> c.id));
+            for (Iterator<T> it : iteradores) {
+                avanzar(new Cabeza<>(it, id));
+            }
+        }
+
+        private void avanzar(Cabeza<T> cabeza) {
+            if (cabeza.it.hasNext()) {
+                cabeza.actual = cabeza.it.next();
+                cabeza.id = cabeza.obtenerId.applyAsLong(cabeza.actual);
+                cola.add(cabeza);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !cola.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            Cabeza<T> cabeza = cola.poll();
+            if (cabeza == null) {
+                throw new NoSuchElementException();
+            }
+            T elemento = cabeza.actual;
+            avanzar(cabeza);
+            return elemento;
+        }
+    }
+
+    private static final class Cabeza<T> {
+        private final Iterator<T> it;
+        private final ToLongFunction<T> obtenerId;
+        private T actual;
+        private long id;
+
+        private Cabeza(Iterator<T> it, ToLongFunction<T> obtenerId) {
+            this.it = it;
+            this.obtenerId = obtenerId;
+        }
+    }
+}
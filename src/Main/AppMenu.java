@@ -2,14 +2,26 @@ package Main;
 
 import Models.HistoriaClinica;
 import Models.HistoriaClinica.GrupoSanguineo;
+import Models.HistoriaClinicaResumen;
 import Models.Paciente;
+import Config.DatabaseConnection;
+import Metrics.RegistroMetricas;
+import Metrics.ServidorMetricas;
 import Service.GenericService.ServiceException;
+import Service.ExportadorPacientes;
 import Service.HistoriaClinicaService;
+import Service.ImportadorCsv;
+import Service.IndiceTextoClinico;
 import Service.PacienteService;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Locale;
 import java.util.Scanner;
 
@@ -29,6 +41,9 @@ public class AppMenu {
 
     private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
+    // Los listados se traen de a páginas para no cargar la tabla completa
+    private static final int TAMANIO_PAGINA = 50;
+
     public AppMenu() {
         this.scanner = new Scanner(System.in);
         this.pacienteService = new PacienteService();
@@ -75,6 +90,21 @@ public class AppMenu {
                     case "11":
                         eliminarHistoriaClinica();
                         break;
+                    case "12":
+                        mostrarMetricas();
+                        break;
+                    case "13":
+                        importarPacientesCsv();
+                        break;
+                    case "14":
+                        exportarPacientes();
+                        break;
+                    case "15":
+                        buscarHistoriasPorTexto();
+                        break;
+                    case "16":
+                        buscarPacientesPorNombre();
+                        break;
                     case "0":
                         salir = true;
                         System.out.println("\n¡Gracias por usar el sistema!");
@@ -102,6 +132,7 @@ public class AppMenu {
         System.out.println(" 4) Actualizar paciente");
         System.out.println(" 5) Eliminar paciente (lógico)");
         System.out.println(" 6) Buscar paciente por DNI");
+        System.out.println("16) Buscar paciente por nombre / apellido");
         System.out.println("----------------------------------------------");
         System.out.println("Historias Clínicas (B)");
         System.out.println(" 7) Crear historia clínica para paciente");
@@ -109,6 +140,12 @@ public class AppMenu {
         System.out.println(" 9) Buscar historia clínica por ID");
         System.out.println("10) Actualizar historia clínica");
         System.out.println("11) Eliminar historia clínica (lógico)");
+        System.out.println("15) Buscar en antecedentes / medicación");
+        System.out.println("----------------------------------------------");
+        System.out.println("Sistema (C)");
+        System.out.println("12) Ver métricas de rendimiento");
+        System.out.println("13) Importar pacientes desde CSV");
+        System.out.println("14) Exportar pacientes (CSV / JSON Lines)");
         System.out.println("----------------------------------------------");
         System.out.println(" 0) Salir");
         System.out.println("==============================================");
@@ -127,13 +164,19 @@ public class AppMenu {
 
     private void listarPacientes() throws ServiceException {
         System.out.println("\n--- Listado de Pacientes ---");
-        List<Paciente> pacientes = pacienteService.getAllConHistoria();
-        if (pacientes.isEmpty()) {
+        Long ultimoId = null;
+        boolean hayRegistros = false;
+        List<Paciente> pagina;
+        do {
+            pagina = pacienteService.getPaginaConResumen(ultimoId, TAMANIO_PAGINA);
+            for (Paciente p : pagina) {
+                System.out.println(formatearPaciente(p));
+                ultimoId = p.getId();
+                hayRegistros = true;
+            }
+        } while (pagina.size() == TAMANIO_PAGINA);
+        if (!hayRegistros) {
             System.out.println("No hay pacientes registrados.");
-            return;
-        }
-        for (Paciente p : pacientes) {
-            System.out.println(formatearPaciente(p));
         }
     }
 
@@ -188,7 +231,10 @@ public class AppMenu {
             }
         }
 
-        pacienteService.actualizar(paciente);
+        // Si otro usuario lo modificó mientras tanto, se combinan los cambios
+        if (pacienteService.actualizarFusionando(paciente) != paciente) {
+            System.out.println("ℹ️  El paciente se modificó en otra sesión; se combinaron los cambios.");
+        }
         System.out.println("✅ Paciente actualizado correctamente.");
     }
 
@@ -210,6 +256,29 @@ public class AppMenu {
         }
     }
 
+    private void buscarPacientesPorNombre() throws ServiceException {
+        System.out.println("\n--- Buscar Paciente por Nombre / Apellido ---");
+        String consulta = leerNoVacio("Nombre y/o apellido (se aceptan prefijos y errores de tipeo): ");
+        int pagina = 0;
+        while (true) {
+            long inicio = System.nanoTime();
+            List<Paciente> pacientes = pacienteService.buscarPorNombre(consulta, pagina, TAMANIO_PAGINA);
+            long micros = (System.nanoTime() - inicio) / 1_000;
+            if (pacientes.isEmpty()) {
+                System.out.println(pagina == 0 ? "No se encontraron pacientes." : "No hay más resultados.");
+                return;
+            }
+            for (Paciente p : pacientes) {
+                System.out.println(formatearPaciente(p));
+            }
+            System.out.printf("Página %d (%.1f ms)%n", pagina + 1, micros / 1000.0);
+            if (pacientes.size() < TAMANIO_PAGINA || !"S".equalsIgnoreCase(leerLinea("¿Ver más? (S/N): "))) {
+                return;
+            }
+            pagina++;
+        }
+    }
+
     // ===================== HISTORIAS CLÍNICAS =====================
     private void crearHistoriaClinicaParaPaciente() throws ServiceException {
         System.out.println("\n--- Crear Historia Clínica para Paciente ---");
@@ -232,13 +301,20 @@ public class AppMenu {
 
     private void listarHistoriasClinicas() throws ServiceException {
         System.out.println("\n--- Listado de Historias Clínicas ---");
-        List<HistoriaClinica> historias = historiaClinicaService.getAll();
-        if (historias.isEmpty()) {
+        Long ultimoId = null;
+        boolean hayRegistros = false;
+        List<HistoriaClinicaResumen> pagina;
+        do {
+            // Resumen: las columnas TEXT se leen solo al abrir una historia por ID
+            pagina = historiaClinicaService.getPaginaResumen(ultimoId, TAMANIO_PAGINA);
+            for (HistoriaClinicaResumen hc : pagina) {
+                System.out.println(formatearResumen(hc));
+                ultimoId = hc.getId();
+                hayRegistros = true;
+            }
+        } while (pagina.size() == TAMANIO_PAGINA);
+        if (!hayRegistros) {
             System.out.println("No hay historias clínicas registradas.");
-            return;
-        }
-        for (HistoriaClinica hc : historias) {
-            System.out.println(formatearHistoria(hc));
         }
     }
 
@@ -250,9 +326,36 @@ public class AppMenu {
             System.out.println("⚠️  No se encontró una historia clínica con ese ID.");
         } else {
             System.out.println(formatearHistoria(hc));
+            System.out.println("  Antecedentes: " + nuloSiVacio(hc.getAntecedentes()));
+            System.out.println("  Medicación actual: " + nuloSiVacio(hc.getMedicacionActual()));
+            System.out.println("  Observaciones: " + nuloSiVacio(hc.getObservaciones()));
         }
     }
 
+    private void buscarHistoriasPorTexto() throws ServiceException {
+        System.out.println("\n--- Buscar en Antecedentes / Medicación ---");
+        String consulta = leerNoVacio("Palabras a buscar (ej. enalapril hipertensión): ");
+        long inicio = System.nanoTime();
+        List<IndiceTextoClinico.Resultado> resultados = historiaClinicaService.buscarPorTexto(consulta, TAMANIO_PAGINA);
+        long micros = (System.nanoTime() - inicio) / 1_000;
+        if (resultados.isEmpty()) {
+            System.out.println("No se encontraron historias clínicas.");
+            return;
+        }
+
+        List<Long> pacienteIds = new ArrayList<>(resultados.size());
+        for (IndiceTextoClinico.Resultado r : resultados) {
+            pacienteIds.add(r.getPacienteId());
+        }
+        Map<Long, Paciente> pacientes = pacienteService.getByIdsConHistoria(pacienteIds);
+        for (IndiceTextoClinico.Resultado r : resultados) {
+            Paciente p = pacientes.get(r.getPacienteId());
+            System.out.printf("[%.2f] HC %d | %s%n", r.getPuntaje(), r.getHistoriaId(),
+                    p != null ? formatearPaciente(p) : "PacienteID: " + r.getPacienteId());
+        }
+        System.out.printf("%d resultado(s) en %.1f ms%n", resultados.size(), micros / 1000.0);
+    }
+
     private void actualizarHistoriaClinica() throws ServiceException {
         System.out.println("\n--- Actualizar Historia Clínica ---");
         Long id = leerLong("Ingrese el ID de la historia clínica: ");
@@ -263,7 +366,9 @@ public class AppMenu {
         }
 
         actualizarHistoriaExistente(hc);
-        historiaClinicaService.actualizar(hc);
+        if (historiaClinicaService.actualizarFusionando(hc) != hc) {
+            System.out.println("ℹ️  La historia clínica se modificó en otra sesión; se combinaron los cambios.");
+        }
         System.out.println("✅ Historia clínica actualizada.");
     }
 
@@ -274,6 +379,57 @@ public class AppMenu {
         System.out.println("✅ Historia clínica eliminada (lógicamente).");
     }
 
+    // ===================== SISTEMA =====================
+    private void mostrarMetricas() {
+        System.out.println("\n--- Métricas de Rendimiento ---");
+        System.out.print(RegistroMetricas.getInstance().volcar());
+        System.out.println(DatabaseConnection.getPoolStats());
+        System.out.println(DatabaseConnection.getStatementCacheStats());
+        String replicas = DatabaseConnection.getReplicaStats();
+        if (replicas != null) {
+            System.out.println(replicas);
+        }
+        String shards = DatabaseConnection.getShardStats();
+        if (shards != null) {
+            System.out.println(shards);
+        }
+        System.out.println(pacienteService.getEstadisticasCacheDni());
+        pacienteService.getEstadisticasCacheEntidades().forEach(System.out::println);
+        String url = ServidorMetricas.getUrl();
+        if (url != null) {
+            System.out.println("Endpoint Prometheus: " + url);
+        }
+    }
+
+    private void importarPacientesCsv() throws ServiceException {
+        System.out.println("\n--- Importar Pacientes desde CSV ---");
+        System.out.println("Columnas: " + String.join(",", ImportadorCsv.COLUMNAS));
+        Path archivo = Paths.get(leerNoVacio("Ruta del archivo CSV: ").trim());
+        if (!Files.isRegularFile(archivo)) {
+            System.out.println("⚠️  No existe el archivo " + archivo);
+            return;
+        }
+        if (Files.exists(ImportadorCsv.archivoCheckpoint(archivo))) {
+            System.out.println("Se encontró un checkpoint: la importación continúa donde quedó.");
+        }
+        ImportadorCsv importador = new ImportadorCsv(pacienteService);
+        ImportadorCsv.Progreso resultado = importador.importar(archivo, p -> System.out.println("  " + p));
+        System.out.println("✅ Importación finalizada: " + resultado.getImportados() + " importados, "
+                + resultado.getRechazados() + " rechazados.");
+        if (resultado.getRechazados() > 0) {
+            System.out.println("Filas rechazadas en: " + ImportadorCsv.archivoRechazos(archivo));
+        }
+    }
+
+    private void exportarPacientes() throws ServiceException {
+        System.out.println("\n--- Exportar Pacientes con Historia Clínica ---");
+        System.out.println("Formatos: .csv, .jsonl (agregar .gz para comprimir)");
+        Path archivo = Paths.get(leerNoVacio("Archivo de destino: ").trim());
+        ExportadorPacientes.Progreso resultado = new ExportadorPacientes(pacienteService)
+                .exportar(archivo, p -> System.out.println("  " + p));
+        System.out.println("✅ Exportados " + resultado.getFilas() + " pacientes a " + archivo);
+    }
+
     // ===================== HELPER METHODS =====================
     private Paciente solicitarDatosPaciente(Paciente existente) {
         Paciente paciente = existente != null ? existente : new Paciente();
@@ -285,9 +441,15 @@ public class AppMenu {
         return paciente;
     }
 
-    private HistoriaClinica solicitarDatosHistoria(HistoriaClinica existente) {
+    private HistoriaClinica solicitarDatosHistoria(HistoriaClinica existente) throws ServiceException {
         HistoriaClinica hc = existente != null ? existente : new HistoriaClinica();
-        hc.setNroHistoria(leerNoVacio("Número de historia clínica: ").toUpperCase(Locale.ROOT));
+        // Vacío: se genera uno que no choca con otras altas concurrentes
+        String nro = leerLinea("Número de historia clínica (vacío para generarlo): ").trim();
+        if (nro.isEmpty()) {
+            nro = historiaClinicaService.generarNroHistoria();
+            System.out.println("Número asignado: " + nro);
+        }
+        hc.setNroHistoria(nro.toUpperCase(Locale.ROOT));
         hc.setGrupoSanguineo(seleccionarGrupoSanguineo());
         hc.setAntecedentes(leerLinea("Antecedentes: "));
         hc.setMedicacionActual(leerLinea("Medicación actual: "));
@@ -357,6 +519,14 @@ public class AppMenu {
                 + " | Estado: " + estado;
     }
 
+    private String formatearResumen(HistoriaClinicaResumen hc) {
+        return "ID: " + hc.getId()
+                + " | Nro: " + hc.getNroHistoria()
+                + " | Grupo: " + hc.getGrupoSanguineo()
+                + " | PacienteID: " + (hc.getPacienteId() != null ? hc.getPacienteId() : "N/D")
+                + " | Estado: ACTIVA";
+    }
+
     private String leerLinea(String mensaje) {
         System.out.print(mensaje);
         return scanner.nextLine();
@@ -1,6 +1,11 @@
 package Main;
 
 import Config.DatabaseConnection;
+import Metrics.ServidorMetricas;
+import Service.EjecutorAsincrono;
+import Service.GenericService.ServiceException;
+import Service.HistoriaClinicaService;
+import Service.PacienteService;
 
 /**
  * Punto de entrada de la aplicación.
@@ -23,9 +28,58 @@ public class MainApp {
             return;
         }
 
+        // Endpoint de métricas (solo si se configuró -Dclinica.metrics.port)
+        if (ServidorMetricas.iniciar()) {
+            System.out.println("✓ Métricas disponibles en " + ServidorMetricas.getUrl());
+        }
+
+        // Índice de texto de historias clínicas (se puede omitir con -Dclinica.indiceTexto=false;
+        // en ese caso se construye en la primera búsqueda)
+        if (Boolean.parseBoolean(System.getProperty("clinica.indiceTexto", "true"))) {
+            try {
+                long inicio = System.nanoTime();
+                int historias = new HistoriaClinicaService().construirIndiceTexto();
+                System.out.printf("✓ Índice de texto listo: %d historias en %d ms%n",
+                        historias, (System.nanoTime() - inicio) / 1_000_000);
+            } catch (ServiceException e) {
+                System.err.println("✗ No se pudo construir el índice de texto: " + e.getMessage());
+            }
+        }
+
+        // Índice de nombres para la búsqueda de pacientes (-Dclinica.indiceNombres=false lo difiere)
+        if (Boolean.parseBoolean(System.getProperty("clinica.indiceNombres", "true"))) {
+            try {
+                long inicio = System.nanoTime();
+                int pacientes = new PacienteService().construirIndiceNombres();
+                System.out.printf("✓ Índice de nombres listo: %d pacientes en %d ms%n",
+                        pacientes, (System.nanoTime() - inicio) / 1_000_000);
+            } catch (ServiceException e) {
+                System.err.println("✗ No se pudo construir el índice de nombres: " + e.getMessage());
+            }
+        }
+
+        // Filtro de DNIs registrados para rechazar duplicados antes de insertar
+        // (-Dclinica.filtroDni=false lo desactiva: los duplicados los detecta el UNIQUE)
+        if (Boolean.parseBoolean(System.getProperty("clinica.filtroDni", "true"))) {
+            try {
+                long inicio = System.nanoTime();
+                int dnis = new PacienteService().construirFiltroDni();
+                System.out.printf("✓ Filtro de DNI listo: %d DNIs en %d ms%n",
+                        dnis, (System.nanoTime() - inicio) / 1_000_000);
+            } catch (ServiceException e) {
+                System.err.println("✗ No se pudo construir el filtro de DNI: " + e.getMessage());
+            }
+        }
+
         System.out.println("✓ Conexión exitosa. Iniciando menú interactivo...\n");
         AppMenu menu = new AppMenu();
         menu.start();
+
+        // Liberar las conexiones del pool al salir
+        EjecutorAsincrono.cerrar();
+        PacienteService.cerrarCommitAgrupado();
+        ServidorMetricas.detener();
+        DatabaseConnection.shutdown();
     }
 }
 
@@ -0,0 +1,167 @@
+package Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias de una operación, seguro para varios hilos.
+ *
+ * Las duraciones (en nanosegundos) se cuentan en cubetas logarítmicas: cada
+ * potencia de 2 se divide en 16 sub-cubetas, así el error relativo de un
+ * percentil es menor al 7% sin guardar cada muestra. Registrar una muestra es
+ * O(1) y no bloquea.
+ *
+ * @author Grupo 49
+ */
+public final class Histograma {
+
+    private static final int BITS_SUBCUBETA = 4;
+    private static final int SUBCUBETAS = 1 << BITS_SUBCUBETA;
+    // Hasta 2^42 ns (~73 minutos); las duraciones mayores caen en la última cubeta
+    private static final int MAX_EXPONENTE = 42;
+    // 16 cubetas exactas para 0..15 ns y 16 sub-cubetas por cada exponente de 4 a MAX_EXPONENTE
+    private static final int CUBETAS = (MAX_EXPONENTE - BITS_SUBCUBETA + 2) * SUBCUBETAS;
+
+    private final String nombre;
+    private final AtomicLongArray cubetas = new AtomicLongArray(CUBETAS);
+    private final LongAdder llamadas = new LongAdder();
+    private final LongAdder errores = new LongAdder();
+    private final LongAdder sumaNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    Histograma(String nombre) {
+        this.nombre = nombre;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    /**
+     * Registra una llamada.
+     *
+     * @param nanos duración de la llamada
+     * @param error true si la llamada terminó con una excepción
+     */
+    public void registrar(long nanos, boolean error) {
+        long valor = Math.max(0, nanos);
+        cubetas.incrementAndGet(indice(valor));
+        llamadas.increment();
+        sumaNanos.add(valor);
+        if (error) {
+            errores.increment();
+        }
+        long actual = maxNanos.get();
+        while (valor > actual && !maxNanos.compareAndSet(actual, valor)) {
+            actual = maxNanos.get();
+        }
+    }
+
+    /**
+     * @return instantánea de los contadores y percentiles
+     */
+    public Instantanea getInstantanea() {
+        long[] copia = new long[CUBETAS];
+        long total = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            copia[i] = cubetas.get(i);
+            total += copia[i];
+        }
+        long max = maxNanos.get();
+        return new Instantanea(nombre, llamadas.sum(), errores.sum(), sumaNanos.sum(), max,
+                percentil(copia, total, 0.50, max), percentil(copia, total, 0.99, max));
+    }
+
+    static int indice(long valor) {
+        if (valor < SUBCUBETAS) {
+            return (int) valor;
+        }
+        int exponente = 63 - Long.numberOfLeadingZeros(valor);
+        if (exponente > MAX_EXPONENTE) {
+            return CUBETAS - 1;
+        }
+        int sub = (int) (valor >>> (exponente - BITS_SUBCUBETA)) & (SUBCUBETAS - 1);
+        return (exponente - BITS_SUBCUBETA + 1) * SUBCUBETAS + sub;
+    }
+
+    /**
+     * @return el mayor valor que cae en la cubeta
+     */
+    static long limiteSuperior(int indice) {
+        if (indice < SUBCUBETAS) {
+            return indice;
+        }
+        int exponente = indice / SUBCUBETAS + BITS_SUBCUBETA - 1;
+        long sub = indice % SUBCUBETAS;
+        long ancho = 1L << (exponente - BITS_SUBCUBETA);
+        return ((SUBCUBETAS + sub) << (exponente - BITS_SUBCUBETA)) + ancho - 1;
+    }
+
+    private static long percentil(long[] cubetas, long total, double cuantil, long max) {
+        if (total == 0) {
+            return 0;
+        }
+        long rango = (long) Math.ceil(cuantil * total);
+        long acumulado = 0;
+        for (int i = 0; i < cubetas.length; i++) {
+            acumulado += cubetas[i];
+            if (acumulado >= rango) {
+                return Math.min(limiteSuperior(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Valores de un histograma en un momento dado (los tiempos en nanosegundos).
+     */
+    public static final class Instantanea {
+        private final String nombre;
+        private final long llamadas;
+        private final long errores;
+        private final long sumaNanos;
+        private final long maxNanos;
+        private final long p50Nanos;
+        private final long p99Nanos;
+
+        private Instantanea(String nombre, long llamadas, long errores, long sumaNanos, long maxNanos,
+                long p50Nanos, long p99Nanos) {
+            this.nombre = nombre;
+            this.llamadas = llamadas;
+            this.errores = errores;
+            this.sumaNanos = sumaNanos;
+            this.maxNanos = maxNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+
+        public long getLlamadas() {
+            return llamadas;
+        }
+
+        public long getErrores() {
+            return errores;
+        }
+
+        public long getSumaNanos() {
+            return sumaNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+    }
+}
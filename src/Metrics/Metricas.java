@@ -0,0 +1,74 @@
+package Metrics;
+
+/**
+ * Punto de entrada de la instrumentación de DAOs y servicios.
+ *
+ * Cada método público envuelve su cuerpo en {@link #medir} (o
+ * {@link #ejecutar} si no devuelve nada) con el nombre "Clase.metodo": se
+ * registra la duración en el histograma de esa operación y, si la llamada
+ * termina con una excepción, también cuenta como error. La excepción se
+ * propaga sin cambios.
+ *
+ * @author Grupo 49
+ */
+public final class Metricas {
+
+    private static final RegistroMetricas REGISTRO = RegistroMetricas.getInstance();
+
+    private Metricas() {
+    }
+
+    /**
+     * Operación medida que devuelve un resultado.
+     */
+    @FunctionalInterface
+    public interface Operacion<T, E extends Exception> {
+        T ejecutar() throws E;
+    }
+
+    /**
+     * Operación medida sin resultado.
+     */
+    @FunctionalInterface
+    public interface Accion<E extends Exception> {
+        void ejecutar() throws E;
+    }
+
+    /**
+     * Ejecuta y mide una operación.
+     *
+     * @param nombre nombre de la operación (por ejemplo "PacienteDao.leer")
+     * @param operacion cuerpo de la operación
+     * @return lo que devuelve la operación
+     * @throws E la excepción de la operación, sin cambios
+     */
+    public static <T, E extends Exception> T medir(String nombre, Operacion<T, E> operacion) throws E {
+        long inicio = System.nanoTime();
+        boolean error = true;
+        try {
+            T resultado = operacion.ejecutar();
+            error = false;
+            return resultado;
+        } finally {
+            REGISTRO.histograma(nombre).registrar(System.nanoTime() - inicio, error);
+        }
+    }
+
+    /**
+     * Ejecuta y mide una operación sin resultado.
+     *
+     * @param nombre nombre de la operación (por ejemplo "PacienteDao.eliminar")
+     * @param accion cuerpo de la operación
+     * @throws E la excepción de la operación, sin cambios
+     */
+    public static <E extends Exception> void ejecutar(String nombre, Accion<E> accion) throws E {
+        long inicio = System.nanoTime();
+        boolean error = true;
+        try {
+            accion.ejecutar();
+            error = false;
+        } finally {
+            REGISTRO.histograma(nombre).registrar(System.nanoTime() - inicio, error);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Registro único de las métricas de la aplicación.
+ *
+ * Contiene un {@link Histograma} por operación (se crea la primera vez que se
+ * mide) y los indicadores (gauges) que registran otros componentes, como el
+ * pool de conexiones. Se puede volcar como tabla para la consola o en el
+ * formato de texto de Prometheus.
+ *
+ * @author Grupo 49
+ */
+public final class RegistroMetricas {
+
+    private static final RegistroMetricas INSTANCIA = new RegistroMetricas();
+
+    private static final double NANOS_POR_SEGUNDO = 1_000_000_000d;
+    private static final double NANOS_POR_MILI = 1_000_000d;
+
+    private final ConcurrentHashMap<String, Histograma> histogramas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Indicador> indicadores = new ConcurrentHashMap<>();
+
+    private RegistroMetricas() {
+    }
+
+    public static RegistroMetricas getInstance() {
+        return INSTANCIA;
+    }
+
+    /**
+     * @param nombre nombre de la operación
+     * @return el histograma de la operación (se crea si no existe)
+     */
+    public Histograma histograma(String nombre) {
+        Histograma histograma = histogramas.get(nombre);
+        return histograma != null ? histograma : histogramas.computeIfAbsent(nombre, Histograma::new);
+    }
+
+    /**
+     * Registra (o reemplaza) un indicador que se lee en cada volcado.
+     *
+     * @param nombre nombre de la métrica en Prometheus (por ejemplo "clinica_pool_conexiones_en_uso")
+     * @param descripcion texto de ayuda
+     * @param valor función que devuelve el valor actual
+     */
+    public void registrarIndicador(String nombre, String descripcion, Supplier<? extends Number> valor) {
+        indicadores.put(nombre, new Indicador(descripcion, valor));
+    }
+
+    /**
+     * @return instantáneas de todas las operaciones, ordenadas por nombre
+     */
+    public List<Histograma.Instantanea> getOperaciones() {
+        List<Histograma.Instantanea> resultado = new ArrayList<>();
+        for (Histograma histograma : new TreeMap<>(histogramas).values()) {
+            resultado.add(histograma.getInstantanea());
+        }
+        return resultado;
+    }
+
+    /**
+     * Tabla legible de las operaciones e indicadores (tiempos en milisegundos).
+     */
+    public String volcar() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-48s %10s %8s %10s %10s %10s%n",
+                "Operación", "Llamadas", "Errores", "p50 (ms)", "p99 (ms)", "máx (ms)"));
+        for (Histograma.Instantanea op : getOperaciones()) {
+            sb.append(String.format(Locale.ROOT, "%-48s %10d %8d %10.3f %10.3f %10.3f%n",
+                    op.getNombre(), op.getLlamadas(), op.getErrores(),
+                    op.getP50Nanos() / NANOS_POR_MILI, op.getP99Nanos() / NANOS_POR_MILI,
+                    op.getMaxNanos() / NANOS_POR_MILI));
+        }
+        for (Map.Entry<String, Indicador> entrada : new TreeMap<>(indicadores).entrySet()) {
+            sb.append(String.format(Locale.ROOT, "%-48s %s%n", entrada.getKey(), entrada.getValue().valor.get()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Las métricas en el formato de texto de Prometheus (versión 0.0.4).
+     * Las latencias se exportan como summary en segundos (cuantiles 0.5 y 0.99).
+     */
+    public String aPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        List<Histograma.Instantanea> operaciones = getOperaciones();
+
+        sb.append("# HELP clinica_operacion_segundos Latencia de las operaciones de DAOs y servicios.\n");
+        sb.append("# TYPE clinica_operacion_segundos summary\n");
+        for (Histograma.Instantanea op : operaciones) {
+            String etiqueta = "operacion=\"" + escapar(op.getNombre()) + "\"";
+            linea(sb, "clinica_operacion_segundos{" + etiqueta + ",quantile=\"0.5\"}", op.getP50Nanos() / NANOS_POR_SEGUNDO);
+            linea(sb, "clinica_operacion_segundos{" + etiqueta + ",quantile=\"0.99\"}", op.getP99Nanos() / NANOS_POR_SEGUNDO);
+            linea(sb, "clinica_operacion_segundos_sum{" + etiqueta + "}", op.getSumaNanos() / NANOS_POR_SEGUNDO);
+            linea(sb, "clinica_operacion_segundos_count{" + etiqueta + "}", op.getLlamadas());
+        }
+
+        sb.append("# HELP clinica_operacion_max_segundos Latencia máxima observada por operación.\n");
+        sb.append("# TYPE clinica_operacion_max_segundos gauge\n");
+        for (Histograma.Instantanea op : operaciones) {
+            linea(sb, "clinica_operacion_max_segundos{operacion=\"" + escapar(op.getNombre()) + "\"}",
+                    op.getMaxNanos() / NANOS_POR_SEGUNDO);
+        }
+
+        sb.append("# HELP clinica_operacion_errores_total Llamadas que terminaron con una excepción.\n");
+        sb.append("# TYPE clinica_operacion_errores_total counter\n");
+        for (Histograma.Instantanea op : operaciones) {
+            linea(sb, "clinica_operacion_errores_total{operacion=\"" + escapar(op.getNombre()) + "\"}", op.getErrores());
+        }
+
+        for (Map.Entry<String, Indicador> entrada : new TreeMap<>(indicadores).entrySet()) {
+            sb.append("# HELP ").append(entrada.getKey()).append(' ').append(entrada.getValue().descripcion).append('\n');
+            sb.append("# TYPE ").append(entrada.getKey()).append(" gauge\n");
+            linea(sb, entrada.getKey(), entrada.getValue().valor.get().doubleValue());
+        }
+        return sb.toString();
+    }
+
+    private static void linea(StringBuilder sb, String nombre, double valor) {
+        sb.append(nombre).append(' ').append(valor).append('\n');
+    }
+
+    private static void linea(StringBuilder sb, String nombre, long valor) {
+        sb.append(nombre).append(' ').append(valor).append('\n');
+    }
+
+    private static String escapar(String valor) {
+        return valor.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static final class Indicador {
+        private final String descripcion;
+        private final Supplier<? extends Number> valor;
+
+        private Indicador(String descripcion, Supplier<? extends Number> valor) {
+            this.descripcion = descripcion;
+            this.valor = valor;
+        }
+    }
+}
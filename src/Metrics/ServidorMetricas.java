@@ -0,0 +1,84 @@
+package Metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Endpoint HTTP local con las métricas en formato Prometheus.
+ *
+ * Se activa con la propiedad del sistema clinica.metrics.port (por ejemplo
+ * -Dclinica.metrics.port=9464) y atiende GET /metrics solo en la interfaz
+ * de loopback. Sin la propiedad no se abre ningún puerto.
+ *
+ * @author Grupo 49
+ */
+public final class ServidorMetricas {
+
+    private static final int PUERTO = Integer.getInteger("clinica.metrics.port", 0);
+
+    private static HttpServer servidor;
+
+    private ServidorMetricas() {
+    }
+
+    /**
+     * Inicia el servidor si se configuró un puerto.
+     *
+     * @return true si quedó escuchando
+     */
+    public static synchronized boolean iniciar() {
+        if (PUERTO <= 0 || servidor != null) {
+            return servidor != null;
+        }
+        try {
+            servidor = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), PUERTO), 0);
+        } catch (IOException e) {
+            System.err.println("No se pudo abrir el puerto de métricas " + PUERTO + ": " + e.getMessage());
+            return false;
+        }
+        servidor.createContext("/metrics", ServidorMetricas::responder);
+        // Un hilo daemon alcanza para un scrape periódico y no impide que la aplicación termine
+        servidor.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread hilo = new Thread(r, "clinica-metrics-http");
+            hilo.setDaemon(true);
+            return hilo;
+        }));
+        servidor.start();
+        return true;
+    }
+
+    /**
+     * @return la URL del endpoint, o null si no está activo
+     */
+    public static synchronized String getUrl() {
+        return servidor == null ? null : "http://localhost:" + servidor.getAddress().getPort() + "/metrics";
+    }
+
+    public static synchronized void detener() {
+        if (servidor != null) {
+            servidor.stop(0);
+            servidor = null;
+        }
+    }
+
+    private static void responder(HttpExchange intercambio) throws IOException {
+        try (intercambio) {
+            if (!"GET".equals(intercambio.getRequestMethod())) {
+                intercambio.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] cuerpo = RegistroMetricas.getInstance().aPrometheus().getBytes(StandardCharsets.UTF_8);
+            intercambio.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            intercambio.sendResponseHeaders(200, cuerpo.length);
+            try (OutputStream salida = intercambio.getResponseBody()) {
+                salida.write(cuerpo);
+            }
+        }
+    }
+}
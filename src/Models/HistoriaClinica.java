@@ -1,6 +1,9 @@
 
 package Models;
 
+import java.util.EnumSet;
+import java.util.Objects;
+
 /**
  *
  * @author matia
@@ -10,7 +13,66 @@ public class HistoriaClinica {
 
     // 1. Enum Requerido para Grupo Sanguíneo (B+)
     public enum GrupoSanguineo {
-        AP, AM, BP, BM, ABP, ABM, OP, OM // Correspondiente a A+, A-, B+, B-..
+        AP, AM, BP, BM, ABP, ABM, OP, OM; // Correspondiente a A+, A-, B+, B-..
+
+        // Tabla precalculada: posición = grupo (A, B, AB, O) * 2 + factor (P, M)
+        private static final GrupoSanguineo[] POR_CODIGO = {AP, AM, BP, BM, ABP, ABM, OP, OM};
+
+        /**
+         * Equivalente a valueOf() para los códigos guardados en MySQL, pero sin
+         * búsqueda en un mapa: la posición se calcula a partir de los caracteres.
+         *
+         * @param codigo código del grupo ("AP", "ABM", ...)
+         * @return el grupo sanguíneo correspondiente
+         * @throws IllegalArgumentException si el código no es válido
+         */
+        public static GrupoSanguineo desdeCodigo(String codigo) {
+            int largo = codigo.length();
+            if (largo == 2 || largo == 3) {
+                int grupo;
+                switch (codigo.charAt(0)) {
+                    case 'A':
+                        grupo = largo == 3 ? 2 : 0;
+                        break;
+                    case 'B':
+                        grupo = 1;
+                        break;
+                    case 'O':
+                        grupo = 3;
+                        break;
+                    default:
+                        grupo = -1;
+                }
+                char factor = codigo.charAt(largo - 1);
+                if (grupo >= 0 && (factor == 'P' || factor == 'M')) {
+                    GrupoSanguineo candidato = POR_CODIGO[grupo * 2 + (factor == 'P' ? 0 : 1)];
+                    // Confirma el resto de los caracteres (por ejemplo "AXP" no es válido)
+                    if (candidato.name().equals(codigo)) {
+                        return candidato;
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Grupo sanguíneo desconocido: " + codigo);
+        }
+    }
+
+    /**
+     * Columnas actualizables de la tabla historia_clinica (para el seguimiento de cambios)
+     */
+    public enum Campo {
+        NRO_HISTORIA("nro_historia"), GRUPO_SANGUINEO("grupo_sanguineo"), ANTECEDENTES("antecedentes"),
+        MEDICACION_ACTUAL("medicacion_actual"), OBSERVACIONES("observaciones"), PACIENTE_ID("paciente_id"),
+        ELIMINADO("eliminado");
+
+        private final String columna;
+
+        Campo(String columna) {
+            this.columna = columna;
+        }
+
+        public String getColumna() {
+            return columna;
+        }
     }
 
     // 2. Atributos Requeridos
@@ -22,6 +84,14 @@ public class HistoriaClinica {
     private String medicacionActual; // TEXT
     private String observaciones; // TEXT
     private Paciente paciente; // Relación con Paciente (requerido por Service)
+    // Versión de la fila al leerla (concurrencia optimista); no cuenta como cambio
+    private long version;
+
+    // Campos modificados desde la última lectura/escritura (un bit por Campo)
+    private int cambios;
+
+    // false si se leyó con una consulta de resumen (sin las columnas TEXT)
+    private boolean detalleCargado = true;
 
     // 3. Constructores, Getters y Setters
     
@@ -38,6 +108,8 @@ public class HistoriaClinica {
         this.medicacionActual = medicacionActual;
         this.observaciones = observaciones;
         this.paciente = paciente;
+        // No se sabe qué difiere de la base: todo cuenta como modificado
+        this.cambios = (1 << Campo.values().length) - 1;
     }
     
     // Getters y Setters
@@ -49,12 +121,23 @@ public class HistoriaClinica {
         this.id = id;
     }
     
+    public long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(long version) {
+        this.version = version;
+    }
+    
     public Boolean getEliminado() {
         return eliminado;
     }
     
     public void setEliminado(Boolean eliminado) {
-        this.eliminado = eliminado;
+        if (!Objects.equals(this.eliminado, eliminado)) {
+            this.eliminado = eliminado;
+            marcar(Campo.ELIMINADO);
+        }
     }
     
     public String getNroHistoria() {
@@ -62,7 +145,10 @@ public class HistoriaClinica {
     }
     
     public void setNroHistoria(String nroHistoria) {
-        this.nroHistoria = nroHistoria;
+        if (!Objects.equals(this.nroHistoria, nroHistoria)) {
+            this.nroHistoria = nroHistoria;
+            marcar(Campo.NRO_HISTORIA);
+        }
     }
     
     public GrupoSanguineo getGrupoSanguineo() {
@@ -70,7 +156,10 @@ public class HistoriaClinica {
     }
     
     public void setGrupoSanguineo(GrupoSanguineo grupoSanguineo) {
-        this.grupoSanguineo = grupoSanguineo;
+        if (!Objects.equals(this.grupoSanguineo, grupoSanguineo)) {
+            this.grupoSanguineo = grupoSanguineo;
+            marcar(Campo.GRUPO_SANGUINEO);
+        }
     }
     
     public String getAntecedentes() {
@@ -78,7 +167,10 @@ public class HistoriaClinica {
     }
     
     public void setAntecedentes(String antecedentes) {
-        this.antecedentes = antecedentes;
+        if (!Objects.equals(this.antecedentes, antecedentes)) {
+            this.antecedentes = antecedentes;
+            marcar(Campo.ANTECEDENTES);
+        }
     }
     
     public String getMedicacionActual() {
@@ -86,7 +178,10 @@ public class HistoriaClinica {
     }
     
     public void setMedicacionActual(String medicacionActual) {
-        this.medicacionActual = medicacionActual;
+        if (!Objects.equals(this.medicacionActual, medicacionActual)) {
+            this.medicacionActual = medicacionActual;
+            marcar(Campo.MEDICACION_ACTUAL);
+        }
     }
     
     public String getObservaciones() {
@@ -94,7 +189,10 @@ public class HistoriaClinica {
     }
     
     public void setObservaciones(String observaciones) {
-        this.observaciones = observaciones;
+        if (!Objects.equals(this.observaciones, observaciones)) {
+            this.observaciones = observaciones;
+            marcar(Campo.OBSERVACIONES);
+        }
     }
     
     public Paciente getPaciente() {
@@ -102,8 +200,116 @@ public class HistoriaClinica {
     }
     
     public void setPaciente(Paciente paciente) {
+        // Solo cambia la columna paciente_id si cambia el ID del paciente
+        Long anterior = this.paciente != null ? this.paciente.getId() : null;
+        Long nuevo = paciente != null ? paciente.getId() : null;
         this.paciente = paciente;
-    } 
+        if (!Objects.equals(anterior, nuevo)) {
+            marcar(Campo.PACIENTE_ID);
+        }
+    }
+
+    // Seguimiento de cambios: los DAOs actualizan solo las columnas modificadas
+
+    private void marcar(Campo campo) {
+        cambios |= 1 << campo.ordinal();
+    }
+
+    public boolean tieneCambios() {
+        return cambios != 0;
+    }
+
+    public boolean cambio(Campo campo) {
+        return (cambios & (1 << campo.ordinal())) != 0;
+    }
+
+    /**
+     * @return los campos modificados, en el orden de declaración de Campo
+     */
+    public EnumSet<Campo> getCambios() {
+        EnumSet<Campo> campos = EnumSet.noneOf(Campo.class);
+        for (Campo campo : Campo.values()) {
+            if (cambio(campo)) {
+                campos.add(campo);
+            }
+        }
+        return campos;
+    }
+
+    /**
+     * Marca el estado actual como igual al de la base (después de leerlo o
+     * de guardarlo).
+     */
+    public void limpiarCambios() {
+        cambios = 0;
+    }
+
+    /**
+     * Aplica sobre esta historia los campos modificados de otra (por ejemplo,
+     * una edición que chocó con una versión más nueva), que quedan marcados
+     * como cambios.
+     *
+     * @param editada la historia con los cambios a aplicar
+     */
+    public void aplicarCambiosDe(HistoriaClinica editada) {
+        for (Campo campo : editada.getCambios()) {
+            switch (campo) {
+                case NRO_HISTORIA:
+                    setNroHistoria(editada.getNroHistoria());
+                    break;
+                case GRUPO_SANGUINEO:
+                    setGrupoSanguineo(editada.getGrupoSanguineo());
+                    break;
+                case ANTECEDENTES:
+                    setAntecedentes(editada.getAntecedentes());
+                    break;
+                case MEDICACION_ACTUAL:
+                    setMedicacionActual(editada.getMedicacionActual());
+                    break;
+                case OBSERVACIONES:
+                    setObservaciones(editada.getObservaciones());
+                    break;
+                case PACIENTE_ID:
+                    setPaciente(editada.getPaciente());
+                    break;
+                case ELIMINADO:
+                    setEliminado(editada.getEliminado());
+                    break;
+            }
+        }
+    }
+
+    // Carga diferida de las columnas TEXT (antecedentes, medicación y observaciones)
+
+    /**
+     * @return false si la historia se leyó sin las columnas TEXT (listados);
+     *         en ese caso antecedentes, medicación y observaciones valen null
+     *         hasta que se cargue el detalle
+     */
+    public boolean isDetalleCargado() {
+        return detalleCargado;
+    }
+
+    public void setDetalleCargado(boolean detalleCargado) {
+        this.detalleCargado = detalleCargado;
+    }
+
+    /**
+     * Completa las columnas TEXT leídas de la base sin marcarlas como
+     * modificadas. Los campos que ya se modificaron en memoria se conservan.
+     */
+    public void cargarDetalle(String antecedentes, String medicacionActual, String observaciones) {
+        if (!cambio(Campo.ANTECEDENTES)) {
+            this.antecedentes = antecedentes;
+        }
+        if (!cambio(Campo.MEDICACION_ACTUAL)) {
+            this.medicacionActual = medicacionActual;
+        }
+        if (!cambio(Campo.OBSERVACIONES)) {
+            this.observaciones = observaciones;
+        }
+        this.detalleCargado = true;
+    }
   
     
     // Método toString() 
@@ -0,0 +1,54 @@
+package Models;
+
+import Models.HistoriaClinica.GrupoSanguineo;
+
+/**
+ * Vista de solo lectura de una historia clínica para listados y búsquedas.
+ *
+ * Contiene únicamente las columnas chicas (id, nro_historia, grupo_sanguineo
+ * y paciente_id): las columnas TEXT (antecedentes, medicación actual y
+ * observaciones) no se leen. Para ver o modificar la historia completa se
+ * abre con su ID.
+ *
+ * @author Grupo 49
+ */
+public final class HistoriaClinicaResumen {
+
+    private final Long id;
+    private final String nroHistoria;
+    private final GrupoSanguineo grupoSanguineo;
+    private final Long pacienteId;
+
+    public HistoriaClinicaResumen(Long id, String nroHistoria, GrupoSanguineo grupoSanguineo, Long pacienteId) {
+        this.id = id;
+        this.nroHistoria = nroHistoria;
+        this.grupoSanguineo = grupoSanguineo;
+        this.pacienteId = pacienteId;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getNroHistoria() {
+        return nroHistoria;
+    }
+
+    public GrupoSanguineo getGrupoSanguineo() {
+        return grupoSanguineo;
+    }
+
+    public Long getPacienteId() {
+        return pacienteId;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoriaClinicaResumen{" +
+                "id=" + id +
+                ", nroHistoria='" + nroHistoria + '\'' +
+                ", grupoSanguineo=" + grupoSanguineo +
+                ", pacienteId=" + pacienteId +
+                '}';
+    }
+}
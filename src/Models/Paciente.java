@@ -7,9 +7,28 @@ package Models;
  */
 
 import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.Objects;
 
 public class Paciente {
 
+    /**
+     * Columnas actualizables de la tabla paciente (para el seguimiento de cambios)
+     */
+    public enum Campo {
+        NOMBRE("nombre"), APELLIDO("apellido"), DNI("dni"), FECHA_NACIMIENTO("fecha_nacimiento"), ELIMINADO("eliminado");
+
+        private final String columna;
+
+        Campo(String columna) {
+            this.columna = columna;
+        }
+
+        public String getColumna() {
+            return columna;
+        }
+    }
+
     // 1. Atributos Requeridos
     private Long id; // PK
     private Boolean eliminado = false; 
@@ -17,10 +36,15 @@ public class Paciente {
     private String apellido; // NOT NULL, máx. 80
     private String dni; // NOT NULL, UNIQUE, máx. 15
     private LocalDate fechaNacimiento;
+    // Versión de la fila al leerla (concurrencia optimista); no cuenta como cambio
+    private long version;
     
     // 2. Relación 1-1 Unidireccional (A referencia a B)
     private HistoriaClinica historiaClinica; 
 
+    // Campos modificados desde la última lectura/escritura (un bit por Campo)
+    private int cambios;
+
     // 3. Constructores, Getters y Setters
     
     // Constructor Vacío
@@ -35,6 +59,8 @@ public class Paciente {
         this.dni = dni;
         this.fechaNacimiento = fechaNacimiento;
         this.historiaClinica = historiaClinica;
+        // No se sabe qué difiere de la base: todo cuenta como modificado
+        this.cambios = (1 << Campo.values().length) - 1;
     }
     
     // Getters y Setters
@@ -46,12 +72,23 @@ public class Paciente {
         this.id = id;
     }
     
+    public long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(long version) {
+        this.version = version;
+    }
+    
     public Boolean getEliminado() {
         return eliminado;
     }
     
     public void setEliminado(Boolean eliminado) {
-        this.eliminado = eliminado;
+        if (!Objects.equals(this.eliminado, eliminado)) {
+            this.eliminado = eliminado;
+            marcar(Campo.ELIMINADO);
+        }
     }
     
     public String getNombre() {
@@ -59,7 +96,10 @@ public class Paciente {
     }
     
     public void setNombre(String nombre) {
-        this.nombre = nombre;
+        if (!Objects.equals(this.nombre, nombre)) {
+            this.nombre = nombre;
+            marcar(Campo.NOMBRE);
+        }
     }
     
     public String getApellido() {
@@ -67,7 +107,10 @@ public class Paciente {
     }
     
     public void setApellido(String apellido) {
-        this.apellido = apellido;
+        if (!Objects.equals(this.apellido, apellido)) {
+            this.apellido = apellido;
+            marcar(Campo.APELLIDO);
+        }
     }
     
     public String getDni() {
@@ -75,7 +118,10 @@ public class Paciente {
     }
     
     public void setDni(String dni) {
-        this.dni = dni;
+        if (!Objects.equals(this.dni, dni)) {
+            this.dni = dni;
+            marcar(Campo.DNI);
+        }
     }
     
     public LocalDate getFechaNacimiento() {
@@ -83,7 +129,10 @@ public class Paciente {
     }
     
     public void setFechaNacimiento(LocalDate fechaNacimiento) {
-        this.fechaNacimiento = fechaNacimiento;
+        if (!Objects.equals(this.fechaNacimiento, fechaNacimiento)) {
+            this.fechaNacimiento = fechaNacimiento;
+            marcar(Campo.FECHA_NACIMIENTO);
+        }
     }
     
     public HistoriaClinica getHistoriaClinica() {
@@ -93,6 +142,70 @@ public class Paciente {
     public void setHistoriaClinica(HistoriaClinica historiaClinica) {
         this.historiaClinica = historiaClinica;
     }
+
+    // Seguimiento de cambios: los DAOs actualizan solo las columnas modificadas
+
+    private void marcar(Campo campo) {
+        cambios |= 1 << campo.ordinal();
+    }
+
+    public boolean tieneCambios() {
+        return cambios != 0;
+    }
+
+    public boolean cambio(Campo campo) {
+        return (cambios & (1 << campo.ordinal())) != 0;
+    }
+
+    /**
+     * @return los campos modificados, en el orden de declaración de Campo
+     */
+    public EnumSet<Campo> getCambios() {
+        EnumSet<Campo> campos = EnumSet.noneOf(Campo.class);
+        for (Campo campo : Campo.values()) {
+            if (cambio(campo)) {
+                campos.add(campo);
+            }
+        }
+        return campos;
+    }
+
+    /**
+     * Marca el estado actual como igual al de la base (después de leerlo o
+     * de guardarlo).
+     */
+    public void limpiarCambios() {
+        cambios = 0;
+    }
+
+    /**
+     * Aplica sobre este paciente los campos modificados de otro (por ejemplo,
+     * una edición que chocó con una versión más nueva), que quedan marcados
+     * como cambios. La historia clínica no se toca.
+     *
+     * @param editado el paciente con los cambios a aplicar
+     */
+    public void aplicarCambiosDe(Paciente editado) {
+        for (Campo campo : editado.getCambios()) {
+            switch (campo) {
+                case NOMBRE:
+                    setNombre(editado.getNombre());
+                    break;
+                case APELLIDO:
+                    setApellido(editado.getApellido());
+                    break;
+                case DNI:
+                    setDni(editado.getDni());
+                    break;
+                case FECHA_NACIMIENTO:
+                    setFechaNacimiento(editado.getFechaNacimiento());
+                    break;
+                case ELIMINADO:
+                    setEliminado(editado.getEliminado());
+                    break;
+            }
+        }
+    }
    
     @Override
     public String toString() {
@@ -0,0 +1,161 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Análisis de texto en español para los índices en memoria.
+ *
+ * Convierte un texto libre en términos de búsqueda:
+ * <ol>
+ *   <li>separa en palabras (letras y dígitos),</li>
+ *   <li>pasa a minúsculas y quita tildes y diéresis ("Hipertensión" → "hipertension"),</li>
+ *   <li>descarta palabras vacías ("de", "la", "con", ...), números y letras sueltas,</li>
+ *   <li>reduce cada palabra a una raíz liviana: plurales y vocal final de género
+ *       ("antibióticos" y "antibiótico" → "antibiotic").</li>
+ * </ol>
+ * Las consultas pasan por el mismo análisis que los documentos, así que no
+ * importa que la raíz no sea una palabra real.
+ *
+ * @author Grupo 49
+ */
+public final class AnalizadorTexto {
+
+    private static final Set<String> PALABRAS_VACIAS = new HashSet<>(Arrays.asList(
+            "a", "al", "algo", "algun", "alguna", "algunas", "alguno", "algunos", "ante", "antes", "aun",
+            "como", "con", "contra", "cual", "cuando", "de", "del", "desde", "donde", "durante", "e", "el",
+            "ella", "ellas", "ello", "ellos", "en", "entre", "era", "es", "esa", "esas", "ese", "eso", "esos",
+            "esta", "estas", "este", "esto", "estos", "fue", "ha", "han", "hasta", "hay", "la", "las", "le",
+            "les", "lo", "los", "mas", "me", "mi", "muy", "ni", "no", "nos", "o", "otra", "otras", "otro",
+            "otros", "para", "pero", "poco", "por", "porque", "que", "quien", "se", "segun", "ser", "si",
+            "sin", "sobre", "son", "su", "sus", "tambien", "tiene", "todo", "todos", "tras", "u", "un",
+            "una", "unas", "uno", "unos", "y", "ya"));
+
+    private AnalizadorTexto() {
+    }
+
+    /**
+     * @param texto texto libre (puede ser null)
+     * @return los términos del texto, en orden y con repeticiones
+     */
+    public static List<String> analizar(String texto) {
+        List<String> terminos = new ArrayList<>();
+        if (texto == null) {
+            return terminos;
+        }
+        StringBuilder palabra = new StringBuilder(16);
+        for (int i = 0, n = texto.length(); i <= n; i++) {
+            char c = i < n ? plegar(texto.charAt(i)) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                palabra.append(c);
+            } else if (palabra.length() > 0) {
+                agregarTermino(terminos, palabra.toString());
+                palabra.setLength(0);
+            }
+        }
+        return terminos;
+    }
+
+    /**
+     * Pasa el texto a minúsculas sin tildes, sin separarlo en palabras
+     * (para comparar nombres y apellidos).
+     *
+     * @param texto texto a normalizar (puede ser null)
+     * @return el texto plegado, o "" si es null
+     */
+    public static String plegar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        char[] chars = new char[texto.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = plegar(texto.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Minúscula sin tilde ni diéresis ("Á" → 'a', "Ñ" → 'n')
+     */
+    static char plegar(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        switch (c) {
+            case 'á': case 'à': case 'â': case 'ä': case 'ã':
+            case 'Á': case 'À': case 'Â': case 'Ä': case 'Ã':
+                return 'a';
+            case 'é': case 'è': case 'ê': case 'ë':
+            case 'É': case 'È': case 'Ê': case 'Ë':
+                return 'e';
+            case 'í': case 'ì': case 'î': case 'ï':
+            case 'Í': case 'Ì': case 'Î': case 'Ï':
+                return 'i';
+            case 'ó': case 'ò': case 'ô': case 'ö': case 'õ':
+            case 'Ó': case 'Ò': case 'Ô': case 'Ö': case 'Õ':
+                return 'o';
+            case 'ú': case 'ù': case 'û': case 'ü':
+            case 'Ú': case 'Ù': case 'Û': case 'Ü':
+                return 'u';
+            case 'ñ': case 'Ñ':
+                return 'n';
+            case 'ç': case 'Ç':
+                return 'c';
+            default:
+                return Character.toLowerCase(c);
+        }
+    }
+
+    private static void agregarTermino(List<String> terminos, String palabra) {
+        // Letras sueltas y números (dosis, fechas) no sirven para buscar
+        if (palabra.length() < 2 || esNumero(palabra) || PALABRAS_VACIAS.contains(palabra)) {
+            return;
+        }
+        terminos.add(raiz(palabra));
+    }
+
+    private static boolean esNumero(String palabra) {
+        for (int i = 0; i < palabra.length(); i++) {
+            if (!Character.isDigit(palabra.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Raíz liviana de una palabra ya plegada: quita el plural y la vocal final
+     * de género. Las palabras cortas (hasta 3 letras) quedan igual.
+     *
+     * @param palabra palabra en minúsculas y sin tildes
+     * @return la raíz
+     */
+    static String raiz(String palabra) {
+        int largo = palabra.length();
+        if (largo <= 3) {
+            return palabra;
+        }
+        String r = palabra;
+        // Plural: "veces" → "vez", "dolores" → "dolor", "alergias" → "alergia"
+        if (largo >= 5 && r.endsWith("ces")) {
+            r = r.substring(0, largo - 3) + "z";
+        } else if (largo >= 5 && r.endsWith("es") && "lnrdj".indexOf(r.charAt(largo - 3)) >= 0) {
+            r = r.substring(0, largo - 2);
+        } else if (r.endsWith("s") && !r.endsWith("ss")) {
+            r = r.substring(0, largo - 1);
+        }
+        // Adverbios en -mente: "levemente" → "leve"
+        if (r.length() >= 8 && r.endsWith("mente")) {
+            r = r.substring(0, r.length() - 5);
+        }
+        // Vocal final de género: "asmático"/"asmática" → "asmatic"
+        int fin = r.length() - 1;
+        if (r.length() >= 4 && (r.charAt(fin) == 'a' || r.charAt(fin) == 'o' || r.charAt(fin) == 'e')) {
+            r = r.substring(0, fin);
+        }
+        return r;
+    }
+}
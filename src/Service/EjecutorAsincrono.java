@@ -0,0 +1,105 @@
+package Service;
+
+import Config.DatabaseConnection;
+import Metrics.RegistroMetricas;
+import Service.GenericService.ServiceException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Ejecutor de las variantes asíncronas (…Async) de los servicios.
+ *
+ * Cada llamada corre en su propio hilo virtual, así muchos clientes de
+ * recepción pueden esperar a la base a la vez sin ocupar un hilo de
+ * plataforma cada uno. Como todas terminan pidiendo una conexión al pool, la
+ * cantidad de llamadas que se ejecutan al mismo tiempo se limita con un
+ * semáforo (por defecto, el tamaño máximo del pool): el resto espera su turno
+ * en su hilo virtual en lugar de agotar el timeout del pool.
+ *
+ * El límite se cambia con -Dclinica.async.maxConcurrencia=N.
+ *
+ * @author Grupo 49
+ */
+public final class EjecutorAsincrono {
+
+    private static final int MAX_CONCURRENCIA = Math.max(1,
+            Integer.getInteger("clinica.async.maxConcurrencia", DatabaseConnection.getTamanioMaximoPool()));
+
+    private static final ExecutorService HILOS = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("clinica-async-", 0).factory());
+
+    // Justo (fair): las llamadas se atienden en orden de llegada
+    private static final Semaphore PERMISOS = new Semaphore(MAX_CONCURRENCIA, true);
+
+    static {
+        RegistroMetricas registro = RegistroMetricas.getInstance();
+        registro.registrarIndicador("clinica_async_en_curso", "Llamadas asíncronas ejecutándose.",
+                () -> MAX_CONCURRENCIA - PERMISOS.availablePermits());
+        registro.registrarIndicador("clinica_async_en_espera", "Llamadas asíncronas esperando turno.",
+                PERMISOS::getQueueLength);
+    }
+
+    private EjecutorAsincrono() {
+    }
+
+    /**
+     * Operación de servicio que se ejecuta de forma asíncrona.
+     */
+    @FunctionalInterface
+    public interface Tarea<T> {
+        T ejecutar() throws ServiceException;
+    }
+
+    /**
+     * Ejecuta la tarea en un hilo virtual, respetando el límite de concurrencia.
+     *
+     * @param tarea la operación del servicio
+     * @return future con el resultado; si la tarea falla se completa
+     *         excepcionalmente con la ServiceException original
+     */
+    public static <T> CompletableFuture<T> enviar(Tarea<T> tarea) {
+        CompletableFuture<T> resultado = new CompletableFuture<>();
+        // La tarea escribe y lee con la ventana de lectura propia de quien la envía
+        DatabaseConnection.LecturaPropia lecturaPropia = DatabaseConnection.getLecturaPropia();
+        try {
+            HILOS.execute(() -> {
+                DatabaseConnection.usarLecturaPropia(lecturaPropia);
+                ejecutar(tarea, resultado);
+            });
+        } catch (RejectedExecutionException e) {
+            resultado.completeExceptionally(new ServiceException("El ejecutor asíncrono está cerrado.", e));
+        }
+        return resultado;
+    }
+
+    /**
+     * Deja de aceptar tareas (las que están en curso terminan normalmente).
+     */
+    public static void cerrar() {
+        HILOS.shutdown();
+    }
+
+    private static <T> void ejecutar(Tarea<T> tarea, CompletableFuture<T> resultado) {
+        // Si se canceló antes de empezar, no se toma un permiso
+        if (resultado.isDone()) {
+            return;
+        }
+        try {
+            PERMISOS.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            resultado.completeExceptionally(new ServiceException("Llamada asíncrona interrumpida.", e));
+            return;
+        }
+        try {
+            resultado.complete(tarea.ejecutar());
+        } catch (Throwable e) {
+            resultado.completeExceptionally(e);
+        } finally {
+            PERMISOS.release();
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package Service;
+
+import Config.DatabaseConnection;
+import Metrics.Metricas;
+import Metrics.RegistroMetricas;
+import Service.GenericService.ServiceException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Commit agrupado: junta escrituras concurrentes en una sola transacción.
+ *
+ * Cada llamada a {@link #enviar(Object)} encola una unidad (por ejemplo, un
+ * paciente con su historia) y devuelve un future. Un único hilo escritor toma
+ * la primera unidad de la cola, espera hasta {@code ventanaMs} a que lleguen
+ * más (como mucho {@code maxUnidades}) y las escribe todas en una
+ * transacción con un único commit, así el costo del commit (el fsync del
+ * log de la base) se reparte entre todas.
+ *
+ * Cada unidad se escribe después de un savepoint: si falla (un DNI o número
+ * de historia duplicado, por ejemplo), se vuelve a ese savepoint y solo el
+ * future de esa unidad termina con error; las demás siguen en la transacción.
+ * Si falla el commit, cada unidad se reintenta sola en su propia transacción.
+ *
+ * Los futures se completan recién después del commit.
+ *
+ * Un escritor escribe en un solo shard (ver {@code Dao.Shards}): con varios
+ * shards hace falta uno por shard.
+ *
+ * @param <T> El tipo de unidad que se escribe
+ * @author Grupo 49
+ */
+public final class EscritorAgrupado<T> {
+
+    /**
+     * Escritura de una unidad dentro de la transacción del grupo.
+     */
+    @FunctionalInterface
+    public interface Escritura<T> {
+        /**
+         * @param unidad la unidad a escribir
+         * @param conn conexión con la transacción abierta (no hacer commit ni rollback)
+         * @throws Exception si la unidad no se puede escribir
+         */
+        void escribir(T unidad, Connection conn) throws Exception;
+    }
+
+    private static final long ESPERA_MAXIMA_MS = 200;
+
+    private final String nombre;
+    private final int shard;
+    private final Escritura<T> escritura;
+    // Después del commit, por cada unidad confirmada (índices, cachés)
+    private final Consumer<T> alConfirmar;
+    // Después de revertir una unidad (limpiar IDs asignados)
+    private final Consumer<T> alRevertir;
+    private final int maxUnidades;
+    private final long ventanaNanos;
+
+    private final BlockingQueue<Pendiente<T>> cola = new LinkedBlockingQueue<>();
+    private final Thread hilo;
+    private volatile boolean cerrado;
+
+    private final AtomicLong grupos = new AtomicLong();
+    private final AtomicLong unidades = new AtomicLong();
+
+    /**
+     * @param nombre nombre para el hilo y las métricas (por ejemplo "paciente")
+     * @param escritura escribe una unidad con la conexión del grupo
+     * @param alConfirmar se llama por cada unidad confirmada, después del commit
+     * @param alRevertir se llama por cada unidad revertida
+     * @param maxUnidades cantidad máxima de unidades por transacción
+     * @param ventanaMs tiempo máximo que se espera a que se junten unidades
+     */
+    public EscritorAgrupado(String nombre, Escritura<T> escritura, Consumer<T> alConfirmar, Consumer<T> alRevertir,
+            int maxUnidades, long ventanaMs) {
+        this(nombre, 0, escritura, alConfirmar, alRevertir, maxUnidades, ventanaMs);
+    }
+
+    /**
+     * @param nombre nombre para el hilo y las métricas (por ejemplo "paciente_shard1")
+     * @param shard shard donde se escriben todas las unidades
+     * @param escritura escribe una unidad con la conexión del grupo
+     * @param alConfirmar se llama por cada unidad confirmada, después del commit
+     * @param alRevertir se llama por cada unidad revertida
+     * @param maxUnidades cantidad máxima de unidades por transacción
+     * @param ventanaMs tiempo máximo que se espera a que se junten unidades
+     */
+    public EscritorAgrupado(String nombre, int shard, Escritura<T> escritura, Consumer<T> alConfirmar,
+            Consumer<T> alRevertir, int maxUnidades, long ventanaMs) {
+        this.nombre = nombre;
+        this.shard = shard;
+        this.escritura = escritura;
+        this.alConfirmar = alConfirmar;
+        this.alRevertir = alRevertir;
+        this.maxUnidades = Math.max(1, maxUnidades);
+        this.ventanaNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ventanaMs));
+
+        RegistroMetricas registro = RegistroMetricas.getInstance();
+        registro.registrarIndicador("clinica_commit_agrupado_" + nombre + "_en_cola",
+                "Unidades esperando el próximo commit agrupado (" + nombre + ").", cola::size);
+        registro.registrarIndicador("clinica_commit_agrupado_" + nombre + "_unidades_por_commit",
+                "Promedio de unidades por commit agrupado (" + nombre + ").", this::getUnidadesPorGrupo);
+
+        this.hilo = new Thread(this::procesar, "clinica-commit-agrupado-" + nombre);
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+
+    /**
+     * Encola una unidad para el próximo commit agrupado.
+     *
+     * @param unidad la unidad (ya validada)
+     * @return future que se completa con la misma unidad después del commit, o
+     *         excepcionalmente con una ServiceException si esa unidad falló
+     */
+    public CompletableFuture<T> enviar(T unidad) {
+        CompletableFuture<T> resultado = new CompletableFuture<>();
+        if (cerrado) {
+            resultado.completeExceptionally(new ServiceException("El escritor agrupado está cerrado."));
+            return resultado;
+        }
+        Pendiente<T> pendiente = new Pendiente<>(unidad, resultado, DatabaseConnection.getLecturaPropia());
+        cola.add(pendiente);
+        // Se cerró mientras se encolaba y el hilo ya terminó: nadie la va a escribir
+        if (cerrado && !hilo.isAlive() && cola.remove(pendiente)) {
+            resultado.completeExceptionally(new ServiceException("El escritor agrupado está cerrado."));
+        }
+        return resultado;
+    }
+
+    /**
+     * Deja de aceptar unidades y espera a que se escriban las que ya están en
+     * la cola.
+     */
+    public void cerrar() {
+        // Sin interrupt(): el hilo puede estar en medio de una llamada JDBC
+        cerrado = true;
+        try {
+            hilo.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public double getUnidadesPorGrupo() {
+        long g = grupos.get();
+        return g == 0 ? 0 : (double) unidades.get() / g;
+    }
+
+    // --- Hilo escritor ---
+
+    private void procesar() {
+        List<Pendiente<T>> grupo = new ArrayList<>(maxUnidades);
+        while (!cerrado || !cola.isEmpty()) {
+            boolean hayGrupo;
+            try {
+                hayGrupo = juntar(grupo);
+            } catch (InterruptedException e) {
+                // Lo que ya se juntó se escribe igual
+                hayGrupo = !grupo.isEmpty();
+            }
+            if (!hayGrupo) {
+                continue;
+            }
+            try {
+                Metricas.ejecutar("EscritorAgrupado." + nombre, () -> escribirGrupo(grupo));
+            } catch (RuntimeException e) {
+                for (Pendiente<T> pendiente : grupo) {
+                    pendiente.resultado.completeExceptionally(e);
+                }
+            }
+            grupos.incrementAndGet();
+            unidades.addAndGet(grupo.size());
+            grupo.clear();
+        }
+    }
+
+    /**
+     * Espera la primera unidad y junta las que lleguen dentro de la ventana
+     *
+     * @return false si no llegó ninguna
+     */
+    private boolean juntar(List<Pendiente<T>> grupo) throws InterruptedException {
+        // Espera acotada para notar cerrar() sin interrumpir el hilo
+        Pendiente<T> primera = cerrado ? cola.poll() : cola.poll(ESPERA_MAXIMA_MS, TimeUnit.MILLISECONDS);
+        if (primera == null) {
+            return false;
+        }
+        grupo.add(primera);
+        long limite = System.nanoTime() + ventanaNanos;
+        while (grupo.size() < maxUnidades) {
+            // Lo que ya está en la cola se toma sin esperar
+            if (cola.drainTo(grupo, maxUnidades - grupo.size()) > 0) {
+                continue;
+            }
+            long restante = limite - System.nanoTime();
+            if (restante <= 0 || cerrado) {
+                break;
+            }
+            Pendiente<T> siguiente = cola.poll(restante, TimeUnit.NANOSECONDS);
+            if (siguiente == null) {
+                break;
+            }
+            grupo.add(siguiente);
+        }
+        return true;
+    }
+
+    private void escribirGrupo(List<Pendiente<T>> grupo) {
+        List<Pendiente<T>> escritas = new ArrayList<>(grupo.size());
+        boolean confirmado = false;
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection(shard);
+            conn.setAutoCommit(false);
+            for (Pendiente<T> pendiente : grupo) {
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    escritura.escribir(pendiente.unidad, conn);
+                    escritas.add(pendiente);
+                } catch (Exception e) {
+                    // Solo se deshace esta unidad
+                    conn.rollback(savepoint);
+                    alRevertir.accept(pendiente.unidad);
+                    pendiente.resultado.completeExceptionally(
+                            new ServiceException("Error al escribir la unidad: " + e.getMessage(), e));
+                }
+            }
+            conn.commit();
+            confirmado = true;
+        } catch (SQLException e) {
+            // Falló la conexión, un savepoint o el commit: se pierde toda la transacción
+            System.err.println("Commit agrupado fallido (" + e.getMessage() + "). Reintentando de a una unidad...");
+            if (conn != null) {
+                rollback(conn);
+            }
+        } finally {
+            cerrar(conn);
+        }
+
+        if (confirmado) {
+            confirmar(escritas);
+            return;
+        }
+        List<Pendiente<T>> sinTerminar = new ArrayList<>(grupo.size());
+        for (Pendiente<T> pendiente : grupo) {
+            if (!pendiente.resultado.isDone()) {
+                alRevertir.accept(pendiente.unidad);
+                sinTerminar.add(pendiente);
+            }
+        }
+        escribirDeAUna(sinTerminar);
+    }
+
+    /**
+     * Reintento después de un commit fallido: cada unidad en su propia
+     * transacción, para que una unidad con problemas no arrastre a las demás
+     */
+    private void escribirDeAUna(List<Pendiente<T>> pendientes) {
+        for (Pendiente<T> pendiente : pendientes) {
+            Connection conn = null;
+            try {
+                conn = DatabaseConnection.getConnection(shard);
+                conn.setAutoCommit(false);
+                escritura.escribir(pendiente.unidad, conn);
+                conn.commit();
+            } catch (Exception e) {
+                if (conn != null) {
+                    rollback(conn);
+                }
+                alRevertir.accept(pendiente.unidad);
+                pendiente.resultado.completeExceptionally(
+                        new ServiceException("Error al escribir la unidad: " + e.getMessage(), e));
+                continue;
+            } finally {
+                cerrar(conn);
+            }
+            confirmar(List.of(pendiente));
+        }
+    }
+
+    private void confirmar(List<Pendiente<T>> escritas) {
+        for (Pendiente<T> pendiente : escritas) {
+            try {
+                alConfirmar.accept(pendiente.unidad);
+            } catch (RuntimeException e) {
+                System.err.println("Error al actualizar después del commit agrupado: " + e.getMessage());
+            }
+            // Escribió este hilo, pero quien encoló la unidad tiene que leerla de la primaria
+            pendiente.lecturaPropia.marcarEscritura();
+            pendiente.resultado.complete(pendiente.unidad);
+        }
+    }
+
+    private static void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException ex) {
+            System.err.println("Error al hacer rollback: " + ex.getMessage());
+        }
+    }
+
+    private static void cerrar(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.setAutoCommit(true);
+            conn.close();
+        } catch (SQLException e) {
+            System.err.println("Error al cerrar la conexión: " + e.getMessage());
+        }
+    }
+
+    private static final class Pendiente<T> {
+        private final T unidad;
+        private final CompletableFuture<T> resultado;
+        private final DatabaseConnection.LecturaPropia lecturaPropia;
+
+        private Pendiente(T unidad, CompletableFuture<T> resultado, DatabaseConnection.LecturaPropia lecturaPropia) {
+            this.unidad = unidad;
+            this.resultado = resultado;
+            this.lecturaPropia = lecturaPropia;
+        }
+    }
+}
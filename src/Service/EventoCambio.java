@@ -0,0 +1,98 @@
+package Service;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Cambio confirmado de un paciente o una historia clínica, publicado en el
+ * {@link FeedCambios} después del commit.
+ *
+ * Lleva la identidad de la fila y, en las actualizaciones, las columnas que
+ * cambiaron; no lleva los valores: quien necesita la fila la vuelve a leer
+ * por ID.
+ *
+ * @author Grupo 49
+ */
+public final class EventoCambio {
+
+    public enum Tipo {
+        CREADO,
+        ACTUALIZADO,
+        ELIMINADO // borrado lógico
+    }
+
+    public enum Entidad {
+        PACIENTE,
+        HISTORIA_CLINICA
+    }
+
+    private final long secuencia;
+    private final Tipo tipo;
+    private final Entidad entidad;
+    private final long id;
+    private final Long pacienteId;
+    private final Set<String> columnas;
+    private final long instante;
+
+    EventoCambio(long secuencia, Tipo tipo, Entidad entidad, long id, Long pacienteId, Set<String> columnas) {
+        this.secuencia = secuencia;
+        this.tipo = tipo;
+        this.entidad = entidad;
+        this.id = id;
+        this.pacienteId = pacienteId;
+        this.columnas = columnas;
+        this.instante = System.currentTimeMillis();
+    }
+
+    /**
+     * @return posición del evento en el feed: creciente y sin huecos dentro
+     *         del proceso (un suscriptor que ve un salto perdió eventos)
+     */
+    public long getSecuencia() {
+        return secuencia;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    public Entidad getEntidad() {
+        return entidad;
+    }
+
+    /**
+     * @return ID del paciente o de la historia, según {@link #getEntidad()}
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return ID del paciente dueño de la fila (el mismo ID para un
+     *         paciente), o null si no se conoce (al eliminar una historia por ID)
+     */
+    public Long getPacienteId() {
+        return pacienteId;
+    }
+
+    /**
+     * @return columnas modificadas si es {@link Tipo#ACTUALIZADO}; vacío si no
+     */
+    public Set<String> getColumnas() {
+        return columnas != null ? columnas : Collections.emptySet();
+    }
+
+    /**
+     * @return momento de la publicación (System.currentTimeMillis())
+     */
+    public long getInstante() {
+        return instante;
+    }
+
+    @Override
+    public String toString() {
+        return "EventoCambio{#" + secuencia + " " + tipo + " " + entidad + " id=" + id
+                + (pacienteId != null && entidad != Entidad.PACIENTE ? " paciente=" + pacienteId : "")
+                + (columnas != null && !columnas.isEmpty() ? " columnas=" + columnas : "") + "}";
+    }
+}
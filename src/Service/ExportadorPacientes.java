@@ -0,0 +1,289 @@
+package Service;
+
+import Models.HistoriaClinica;
+import Models.Paciente;
+import Service.GenericService.ServiceException;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exportación de los pacientes activos con su historia clínica a CSV o JSON
+ * Lines (un objeto JSON por línea), opcionalmente comprimida con gzip.
+ *
+ * Las filas se leen de un cursor de la base (PacienteService.streamAllConHistoria)
+ * y se escriben de a una en un writer con buffer: la memoria usada no depende
+ * del tamaño de la tabla. El archivo se escribe con el sufijo ".tmp" y se
+ * renombra al terminar, así nunca queda a la vista un extracto incompleto.
+ *
+ * @author Grupo 49
+ */
+public class ExportadorPacientes {
+
+    public enum Formato {
+        CSV, JSONL
+    }
+
+    public static final String[] COLUMNAS_CSV = {"id", "nombre", "apellido", "dni", "fecha_nacimiento", "historia_id",
+        "nro_historia", "grupo_sanguineo", "antecedentes", "medicacion_actual", "observaciones"};
+
+    private static final int TAMANIO_BUFFER = 64 * 1024;
+    private static final long INTERVALO_PROGRESO_NANOS = 1_000_000_000L;
+
+    private final PacienteService pacienteService;
+
+    public ExportadorPacientes(PacienteService pacienteService) {
+        this.pacienteService = pacienteService;
+    }
+
+    /**
+     * Deduce el formato y la compresión de la extensión: .csv, .jsonl,
+     * .csv.gz o .jsonl.gz.
+     *
+     * @return el resultado de la exportación
+     * @throws ServiceException si la extensión no es reconocida o falla la exportación
+     */
+    public Progreso exportar(Path destino, Consumer<Progreso> progreso) throws ServiceException {
+        String nombre = destino.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean gzip = nombre.endsWith(".gz");
+        if (gzip) {
+            nombre = nombre.substring(0, nombre.length() - 3);
+        }
+        Formato formato;
+        if (nombre.endsWith(".csv")) {
+            formato = Formato.CSV;
+        } else if (nombre.endsWith(".jsonl")) {
+            formato = Formato.JSONL;
+        } else {
+            throw new ServiceException("Extensión no reconocida (usar .csv, .jsonl, .csv.gz o .jsonl.gz): " + destino);
+        }
+        return exportar(destino, formato, gzip, progreso);
+    }
+
+    /**
+     * @param destino archivo a generar (se reemplaza si existe)
+     * @param formato CSV o JSONL
+     * @param gzip true para comprimir la salida
+     * @param progreso recibe el avance una vez por segundo y al final (puede ser null)
+     * @return el resultado de la exportación
+     * @throws ServiceException si falla la lectura o la escritura
+     */
+    public Progreso exportar(Path destino, Formato formato, boolean gzip, Consumer<Progreso> progreso)
+            throws ServiceException {
+        Path temporal = destino.resolveSibling(destino.getFileName() + ".tmp");
+        Progreso estado = new Progreso();
+
+        try (Stream<Paciente> pacientes = pacienteService.streamAllConHistoria();
+                BufferedWriter salida = abrir(temporal, gzip)) {
+            if (formato == Formato.CSV) {
+                salida.write(String.join(",", COLUMNAS_CSV));
+                salida.newLine();
+            }
+            long[] ultimoAviso = {System.nanoTime()};
+            pacientes.forEach(paciente -> {
+                try {
+                    if (formato == Formato.CSV) {
+                        escribirCsv(salida, paciente);
+                    } else {
+                        escribirJson(salida, paciente);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                estado.filas++;
+                if (progreso != null && (estado.filas & 1023) == 0
+                        && System.nanoTime() - ultimoAviso[0] >= INTERVALO_PROGRESO_NANOS) {
+                    progreso.accept(estado.copia());
+                    ultimoAviso[0] = System.nanoTime();
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            borrar(temporal);
+            throw new ServiceException("Error al escribir " + destino + ": " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            // Errores del cursor (SQLException envuelta por el stream)
+            borrar(temporal);
+            throw new ServiceException("Error al leer los pacientes: " + e.getMessage(), e);
+        }
+
+        try {
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            borrar(temporal);
+            throw new ServiceException("Error al generar " + destino + ": " + e.getMessage(), e);
+        }
+        Progreso resultado = estado.copia();
+        if (progreso != null) {
+            progreso.accept(resultado);
+        }
+        return resultado;
+    }
+
+    private static BufferedWriter abrir(Path archivo, boolean gzip) throws IOException {
+        OutputStream salida = new BufferedOutputStream(Files.newOutputStream(archivo), TAMANIO_BUFFER);
+        if (gzip) {
+            salida = new GZIPOutputStream(salida, TAMANIO_BUFFER);
+        }
+        return new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8), TAMANIO_BUFFER);
+    }
+
+    private static void borrar(Path archivo) {
+        try {
+            Files.deleteIfExists(archivo);
+        } catch (IOException e) {
+            System.err.println("No se pudo borrar " + archivo + ": " + e.getMessage());
+        }
+    }
+
+    private static void escribirCsv(BufferedWriter salida, Paciente p) throws IOException {
+        HistoriaClinica hc = p.getHistoriaClinica();
+        salida.write(p.getId().toString());
+        salida.write(',');
+        salida.write(LectorCsv.escapar(p.getNombre()));
+        salida.write(',');
+        salida.write(LectorCsv.escapar(p.getApellido()));
+        salida.write(',');
+        salida.write(LectorCsv.escapar(p.getDni()));
+        salida.write(',');
+        salida.write(p.getFechaNacimiento() != null ? p.getFechaNacimiento().toString() : "");
+        salida.write(',');
+        if (hc != null) {
+            salida.write(hc.getId().toString());
+            salida.write(',');
+            salida.write(LectorCsv.escapar(hc.getNroHistoria()));
+            salida.write(',');
+            salida.write(hc.getGrupoSanguineo() != null ? hc.getGrupoSanguineo().name() : "");
+            salida.write(',');
+            salida.write(LectorCsv.escapar(hc.getAntecedentes()));
+            salida.write(',');
+            salida.write(LectorCsv.escapar(hc.getMedicacionActual()));
+            salida.write(',');
+            salida.write(LectorCsv.escapar(hc.getObservaciones()));
+        } else {
+            salida.write(",,,,,");
+        }
+        salida.newLine();
+    }
+
+    private static void escribirJson(BufferedWriter salida, Paciente p) throws IOException {
+        HistoriaClinica hc = p.getHistoriaClinica();
+        salida.write("{\"id\":");
+        salida.write(p.getId().toString());
+        salida.write(",\"nombre\":");
+        escribirTextoJson(salida, p.getNombre());
+        salida.write(",\"apellido\":");
+        escribirTextoJson(salida, p.getApellido());
+        salida.write(",\"dni\":");
+        escribirTextoJson(salida, p.getDni());
+        salida.write(",\"fechaNacimiento\":");
+        escribirTextoJson(salida, p.getFechaNacimiento() != null ? p.getFechaNacimiento().toString() : null);
+        salida.write(",\"historiaClinica\":");
+        if (hc != null) {
+            salida.write("{\"id\":");
+            salida.write(hc.getId().toString());
+            salida.write(",\"nroHistoria\":");
+            escribirTextoJson(salida, hc.getNroHistoria());
+            salida.write(",\"grupoSanguineo\":");
+            escribirTextoJson(salida, hc.getGrupoSanguineo() != null ? hc.getGrupoSanguineo().name() : null);
+            salida.write(",\"antecedentes\":");
+            escribirTextoJson(salida, hc.getAntecedentes());
+            salida.write(",\"medicacionActual\":");
+            escribirTextoJson(salida, hc.getMedicacionActual());
+            salida.write(",\"observaciones\":");
+            escribirTextoJson(salida, hc.getObservaciones());
+            salida.write('}');
+        } else {
+            salida.write("null");
+        }
+        salida.write('}');
+        salida.newLine();
+    }
+
+    private static void escribirTextoJson(BufferedWriter salida, String valor) throws IOException {
+        if (valor == null) {
+            salida.write("null");
+            return;
+        }
+        salida.write('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '"':
+                    salida.write("\\\"");
+                    break;
+                case '\\':
+                    salida.write("\\\\");
+                    break;
+                case '\n':
+                    salida.write("\\n");
+                    break;
+                case '\r':
+                    salida.write("\\r");
+                    break;
+                case '\t':
+                    salida.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        salida.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        salida.write(c);
+                    }
+            }
+        }
+        salida.write('"');
+    }
+
+    /**
+     * Avance de una exportación.
+     */
+    public static final class Progreso {
+        private final long inicioNanos;
+        private long filas;
+        private long transcurridoNanos;
+
+        private Progreso() {
+            this(System.nanoTime());
+        }
+
+        private Progreso(long inicioNanos) {
+            this.inicioNanos = inicioNanos;
+        }
+
+        private Progreso copia() {
+            Progreso copia = new Progreso(inicioNanos);
+            copia.filas = filas;
+            copia.transcurridoNanos = System.nanoTime() - inicioNanos;
+            return copia;
+        }
+
+        public long getFilas() {
+            return filas;
+        }
+
+        public long getTranscurridoMillis() {
+            return transcurridoNanos / 1_000_000;
+        }
+
+        public double getFilasPorSegundo() {
+            return transcurridoNanos == 0 ? 0 : filas * 1e9 / transcurridoNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Exportación{filas=%d, %.0f filas/s, %.1f s}",
+                    filas, getFilasPorSegundo(), transcurridoNanos / 1e9);
+        }
+    }
+}
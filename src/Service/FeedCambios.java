@@ -0,0 +1,333 @@
+package Service;
+
+import Metrics.RegistroMetricas;
+import Models.HistoriaClinica;
+import Models.Paciente;
+import Service.EventoCambio.Entidad;
+import Service.EventoCambio.Tipo;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feed en memoria de los cambios confirmados de pacientes e historias
+ * clínicas, para consumidores que hoy tendrían que releer las tablas
+ * (índices de búsqueda, cachés, analítica).
+ *
+ * PacienteService e HistoriaClinicaService publican un {@link EventoCambio}
+ * después de cada commit. Los eventos van a un buffer circular de
+ * {@code clinica.feed.capacidad} casilleros (8192) sin locks: cada
+ * publicación toma su número de secuencia con un incremento atómico y
+ * escribe su casillero. Cada suscriptor ({@link #suscribir}) tiene su propio
+ * cursor y su propio hilo, que le entrega los eventos en lotes de hasta
+ * {@code clinica.feed.lote} (256).
+ *
+ * Un suscriptor lento nunca frena las escrituras: si se atrasa más que la
+ * capacidad del buffer, los eventos más viejos se pisan, el suscriptor salta
+ * al más antiguo que sigue disponible y se le avisa cuántos perdió
+ * ({@link Suscriptor#alPerderEventos(long)}), para que se resincronice
+ * leyendo la base. Sin suscriptores no se publica nada.
+ *
+ * @author Grupo 49
+ */
+public final class FeedCambios {
+
+    private static final FeedCambios INSTANCIA = new FeedCambios(
+            Integer.getInteger("clinica.feed.capacidad", 8192), Integer.getInteger("clinica.feed.lote", 256));
+
+    // Un suscriptor dormido se despierta con cada publicación; esto es solo por las dudas
+    private static final long ESPERA_MAXIMA_NS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Consumidor de eventos. Cada suscriptor recibe todos los eventos en
+     * orden de secuencia, desde un único hilo.
+     */
+    public interface Suscriptor {
+        /**
+         * @param lote eventos consecutivos (no vacío); la lista se reutiliza
+         *        después de la llamada
+         * @throws Exception si falla; se registra y se sigue con el próximo lote
+         */
+        void procesar(List<EventoCambio> lote) throws Exception;
+
+        /**
+         * El suscriptor se atrasó más que la capacidad del buffer y se
+         * descartaron eventos que no llegó a procesar.
+         *
+         * @param cantidad eventos perdidos
+         */
+        default void alPerderEventos(long cantidad) {
+        }
+    }
+
+    private final int capacidad;
+    private final int mascara;
+    private final int maxLote;
+    private final AtomicReferenceArray<EventoCambio> anillo;
+
+    // Próxima secuencia a publicar
+    private final AtomicLong siguiente = new AtomicLong();
+
+    private final List<Suscripcion> suscripciones = new CopyOnWriteArrayList<>();
+
+    private FeedCambios(int capacidad, int maxLote) {
+        int c = 2;
+        while (c < capacidad) {
+            c <<= 1;
+        }
+        this.capacidad = c;
+        this.mascara = c - 1;
+        this.maxLote = Math.max(1, maxLote);
+        this.anillo = new AtomicReferenceArray<>(c);
+
+        RegistroMetricas.getInstance().registrarIndicador("clinica_feed_eventos_publicados",
+                "Eventos publicados en el feed de cambios.", siguiente::get);
+    }
+
+    public static FeedCambios getInstance() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Registra un suscriptor que recibe los eventos publicados desde ahora.
+     *
+     * @param nombre nombre para el hilo y las métricas (por ejemplo "indice_busqueda")
+     * @param suscriptor el consumidor
+     * @return la suscripción, para cancelarla
+     */
+    public Suscripcion suscribir(String nombre, Suscriptor suscriptor) {
+        Suscripcion suscripcion = new Suscripcion(nombre, suscriptor);
+        suscripciones.add(suscripcion);
+        suscripcion.hilo.start();
+        return suscripcion;
+    }
+
+    // --- Publicación (desde los servicios, después del commit) ---
+
+    void creado(Entidad entidad, long id, Long pacienteId) {
+        publicar(Tipo.CREADO, entidad, id, pacienteId, null);
+    }
+
+    void actualizado(Entidad entidad, long id, Long pacienteId, Set<String> columnas) {
+        publicar(Tipo.ACTUALIZADO, entidad, id, pacienteId, columnas);
+    }
+
+    void eliminado(Entidad entidad, long id, Long pacienteId) {
+        publicar(Tipo.ELIMINADO, entidad, id, pacienteId, null);
+    }
+
+    private void publicar(Tipo tipo, Entidad entidad, long id, Long pacienteId, Set<String> columnas) {
+        if (suscripciones.isEmpty()) {
+            return;
+        }
+        long secuencia = siguiente.getAndIncrement();
+        EventoCambio evento = new EventoCambio(secuencia, tipo, entidad, id, pacienteId, columnas);
+        // Un productor demorado no pisa un evento de una vuelta posterior del buffer
+        anillo.accumulateAndGet((int) (secuencia & mascara), evento,
+                (actual, nuevo) -> actual == null || actual.getSecuencia() < nuevo.getSecuencia() ? nuevo : actual);
+        for (Suscripcion suscripcion : suscripciones) {
+            suscripcion.despertar();
+        }
+    }
+
+    /**
+     * @return columnas modificadas del paciente (antes de limpiar los cambios)
+     */
+    static Set<String> columnasDe(Paciente paciente) {
+        Set<String> columnas = new LinkedHashSet<>();
+        for (Paciente.Campo campo : paciente.getCambios()) {
+            columnas.add(campo.getColumna());
+        }
+        return columnas;
+    }
+
+    /**
+     * @return columnas modificadas de la historia (antes de limpiar los cambios)
+     */
+    static Set<String> columnasDe(HistoriaClinica hc) {
+        Set<String> columnas = new LinkedHashSet<>();
+        for (HistoriaClinica.Campo campo : hc.getCambios()) {
+            columnas.add(campo.getColumna());
+        }
+        return columnas;
+    }
+
+    public long getPublicados() {
+        return siguiente.get();
+    }
+
+    public int getCapacidad() {
+        return capacidad;
+    }
+
+    /**
+     * Un suscriptor con su cursor y su hilo.
+     */
+    public final class Suscripcion {
+        private final String nombre;
+        private final Suscriptor suscriptor;
+        private final Thread hilo;
+
+        // Próxima secuencia a entregar (solo la escribe el hilo del suscriptor)
+        private volatile long cursor;
+        private volatile boolean durmiendo;
+        private volatile boolean cancelada;
+
+        private final AtomicLong entregados = new AtomicLong();
+        private final AtomicLong perdidos = new AtomicLong();
+        private final AtomicLong errores = new AtomicLong();
+
+        private Suscripcion(String nombre, Suscriptor suscriptor) {
+            this.nombre = nombre;
+            this.suscriptor = suscriptor;
+            this.cursor = siguiente.get();
+            this.hilo = new Thread(this::procesar, "clinica-feed-" + nombre);
+            this.hilo.setDaemon(true);
+
+            RegistroMetricas registro = RegistroMetricas.getInstance();
+            registro.registrarIndicador("clinica_feed_" + nombre + "_pendientes",
+                    "Eventos del feed que el suscriptor " + nombre + " todavía no procesó.", this::getPendientes);
+            registro.registrarIndicador("clinica_feed_" + nombre + "_perdidos",
+                    "Eventos del feed que el suscriptor " + nombre + " perdió por atrasarse.", perdidos::get);
+        }
+
+        private void procesar() {
+            List<EventoCambio> lote = new ArrayList<>(maxLote);
+            while (true) {
+                // Se lee antes de juntar: lo publicado antes de cancelar se entrega igual
+                boolean cancelar = cancelada;
+                juntar(lote);
+                if (!lote.isEmpty()) {
+                    entregar(lote);
+                    lote.clear();
+                } else if (cancelar) {
+                    return;
+                } else {
+                    esperar();
+                }
+            }
+        }
+
+        /**
+         * Agrega a {@code lote} los eventos publicados desde el cursor, hasta
+         * {@code maxLote}, y avanza el cursor
+         */
+        private void juntar(List<EventoCambio> lote) {
+            long c = cursor;
+            long tope = siguiente.get();
+            if (tope - c > capacidad) {
+                c = saltar(c, tope - capacidad);
+            }
+            while (c < tope && lote.size() < maxLote) {
+                EventoCambio evento = anillo.get((int) (c & mascara));
+                if (evento == null || evento.getSecuencia() < c) {
+                    // Secuencia tomada pero todavía no escrita: se espera al productor
+                    break;
+                }
+                if (evento.getSecuencia() > c) {
+                    // Lo pisó una vuelta posterior: el suscriptor se atrasó
+                    c = saltar(c, Math.max(c + 1, siguiente.get() - capacidad));
+                    continue;
+                }
+                lote.add(evento);
+                c++;
+            }
+            cursor = c;
+        }
+
+        private long saltar(long desde, long hasta) {
+            long cantidad = hasta - desde;
+            perdidos.addAndGet(cantidad);
+            try {
+                suscriptor.alPerderEventos(cantidad);
+            } catch (RuntimeException e) {
+                System.err.println("Error en el suscriptor " + nombre + " del feed: " + e.getMessage());
+            }
+            return hasta;
+        }
+
+        private void entregar(List<EventoCambio> lote) {
+            try {
+                suscriptor.procesar(lote);
+            } catch (Exception e) {
+                errores.incrementAndGet();
+                System.err.println("Error en el suscriptor " + nombre + " del feed: " + e.getMessage());
+            }
+            entregados.addAndGet(lote.size());
+        }
+
+        private void esperar() {
+            durmiendo = true;
+            try {
+                long pendientes = siguiente.get() - cursor;
+                if (pendientes > 0) {
+                    // Hay una publicación a medio escribir: es cuestión de instantes
+                    Thread.onSpinWait();
+                } else if (!cancelada) {
+                    // Cada publicación vuelve a mirar "durmiendo" después de tomar su secuencia
+                    LockSupport.parkNanos(this, ESPERA_MAXIMA_NS);
+                }
+            } finally {
+                durmiendo = false;
+            }
+        }
+
+        private void despertar() {
+            if (durmiendo) {
+                LockSupport.unpark(hilo);
+            }
+        }
+
+        /**
+         * Deja de recibir eventos. Espera a que se entreguen los publicados
+         * hasta ahora (salvo si se llama desde el propio suscriptor).
+         */
+        public void cancelar() {
+            cancelada = true;
+            LockSupport.unpark(hilo);
+            if (Thread.currentThread() != hilo) {
+                try {
+                    hilo.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            suscripciones.remove(this);
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+
+        /**
+         * @return eventos publicados que el suscriptor todavía no recibió
+         */
+        public long getPendientes() {
+            return Math.max(0, siguiente.get() - cursor);
+        }
+
+        public long getEntregados() {
+            return entregados.get();
+        }
+
+        public long getPerdidos() {
+            return perdidos.get();
+        }
+
+        public long getErrores() {
+            return errores.get();
+        }
+
+        @Override
+        public String toString() {
+            return "Suscripcion{" + nombre + ", entregados=" + entregados.get() + ", pendientes=" + getPendientes()
+                    + ", perdidos=" + perdidos.get() + ", errores=" + errores.get() + "}";
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package Service;
+
+import Metrics.RegistroMetricas;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Filtro en memoria de los DNIs registrados, para detectar duplicados antes
+ * de abrir una transacción.
+ *
+ * Cada DNI se convierte en una clave de 64 bits: el número mismo si tiene
+ * solo dígitos, o un hash si tiene letras. Las claves se guardan en dos
+ * estructuras:
+ * <ul>
+ *   <li>un filtro de Bloom (unos 2 bytes por DNI) que se consulta primero:
+ *       si dice que no, el DNI seguro no está;</li>
+ *   <li>un conjunto exacto de claves {@code long} (direccionamiento abierto,
+ *       sin objetos por entrada) que descarta los falsos positivos del filtro.</li>
+ * </ul>
+ * Un "puede estar" se confirma con una consulta por el índice de dni (ver
+ * {@code PacienteDao.existeDni}): el conjunto no distingue DNIs con el mismo
+ * número ("0123" y "123") ni colisiones de hash, y los DNIs que dejaron de
+ * usarse (un paciente que cambió de DNI) no se quitan.
+ *
+ * Incluye a los pacientes eliminados, porque el UNIQUE de la base también.
+ * Se construye al iniciar y PacienteService agrega cada DNI confirmado.
+ *
+ * @author Grupo 49
+ */
+public final class FiltroDni {
+
+    private static final FiltroDni INSTANCIA = new FiltroDni();
+
+    // Consultas al filtro de Bloom por DNI
+    private static final int SONDEOS = 7;
+    // Bits del filtro por cada posición de la tabla (la tabla se llena hasta la mitad)
+    private static final int BITS_POR_POSICION = 8;
+    private static final int CAPACIDAD_INICIAL = 1 << 10;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Conjunto exacto: tabla de claves con sondeo lineal; 0 marca posición libre
+    private long[] tabla = new long[CAPACIDAD_INICIAL];
+    private boolean contieneCero;
+    private int claves;
+
+    // Filtro de Bloom: bits.length * 64 = tabla.length * BITS_POR_POSICION
+    private long[] bits = new long[CAPACIDAD_INICIAL * BITS_POR_POSICION / 64];
+
+    private volatile boolean construido;
+
+    private final LongAdder consultas = new LongAdder();
+    private final LongAdder descartadasPorBloom = new LongAdder();
+    private final LongAdder descartadasPorConjunto = new LongAdder();
+    private final LongAdder falsosPositivos = new LongAdder();
+
+    private FiltroDni() {
+        RegistroMetricas registro = RegistroMetricas.getInstance();
+        registro.registrarIndicador("clinica_filtro_dni_claves", "DNIs en el filtro de duplicados.",
+                this::getClaves);
+        registro.registrarIndicador("clinica_filtro_dni_consultas", "Consultas al filtro de DNIs.",
+                consultas::sum);
+        registro.registrarIndicador("clinica_filtro_dni_descartes",
+                "Consultas al filtro de DNIs resueltas sin ir a la base.",
+                () -> descartadasPorBloom.sum() + descartadasPorConjunto.sum());
+        registro.registrarIndicador("clinica_filtro_dni_falsos_positivos",
+                "DNIs que el filtro marcó como posibles duplicados y la base no confirmó.",
+                falsosPositivos::sum);
+    }
+
+    public static FiltroDni getInstance() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Descarta el contenido actual y carga los DNIs del stream (todos, también
+     * los de pacientes eliminados). Las consultas esperan hasta que termine.
+     *
+     * @param dnis DNIs registrados
+     * @return cantidad de DNIs distintos cargados
+     */
+    public int construir(Stream<String> dnis) {
+        lock.writeLock().lock();
+        try {
+            construido = false;
+            tabla = new long[CAPACIDAD_INICIAL];
+            bits = new long[CAPACIDAD_INICIAL * BITS_POR_POSICION / 64];
+            contieneCero = false;
+            claves = 0;
+
+            Iterator<String> it = dnis.iterator();
+            while (it.hasNext()) {
+                String dni = it.next();
+                if (dni != null) {
+                    agregarClave(clave(dni));
+                }
+            }
+            construido = true;
+            return claves;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return false si el filtro todavía no se construyó o se invalidó
+     *         (en ese caso no se puede usar para descartar DNIs)
+     */
+    public boolean estaConstruido() {
+        return construido;
+    }
+
+    /**
+     * Marca el filtro como desactualizado.
+     */
+    public void invalidar() {
+        construido = false;
+    }
+
+    /**
+     * Agrega un DNI confirmado en la base.
+     *
+     * @param dni DNI del paciente creado o modificado
+     */
+    public void agregar(String dni) {
+        if (dni == null) {
+            return;
+        }
+        long clave = clave(dni);
+        lock.writeLock().lock();
+        try {
+            agregarClave(clave);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param dni DNI a consultar
+     * @return false si el DNI seguro no está registrado; true si puede estarlo
+     *         (hay que confirmarlo en la base) o si el filtro no está construido
+     */
+    public boolean puedeEstar(String dni) {
+        if (!construido) {
+            return true;
+        }
+        consultas.increment();
+        long clave = clave(dni);
+        lock.readLock().lock();
+        try {
+            if (!bloomContiene(clave)) {
+                descartadasPorBloom.increment();
+                return false;
+            }
+            if (!conjuntoContiene(clave)) {
+                descartadasPorConjunto.increment();
+                return false;
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Registra que un "puede estar" no se confirmó en la base (solo para métricas).
+     */
+    public void registrarFalsoPositivo() {
+        falsosPositivos.increment();
+    }
+
+    public int getClaves() {
+        lock.readLock().lock();
+        try {
+            return claves;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- Claves ---
+
+    /**
+     * Clave de 64 bits de un DNI: el número si son solo dígitos (hasta 18),
+     * o un hash con el bit de signo en 1 para que no choque con los números.
+     * Sin espacios y en mayúsculas, así la clave no es más estricta que la
+     * comparación de la base.
+     */
+    static long clave(String dni) {
+        String normalizado = dni.trim().toUpperCase(Locale.ROOT);
+        int largo = normalizado.length();
+        if (largo > 0 && largo <= 18) {
+            long numero = 0;
+            int i = 0;
+            while (i < largo && normalizado.charAt(i) >= '0' && normalizado.charAt(i) <= '9') {
+                numero = numero * 10 + (normalizado.charAt(i) - '0');
+                i++;
+            }
+            if (i == largo) {
+                return numero;
+            }
+        }
+        long h = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = 0; i < largo; i++) {
+            h = (h ^ normalizado.charAt(i)) * 0x100000001b3L;
+        }
+        return h | Long.MIN_VALUE;
+    }
+
+    private static long mezclar(long x) {
+        // Finalizador de SplitMix64: los DNIs consecutivos quedan dispersos
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    // --- Filtro de Bloom ---
+
+    private boolean bloomContiene(long clave) {
+        long h = mezclar(clave);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        int mascara = bits.length * 64 - 1;
+        for (int i = 0; i < SONDEOS; i++) {
+            int bit = (h1 + i * h2) & mascara;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void bloomAgregar(long[] bits, long clave) {
+        long h = mezclar(clave);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        int mascara = bits.length * 64 - 1;
+        for (int i = 0; i < SONDEOS; i++) {
+            int bit = (h1 + i * h2) & mascara;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    // --- Conjunto exacto ---
+
+    private boolean conjuntoContiene(long clave) {
+        if (clave == 0) {
+            return contieneCero;
+        }
+        int mascara = tabla.length - 1;
+        for (int i = (int) mezclar(clave) & mascara; ; i = (i + 1) & mascara) {
+            long actual = tabla[i];
+            if (actual == clave) {
+                return true;
+            }
+            if (actual == 0) {
+                return false;
+            }
+        }
+    }
+
+    private void agregarClave(long clave) {
+        if (clave == 0) {
+            if (!contieneCero) {
+                contieneCero = true;
+                claves++;
+                bloomAgregar(bits, clave);
+            }
+            return;
+        }
+        if (insertar(tabla, clave)) {
+            claves++;
+            bloomAgregar(bits, clave);
+            if (claves * 2 > tabla.length) {
+                crecer();
+            }
+        }
+    }
+
+    private static boolean insertar(long[] tabla, long clave) {
+        int mascara = tabla.length - 1;
+        for (int i = (int) mezclar(clave) & mascara; ; i = (i + 1) & mascara) {
+            long actual = tabla[i];
+            if (actual == clave) {
+                return false;
+            }
+            if (actual == 0) {
+                tabla[i] = clave;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Duplica la tabla y rehace el filtro de Bloom con el doble de bits, así
+     * la tasa de falsos positivos no sube a medida que se agregan DNIs
+     */
+    private void crecer() {
+        long[] nuevaTabla = new long[tabla.length * 2];
+        long[] nuevosBits = new long[nuevaTabla.length * BITS_POR_POSICION / 64];
+        for (long clave : tabla) {
+            if (clave != 0) {
+                insertar(nuevaTabla, clave);
+                bloomAgregar(nuevosBits, clave);
+            }
+        }
+        if (contieneCero) {
+            bloomAgregar(nuevosBits, 0);
+        }
+        tabla = nuevaTabla;
+        bits = nuevosBits;
+    }
+}
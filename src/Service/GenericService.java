@@ -5,6 +5,7 @@
 package Service;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 // Interfaz genérica
 public interface GenericService<T> {
@@ -19,6 +20,42 @@ public interface GenericService<T> {
     
     List<T> getAll() throws ServiceException; 
     
+    // Paginación por clave: entidades con ID mayor a 'despuesDeId', ordenadas por ID
+    List<T> getPagina(Long despuesDeId, int limite) throws ServiceException; 
+    
+    // Variantes asíncronas: corren en un hilo virtual (ver EjecutorAsincrono)
+    // y el future falla con la ServiceException de la operación
+    
+    default CompletableFuture<T> insertarAsync(T t) {
+        return EjecutorAsincrono.enviar(() -> insertar(t));
+    }
+    
+    default CompletableFuture<Void> actualizarAsync(T t) {
+        return EjecutorAsincrono.enviar(() -> {
+            actualizar(t);
+            return null;
+        });
+    }
+    
+    default CompletableFuture<Void> eliminarAsync(Long id) {
+        return EjecutorAsincrono.enviar(() -> {
+            eliminar(id);
+            return null;
+        });
+    }
+    
+    default CompletableFuture<T> getByIdAsync(Long id) {
+        return EjecutorAsincrono.enviar(() -> getById(id));
+    }
+    
+    default CompletableFuture<List<T>> getAllAsync() {
+        return EjecutorAsincrono.enviar(this::getAll);
+    }
+    
+    default CompletableFuture<List<T>> getPaginaAsync(Long despuesDeId, int limite) {
+        return EjecutorAsincrono.enviar(() -> getPagina(despuesDeId, limite));
+    }
+    
     public class ServiceException extends Exception {
         public ServiceException(String message) {
             super(message);
@@ -27,4 +64,14 @@ public interface GenericService<T> {
             super(message, cause);
         }
     }
+    
+    // La entidad se modificó en otra transacción después de leerla
+    // (concurrencia optimista): hay que volver a leerla y reintentar
+    public class ConflictoConcurrenciaException extends ServiceException {
+        private static final long serialVersionUID = 1L;
+
+        public ConflictoConcurrenciaException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
 }
\ No newline at end of file
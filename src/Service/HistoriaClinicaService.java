@@ -4,10 +4,23 @@
  */
 package Service;
 
+import Config.DatabaseConnection;
+import Dao.CacheEntidades;
+import Dao.CachedDao;
+import Dao.ConflictoVersionException;
 import Dao.HistoriaClinicaDao;
+import Dao.Secuencias;
+import Dao.Shards;
+import Metrics.Metricas;
 import Models.HistoriaClinica;
+import Models.HistoriaClinicaResumen;
 import Models.Paciente;
+import Service.EventoCambio.Entidad;
+import java.sql.Connection;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Servicio para gestionar la lógica de negocio de las Historias Clínicas.
@@ -21,63 +34,269 @@ public class HistoriaClinicaService implements GenericService<HistoriaClinica> {
 
     private final HistoriaClinicaDao historiaClinicaDao;
 
+    // La caché de búsquedas por DNI guarda pacientes con su historia clínica
+    private final PacienteDniCache cacheDni = PacienteDniCache.getInstance();
+
+    // Caché de historias por ID (compartida con PacienteService)
+    private final CachedDao<HistoriaClinica> cacheHistorias = CacheEntidades.HISTORIAS;
+
+    // Índice de texto sobre antecedentes y medicación (compartido con PacienteService)
+    private final IndiceTextoClinico indiceTexto = IndiceTextoClinico.getInstance();
+
+    // Eventos de los cambios confirmados (compartido con PacienteService)
+    private final FeedCambios feed = FeedCambios.getInstance();
+
     public HistoriaClinicaService() {
         this.historiaClinicaDao = new HistoriaClinicaDao();
     }
 
     @Override
     public HistoriaClinica insertar(HistoriaClinica historiaClinica) throws ServiceException {
-        validarHistoriaClinica(historiaClinica, true);
+        return Metricas.medir("HistoriaClinicaService.insertar", () -> {
+            validarHistoriaClinica(historiaClinica, true);
+            try {
+                // Antes de tomar la conexión, si los IDs los asigna la aplicación
+                Secuencias.asignarId(historiaClinica, historiaClinica.getPaciente().getId());
+                HistoriaClinica creada = historiaClinicaDao.crear(historiaClinica);
+                indiceTexto.reflejar(creada, historiaClinicaDao);
+                feed.creado(Entidad.HISTORIA_CLINICA, creada.getId(), creada.getPaciente().getId());
+                return creada;
+            } catch (Exception e) {
+                throw new ServiceException("Error al crear la historia clínica: " + e.getMessage(), e);
+            } finally {
+                cacheDni.invalidarPorPacienteId(historiaClinica.getPaciente().getId());
+            }
+        });
+    }
+
+    /**
+     * Genera un número de historia clínica que no se repite entre sesiones ni
+     * procesos (ver {@link Secuencias#siguienteNroHistoria()}).
+     * 
+     * @return el número, por ejemplo "HC-00000042"
+     * @throws ServiceException Si no se pudo reservar un bloque de números
+     */
+    public String generarNroHistoria() throws ServiceException {
         try {
-            return historiaClinicaDao.crear(historiaClinica);
+            return Secuencias.siguienteNroHistoria();
         } catch (Exception e) {
-            throw new ServiceException("Error al crear la historia clínica: " + e.getMessage(), e);
+            throw new ServiceException("Error al generar el número de historia clínica: " + e.getMessage(), e);
         }
     }
 
     @Override
     public void actualizar(HistoriaClinica historiaClinica) throws ServiceException {
-        validarHistoriaClinica(historiaClinica, false);
-        try {
-            historiaClinicaDao.actualizar(historiaClinica);
-        } catch (Exception e) {
-            throw new ServiceException("Error al actualizar la historia clínica: " + e.getMessage(), e);
-        }
+        Metricas.ejecutar("HistoriaClinicaService.actualizar", () -> {
+            validarHistoriaClinica(historiaClinica, false);
+            if (!historiaClinica.tieneCambios()) {
+                return;
+            }
+            boolean reindexar = IndiceTextoClinico.afectaIndice(historiaClinica);
+            Set<String> columnas = FeedCambios.columnasDe(historiaClinica);
+            // Solo las columnas modificadas, en una única sentencia (autocommit)
+            try (Connection conn = DatabaseConnection.getConnection(Shards.deId(historiaClinica.getId()))) {
+                // Falla si la fila cambió desde que se leyó
+                historiaClinicaDao.actualizarCambios(historiaClinica, conn);
+                historiaClinica.limpiarCambios();
+                historiaClinica.setVersion(historiaClinica.getVersion() + 1);
+                if (reindexar) {
+                    indiceTexto.reflejar(historiaClinica, historiaClinicaDao);
+                }
+                feed.actualizado(Entidad.HISTORIA_CLINICA, historiaClinica.getId(),
+                        historiaClinica.getPaciente().getId(), columnas);
+            } catch (ConflictoVersionException e) {
+                throw new ConflictoConcurrenciaException("Error al actualizar la historia clínica: " + e.getMessage(), e);
+            } catch (Exception e) {
+                throw new ServiceException("Error al actualizar la historia clínica: " + e.getMessage(), e);
+            } finally {
+                cacheDni.invalidarPorHistoriaId(historiaClinica.getId());
+                cacheDni.invalidarPorPacienteId(historiaClinica.getPaciente().getId());
+                cacheHistorias.invalidar(historiaClinica.getId());
+            }
+        });
+    }
+
+    /**
+     * Actualiza la historia sin perder ediciones concurrentes: ante un
+     * conflicto de versión la vuelve a leer, le aplica los campos modificados
+     * en {@code editada} y reintenta (ver
+     * {@link PacienteService#actualizarFusionando(Paciente)}).
+     * 
+     * @param editada La historia leída y modificada
+     * @return {@code editada} si se guardó sin conflictos, o la historia
+     *         fusionada que quedó guardada
+     * @throws ConflictoConcurrenciaException Si sigue habiendo conflictos
+     *         después del último intento
+     * @throws ServiceException Si la validación o la actualización fallan, o
+     *         si la historia se eliminó mientras tanto
+     */
+    public HistoriaClinica actualizarFusionando(HistoriaClinica editada) throws ServiceException {
+        return Metricas.medir("HistoriaClinicaService.actualizarFusionando", () -> {
+            HistoriaClinica actual = editada;
+            for (int intento = 1; ; intento++) {
+                try {
+                    actualizar(actual);
+                    return actual;
+                } catch (ConflictoConcurrenciaException e) {
+                    if (intento >= PacienteService.MAX_INTENTOS_FUSION) {
+                        throw e;
+                    }
+                }
+                try {
+                    // Directo del DAO y de la primaria: sin caché ni réplicas atrasadas
+                    actual = historiaClinicaDao.leerDePrimaria(editada.getId());
+                } catch (Exception e) {
+                    throw new ServiceException("Error al releer la historia clínica: " + e.getMessage(), e);
+                }
+                if (actual == null || Boolean.TRUE.equals(actual.getEliminado())) {
+                    throw new ServiceException("La historia clínica fue eliminada mientras se editaba.");
+                }
+                actual.aplicarCambiosDe(editada);
+            }
+        });
     }
 
     @Override
     public void eliminar(Long id) throws ServiceException {
-        if (id == null || id <= 0) {
-            throw new ServiceException("El ID de la historia clínica no es válido.");
-        }
-        try {
-            historiaClinicaDao.eliminar(id);
-        } catch (Exception e) {
-            throw new ServiceException("Error al eliminar la historia clínica: " + e.getMessage(), e);
-        }
+        Metricas.ejecutar("HistoriaClinicaService.eliminar", () -> {
+            if (id == null || id <= 0) {
+                throw new ServiceException("El ID de la historia clínica no es válido.");
+            }
+            try {
+                historiaClinicaDao.eliminar(id);
+                indiceTexto.eliminar(id);
+                feed.eliminado(Entidad.HISTORIA_CLINICA, id, null);
+            } catch (Exception e) {
+                throw new ServiceException("Error al eliminar la historia clínica: " + e.getMessage(), e);
+            } finally {
+                cacheDni.invalidarPorHistoriaId(id);
+                cacheHistorias.invalidar(id);
+            }
+        });
     }
 
     @Override
     public HistoriaClinica getById(Long id) throws ServiceException {
-        if (id == null || id <= 0) {
-            throw new ServiceException("El ID de la historia clínica no es válido.");
-        }
-        try {
-            return historiaClinicaDao.leer(id);
-        } catch (Exception e) {
-            throw new ServiceException("Error al buscar la historia clínica: " + e.getMessage(), e);
-        }
+        return Metricas.medir("HistoriaClinicaService.getById", () -> {
+            if (id == null || id <= 0) {
+                throw new ServiceException("El ID de la historia clínica no es válido.");
+            }
+            try {
+                return cacheHistorias.leer(id);
+            } catch (Exception e) {
+                throw new ServiceException("Error al buscar la historia clínica: " + e.getMessage(), e);
+            }
+        });
     }
 
     @Override
     public List<HistoriaClinica> getAll() throws ServiceException {
+        return Metricas.medir("HistoriaClinicaService.getAll", () -> {
+            try {
+                return historiaClinicaDao.leerTodos();
+            } catch (Exception e) {
+                throw new ServiceException("Error al obtener las historias clínicas: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @Override
+    public List<HistoriaClinica> getPagina(Long despuesDeId, int limite) throws ServiceException {
+        return Metricas.medir("HistoriaClinicaService.getPagina", () -> {
+            if (limite <= 0) {
+                throw new ServiceException("El tamaño de página debe ser mayor a cero.");
+            }
+            try {
+                return historiaClinicaDao.leerPagina(despuesDeId, limite);
+            } catch (Exception e) {
+                throw new ServiceException("Error al obtener la página de historias clínicas: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Obtiene una página de resúmenes de historias clínicas (sin antecedentes,
+     * medicación ni observaciones), para listados.
+     *
+     * @param despuesDeId último ID de la página anterior (null para la primera)
+     * @param limite cantidad máxima de historias
+     * @return página de resúmenes (vacía cuando no hay más)
+     * @throws ServiceException si ocurre un error
+     */
+    public List<HistoriaClinicaResumen> getPaginaResumen(Long despuesDeId, int limite) throws ServiceException {
+        return Metricas.medir("HistoriaClinicaService.getPaginaResumen", () -> {
+            if (limite <= 0) {
+                throw new ServiceException("El tamaño de página debe ser mayor a cero.");
+            }
+            try {
+                return historiaClinicaDao.leerPaginaResumen(despuesDeId, limite);
+            } catch (Exception e) {
+                throw new ServiceException("Error al obtener la página de historias clínicas: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Carga antecedentes, medicación y observaciones de una historia que vino
+     * de un listado (ver {@link HistoriaClinica#isDetalleCargado()}).
+     *
+     * @param historiaClinica historia a completar
+     * @throws ServiceException si ocurre un error
+     */
+    public void cargarDetalle(HistoriaClinica historiaClinica) throws ServiceException {
+        if (historiaClinica == null || historiaClinica.getId() == null) {
+            throw new ServiceException("La historia clínica debe tener ID para cargar su detalle.");
+        }
         try {
-            return historiaClinicaDao.leerTodos();
+            historiaClinicaDao.cargarDetalle(historiaClinica);
         } catch (Exception e) {
-            throw new ServiceException("Error al obtener las historias clínicas: " + e.getMessage(), e);
+            throw new ServiceException("Error al cargar el detalle de la historia clínica: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Busca historias clínicas por texto en antecedentes y medicación actual
+     * ("enalapril", "hipertensión arterial"), sin distinguir mayúsculas ni
+     * tildes y aceptando plurales. Usa el índice en memoria; si todavía no se
+     * construyó, lo construye primero.
+     *
+     * @param consulta una o más palabras
+     * @param limite cantidad máxima de resultados
+     * @return historias encontradas, de la más relevante a la menos relevante
+     * @throws ServiceException si la consulta no es válida o falla la construcción del índice
+     */
+    public List<IndiceTextoClinico.Resultado> buscarPorTexto(String consulta, int limite) throws ServiceException {
+        return Metricas.medir("HistoriaClinicaService.buscarPorTexto", () -> {
+            if (consulta == null || consulta.trim().isEmpty()) {
+                throw new ServiceException("La consulta no puede estar vacía.");
+            }
+            if (limite <= 0) {
+                throw new ServiceException("El límite debe ser mayor a cero.");
+            }
+            if (!indiceTexto.estaConstruido()) {
+                construirIndiceTexto();
+            }
+            return indiceTexto.buscar(consulta, limite);
+        });
+    }
+
+    /**
+     * (Re)construye el índice de texto leyendo todas las historias activas en
+     * streaming. Se llama al iniciar la aplicación.
+     *
+     * @return cantidad de historias indexadas
+     * @throws ServiceException si falla la lectura
+     */
+    public int construirIndiceTexto() throws ServiceException {
+        return Metricas.medir("HistoriaClinicaService.construirIndiceTexto", () -> {
+            try (Stream<HistoriaClinica> historias = historiaClinicaDao.leerTodosStream()) {
+                return indiceTexto.construir(historias);
+            } catch (Exception e) {
+                throw new ServiceException("Error al construir el índice de texto: " + e.getMessage(), e);
+            }
+        });
+    }
+
     /**
      * Busca una historia clínica asociada a un paciente específico.
      *
@@ -86,14 +305,23 @@ public class HistoriaClinicaService implements GenericService<HistoriaClinica> {
      * @throws ServiceException si ocurre un error
      */
     public HistoriaClinica buscarPorPacienteId(Long pacienteId) throws ServiceException {
-        if (pacienteId == null || pacienteId <= 0) {
-            throw new ServiceException("El ID de paciente no es válido.");
-        }
-        try {
-            return historiaClinicaDao.buscarPorPacienteId(pacienteId);
-        } catch (Exception e) {
-            throw new ServiceException("Error al buscar la historia clínica por paciente: " + e.getMessage(), e);
-        }
+        return Metricas.medir("HistoriaClinicaService.buscarPorPacienteId", () -> {
+            if (pacienteId == null || pacienteId <= 0) {
+                throw new ServiceException("El ID de paciente no es válido.");
+            }
+            try {
+                return historiaClinicaDao.buscarPorPacienteId(pacienteId);
+            } catch (Exception e) {
+                throw new ServiceException("Error al buscar la historia clínica por paciente: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Variante asíncrona de {@link #buscarPorPacienteId(Long)}.
+     */
+    public CompletableFuture<HistoriaClinica> buscarPorPacienteIdAsync(Long pacienteId) {
+        return EjecutorAsincrono.enviar(() -> buscarPorPacienteId(pacienteId));
     }
 
     private void validarHistoriaClinica(HistoriaClinica hc, boolean esCreacion) throws ServiceException {
@@ -0,0 +1,481 @@
+package Service;
+
+import Dao.GenericDao;
+import Models.HistoriaClinica;
+import Models.HistoriaClinica.GrupoSanguineo;
+import Models.Paciente;
+import Service.GenericService.ServiceException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Importación masiva de pacientes con su historia clínica desde un CSV.
+ *
+ * El archivo se lee en streaming y se procesa en bloques:
+ * <ol>
+ * <li>El hilo lector arma bloques de registros y los reparte entre varios
+ * hilos que los convierten y validan en paralelo (con las mismas reglas de
+ * PacienteService).</li>
+ * <li>Los bloques validados se escriben en orden, cada uno en una
+ * transacción con lotes JDBC (paciente + historia juntos). Antes se rechazan
+ * los DNIs ya registrados o repetidos en el bloque (ver {@link FiltroDni}),
+ * así un duplicado no revierte el bloque entero. Si la transacción falla
+ * igual, las filas del bloque que no quedaron confirmadas (con varios
+ * shards, las de otros shards pueden haberse confirmado) se reintentan fila
+ * por fila para aislar las filas con problemas.</li>
+ * <li>Las filas rechazadas van a {@code <archivo>.rechazos.csv} con su línea
+ * y el motivo, y después de cada bloque se guarda el avance en
+ * {@code <archivo>.checkpoint}.</li>
+ * </ol>
+ *
+ * Si la importación se corta, volver a ejecutarla con el mismo archivo
+ * continúa desde el último bloque confirmado. Al terminar bien se borra el
+ * checkpoint. (Un bloque confirmado justo antes de un corte, sin que llegara
+ * a guardarse el checkpoint, reaparece como rechazos por DNI duplicado.)
+ *
+ * Columnas (con encabezado): nombre, apellido, dni, fecha_nacimiento
+ * (yyyy-MM-dd o dd/MM/yyyy), nro_historia, grupo_sanguineo (AP o A+, ABM o
+ * AB-, ...), antecedentes, medicacion_actual, observaciones.
+ *
+ * @author Grupo 49
+ */
+public class ImportadorCsv {
+
+    public static final String[] COLUMNAS = {"nombre", "apellido", "dni", "fecha_nacimiento", "nro_historia",
+        "grupo_sanguineo", "antecedentes", "medicacion_actual", "observaciones"};
+
+    private static final DateTimeFormatter FORMATO_FECHA_AR = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    // El progreso se informa como máximo una vez por segundo (y al final)
+    private static final long INTERVALO_PROGRESO_NANOS = 1_000_000_000L;
+
+    private final PacienteService pacienteService;
+    private final int tamanioBloque;
+    private final int hilos;
+
+    public ImportadorCsv(PacienteService pacienteService) {
+        this(pacienteService, GenericDao.TAMANIO_LOTE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param pacienteService servicio usado para validar e insertar
+     * @param tamanioBloque filas por transacción
+     * @param hilos hilos de conversión y validación
+     */
+    public ImportadorCsv(PacienteService pacienteService, int tamanioBloque, int hilos) {
+        if (tamanioBloque <= 0 || hilos <= 0) {
+            throw new IllegalArgumentException("El tamaño de bloque y la cantidad de hilos deben ser mayores a cero.");
+        }
+        this.pacienteService = pacienteService;
+        this.tamanioBloque = tamanioBloque;
+        this.hilos = hilos;
+    }
+
+    public static Path archivoCheckpoint(Path csv) {
+        return csv.resolveSibling(csv.getFileName() + ".checkpoint");
+    }
+
+    public static Path archivoRechazos(Path csv) {
+        return csv.resolveSibling(csv.getFileName() + ".rechazos.csv");
+    }
+
+    /**
+     * Importa el archivo (o continúa una importación cortada).
+     *
+     * @param csv archivo a importar (UTF-8)
+     * @param progreso recibe el avance periódicamente (puede ser null)
+     * @return el resumen de la importación
+     * @throws ServiceException si el archivo no se puede leer o tiene un
+     *         encabezado inválido, o si falla la base; lo confirmado hasta
+     *         ese momento queda registrado en el checkpoint
+     */
+    public Progreso importar(Path csv, Consumer<Progreso> progreso) throws ServiceException {
+        Path checkpoint = archivoCheckpoint(csv);
+        Path rechazos = archivoRechazos(csv);
+        long yaProcesados = leerCheckpoint(checkpoint);
+
+        ExecutorService validadores = Executors.newFixedThreadPool(hilos, r -> {
+            Thread hilo = new Thread(r, "clinica-import-validacion");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        Progreso estado = new Progreso(yaProcesados);
+
+        try (LectorCsv lector = new LectorCsv(Files.newBufferedReader(csv, StandardCharsets.UTF_8));
+                BufferedWriter salidaRechazos = abrirRechazos(rechazos)) {
+            validarEncabezado(lector.leer());
+            for (long i = 0; i < yaProcesados; i++) {
+                if (lector.leer() == null) {
+                    break;
+                }
+            }
+
+            // Bloques en validación; se escriben en el mismo orden en que se leyeron
+            ArrayDeque<Future<BloqueValidado>> enCurso = new ArrayDeque<>();
+            long ultimoAviso = System.nanoTime();
+            boolean finDeArchivo = false;
+            while (!finDeArchivo || !enCurso.isEmpty()) {
+                if (!finDeArchivo && enCurso.size() < hilos * 2) {
+                    List<LectorCsv.Registro> bloque = new ArrayList<>(tamanioBloque);
+                    LectorCsv.Registro registro;
+                    while (bloque.size() < tamanioBloque && (registro = lector.leer()) != null) {
+                        bloque.add(registro);
+                    }
+                    finDeArchivo = bloque.size() < tamanioBloque;
+                    if (!bloque.isEmpty()) {
+                        enCurso.add(validadores.submit(() -> validar(bloque)));
+                    }
+                    continue;
+                }
+
+                escribir(esperar(enCurso.poll()), salidaRechazos, estado);
+                guardarCheckpoint(checkpoint, estado.getProcesados());
+
+                if (progreso != null && System.nanoTime() - ultimoAviso >= INTERVALO_PROGRESO_NANOS) {
+                    progreso.accept(estado.copia());
+                    ultimoAviso = System.nanoTime();
+                }
+            }
+        } catch (IOException e) {
+            throw new ServiceException("Error al importar " + csv + " (procesadas: " + estado.getProcesados() + "): "
+                    + e.getMessage(), e);
+        } finally {
+            validadores.shutdownNow();
+        }
+
+        try {
+            Files.deleteIfExists(checkpoint);
+        } catch (IOException e) {
+            System.err.println("No se pudo borrar el checkpoint " + checkpoint + ": " + e.getMessage());
+        }
+        Progreso resultado = estado.copia();
+        if (progreso != null) {
+            progreso.accept(resultado);
+        }
+        return resultado;
+    }
+
+    private static void validarEncabezado(LectorCsv.Registro encabezado) throws ServiceException {
+        if (encabezado == null) {
+            throw new ServiceException("El archivo está vacío.");
+        }
+        List<String> columnas = new ArrayList<>();
+        for (String columna : encabezado.campos) {
+            // Quita el BOM que agregan algunas planillas al exportar en UTF-8
+            columnas.add(columna.replace("﻿", "").trim().toLowerCase(Locale.ROOT));
+        }
+        if (!columnas.equals(List.of(COLUMNAS))) {
+            throw new ServiceException("Encabezado inválido. Se esperaba: " + String.join(",", COLUMNAS));
+        }
+    }
+
+    // --- Etapa 1: conversión y validación (en paralelo) ---
+
+    private BloqueValidado validar(List<LectorCsv.Registro> registros) {
+        BloqueValidado bloque = new BloqueValidado(registros.size());
+        for (LectorCsv.Registro registro : registros) {
+            try {
+                Paciente paciente = convertir(registro);
+                pacienteService.validarPaciente(paciente);
+                pacienteService.validarHistoriaClinica(paciente.getHistoriaClinica());
+                bloque.validos.add(paciente);
+                bloque.origen.add(registro);
+            } catch (ServiceException | IllegalArgumentException | DateTimeParseException e) {
+                bloque.rechazos.add(new Rechazo(registro, e.getMessage()));
+            }
+        }
+        return bloque;
+    }
+
+    private static Paciente convertir(LectorCsv.Registro registro) {
+        List<String> c = registro.campos;
+        if (c.size() != COLUMNAS.length) {
+            throw new IllegalArgumentException("Se esperaban " + COLUMNAS.length + " columnas y hay " + c.size() + ".");
+        }
+        Paciente paciente = new Paciente();
+        paciente.setNombre(c.get(0).trim());
+        paciente.setApellido(c.get(1).trim());
+        paciente.setDni(c.get(2).trim());
+        paciente.setFechaNacimiento(convertirFecha(c.get(3).trim()));
+        paciente.setEliminado(false);
+
+        HistoriaClinica hc = new HistoriaClinica();
+        hc.setNroHistoria(c.get(4).trim().toUpperCase(Locale.ROOT));
+        hc.setGrupoSanguineo(convertirGrupo(c.get(5).trim()));
+        hc.setAntecedentes(nuloSiVacio(c.get(6)));
+        hc.setMedicacionActual(nuloSiVacio(c.get(7)));
+        hc.setObservaciones(nuloSiVacio(c.get(8)));
+        hc.setEliminado(false);
+        hc.setPaciente(paciente);
+        paciente.setHistoriaClinica(hc);
+        return paciente;
+    }
+
+    private static LocalDate convertirFecha(String valor) {
+        if (valor.isEmpty()) {
+            return null;
+        }
+        return valor.indexOf('/') >= 0 ? LocalDate.parse(valor, FORMATO_FECHA_AR) : LocalDate.parse(valor);
+    }
+
+    private static GrupoSanguineo convertirGrupo(String valor) {
+        if (valor.isEmpty()) {
+            return null; // la validación informa que es obligatorio
+        }
+        // Acepta también la notación con signo: "A+", "AB-", "0+"
+        String codigo = valor.toUpperCase(Locale.ROOT).replace('+', 'P').replace('-', 'M');
+        if (codigo.charAt(0) == '0') {
+            codigo = 'O' + codigo.substring(1);
+        }
+        return GrupoSanguineo.desdeCodigo(codigo);
+    }
+
+    private static String nuloSiVacio(String valor) {
+        return valor.trim().isEmpty() ? null : valor;
+    }
+
+    // --- Etapa 2: escritura (en orden, en el hilo que importa) ---
+
+    private void escribir(BloqueValidado bloque, BufferedWriter salidaRechazos, Progreso estado)
+            throws ServiceException, IOException {
+        int importados = 0;
+        rechazarDnisDuplicados(bloque);
+        if (!bloque.validos.isEmpty()) {
+            try {
+                pacienteService.insertarPacientesCompletos(bloque.validos, bloque.validos.size());
+                importados = bloque.validos.size();
+            } catch (ServiceException e) {
+                // Con varios shards pueden haber quedado confirmadas las filas de
+                // algunos shards (las que conservan su ID): se reintentan fila por
+                // fila solo las demás
+                importados = escribirFilaPorFila(bloque);
+            }
+        }
+        // Los rechazos de validación, de DNI duplicado y de la escritura se
+        // juntaron por separado: el archivo de rechazos sigue el orden del CSV
+        bloque.rechazos.sort(Comparator.comparingLong(rechazo -> rechazo.registro.linea));
+        for (Rechazo rechazo : bloque.rechazos) {
+            salidaRechazos.write(rechazo.registro.linea + "," + LectorCsv.escapar(rechazo.motivo) + ","
+                    + LectorCsv.escapar(rechazo.registro.texto));
+            salidaRechazos.newLine();
+        }
+        salidaRechazos.flush();
+        estado.sumar(bloque.total, importados, bloque.rechazos.size());
+    }
+
+    /**
+     * Pasa a rechazos las filas cuyo DNI ya está en la base o aparece antes en
+     * el mismo bloque, sin abrir ninguna transacción
+     */
+    private void rechazarDnisDuplicados(BloqueValidado bloque) throws ServiceException {
+        List<String> dnis = new ArrayList<>(bloque.validos.size());
+        for (Paciente paciente : bloque.validos) {
+            dnis.add(paciente.getDni());
+        }
+        Set<String> registrados = pacienteService.dnisRegistrados(dnis);
+        Set<String> vistos = new HashSet<>();
+        // Compacta las listas en el lugar: validos[destino] y origen[destino] son los que quedan
+        int destino = 0;
+        for (int i = 0; i < bloque.validos.size(); i++) {
+            Paciente paciente = bloque.validos.get(i);
+            String dni = paciente.getDni();
+            if (registrados.contains(dni)) {
+                bloque.rechazos.add(new Rechazo(bloque.origen.get(i), "El DNI " + dni + " ya está registrado."));
+            } else if (!vistos.add(dni)) {
+                bloque.rechazos.add(new Rechazo(bloque.origen.get(i), "El DNI " + dni + " está repetido en el archivo."));
+            } else {
+                bloque.validos.set(destino, paciente);
+                bloque.origen.set(destino, bloque.origen.get(i));
+                destino++;
+            }
+        }
+        bloque.validos.subList(destino, bloque.validos.size()).clear();
+        bloque.origen.subList(destino, bloque.origen.size()).clear();
+    }
+
+    private int escribirFilaPorFila(BloqueValidado bloque) throws ServiceException {
+        int importados = 0;
+        for (int i = 0; i < bloque.validos.size(); i++) {
+            Paciente paciente = bloque.validos.get(i);
+            if (paciente.getId() != null) {
+                // Ya confirmada por el alta del bloque
+                importados++;
+                continue;
+            }
+            try {
+                pacienteService.insertarPacienteCompleto(paciente);
+                importados++;
+            } catch (ServiceException e) {
+                if (esErrorDeConexion(e)) {
+                    // No es un problema de la fila: se corta y se reanuda después
+                    throw e;
+                }
+                bloque.rechazos.add(new Rechazo(bloque.origen.get(i), e.getMessage()));
+            }
+        }
+        return importados;
+    }
+
+    private static boolean esErrorDeConexion(Throwable e) {
+        for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+            if (causa instanceof SQLException) {
+                String estado = ((SQLException) causa).getSQLState();
+                // Clase 08: errores de conexión
+                if (estado != null && estado.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // --- Archivos de avance y rechazos ---
+
+    private static long leerCheckpoint(Path checkpoint) throws ServiceException {
+        if (!Files.exists(checkpoint)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(checkpoint, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            throw new ServiceException("Checkpoint ilegible: " + checkpoint + ". Borrarlo para empezar de nuevo.", e);
+        }
+    }
+
+    private static void guardarCheckpoint(Path checkpoint, long procesados) throws IOException {
+        // Escritura atómica: nunca queda un checkpoint a medio escribir
+        Path temporal = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        Files.writeString(temporal, Long.toString(procesados), StandardCharsets.UTF_8);
+        Files.move(temporal, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static BufferedWriter abrirRechazos(Path rechazos) throws IOException {
+        boolean nuevo = !Files.exists(rechazos);
+        BufferedWriter salida = Files.newBufferedWriter(rechazos, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (nuevo) {
+            salida.write("linea,motivo,registro");
+            salida.newLine();
+        }
+        return salida;
+    }
+
+    private static BloqueValidado esperar(Future<BloqueValidado> futuro) throws ServiceException {
+        try {
+            return futuro.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Importación interrumpida.", e);
+        } catch (ExecutionException e) {
+            throw new ServiceException("Error al validar un bloque: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static final class BloqueValidado {
+        private final int total;
+        private final List<Paciente> validos;
+        private final List<LectorCsv.Registro> origen;
+        private final List<Rechazo> rechazos = new ArrayList<>();
+
+        private BloqueValidado(int total) {
+            this.total = total;
+            this.validos = new ArrayList<>(total);
+            this.origen = new ArrayList<>(total);
+        }
+    }
+
+    private static final class Rechazo {
+        private final LectorCsv.Registro registro;
+        private final String motivo;
+
+        private Rechazo(LectorCsv.Registro registro, String motivo) {
+            this.registro = registro;
+            this.motivo = motivo;
+        }
+    }
+
+    /**
+     * Avance de una importación. Los contadores incluyen lo procesado en
+     * ejecuciones anteriores (checkpoint); las filas por segundo, solo lo de
+     * esta ejecución.
+     */
+    public static final class Progreso {
+        private final long inicioNanos;
+        private final long procesadosAlInicio;
+        private long procesados;
+        private long importados;
+        private long rechazados;
+        private long transcurridoNanos;
+
+        private Progreso(long procesadosAlInicio) {
+            this.inicioNanos = System.nanoTime();
+            this.procesadosAlInicio = procesadosAlInicio;
+            this.procesados = procesadosAlInicio;
+        }
+
+        private void sumar(int filas, int importadas, int rechazadas) {
+            procesados += filas;
+            importados += importadas;
+            rechazados += rechazadas;
+        }
+
+        private Progreso copia() {
+            Progreso copia = new Progreso(procesadosAlInicio);
+            copia.procesados = procesados;
+            copia.importados = importados;
+            copia.rechazados = rechazados;
+            copia.transcurridoNanos = System.nanoTime() - inicioNanos;
+            return copia;
+        }
+
+        /** Filas del archivo ya procesadas (importadas o rechazadas). */
+        public long getProcesados() {
+            return procesados;
+        }
+
+        /** Filas importadas en esta ejecución. */
+        public long getImportados() {
+            return importados;
+        }
+
+        /** Filas rechazadas en esta ejecución. */
+        public long getRechazados() {
+            return rechazados;
+        }
+
+        public long getTranscurridoMillis() {
+            return transcurridoNanos / 1_000_000;
+        }
+
+        public double getFilasPorSegundo() {
+            return transcurridoNanos == 0 ? 0 : (procesados - procesadosAlInicio) * 1e9 / transcurridoNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Importación{procesadas=%d, importadas=%d, rechazadas=%d, %.0f filas/s, %.1f s}",
+                    procesados, importados, rechazados, getFilasPorSegundo(), transcurridoNanos / 1e9);
+        }
+    }
+}
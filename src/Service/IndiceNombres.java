@@ -0,0 +1,509 @@
+package Service;
+
+import Metrics.RegistroMetricas;
+import Models.Paciente;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Índice en memoria de nombres y apellidos de pacientes para búsquedas por
+ * prefijo y con errores de tipeo.
+ *
+ * Las palabras de nombre y apellido (en minúsculas y sin tildes, ver
+ * {@link AnalizadorTexto#plegar(String)}) se guardan en un trie; cada nodo
+ * donde termina una palabra tiene los IDs de los pacientes que la usan,
+ * ordenados. Una búsqueda recorre el trie calculando la distancia de
+ * Levenshtein fila por fila y poda las ramas que ya superan la distancia
+ * permitida, así que solo visita la parte del trie cercana a la consulta.
+ *
+ * Cada palabra de la consulta debe coincidir con alguna palabra del paciente.
+ * De mayor a menor puntaje: palabra exacta, prefijo ("orei" → "Oreiro"),
+ * palabra con errores ("oreyro" → "Oreiro") y prefijo con errores. La
+ * distancia permitida depende del largo: 0 hasta 3 letras, 1 hasta 7 y 2 desde 8.
+ *
+ * Se construye al iniciar leyendo los pacientes en streaming y PacienteService
+ * lo actualiza después de cada escritura confirmada. Lecturas concurrentes;
+ * las escrituras toman un lock exclusivo.
+ *
+ * @author Grupo 49
+ */
+public final class IndiceNombres {
+
+    private static final IndiceNombres INSTANCIA = new IndiceNombres();
+
+    // Puntaje de cada tipo de coincidencia
+    private static final float EXACTA = 3f;
+    private static final float PREFIJO = 2f;
+    private static final float APROXIMADA = 1.5f;
+    private static final float PREFIJO_APROXIMADO = 1f;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Nodo raiz = new Nodo();
+
+    // Nodos de las palabras de cada paciente (para quitarlo al modificarlo o eliminarlo)
+    private final Map<Long, Nodo[]> palabrasPorPaciente = new HashMap<>();
+    private int palabras;
+
+    private volatile boolean construido;
+
+    private IndiceNombres() {
+        RegistroMetricas registro = RegistroMetricas.getInstance();
+        registro.registrarIndicador("clinica_indice_nombres_pacientes", "Pacientes en el índice de nombres.",
+                this::getPacientes);
+        registro.registrarIndicador("clinica_indice_nombres_palabras", "Palabras distintas en el índice de nombres.",
+                this::getPalabras);
+    }
+
+    public static IndiceNombres getInstance() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Descarta el contenido actual e indexa los pacientes del stream (que no
+     * debe incluir los eliminados). Las búsquedas esperan hasta que termine.
+     *
+     * @param pacientes pacientes con ID, nombre y apellido
+     * @return cantidad de pacientes indexados
+     */
+    public int construir(Stream<Paciente> pacientes) {
+        lock.writeLock().lock();
+        try {
+            construido = false;
+            raiz = new Nodo();
+            palabrasPorPaciente.clear();
+            palabras = 0;
+
+            Iterator<Paciente> it = pacientes.iterator();
+            while (it.hasNext()) {
+                agregar(it.next());
+            }
+            construido = true;
+            return palabrasPorPaciente.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return false si el índice todavía no se construyó o se invalidó
+     */
+    public boolean estaConstruido() {
+        return construido;
+    }
+
+    /**
+     * Marca el índice como desactualizado. La próxima búsqueda lo reconstruye.
+     */
+    public void invalidar() {
+        construido = false;
+    }
+
+    /**
+     * @param paciente paciente con cambios sin guardar
+     * @return true si sus cambios modifican lo que guarda el índice
+     */
+    static boolean afectaIndice(Paciente paciente) {
+        return paciente.cambio(Paciente.Campo.NOMBRE) || paciente.cambio(Paciente.Campo.APELLIDO)
+                || paciente.cambio(Paciente.Campo.ELIMINADO);
+    }
+
+    /**
+     * Agrega o reemplaza un paciente. Si está eliminado, lo quita.
+     *
+     * @param paciente paciente confirmado en la base
+     */
+    public void indexar(Paciente paciente) {
+        if (paciente == null || paciente.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            quitar(paciente.getId());
+            if (!Boolean.TRUE.equals(paciente.getEliminado())) {
+                agregar(paciente);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param pacienteId ID del paciente eliminado
+     */
+    public void eliminar(Long pacienteId) {
+        if (pacienteId == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            quitar(pacienteId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Busca pacientes cuyo nombre o apellido coincida con todas las palabras
+     * de la consulta (exactas, por prefijo o con errores de tipeo).
+     *
+     * @param consulta una o más palabras ("orei", "ana oreyro")
+     * @param maximo cantidad máxima de IDs a devolver
+     * @return IDs de pacientes, del mayor al menor puntaje (a igual puntaje, por ID)
+     */
+    public List<Long> buscar(String consulta, int maximo) {
+        List<String> palabrasConsulta = separar(AnalizadorTexto.plegar(consulta));
+        if (palabrasConsulta.isEmpty() || maximo <= 0) {
+            return new ArrayList<>();
+        }
+
+        lock.readLock().lock();
+        try {
+            // Por cada palabra de la consulta: nodos del trie que coinciden y su puntaje
+            List<Map<Nodo, Float>> coincidencias = new ArrayList<>(palabrasConsulta.size());
+            for (String palabra : palabrasConsulta) {
+                Map<Nodo, Float> nodos = new IdentityHashMap<>();
+                char[] q = palabra.toCharArray();
+                int[] fila = new int[q.length + 1];
+                for (int j = 0; j <= q.length; j++) {
+                    fila[j] = j;
+                }
+                recorrer(raiz, q, fila, maxDistancia(q.length), q.length, nodos);
+                if (nodos.isEmpty()) {
+                    return new ArrayList<>();
+                }
+                coincidencias.add(nodos);
+            }
+
+            if (coincidencias.size() == 1) {
+                return mejoresUnaPalabra(coincidencias.get(0), maximo);
+            }
+            return mejoresVariasPalabras(coincidencias, maximo);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return pacientes indexados
+     */
+    public int getPacientes() {
+        lock.readLock().lock();
+        try {
+            return palabrasPorPaciente.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return palabras distintas en el índice
+     */
+    public int getPalabras() {
+        lock.readLock().lock();
+        try {
+            return palabras;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- Búsqueda (con el lock de lectura tomado) ---
+
+    /**
+     * Distancia de Levenshtein fila por fila sobre el trie. 'mejorAncestro' es
+     * la menor distancia entre la consulta completa y un prefijo del camino:
+     * si ya es aceptable, todo el subárbol coincide como prefijo.
+     */
+    private void recorrer(Nodo nodo, char[] q, int[] fila, int k, int mejorAncestro, Map<Nodo, Float> nodos) {
+        int m = q.length;
+        for (int h = 0; h < nodo.cantidadHijos; h++) {
+            char c = nodo.letras[h];
+            Nodo hijo = nodo.hijos[h];
+
+            int[] nueva = new int[m + 1];
+            nueva[0] = fila[0] + 1;
+            int minimo = nueva[0];
+            for (int j = 1; j <= m; j++) {
+                int sustitucion = fila[j - 1] + (q[j - 1] == c ? 0 : 1);
+                nueva[j] = Math.min(Math.min(nueva[j - 1] + 1, fila[j] + 1), sustitucion);
+                minimo = Math.min(minimo, nueva[j]);
+            }
+            int distancia = nueva[m];
+            int mejor = Math.min(mejorAncestro, distancia);
+
+            if (hijo.cantidadIds > 0) {
+                float puntaje;
+                if (distancia == 0) {
+                    puntaje = EXACTA;
+                } else if (mejor == 0) {
+                    puntaje = PREFIJO;
+                } else if (distancia <= k) {
+                    puntaje = APROXIMADA;
+                } else if (mejor <= k) {
+                    puntaje = PREFIJO_APROXIMADO;
+                } else {
+                    puntaje = 0;
+                }
+                if (puntaje > 0) {
+                    nodos.put(hijo, puntaje);
+                }
+            }
+
+            // Se sigue bajando mientras la rama pueda coincidir
+            if (minimo <= k || mejor <= k) {
+                recorrer(hijo, q, nueva, k, mejor, nodos);
+            }
+        }
+    }
+
+    /**
+     * Una sola palabra: se recorren los niveles de puntaje de mayor a menor y,
+     * dentro de cada uno, se mezclan las listas de IDs (ya ordenadas) hasta
+     * juntar 'maximo' pacientes, sin mirar el resto.
+     */
+    private List<Long> mejoresUnaPalabra(Map<Nodo, Float> nodos, int maximo) {
+        TreeMap<Float, List<Nodo>> porPuntaje = new TreeMap<>();
+        for (Map.Entry<Nodo, Float> entrada : nodos.entrySet()) {
+            porPuntaje.computeIfAbsent(entrada.getValue(), p -> new ArrayList<>()).add(entrada.getKey());
+        }
+
+        List<Long> resultado = new ArrayList<>(Math.min(maximo, 1024));
+        Set<Long> agregados = new HashSet<>();
+        for (List<Nodo> nivel : porPuntaje.descendingMap().values()) {
+            // Cursor por nodo: [índice en la lista de nodos, posición en sus IDs]
+            PriorityQueue<int[]> cursores = new PriorityQueue<>(
+                    (a, b) -> Long.compare(nivel.get(a[0]).ids[a[1]], nivel.get(b[0]).ids[b[1]]));
+            for (int i = 0; i < nivel.size(); i++) {
+                cursores.add(new int[]{i, 0});
+            }
+            long anterior = -1;
+            while (!cursores.isEmpty() && resultado.size() < maximo) {
+                int[] cursor = cursores.poll();
+                Nodo nodo = nivel.get(cursor[0]);
+                long id = nodo.ids[cursor[1]];
+                if (id != anterior && !agregados.contains(id)) {
+                    resultado.add(id);
+                    agregados.add(id);
+                }
+                anterior = id;
+                if (++cursor[1] < nodo.cantidadIds) {
+                    cursores.add(cursor);
+                }
+            }
+            if (resultado.size() == maximo) {
+                break;
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Varias palabras: se parte de la palabra con menos candidatos y, para cada
+     * candidato, se buscan las demás palabras entre las palabras del paciente.
+     */
+    private List<Long> mejoresVariasPalabras(List<Map<Nodo, Float>> coincidencias, int maximo) {
+        int guia = 0;
+        long menor = Long.MAX_VALUE;
+        for (int i = 0; i < coincidencias.size(); i++) {
+            long candidatos = 0;
+            for (Nodo nodo : coincidencias.get(i).keySet()) {
+                candidatos += nodo.cantidadIds;
+            }
+            if (candidatos < menor) {
+                menor = candidatos;
+                guia = i;
+            }
+        }
+
+        // Heap de mínimos con los 'maximo' mejores: [puntaje, id]
+        PriorityQueue<Candidato> mejores = new PriorityQueue<>();
+        Set<Long> vistos = new HashSet<>();
+        for (Nodo nodo : coincidencias.get(guia).keySet()) {
+            for (int i = 0; i < nodo.cantidadIds; i++) {
+                long id = nodo.ids[i];
+                if (!vistos.add(id)) {
+                    continue;
+                }
+                Nodo[] palabrasPaciente = palabrasPorPaciente.get(id);
+                float total = 0;
+                for (Map<Nodo, Float> palabra : coincidencias) {
+                    float puntaje = 0;
+                    for (Nodo propia : palabrasPaciente) {
+                        Float p = palabra.get(propia);
+                        if (p != null && p > puntaje) {
+                            puntaje = p;
+                        }
+                    }
+                    if (puntaje == 0) {
+                        total = 0;
+                        break;
+                    }
+                    total += puntaje;
+                }
+                if (total == 0) {
+                    continue;
+                }
+                Candidato candidato = new Candidato(id, total);
+                if (mejores.size() < maximo) {
+                    mejores.add(candidato);
+                } else if (candidato.compareTo(mejores.peek()) > 0) {
+                    mejores.poll();
+                    mejores.add(candidato);
+                }
+            }
+        }
+
+        Long[] ordenados = new Long[mejores.size()];
+        for (int i = ordenados.length - 1; i >= 0; i--) {
+            ordenados[i] = mejores.poll().id;
+        }
+        return new ArrayList<>(Arrays.asList(ordenados));
+    }
+
+    private static int maxDistancia(int largo) {
+        return largo <= 3 ? 0 : largo <= 7 ? 1 : 2;
+    }
+
+    private static List<String> separar(String texto) {
+        List<String> resultado = new ArrayList<>();
+        int inicio = -1;
+        for (int i = 0; i <= texto.length(); i++) {
+            boolean letra = i < texto.length() && Character.isLetterOrDigit(texto.charAt(i));
+            if (letra && inicio < 0) {
+                inicio = i;
+            } else if (!letra && inicio >= 0) {
+                resultado.add(texto.substring(inicio, i));
+                inicio = -1;
+            }
+        }
+        return resultado;
+    }
+
+    // --- Con el lock de escritura tomado ---
+
+    private void agregar(Paciente paciente) {
+        List<String> palabrasPaciente = separar(AnalizadorTexto.plegar(paciente.getNombre()));
+        palabrasPaciente.addAll(separar(AnalizadorTexto.plegar(paciente.getApellido())));
+        if (palabrasPaciente.isEmpty()) {
+            return;
+        }
+        long id = paciente.getId();
+        List<Nodo> nodos = new ArrayList<>(palabrasPaciente.size());
+        for (String palabra : palabrasPaciente) {
+            Nodo nodo = raiz;
+            for (int i = 0; i < palabra.length(); i++) {
+                nodo = nodo.hijo(palabra.charAt(i));
+            }
+            // Una palabra repetida ("Juan Juan") se guarda una vez
+            if (!nodos.contains(nodo)) {
+                // Los nodos no se borran: una palabra cuenta mientras tenga pacientes
+                if (nodo.cantidadIds == 0) {
+                    palabras++;
+                }
+                nodo.agregarId(id);
+                nodos.add(nodo);
+            }
+        }
+        palabrasPorPaciente.put(id, nodos.toArray(new Nodo[0]));
+    }
+
+    private void quitar(long pacienteId) {
+        Nodo[] nodos = palabrasPorPaciente.remove(pacienteId);
+        if (nodos != null) {
+            for (Nodo nodo : nodos) {
+                nodo.quitarId(pacienteId);
+                if (nodo.cantidadIds == 0) {
+                    palabras--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Nodo del trie: hijos ordenados por letra y, si ahí termina una palabra,
+     * los IDs de sus pacientes en orden creciente.
+     */
+    private static final class Nodo {
+        private char[] letras = new char[0];
+        private Nodo[] hijos = new Nodo[0];
+        private int cantidadHijos;
+        private long[] ids;
+        private int cantidadIds;
+
+        private Nodo hijo(char c) {
+            int pos = Arrays.binarySearch(letras, 0, cantidadHijos, c);
+            if (pos >= 0) {
+                return hijos[pos];
+            }
+            pos = -pos - 1;
+            if (cantidadHijos == letras.length) {
+                int capacidad = Math.max(2, cantidadHijos * 2);
+                letras = Arrays.copyOf(letras, capacidad);
+                hijos = Arrays.copyOf(hijos, capacidad);
+            }
+            System.arraycopy(letras, pos, letras, pos + 1, cantidadHijos - pos);
+            System.arraycopy(hijos, pos, hijos, pos + 1, cantidadHijos - pos);
+            Nodo nuevo = new Nodo();
+            letras[pos] = c;
+            hijos[pos] = nuevo;
+            cantidadHijos++;
+            return nuevo;
+        }
+
+        private void agregarId(long id) {
+            if (ids == null) {
+                ids = new long[4];
+            }
+            // Los IDs suelen llegar en orden creciente: se agrega al final
+            int pos = cantidadIds == 0 || ids[cantidadIds - 1] < id
+                    ? cantidadIds : Arrays.binarySearch(ids, 0, cantidadIds, id);
+            if (pos >= 0 && pos < cantidadIds) {
+                return; // ya estaba
+            }
+            pos = pos < 0 ? -pos - 1 : pos;
+            if (cantidadIds == ids.length) {
+                ids = Arrays.copyOf(ids, cantidadIds * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, cantidadIds - pos);
+            ids[pos] = id;
+            cantidadIds++;
+        }
+
+        private void quitarId(long id) {
+            int pos = Arrays.binarySearch(ids, 0, cantidadIds, id);
+            if (pos >= 0) {
+                System.arraycopy(ids, pos + 1, ids, pos, cantidadIds - pos - 1);
+                cantidadIds--;
+            }
+        }
+    }
+
+    private static final class Candidato implements Comparable<Candidato> {
+        private final long id;
+        private final float puntaje;
+
+        private Candidato(long id, float puntaje) {
+            this.id = id;
+            this.puntaje = puntaje;
+        }
+
+        // Mayor puntaje primero; a igual puntaje, el ID más chico
+        @Override
+        public int compareTo(Candidato otro) {
+            int c = Float.compare(puntaje, otro.puntaje);
+            return c != 0 ? c : Long.compare(otro.id, id);
+        }
+    }
+}
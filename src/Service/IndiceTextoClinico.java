@@ -0,0 +1,526 @@
+package Service;
+
+import Dao.HistoriaClinicaDao;
+import Metrics.RegistroMetricas;
+import Models.HistoriaClinica;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Índice invertido en memoria sobre los antecedentes y la medicación actual
+ * de las historias clínicas.
+ *
+ * Reemplaza a un {@code LIKE '%x%'} sobre columnas TEXT (que recorre toda la
+ * tabla): cada término (ver {@link AnalizadorTexto}) apunta a la lista de
+ * documentos que lo contienen, con su frecuencia. Las consultas de varios
+ * términos se ordenan por relevancia con BM25 (TF-IDF con saturación de la
+ * frecuencia y normalización por largo del documento).
+ *
+ * Se construye al iniciar con una lectura en streaming de la tabla
+ * ({@link #construir(Stream)}) y los servicios lo mantienen al día después
+ * de cada escritura confirmada. Es una única instancia compartida por
+ * PacienteService e HistoriaClinicaService.
+ *
+ * Cada historia se guarda con un número interno (ordinal) creciente. Al
+ * modificar o eliminar una historia su ordinal anterior queda marcado como
+ * borrado y sus entradas se descartan en la próxima compactación, que se hace
+ * cuando los borrados superan un cuarto de los documentos.
+ *
+ * Lecturas concurrentes; las escrituras toman un lock exclusivo.
+ *
+ * @author Grupo 49
+ */
+public final class IndiceTextoClinico {
+
+    private static final IndiceTextoClinico INSTANCIA = new IndiceTextoClinico();
+
+    // Parámetros habituales de BM25
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    // No se compacta por pocos borrados
+    private static final int MIN_BORRADOS_COMPACTAR = 10_000;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    // Datos por ordinal
+    private long[] historiaIds = new long[1024];
+    private long[] pacienteIds = new long[1024];
+    private int[] largos = new int[1024];
+    private final BitSet borrados = new BitSet();
+    private int documentos;
+    private int cantidadBorrados;
+    private long sumaLargos;
+
+    private final MapaLongInt ordinalPorHistoria = new MapaLongInt();
+
+    private volatile boolean construido;
+
+    private IndiceTextoClinico() {
+        RegistroMetricas registro = RegistroMetricas.getInstance();
+        registro.registrarIndicador("clinica_indice_texto_documentos", "Historias clínicas en el índice de texto.",
+                this::getDocumentos);
+        registro.registrarIndicador("clinica_indice_texto_terminos", "Términos distintos en el índice de texto.",
+                this::getTerminos);
+    }
+
+    public static IndiceTextoClinico getInstance() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Descarta el contenido actual e indexa todas las historias del stream
+     * (que no debe incluir las eliminadas). Las consultas esperan hasta que
+     * termine.
+     *
+     * @param historias historias clínicas con antecedentes y medicación cargados
+     * @return cantidad de historias indexadas
+     */
+    public int construir(Stream<HistoriaClinica> historias) {
+        lock.writeLock().lock();
+        try {
+            construido = false;
+            postings.clear();
+            borrados.clear();
+            ordinalPorHistoria.limpiar();
+            documentos = 0;
+            cantidadBorrados = 0;
+            sumaLargos = 0;
+
+            Iterator<HistoriaClinica> it = historias.iterator();
+            while (it.hasNext()) {
+                agregar(it.next());
+            }
+            construido = true;
+            return documentos;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return false si el índice todavía no se construyó o se invalidó
+     */
+    public boolean estaConstruido() {
+        return construido;
+    }
+
+    /**
+     * Marca el índice como desactualizado (por ejemplo, si no se pudo
+     * reflejar una escritura). La próxima búsqueda lo reconstruye.
+     */
+    public void invalidar() {
+        construido = false;
+    }
+
+    /**
+     * Agrega o reemplaza una historia. Si está eliminada, la quita.
+     *
+     * @param hc historia clínica confirmada en la base, con el detalle cargado
+     */
+    public void indexar(HistoriaClinica hc) {
+        if (hc == null || hc.getId() == null) {
+            return;
+        }
+        if (!hc.isDetalleCargado() && !Boolean.TRUE.equals(hc.getEliminado())) {
+            throw new IllegalArgumentException("La historia clínica " + hc.getId() + " no tiene el detalle cargado.");
+        }
+        lock.writeLock().lock();
+        try {
+            quitar(hc.getId());
+            if (!Boolean.TRUE.equals(hc.getEliminado())) {
+                agregar(hc);
+            }
+            compactarSiHaceFalta();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param hc historia con cambios sin guardar
+     * @return true si sus cambios modifican lo que guarda el índice
+     */
+    static boolean afectaIndice(HistoriaClinica hc) {
+        return hc.cambio(HistoriaClinica.Campo.ANTECEDENTES) || hc.cambio(HistoriaClinica.Campo.MEDICACION_ACTUAL)
+                || hc.cambio(HistoriaClinica.Campo.PACIENTE_ID) || hc.cambio(HistoriaClinica.Campo.ELIMINADO);
+    }
+
+    /**
+     * Refleja una escritura ya confirmada. Si la historia vino de un listado
+     * (sin detalle) se leen sus columnas TEXT. Si algo falla el índice queda
+     * invalidado y se reconstruye en la próxima búsqueda, en lugar de hacer
+     * fallar una escritura que ya se confirmó.
+     *
+     * @param hc historia clínica guardada
+     * @param dao DAO para completar el detalle
+     */
+    void reflejar(HistoriaClinica hc, HistoriaClinicaDao dao) {
+        try {
+            if (!Boolean.TRUE.equals(hc.getEliminado())) {
+                dao.cargarDetalle(hc);
+            }
+            indexar(hc);
+        } catch (Exception e) {
+            System.err.println("No se pudo actualizar el índice de texto: " + e.getMessage());
+            invalidar();
+        }
+    }
+
+    /**
+     * @param historiaId ID de la historia eliminada
+     */
+    public void eliminar(Long historiaId) {
+        if (historiaId == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            quitar(historiaId);
+            compactarSiHaceFalta();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Busca las historias que contienen alguno de los términos de la consulta,
+     * ordenadas por relevancia (las que contienen más términos, y los más
+     * raros, primero).
+     *
+     * @param consulta texto libre ("enalapril hipertensión")
+     * @param limite cantidad máxima de resultados
+     * @return resultados ordenados de mayor a menor puntaje
+     */
+    public List<Resultado> buscar(String consulta, int limite) {
+        Set<String> terminos = new LinkedHashSet<>(AnalizadorTexto.analizar(consulta));
+        if (terminos.isEmpty() || limite <= 0) {
+            return new ArrayList<>();
+        }
+
+        lock.readLock().lock();
+        try {
+            int vivos = documentos - cantidadBorrados;
+            if (vivos == 0) {
+                return new ArrayList<>();
+            }
+            float largoPromedio = (float) sumaLargos / vivos;
+
+            // Acumulación término a término; 'tocados' evita recorrer todo el arreglo
+            float[] puntajes = new float[documentos];
+            int[] tocados = new int[64];
+            int cantidadTocados = 0;
+
+            for (String termino : terminos) {
+                Postings lista = postings.get(termino);
+                if (lista == null) {
+                    continue;
+                }
+                // tamanio incluye entradas de borrados aún sin compactar: es una aproximación de df
+                int df = Math.min(lista.tamanio, vivos);
+                double idf = Math.log(1 + (vivos - df + 0.5) / (df + 0.5));
+                for (int i = 0; i < lista.tamanio; i++) {
+                    int ordinal = lista.ordinales[i];
+                    if (borrados.get(ordinal)) {
+                        continue;
+                    }
+                    float tf = lista.frecuencias[i];
+                    float normalizacion = K1 * (1 - B + B * largos[ordinal] / largoPromedio);
+                    if (puntajes[ordinal] == 0) {
+                        if (cantidadTocados == tocados.length) {
+                            tocados = Arrays.copyOf(tocados, cantidadTocados * 2);
+                        }
+                        tocados[cantidadTocados++] = ordinal;
+                    }
+                    puntajes[ordinal] += (float) (idf * tf * (K1 + 1) / (tf + normalizacion));
+                }
+            }
+
+            // Los 'limite' mejores con un heap de mínimos
+            PriorityQueue<Resultado> mejores = new PriorityQueue<>(Math.min(limite, cantidadTocados) + 1);
+            for (int i = 0; i < cantidadTocados; i++) {
+                int ordinal = tocados[i];
+                float puntaje = puntajes[ordinal];
+                if (mejores.size() < limite) {
+                    mejores.add(new Resultado(historiaIds[ordinal], pacienteIds[ordinal], puntaje));
+                } else if (puntaje > mejores.peek().puntaje) {
+                    mejores.poll();
+                    mejores.add(new Resultado(historiaIds[ordinal], pacienteIds[ordinal], puntaje));
+                }
+            }
+
+            List<Resultado> resultados = new ArrayList<>(mejores.size());
+            while (!mejores.isEmpty()) {
+                resultados.add(mejores.poll());
+            }
+            Collections.reverse(resultados);
+            return resultados;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return historias clínicas indexadas
+     */
+    public int getDocumentos() {
+        lock.readLock().lock();
+        try {
+            return documentos - cantidadBorrados;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return términos distintos en el índice
+     */
+    public int getTerminos() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- Con el lock de escritura tomado ---
+
+    private void agregar(HistoriaClinica hc) {
+        List<String> terminos = AnalizadorTexto.analizar(hc.getAntecedentes());
+        terminos.addAll(AnalizadorTexto.analizar(hc.getMedicacionActual()));
+        if (terminos.isEmpty()) {
+            return;
+        }
+
+        int ordinal = documentos++;
+        if (ordinal == historiaIds.length) {
+            int capacidad = ordinal * 2;
+            historiaIds = Arrays.copyOf(historiaIds, capacidad);
+            pacienteIds = Arrays.copyOf(pacienteIds, capacidad);
+            largos = Arrays.copyOf(largos, capacidad);
+        }
+        historiaIds[ordinal] = hc.getId();
+        pacienteIds[ordinal] = hc.getPaciente() != null && hc.getPaciente().getId() != null ? hc.getPaciente().getId() : 0L;
+        largos[ordinal] = terminos.size();
+        sumaLargos += terminos.size();
+        ordinalPorHistoria.poner(hc.getId(), ordinal);
+
+        Map<String, Integer> frecuencias = new HashMap<>();
+        for (String termino : terminos) {
+            frecuencias.merge(termino, 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entrada : frecuencias.entrySet()) {
+            postings.computeIfAbsent(entrada.getKey(), t -> new Postings()).agregar(ordinal, entrada.getValue());
+        }
+    }
+
+    private void quitar(long historiaId) {
+        int ordinal = ordinalPorHistoria.quitar(historiaId);
+        if (ordinal >= 0) {
+            borrados.set(ordinal);
+            cantidadBorrados++;
+            sumaLargos -= largos[ordinal];
+        }
+    }
+
+    /**
+     * Renumera los documentos vivos y descarta las entradas de los borrados
+     */
+    private void compactarSiHaceFalta() {
+        if (cantidadBorrados < MIN_BORRADOS_COMPACTAR || cantidadBorrados * 4 < documentos) {
+            return;
+        }
+        int[] nuevoOrdinal = new int[documentos];
+        int vivos = 0;
+        for (int ordinal = 0; ordinal < documentos; ordinal++) {
+            if (borrados.get(ordinal)) {
+                nuevoOrdinal[ordinal] = -1;
+            } else {
+                historiaIds[vivos] = historiaIds[ordinal];
+                pacienteIds[vivos] = pacienteIds[ordinal];
+                largos[vivos] = largos[ordinal];
+                nuevoOrdinal[ordinal] = vivos++;
+            }
+        }
+
+        Iterator<Postings> it = postings.values().iterator();
+        while (it.hasNext()) {
+            Postings lista = it.next();
+            lista.renumerar(nuevoOrdinal);
+            if (lista.tamanio == 0) {
+                it.remove();
+            }
+        }
+
+        ordinalPorHistoria.limpiar();
+        for (int ordinal = 0; ordinal < vivos; ordinal++) {
+            ordinalPorHistoria.poner(historiaIds[ordinal], ordinal);
+        }
+        borrados.clear();
+        documentos = vivos;
+        cantidadBorrados = 0;
+    }
+
+    /**
+     * Documentos que contienen un término, en orden creciente de ordinal
+     */
+    private static final class Postings {
+        private int[] ordinales = new int[4];
+        private short[] frecuencias = new short[4];
+        private int tamanio;
+
+        private void agregar(int ordinal, int frecuencia) {
+            if (tamanio == ordinales.length) {
+                ordinales = Arrays.copyOf(ordinales, tamanio * 2);
+                frecuencias = Arrays.copyOf(frecuencias, tamanio * 2);
+            }
+            ordinales[tamanio] = ordinal;
+            frecuencias[tamanio] = (short) Math.min(frecuencia, Short.MAX_VALUE);
+            tamanio++;
+        }
+
+        private void renumerar(int[] nuevoOrdinal) {
+            int j = 0;
+            for (int i = 0; i < tamanio; i++) {
+                int ordinal = nuevoOrdinal[ordinales[i]];
+                if (ordinal >= 0) {
+                    ordinales[j] = ordinal;
+                    frecuencias[j++] = frecuencias[i];
+                }
+            }
+            tamanio = j;
+        }
+    }
+
+    /**
+     * Mapa ID de historia -> ordinal sin objetos por entrada (direccionamiento
+     * abierto con sondeo lineal). Los IDs son positivos: 0 marca un hueco.
+     */
+    private static final class MapaLongInt {
+        private long[] claves = new long[1024];
+        private int[] valores = new int[1024];
+        private int tamanio;
+
+        private void poner(long clave, int valor) {
+            if ((tamanio + 1) * 2 > claves.length) {
+                redimensionar(claves.length * 2);
+            }
+            int i = posicion(clave, claves.length);
+            while (claves[i] != 0 && claves[i] != clave) {
+                i = (i + 1) & (claves.length - 1);
+            }
+            if (claves[i] == 0) {
+                tamanio++;
+            }
+            claves[i] = clave;
+            valores[i] = valor;
+        }
+
+        /**
+         * @return el valor quitado, o -1 si la clave no estaba
+         */
+        private int quitar(long clave) {
+            int mascara = claves.length - 1;
+            int i = posicion(clave, claves.length);
+            while (claves[i] != clave) {
+                if (claves[i] == 0) {
+                    return -1;
+                }
+                i = (i + 1) & mascara;
+            }
+            int valor = valores[i];
+            // Borrado con desplazamiento hacia atrás (sin marcas de borrado)
+            int hueco = i;
+            int j = (i + 1) & mascara;
+            while (claves[j] != 0) {
+                int ideal = posicion(claves[j], claves.length);
+                if (((j - ideal) & mascara) >= ((j - hueco) & mascara)) {
+                    claves[hueco] = claves[j];
+                    valores[hueco] = valores[j];
+                    hueco = j;
+                }
+                j = (j + 1) & mascara;
+            }
+            claves[hueco] = 0;
+            tamanio--;
+            return valor;
+        }
+
+        private void limpiar() {
+            Arrays.fill(claves, 0L);
+            tamanio = 0;
+        }
+
+        private void redimensionar(int capacidad) {
+            long[] clavesAnteriores = claves;
+            int[] valoresAnteriores = valores;
+            claves = new long[capacidad];
+            valores = new int[capacidad];
+            tamanio = 0;
+            for (int i = 0; i < clavesAnteriores.length; i++) {
+                if (clavesAnteriores[i] != 0) {
+                    poner(clavesAnteriores[i], valoresAnteriores[i]);
+                }
+            }
+        }
+
+        private static int posicion(long clave, int capacidad) {
+            long h = clave * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & (capacidad - 1);
+        }
+    }
+
+    /**
+     * Historia encontrada por una búsqueda, con su puntaje de relevancia.
+     */
+    public static final class Resultado implements Comparable<Resultado> {
+        private final long historiaId;
+        private final long pacienteId;
+        private final float puntaje;
+
+        private Resultado(long historiaId, long pacienteId, float puntaje) {
+            this.historiaId = historiaId;
+            this.pacienteId = pacienteId;
+            this.puntaje = puntaje;
+        }
+
+        public long getHistoriaId() {
+            return historiaId;
+        }
+
+        public long getPacienteId() {
+            return pacienteId;
+        }
+
+        public float getPuntaje() {
+            return puntaje;
+        }
+
+        // Orden ascendente por puntaje (el heap de mínimos deja arriba al peor);
+        // a igual puntaje, primero el ID más chico
+        @Override
+        public int compareTo(Resultado otro) {
+            int c = Float.compare(puntaje, otro.puntaje);
+            return c != 0 ? c : Long.compare(otro.historiaId, historiaId);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Resultado{historiaId=%d, pacienteId=%d, puntaje=%.3f}", historiaId, pacienteId, puntaje);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package Service;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lector de registros CSV (RFC 4180) de a uno, sin cargar el archivo.
+ *
+ * Soporta campos entre comillas con comas, saltos de línea y comillas
+ * escapadas ("") adentro. También sirve para escribir: {@link #escapar}
+ * devuelve el campo listo para un CSV.
+ *
+ * @author Grupo 49
+ */
+final class LectorCsv implements Closeable {
+
+    private final BufferedReader lector;
+    private long linea = 0;
+
+    LectorCsv(BufferedReader lector) {
+        this.lector = lector;
+    }
+
+    /**
+     * Registro leído, con su posición en el archivo.
+     */
+    static final class Registro {
+        final long linea;
+        final List<String> campos;
+        final String texto;
+
+        private Registro(long linea, List<String> campos, String texto) {
+            this.linea = linea;
+            this.campos = campos;
+            this.texto = texto;
+        }
+    }
+
+    /**
+     * @return el siguiente registro, o null al final del archivo (las líneas
+     *         vacías se saltean)
+     * @throws IOException si falla la lectura o el archivo termina dentro de comillas
+     */
+    Registro leer() throws IOException {
+        String actual;
+        do {
+            actual = lector.readLine();
+            if (actual == null) {
+                return null;
+            }
+            linea++;
+        } while (actual.isEmpty());
+
+        long lineaInicio = linea;
+        StringBuilder texto = new StringBuilder(actual);
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        int i = 0;
+        while (true) {
+            if (i == actual.length()) {
+                if (!entreComillas) {
+                    break;
+                }
+                // Salto de línea dentro de un campo entre comillas
+                actual = lector.readLine();
+                if (actual == null) {
+                    throw new IOException("Comillas sin cerrar en el registro de la línea " + lineaInicio);
+                }
+                linea++;
+                texto.append('\n').append(actual);
+                campo.append('\n');
+                i = 0;
+                continue;
+            }
+            char c = actual.charAt(i++);
+            if (entreComillas) {
+                if (c != '"') {
+                    campo.append(c);
+                } else if (i < actual.length() && actual.charAt(i) == '"') {
+                    campo.append('"');
+                    i++;
+                } else {
+                    entreComillas = false;
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == ',') {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else if (c != '\r') {
+                campo.append(c);
+            }
+        }
+        campos.add(campo.toString());
+        return new Registro(lineaInicio, campos, texto.toString());
+    }
+
+    /**
+     * @return el valor como campo CSV (entre comillas si hace falta)
+     */
+    static String escapar(String valor) {
+        if (valor == null) {
+            return "";
+        }
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + valor.replace("\"", "\"\"") + '"';
+            }
+        }
+        return valor;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lector.close();
+    }
+}
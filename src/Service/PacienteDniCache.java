@@ -0,0 +1,272 @@
+package Service;
+
+import Metrics.RegistroMetricas;
+import Models.HistoriaClinica;
+import Models.Paciente;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Caché de lectura (read-through) de pacientes por DNI.
+ *
+ * Guarda el paciente junto con su historia clínica, para que las búsquedas
+ * repetidas de recepción no vayan a la base. Cada entrada vence después de un
+ * TTL y la caché tiene un tamaño máximo: al superarlo se desaloja la entrada
+ * usada hace más tiempo (LRU).
+ *
+ * Los servicios invalidan las entradas afectadas después de cada escritura
+ * (por DNI, por ID de paciente o por ID de historia clínica). Es una única
+ * instancia compartida por PacienteService e HistoriaClinicaService.
+ *
+ * Se guardan y se devuelven copias, así quien modifica el paciente recibido
+ * no altera lo que quedó en la caché.
+ *
+ * @author Grupo 49
+ */
+public final class PacienteDniCache {
+
+    private static final PacienteDniCache INSTANCIA = new PacienteDniCache(
+            Integer.getInteger("clinica.cache.dni.max", 1000),
+            Long.getLong("clinica.cache.dni.ttlMs", 300_000L));
+
+    private final int maxEntradas;
+    private final long ttlMs;
+
+    // accessOrder = true: el orden de iteración va del menos al más recientemente usado
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>(64, 0.75f, true);
+
+    // Índices secundarios para invalidar sin recorrer toda la caché
+    private final Map<Long, String> dniPorPacienteId = new HashMap<>();
+    private final Map<Long, String> dniPorHistoriaId = new HashMap<>();
+
+    // Cambia con cada invalidación: una lectura de la base que empezó antes
+    // no debe guardar su valor viejo
+    private long generacion;
+
+    private long aciertos;
+    private long fallos;
+    private long desalojos;
+    private long vencimientos;
+    private long invalidaciones;
+
+    private PacienteDniCache(int maxEntradas, long ttlMs) {
+        this.maxEntradas = maxEntradas;
+        this.ttlMs = ttlMs;
+        RegistroMetricas.getInstance().registrarIndicador("clinica_cache_dni_tasa_aciertos",
+                "Tasa de aciertos de la caché de pacientes por DNI.", () -> getEstadisticas().getTasaAciertos());
+    }
+
+    public static PacienteDniCache getInstance() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Normaliza el DNI para usarlo como clave (la columna dni de MySQL no
+     * distingue mayúsculas de minúsculas).
+     */
+    public static String normalizar(String dni) {
+        return dni == null ? null : dni.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * @param dni DNI a buscar
+     * @return copia del paciente cacheado, o null si no está o venció
+     */
+    public synchronized Paciente obtener(String dni) {
+        String clave = normalizar(dni);
+        Entrada entrada = entradas.get(clave);
+        if (entrada == null) {
+            fallos++;
+            return null;
+        }
+        if (entrada.vence < System.currentTimeMillis()) {
+            quitar(clave);
+            vencimientos++;
+            fallos++;
+            return null;
+        }
+        aciertos++;
+        return copiar(entrada.paciente);
+    }
+
+    /**
+     * @return generación actual; tomarla antes de leer de la base y pasarla a
+     *         {@link #guardar(Paciente, long)}
+     */
+    public synchronized long getGeneracion() {
+        return generacion;
+    }
+
+    /**
+     * Guarda una copia del paciente (con su historia) bajo su DNI, salvo que
+     * haya habido una invalidación mientras se leía de la base.
+     *
+     * @param paciente paciente leído de la base
+     * @param generacionLeida {@link #getGeneracion()} de antes de la lectura
+     */
+    public synchronized void guardar(Paciente paciente, long generacionLeida) {
+        if (maxEntradas <= 0 || paciente == null || paciente.getDni() == null || paciente.getId() == null
+                || generacion != generacionLeida) {
+            return;
+        }
+        String clave = normalizar(paciente.getDni());
+        quitar(clave);
+
+        Paciente copia = copiar(paciente);
+        entradas.put(clave, new Entrada(copia, System.currentTimeMillis() + ttlMs));
+        dniPorPacienteId.put(copia.getId(), clave);
+        if (copia.getHistoriaClinica() != null && copia.getHistoriaClinica().getId() != null) {
+            dniPorHistoriaId.put(copia.getHistoriaClinica().getId(), clave);
+        }
+
+        // Desalojo por tamaño: el primero en el orden de acceso es el menos usado
+        // (se recorre entrySet: un get() reordenaría el mapa durante la iteración)
+        Iterator<Map.Entry<String, Entrada>> it = entradas.entrySet().iterator();
+        while (entradas.size() > maxEntradas && it.hasNext()) {
+            Map.Entry<String, Entrada> masAntigua = it.next();
+            it.remove();
+            quitarIndices(masAntigua.getKey(), masAntigua.getValue());
+            desalojos++;
+        }
+    }
+
+    public synchronized void invalidarPorDni(String dni) {
+        generacion++;
+        if (dni != null && quitar(normalizar(dni))) {
+            invalidaciones++;
+        }
+    }
+
+    public synchronized void invalidarPorPacienteId(Long pacienteId) {
+        generacion++;
+        String clave = pacienteId != null ? dniPorPacienteId.get(pacienteId) : null;
+        if (clave != null && quitar(clave)) {
+            invalidaciones++;
+        }
+    }
+
+    public synchronized void invalidarPorHistoriaId(Long historiaId) {
+        generacion++;
+        String clave = historiaId != null ? dniPorHistoriaId.get(historiaId) : null;
+        if (clave != null && quitar(clave)) {
+            invalidaciones++;
+        }
+    }
+
+    public synchronized void limpiar() {
+        generacion++;
+        invalidaciones += entradas.size();
+        entradas.clear();
+        dniPorPacienteId.clear();
+        dniPorHistoriaId.clear();
+    }
+
+    public synchronized Estadisticas getEstadisticas() {
+        return new Estadisticas(entradas.size(), aciertos, fallos, desalojos, vencimientos, invalidaciones);
+    }
+
+    private boolean quitar(String clave) {
+        Entrada entrada = entradas.remove(clave);
+        if (entrada == null) {
+            return false;
+        }
+        quitarIndices(clave, entrada);
+        return true;
+    }
+
+    private void quitarIndices(String clave, Entrada entrada) {
+        Paciente paciente = entrada.paciente;
+        dniPorPacienteId.remove(paciente.getId(), clave);
+        if (paciente.getHistoriaClinica() != null) {
+            dniPorHistoriaId.remove(paciente.getHistoriaClinica().getId(), clave);
+        }
+    }
+
+    private static Paciente copiar(Paciente original) {
+        Paciente copia = new Paciente(original.getId(), original.getEliminado(), original.getNombre(),
+                original.getApellido(), original.getDni(), original.getFechaNacimiento(), null);
+        copia.setVersion(original.getVersion());
+        HistoriaClinica hc = original.getHistoriaClinica();
+        if (hc != null) {
+            copia.setHistoriaClinica(new HistoriaClinica(hc.getId(), hc.getEliminado(), hc.getNroHistoria(),
+                    hc.getGrupoSanguineo(), hc.getAntecedentes(), hc.getMedicacionActual(),
+                    hc.getObservaciones(), copia));
+            copia.getHistoriaClinica().setDetalleCargado(hc.isDetalleCargado());
+            copia.getHistoriaClinica().setVersion(hc.getVersion());
+            copia.getHistoriaClinica().limpiarCambios();
+        }
+        // La copia refleja lo que hay en la base: sin cambios pendientes
+        copia.limpiarCambios();
+        return copia;
+    }
+
+    private static final class Entrada {
+        private final Paciente paciente;
+        private final long vence;
+
+        private Entrada(Paciente paciente, long vence) {
+            this.paciente = paciente;
+            this.vence = vence;
+        }
+    }
+
+    /**
+     * Instantánea de las métricas de la caché.
+     */
+    public static final class Estadisticas {
+        private final int entradas;
+        private final long aciertos;
+        private final long fallos;
+        private final long desalojos;
+        private final long vencimientos;
+        private final long invalidaciones;
+
+        private Estadisticas(int entradas, long aciertos, long fallos, long desalojos, long vencimientos, long invalidaciones) {
+            this.entradas = entradas;
+            this.aciertos = aciertos;
+            this.fallos = fallos;
+            this.desalojos = desalojos;
+            this.vencimientos = vencimientos;
+            this.invalidaciones = invalidaciones;
+        }
+
+        public int getEntradas() {
+            return entradas;
+        }
+
+        public long getAciertos() {
+            return aciertos;
+        }
+
+        public long getFallos() {
+            return fallos;
+        }
+
+        public long getDesalojos() {
+            return desalojos;
+        }
+
+        public long getVencimientos() {
+            return vencimientos;
+        }
+
+        public long getInvalidaciones() {
+            return invalidaciones;
+        }
+
+        public double getTasaAciertos() {
+            long total = aciertos + fallos;
+            return total == 0 ? 0 : (double) aciertos / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("CacheDni{entradas=%d, aciertos=%d, fallos=%d, tasa de aciertos=%.1f%%, "
+                    + "desalojos=%d, vencidas=%d, invalidaciones=%d}",
+                    entradas, aciertos, fallos, getTasaAciertos() * 100, desalojos, vencimientos, invalidaciones);
+        }
+    }
+}
@@ -5,13 +5,32 @@
 package Service;
 
 import Config.DatabaseConnection;
+import Dao.CacheEntidades;
+import Dao.CachedDao;
+import Dao.ConflictoVersionException;
+import Dao.GenericDao;
 import Dao.HistoriaClinicaDao; 
 import Dao.PacienteDao;
+import Dao.Secuencias;
+import Dao.Shards;
+import Metrics.Metricas;
 import Models.HistoriaClinica;
 import Models.Paciente;
+import Service.EventoCambio.Entidad;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
 
 public class PacienteService implements GenericService<Paciente> {
 
@@ -19,6 +38,32 @@ public class PacienteService implements GenericService<Paciente> {
     private final PacienteDao pacienteDao;
     private final HistoriaClinicaDao historiaClinicaDao;
 
+    // Caché de búsquedas por DNI (compartida con HistoriaClinicaService)
+    private final PacienteDniCache cacheDni = PacienteDniCache.getInstance();
+
+    // Cachés de entidades por ID (compartidas con HistoriaClinicaService)
+    private final CachedDao<Paciente> cachePacientes = CacheEntidades.PACIENTES;
+    private final CachedDao<HistoriaClinica> cacheHistorias = CacheEntidades.HISTORIAS;
+
+    // Índice de texto sobre antecedentes y medicación (compartido con HistoriaClinicaService)
+    private final IndiceTextoClinico indiceTexto = IndiceTextoClinico.getInstance();
+
+    // Índice de nombres y apellidos para la búsqueda por nombre
+    private final IndiceNombres indiceNombres = IndiceNombres.getInstance();
+
+    // DNIs registrados, para rechazar duplicados sin abrir una transacción
+    private final FiltroDni filtroDni = FiltroDni.getInstance();
+
+    // Eventos de los cambios confirmados (compartido con HistoriaClinicaService)
+    private final FeedCambios feed = FeedCambios.getInstance();
+
+    // Con -Dclinica.commitAgrupado=true las altas individuales se juntan en
+    // transacciones compartidas (ver EscritorAgrupado)
+    private static final boolean COMMIT_AGRUPADO = Boolean.getBoolean("clinica.commitAgrupado");
+
+    // Intentos de actualizarFusionando ante conflictos de versión (incluye el primero)
+    static final int MAX_INTENTOS_FUSION = Math.max(1, Integer.getInteger("clinica.conflictos.maxIntentos", 3));
+
     public PacienteService() {
         this.pacienteDao = new PacienteDao();
         this.historiaClinicaDao = new HistoriaClinicaDao();
@@ -28,77 +73,302 @@ public class PacienteService implements GenericService<Paciente> {
     // juntos, o no crea ninguno.
     
     public Paciente insertarPacienteCompleto(Paciente paciente) throws ServiceException {
+        return Metricas.medir("PacienteService.insertarPacienteCompleto", () -> {
         
-        // Validaciones de lógica de negocio
-        validarPaciente(paciente);
-        if (paciente.getHistoriaClinica() == null) {
-            throw new ServiceException("El paciente debe tener una historia clínica asociada.");
-        }
-        validarHistoriaClinica(paciente.getHistoriaClinica());
+            // Validaciones de lógica de negocio
+            validarPaciente(paciente);
+            if (paciente.getHistoriaClinica() == null) {
+                throw new ServiceException("El paciente debe tener una historia clínica asociada.");
+            }
+            validarHistoriaClinica(paciente.getHistoriaClinica());
+            verificarDniLibre(paciente.getDni());
+            asignarIds(paciente);
+            if (COMMIT_AGRUPADO) {
+                return esperar(escritorAgrupado(paciente).enviar(paciente));
+            }
         
-        //Obtener la Conexión (será compartida)
-        Connection conn = null;
-        Paciente pacienteCreado = null;
+            //Obtener la Conexión (será compartida)
+            Connection conn = null;
+            Paciente pacienteCreado = null;
 
-        try {
-            conn = DatabaseConnection.getConnection(); 
+            try {
+                // Paciente e historia van al mismo shard: la transacción es local
+                conn = DatabaseConnection.getConnection(Shards.dePaciente(paciente)); 
 
-            // --- INICIO DE LA TRANSACCIÓN ---
-            conn.setAutoCommit(false);
+                // --- INICIO DE LA TRANSACCIÓN ---
+                conn.setAutoCommit(false);
 
-            // Operación Compuesta (Parte 1: Crear Paciente A)
-            // Asumimos que el DAO devuelve el paciente con el ID generado
-            try {
-                pacienteCreado = pacienteDao.crear(paciente, conn);
-            } catch (Exception e) {
-                throw new ServiceException("Error al crear el paciente: " + e.getMessage(), e);
-            }
+                // Operación Compuesta (Parte 1: Crear Paciente A)
+                // Asumimos que el DAO devuelve el paciente con el ID generado
+                try {
+                    pacienteCreado = pacienteDao.crear(paciente, conn);
+                } catch (Exception e) {
+                    throw new ServiceException("Error al crear el paciente: " + e.getMessage(), e);
+                }
             
-            // Operación Compuesta (Parte 2: Crear HistoriaClinica B)
-            HistoriaClinica hc = paciente.getHistoriaClinica();
+                // Operación Compuesta (Parte 2: Crear HistoriaClinica B)
+                HistoriaClinica hc = paciente.getHistoriaClinica();
             
-            // Asignamos el Paciente (con su nuevo ID) a la HistoriaClinica
-            hc.setPaciente(pacienteCreado); 
+                // Asignamos el Paciente (con su nuevo ID) a la HistoriaClinica
+                hc.setPaciente(pacienteCreado); 
 
-            // Llamamos al DAO
-            HistoriaClinica hcCreada;
-            try {
-                hcCreada = historiaClinicaDao.crear(hc, conn);
-            } catch (Exception e) {
-                throw new ServiceException("Error al crear la historia clínica: " + e.getMessage(), e);
-            }
+                // Llamamos al DAO
+                HistoriaClinica hcCreada;
+                try {
+                    hcCreada = historiaClinicaDao.crear(hc, conn);
+                } catch (Exception e) {
+                    throw new ServiceException("Error al crear la historia clínica: " + e.getMessage(), e);
+                }
 
-            // --- FIN DE LA TRANSACCIÓN (COMMIT) ---
-            conn.commit();
+                // --- FIN DE LA TRANSACCIÓN (COMMIT) ---
+                conn.commit();
             
-            // Devolvemos el objeto completo
-            pacienteCreado.setHistoriaClinica(hcCreada);
-            return pacienteCreado;
+                // Devolvemos el objeto completo
+                pacienteCreado.setHistoriaClinica(hcCreada);
+                despuesDeInsertar(pacienteCreado);
+                return pacienteCreado;
 
-        } catch (SQLException | ServiceException e) {
+            } catch (SQLException | ServiceException e) {
             
-            // --- ERROR: ROLLBACK ---
-            if (conn != null) {
-                try {
-                    System.err.println("Transacción fallida. Ejecutando rollback...");
-                    conn.rollback(); // [Requerimiento 5]
-                } catch (SQLException ex) {
-                    System.err.println("Error al intentar hacer rollback: " + ex.getMessage());
+                // --- ERROR: ROLLBACK ---
+                if (conn != null) {
+                    try {
+                        System.err.println("Transacción fallida. Ejecutando rollback...");
+                        conn.rollback(); // [Requerimiento 5]
+                    } catch (SQLException ex) {
+                        System.err.println("Error al intentar hacer rollback: " + ex.getMessage());
+                    }
                 }
-            }
-            // Lanzamos la excepción para que la capa superior se entere
-            throw new ServiceException("Error al insertar paciente completo: " + e.getMessage(), e);
+                // Lanzamos la excepción para que la capa superior se entere
+                throw new ServiceException("Error al insertar paciente completo: " + e.getMessage(), e);
             
-        } finally {
-            // --- RESTABLECER Y CERRAR ---
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true); // [Requerimiento 5]
-                    conn.close();
-                } catch (SQLException e) {
-                    System.err.println("Error al cerrar la conexión: " + e.getMessage());
+            } finally {
+                // --- RESTABLECER Y CERRAR ---
+                if (conn != null) {
+                    try {
+                        conn.setAutoCommit(true); // [Requerimiento 5]
+                        conn.close();
+                    } catch (SQLException e) {
+                        System.err.println("Error al cerrar la conexión: " + e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    // Alta masiva: crea muchos Pacientes con su HistoriaClinica usando lotes
+    // JDBC. Cada bloque de 'tamanioTransaccion' pacientes es una transacción
+    // (y con varios shards, cada shard tiene sus propios bloques): si un
+    // bloque falla se revierte solo ese bloque, los anteriores quedan
+    // confirmados y no se sigue con los demás. Después de un error, los
+    // pacientes confirmados conservan su ID y los demás quedan sin ID, así
+    // quien llama puede reintentar solo esos.
+
+    public List<Paciente> insertarPacientesCompletos(List<Paciente> pacientes) throws ServiceException {
+        return insertarPacientesCompletos(pacientes, GenericDao.TAMANIO_LOTE);
+    }
+
+    public List<Paciente> insertarPacientesCompletos(List<Paciente> pacientes, int tamanioTransaccion) throws ServiceException {
+        return Metricas.medir("PacienteService.insertarPacientesCompletos", () -> {
+            if (pacientes == null) {
+                throw new ServiceException("La lista de pacientes no puede ser nula.");
+            }
+            if (tamanioTransaccion <= 0) {
+                throw new ServiceException("El tamaño de transacción debe ser mayor a cero.");
+            }
+
+            // Validamos todo antes de abrir la conexión
+            for (Paciente paciente : pacientes) {
+                validarPaciente(paciente);
+                if (paciente.getHistoriaClinica() == null) {
+                    throw new ServiceException("El paciente " + paciente.getDni() + " debe tener una historia clínica asociada.");
+                }
+                validarHistoriaClinica(paciente.getHistoriaClinica());
+            }
+            verificarDnisLibres(pacientes);
+            for (Paciente paciente : pacientes) {
+                asignarIds(paciente);
+            }
+
+            Set<Paciente> confirmados = Collections.newSetFromMap(new IdentityHashMap<>());
+            try {
+                // Con varios shards, los bloques de cada shard con su propia conexión
+                for (Map.Entry<Integer, List<Paciente>> porShard : Shards.agrupar(pacientes, Shards::dePaciente).entrySet()) {
+                    List<Paciente> delShard = porShard.getValue();
+                    try (Connection conn = DatabaseConnection.getConnection(porShard.getKey())) {
+                        conn.setAutoCommit(false);
+                        try {
+                            for (int desde = 0; desde < delShard.size(); desde += tamanioTransaccion) {
+                                List<Paciente> bloque = delShard.subList(desde, Math.min(desde + tamanioTransaccion, delShard.size()));
+                                insertarBloque(bloque, conn);
+                                confirmados.addAll(bloque);
+                            }
+                        } finally {
+                            conn.setAutoCommit(true);
+                        }
+                    }
                 }
+            } catch (SQLException | ServiceException e) {
+                // Los bloques que no llegaron a escribirse también tenían IDs reservados
+                for (Paciente paciente : pacientes) {
+                    if (!confirmados.contains(paciente)) {
+                        paciente.setId(null);
+                        paciente.getHistoriaClinica().setId(null);
+                    }
+                }
+                throw new ServiceException("Error al insertar pacientes en lote (confirmados: " + confirmados.size() + "): " + e.getMessage(), e);
+            }
+            return pacientes;
+        });
+    }
+
+    /**
+     * Inserta un bloque de pacientes con sus historias en una transacción.
+     * Si falla, hace rollback y limpia los IDs asignados a ese bloque.
+     */
+    private void insertarBloque(List<Paciente> bloque, Connection conn) throws ServiceException, SQLException {
+        List<HistoriaClinica> historias = new ArrayList<>(bloque.size());
+        try {
+            pacienteDao.crearLote(bloque, conn);
+            for (Paciente paciente : bloque) {
+                HistoriaClinica hc = paciente.getHistoriaClinica();
+                hc.setPaciente(paciente);
+                historias.add(hc);
+            }
+            historiaClinicaDao.crearLote(historias, conn);
+            conn.commit();
+            for (Paciente paciente : bloque) {
+                despuesDeInsertar(paciente);
+            }
+        } catch (Exception e) {
+            System.err.println("Transacción de lote fallida. Ejecutando rollback...");
+            conn.rollback();
+            // Los IDs asignados en este bloque ya no existen en la base
+            for (Paciente paciente : bloque) {
+                paciente.setId(null);
+                paciente.getHistoriaClinica().setId(null);
             }
+            throw new ServiceException("Error al insertar el lote de pacientes: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Asigna los IDs del paciente y su historia antes de abrir la transacción,
+     * si los asigna la aplicación (ver Secuencias). Si no, no hace nada y los
+     * genera la base al insertar.
+     */
+    private static void asignarIds(Paciente paciente) throws ServiceException {
+        try {
+            Secuencias.asignarIds(paciente);
+        } catch (Exception e) {
+            throw new ServiceException("Error al reservar IDs: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Actualiza filtro, cachés e índices con un paciente (y su historia) recién confirmado
+     */
+    private void despuesDeInsertar(Paciente paciente) {
+        filtroDni.agregar(paciente.getDni());
+        cacheDni.invalidarPorDni(paciente.getDni());
+        indiceTexto.reflejar(paciente.getHistoriaClinica(), historiaClinicaDao);
+        indiceNombres.indexar(paciente);
+        feed.creado(Entidad.PACIENTE, paciente.getId(), paciente.getId());
+        feed.creado(Entidad.HISTORIA_CLINICA, paciente.getHistoriaClinica().getId(), paciente.getId());
+    }
+
+    // --- Commit agrupado ---
+
+    /**
+     * Alta de un paciente con su historia por medio del commit agrupado: se
+     * encola y un único hilo escritor lo inserta junto con las altas
+     * concurrentes en una sola transacción (cada alta con su propio
+     * savepoint, así una que falla no arrastra a las demás).
+     *
+     * Las validaciones y el chequeo de DNI se hacen antes de encolar.
+     *
+     * @param paciente paciente con su historia clínica
+     * @return future con el paciente y su historia con los IDs generados,
+     *         o que falla con ServiceException si esta alta no se pudo hacer
+     */
+    public CompletableFuture<Paciente> insertarPacienteCompletoAgrupado(Paciente paciente) {
+        try {
+            validarPaciente(paciente);
+            if (paciente.getHistoriaClinica() == null) {
+                throw new ServiceException("El paciente debe tener una historia clínica asociada.");
+            }
+            validarHistoriaClinica(paciente.getHistoriaClinica());
+            verificarDniLibre(paciente.getDni());
+            asignarIds(paciente);
+        } catch (ServiceException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return escritorAgrupado(paciente).enviar(paciente);
+    }
+
+    // Un único escritor por proceso y por shard (se crean con la primera alta agrupada)
+    private static final class CommitAgrupado {
+        private static final List<EscritorAgrupado<Paciente>> ESCRITORES = new PacienteService().crearEscritoresAgrupados();
+    }
+
+    private static volatile boolean escritorIniciado;
+
+    /**
+     * El escritor del shard del paciente (con los IDs ya asignados)
+     */
+    private static EscritorAgrupado<Paciente> escritorAgrupado(Paciente paciente) {
+        escritorIniciado = true;
+        return CommitAgrupado.ESCRITORES.get(Shards.dePaciente(paciente));
+    }
+
+    private List<EscritorAgrupado<Paciente>> crearEscritoresAgrupados() {
+        List<EscritorAgrupado<Paciente>> escritores = new ArrayList<>(Shards.cantidad());
+        for (int shard = 0; shard < Shards.cantidad(); shard++) {
+            // Con un solo shard, los mismos nombres de hilo y métricas de siempre
+            String nombre = Shards.cantidad() == 1 ? "paciente" : "paciente_shard" + shard;
+            escritores.add(crearEscritorAgrupado(nombre, shard));
+        }
+        return escritores;
+    }
+
+    private EscritorAgrupado<Paciente> crearEscritorAgrupado(String nombre, int shard) {
+        return new EscritorAgrupado<>(nombre, shard,
+                (paciente, conn) -> {
+                    pacienteDao.crear(paciente, conn);
+                    HistoriaClinica hc = paciente.getHistoriaClinica();
+                    hc.setPaciente(paciente);
+                    historiaClinicaDao.crear(hc, conn);
+                },
+                this::despuesDeInsertar,
+                paciente -> {
+                    // Los IDs asignados ya no existen en la base
+                    paciente.setId(null);
+                    paciente.getHistoriaClinica().setId(null);
+                },
+                Integer.getInteger("clinica.commitAgrupado.maxUnidades", 64),
+                Long.getLong("clinica.commitAgrupado.ventanaMs", 2));
+    }
+
+    /**
+     * Deja de aceptar altas agrupadas y espera a que se escriban las que ya
+     * estaban encoladas. No hace nada si el commit agrupado nunca se usó.
+     */
+    public static void cerrarCommitAgrupado() {
+        if (escritorIniciado) {
+            for (EscritorAgrupado<Paciente> escritor : CommitAgrupado.ESCRITORES) {
+                escritor.cerrar();
+            }
+        }
+    }
+
+    private static Paciente esperar(CompletableFuture<Paciente> alta) throws ServiceException {
+        try {
+            return alta.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Alta interrumpida mientras esperaba el commit agrupado.", e);
+        } catch (ExecutionException e) {
+            throw new ServiceException("Error al insertar paciente completo: " + e.getCause().getMessage(), e.getCause());
         }
     }
 
@@ -127,7 +397,7 @@ public class PacienteService implements GenericService<Paciente> {
         // }
     }
 
-    private void validarHistoriaClinica(HistoriaClinica hc) throws ServiceException {
+    public void validarHistoriaClinica(HistoriaClinica hc) throws ServiceException {
         if (hc.getNroHistoria() == null || hc.getNroHistoria().trim().isEmpty() || hc.getNroHistoria().length() > 20) { // [cite: 19]
             throw new ServiceException("Número de historia clínica inválido.");
         }
@@ -140,6 +410,88 @@ public class PacienteService implements GenericService<Paciente> {
         // pero podemos chequearlo aquí si el DAO 'buscarPorNroHistoria' existiera.
     }
 
+    // Duplicados de DNI: el filtro descarta sin ir a la base la gran mayoría
+    // de los DNIs nuevos; los "puede estar" se confirman con el índice de dni.
+    // El UNIQUE de la base sigue cubriendo las altas concurrentes.
+
+    /**
+     * @param dni DNI a registrar
+     * @throws ServiceException si el DNI ya está registrado (también si es de un paciente eliminado)
+     */
+    public void verificarDniLibre(String dni) throws ServiceException {
+        if (!dnisRegistrados(List.of(dni)).isEmpty()) {
+            throw new ServiceException("El DNI " + dni + " ya está registrado.");
+        }
+    }
+
+    private void verificarDnisLibres(List<Paciente> pacientes) throws ServiceException {
+        List<String> dnis = new ArrayList<>(pacientes.size());
+        Set<String> vistos = new HashSet<>();
+        for (Paciente paciente : pacientes) {
+            if (!vistos.add(paciente.getDni())) {
+                throw new ServiceException("El DNI " + paciente.getDni() + " está repetido en el lote.");
+            }
+            dnis.add(paciente.getDni());
+        }
+        Set<String> registrados = dnisRegistrados(dnis);
+        if (!registrados.isEmpty()) {
+            throw new ServiceException("DNI ya registrados: " + String.join(", ", registrados) + ".");
+        }
+    }
+
+    /**
+     * Indica cuáles de los DNIs ya están registrados. Si el filtro de DNIs no
+     * está construido (ver {@link #construirFiltroDni()}) no se consulta la
+     * base y el duplicado lo detecta el UNIQUE al insertar; con varios shards
+     * se consulta siempre, porque el UNIQUE de un shard no ve los DNIs que se
+     * cambiaron en pacientes de otro shard (ver {@code Dao.Shards}).
+     *
+     * @param dnis DNIs a verificar
+     * @return los DNIs que ya existen en la base
+     * @throws ServiceException si falla la consulta
+     */
+    public Set<String> dnisRegistrados(Collection<String> dnis) throws ServiceException {
+        boolean conFiltro = filtroDni.estaConstruido();
+        if (!conFiltro && Shards.cantidad() == 1) {
+            return new HashSet<>();
+        }
+        List<String> candidatos = new ArrayList<>();
+        for (String dni : dnis) {
+            if (!conFiltro || filtroDni.puedeEstar(dni)) {
+                candidatos.add(dni);
+            }
+        }
+        if (candidatos.isEmpty()) {
+            return new HashSet<>();
+        }
+        try {
+            Set<String> registrados = pacienteDao.existenDnis(candidatos);
+            for (int i = registrados.size(); conFiltro && i < candidatos.size(); i++) {
+                filtroDni.registrarFalsoPositivo();
+            }
+            return registrados;
+        } catch (Exception e) {
+            throw new ServiceException("Error al verificar los DNI: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * (Re)construye el filtro de DNIs leyendo en streaming los DNIs de todos
+     * los pacientes (también los eliminados). Se llama al iniciar la aplicación.
+     *
+     * @return cantidad de DNIs cargados
+     * @throws ServiceException si falla la lectura
+     */
+    public int construirFiltroDni() throws ServiceException {
+        return Metricas.medir("PacienteService.construirFiltroDni", () -> {
+            try (Stream<String> dnis = pacienteDao.leerDnisStream()) {
+                return filtroDni.construir(dnis);
+            } catch (Exception e) {
+                throw new ServiceException("Error al construir el filtro de DNI: " + e.getMessage(), e);
+            }
+        });
+    }
+
 
     // --- Otros métodos del CRUD (pueden o no ser transaccionales) ---
     // Estos métodos (requeridos por GenericService) pueden llamar a los
@@ -152,54 +504,266 @@ public class PacienteService implements GenericService<Paciente> {
         throw new ServiceException("Use 'insertarPacienteCompleto' para crear un paciente con su H.C.");
     }
 
+    // Actualiza el Paciente (A) y su HistoriaClinica (B) en una sola
+    // transacción, enviando solo las columnas modificadas (ver
+    // Paciente.getCambios()). Si no hay cambios no se abre ninguna conexión.
+
     @Override
     public void actualizar(Paciente paciente) throws ServiceException {
-        try {
+        Metricas.ejecutar("PacienteService.actualizar", () -> {
             validarPaciente(paciente);
-            // El 'actualizar' del DAO no necesita transacción
-            pacienteDao.actualizar(paciente);
+            HistoriaClinica hc = paciente.getHistoriaClinica();
+            if (hc != null) {
+                validarHistoriaClinica(hc);
+            }
+            if (!paciente.tieneCambios() && (hc == null || !hc.tieneCambios())) {
+                return;
+            }
+            boolean cambioDni = paciente.cambio(Paciente.Campo.DNI);
+            if (cambioDni) {
+                verificarDniLibre(paciente.getDni());
+            }
+            boolean reindexar = hc != null && IndiceTextoClinico.afectaIndice(hc);
+            boolean reindexarNombre = IndiceNombres.afectaIndice(paciente);
+            Set<String> columnasPaciente = FeedCambios.columnasDe(paciente);
+            Set<String> columnasHistoria = hc != null ? FeedCambios.columnasDe(hc) : null;
             
-            // Opcional: ¿Se puede actualizar la H.C. también?
-            if (paciente.getHistoriaClinica() != null) {
-                validarHistoriaClinica(paciente.getHistoriaClinica());
-                historiaClinicaDao.actualizar(paciente.getHistoriaClinica());
+            Connection conn = null;
+            try {
+                conn = DatabaseConnection.getConnection(Shards.deId(paciente.getId()));
+                conn.setAutoCommit(false);
+                
+                // Cada UPDATE falla si la fila cambió desde que se leyó
+                boolean pacienteActualizado = pacienteDao.actualizarCambios(paciente, conn);
+                boolean historiaActualizada = hc != null && historiaClinicaDao.actualizarCambios(hc, conn);
+                
+                conn.commit();
+                
+                // Recién después del commit los cambios quedan en la base
+                if (cambioDni) {
+                    filtroDni.agregar(paciente.getDni());
+                }
+                paciente.limpiarCambios();
+                if (pacienteActualizado) {
+                    paciente.setVersion(paciente.getVersion() + 1);
+                }
+                if (hc != null) {
+                    hc.limpiarCambios();
+                }
+                if (historiaActualizada) {
+                    hc.setVersion(hc.getVersion() + 1);
+                }
+                if (reindexar) {
+                    indiceTexto.reflejar(hc, historiaClinicaDao);
+                }
+                if (reindexarNombre) {
+                    indiceNombres.indexar(paciente);
+                }
+                if (pacienteActualizado) {
+                    feed.actualizado(Entidad.PACIENTE, paciente.getId(), paciente.getId(), columnasPaciente);
+                }
+                if (historiaActualizada) {
+                    feed.actualizado(Entidad.HISTORIA_CLINICA, hc.getId(), paciente.getId(), columnasHistoria);
+                }
+            } catch (Exception e) {
+                if (conn != null) {
+                    try {
+                        System.err.println("Actualización fallida. Ejecutando rollback...");
+                        conn.rollback();
+                    } catch (SQLException ex) {
+                        System.err.println("Error al hacer rollback: " + ex.getMessage());
+                    }
+                }
+                if (e instanceof ConflictoVersionException) {
+                    throw new ConflictoConcurrenciaException("Error al actualizar paciente: " + e.getMessage(), e);
+                }
+                throw new ServiceException("Error al actualizar paciente: " + e.getMessage(), e);
+            } finally {
+                if (conn != null) {
+                    try {
+                        conn.setAutoCommit(true);
+                        conn.close();
+                    } catch (SQLException e) {
+                        System.err.println("Error al cerrar la conexión: " + e.getMessage());
+                    }
+                }
+                // Por ID (el DNI pudo haber cambiado) y por el DNI nuevo
+                cacheDni.invalidarPorPacienteId(paciente.getId());
+                cacheDni.invalidarPorDni(paciente.getDni());
+                cachePacientes.invalidar(paciente.getId());
+                if (hc != null) {
+                    cacheHistorias.invalidar(hc.getId());
+                }
             }
+        });
+    }
+
+    /**
+     * Actualiza el paciente y su historia sin perder ediciones concurrentes.
+     * 
+     * Si otra transacción modificó alguna de las dos filas desde que se
+     * leyeron, se vuelve a leer el paciente con su historia (de la primaria y
+     * sin pasar por las cachés), se le aplican los campos modificados en
+     * {@code editado} y se reintenta, hasta {@code clinica.conflictos.maxIntentos}
+     * veces. Los campos que no se editaron conservan el valor nuevo de la
+     * base; si los dos modificaron el mismo campo, gana {@code editado}.
+     * 
+     * @param editado El paciente leído y modificado (con su historia, si se editó)
+     * @return {@code editado} si se guardó sin conflictos, o el paciente
+     *         fusionado que quedó guardado
+     * @throws ConflictoConcurrenciaException Si sigue habiendo conflictos
+     *         después del último intento
+     * @throws ServiceException Si la validación o la actualización fallan, o
+     *         si el paciente o su historia se eliminaron mientras tanto
+     */
+    public Paciente actualizarFusionando(Paciente editado) throws ServiceException {
+        return Metricas.medir("PacienteService.actualizarFusionando", () -> {
+            Paciente actual = editado;
+            for (int intento = 1; ; intento++) {
+                try {
+                    actualizar(actual);
+                    return actual;
+                } catch (ConflictoConcurrenciaException e) {
+                    if (intento >= MAX_INTENTOS_FUSION) {
+                        throw e;
+                    }
+                }
+                actual = fusionar(editado);
+            }
+        });
+    }
+
+    /**
+     * Lee la versión actual del paciente y su historia y le aplica los
+     * cambios pendientes de {@code editado}
+     */
+    private Paciente fusionar(Paciente editado) throws ServiceException {
+        Paciente actual;
+        try {
+            // De la primaria: una réplica atrasada devolvería la versión vieja
+            // y el próximo intento volvería a chocar
+            actual = pacienteDao.leerConHistoriaDePrimaria(editado.getId());
         } catch (Exception e) {
-            throw new ServiceException("Error al actualizar paciente: " + e.getMessage(), e);
+            throw new ServiceException("Error al releer el paciente: " + e.getMessage(), e);
+        }
+        if (actual == null || Boolean.TRUE.equals(actual.getEliminado())) {
+            throw new ServiceException("El paciente fue eliminado mientras se editaba.");
         }
+        actual.aplicarCambiosDe(editado);
+        HistoriaClinica hcEditada = editado.getHistoriaClinica();
+        if (hcEditada != null && hcEditada.tieneCambios()) {
+            HistoriaClinica hcActual = actual.getHistoriaClinica();
+            if (hcActual == null || !hcActual.getId().equals(hcEditada.getId())) {
+                throw new ServiceException("La historia clínica fue eliminada o reemplazada mientras se editaba.");
+            }
+            hcActual.aplicarCambiosDe(hcEditada);
+        }
+        return actual;
     }
 
     @Override
     public void eliminar(Long id) throws ServiceException {
-        // Esto se refiere al borrado lógico
-        try {
-            // El diagrama  pide un 'eliminarLogico'
-            // que probablemente llame a pacienteDao.eliminar(id)
-            pacienteDao.eliminar(id);
-        } catch (Exception e) {
-            throw new ServiceException("Error al eliminar (lógica) paciente: " + e.getMessage(), e);
-        }
+        Metricas.ejecutar("PacienteService.eliminar", () -> {
+            // Esto se refiere al borrado lógico
+            try {
+                // El diagrama  pide un 'eliminarLogico'
+                // que probablemente llame a pacienteDao.eliminar(id)
+                pacienteDao.eliminar(id);
+                indiceNombres.eliminar(id);
+                feed.eliminado(Entidad.PACIENTE, id, id);
+            } catch (Exception e) {
+                throw new ServiceException("Error al eliminar (lógica) paciente: " + e.getMessage(), e);
+            } finally {
+                cacheDni.invalidarPorPacienteId(id);
+                cachePacientes.invalidar(id);
+            }
+        });
     }
 
     @Override
     public Paciente getById(Long id) throws ServiceException {
-        try {
-            // Aquí hay que decidir si se trae solo el Paciente
-            // o si también se carga su HistoriaClinica (Lazy vs Eager)
-            return pacienteDao.leer(id);
-        } catch (Exception e) {
-            throw new ServiceException("Error al buscar paciente por ID: " + e.getMessage(), e);
-        }
+        return Metricas.medir("PacienteService.getById", () -> {
+            try {
+                // Solo el Paciente (sin la HistoriaClinica), desde la caché por ID
+                // si está habilitada
+                return cachePacientes.leer(id);
+            } catch (Exception e) {
+                throw new ServiceException("Error al buscar paciente por ID: " + e.getMessage(), e);
+            }
+        });
     }
 
     @Override
     public List<Paciente> getAll() throws ServiceException {
-        try {
-            // [cite: 47]
-            return pacienteDao.leerTodos();
-        } catch (Exception e) {
-            throw new ServiceException("Error al obtener todos los pacientes: " + e.getMessage(), e);
-        }
+        return Metricas.medir("PacienteService.getAll", () -> {
+            try {
+                // [cite: 47]
+                return pacienteDao.leerTodos();
+            } catch (Exception e) {
+                throw new ServiceException("Error al obtener todos los pacientes: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @Override
+    public List<Paciente> getPagina(Long despuesDeId, int limite) throws ServiceException {
+        return Metricas.medir("PacienteService.getPagina", () -> {
+            if (limite <= 0) {
+                throw new ServiceException("El tamaño de página debe ser mayor a cero.");
+            }
+            try {
+                return pacienteDao.leerPagina(despuesDeId, limite);
+            } catch (Exception e) {
+                throw new ServiceException("Error al obtener la página de pacientes: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Obtiene una página de pacientes (ordenados por ID) con sus historias
+     * clínicas, usando paginación por clave: solo se traen los pacientes con ID
+     * mayor a {@code despuesDeId}.
+     *
+     * @param despuesDeId último ID de la página anterior (null para la primera)
+     * @param limite cantidad máxima de pacientes
+     * @return página de pacientes (vacía cuando no hay más)
+     * @throws ServiceException si ocurre un error
+     */
+    public List<Paciente> getPaginaConHistoria(Long despuesDeId, int limite) throws ServiceException {
+        return Metricas.medir("PacienteService.getPaginaConHistoria", () -> {
+            if (limite <= 0) {
+                throw new ServiceException("El tamaño de página debe ser mayor a cero.");
+            }
+            try {
+                return pacienteDao.leerPaginaConHistoria(despuesDeId, limite);
+            } catch (Exception e) {
+                throw new ServiceException("Error al obtener la página de pacientes: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Igual que {@link #getPaginaConHistoria(Long, int)}, pero la historia
+     * viene sin las columnas TEXT (para listados). Para verla completa usar
+     * {@link #getByIdConHistoria(Long)} o
+     * {@link HistoriaClinicaService#cargarDetalle(HistoriaClinica)}.
+     *
+     * @param despuesDeId último ID de la página anterior (null para la primera)
+     * @param limite cantidad máxima de pacientes
+     * @return página de pacientes (vacía cuando no hay más)
+     * @throws ServiceException si ocurre un error
+     */
+    public List<Paciente> getPaginaConResumen(Long despuesDeId, int limite) throws ServiceException {
+        return Metricas.medir("PacienteService.getPaginaConResumen", () -> {
+            if (limite <= 0) {
+                throw new ServiceException("El tamaño de página debe ser mayor a cero.");
+            }
+            try {
+                return pacienteDao.leerPaginaConResumen(despuesDeId, limite);
+            } catch (Exception e) {
+                throw new ServiceException("Error al obtener la página de pacientes: " + e.getMessage(), e);
+            }
+        });
     }
 
     /**
@@ -210,11 +774,51 @@ public class PacienteService implements GenericService<Paciente> {
      * @throws ServiceException si ocurre un error
      */
     public Paciente getByIdConHistoria(Long id) throws ServiceException {
-        Paciente paciente = getById(id);
-        if (paciente != null) {
-            adjuntarHistoriaClinica(paciente);
-        }
-        return paciente;
+        return Metricas.medir("PacienteService.getByIdConHistoria", () -> {
+            try {
+                // Paciente + historia clínica en un único LEFT JOIN
+                return pacienteDao.leerConHistoria(id);
+            } catch (Exception e) {
+                throw new ServiceException("Error al buscar paciente por ID: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Obtiene varios pacientes por ID con sus historias clínicas (por ejemplo,
+     * los pacientes de una sala). Usa dos lecturas por bloques "IN (...)" en
+     * lugar de una consulta por paciente.
+     *
+     * @param ids identificadores de los pacientes
+     * @return mapa ID -> paciente, en el orden pedido (sin los IDs inexistentes)
+     * @throws ServiceException si ocurre un error
+     */
+    public Map<Long, Paciente> getByIdsConHistoria(Collection<Long> ids) throws ServiceException {
+        return Metricas.medir("PacienteService.getByIdsConHistoria", () -> {
+            if (ids == null) {
+                throw new ServiceException("La lista de IDs no puede ser nula.");
+            }
+            try {
+                Map<Long, Paciente> encontrados = pacienteDao.leerPorIds(ids);
+                Map<Long, HistoriaClinica> historias = historiaClinicaDao.buscarPorPacienteIds(encontrados.keySet());
+
+                Map<Long, Paciente> resultado = new LinkedHashMap<>();
+                for (Long id : ids) {
+                    Paciente paciente = encontrados.get(id);
+                    if (paciente != null && !resultado.containsKey(id)) {
+                        HistoriaClinica hc = historias.get(id);
+                        if (hc != null) {
+                            hc.setPaciente(paciente);
+                        }
+                        paciente.setHistoriaClinica(hc);
+                        resultado.put(id, paciente);
+                    }
+                }
+                return resultado;
+            } catch (Exception e) {
+                throw new ServiceException("Error al buscar pacientes por ID: " + e.getMessage(), e);
+            }
+        });
     }
 
     /**
@@ -225,48 +829,180 @@ public class PacienteService implements GenericService<Paciente> {
      * @throws ServiceException si ocurre un error
      */
     public List<Paciente> getAllConHistoria() throws ServiceException {
-        List<Paciente> pacientes = getAll();
-        for (Paciente paciente : pacientes) {
-            adjuntarHistoriaClinica(paciente);
+        return Metricas.medir("PacienteService.getAllConHistoria", () -> {
+            try {
+                // Una sola consulta con LEFT JOIN (antes: 1 + N consultas y N conexiones)
+                return pacienteDao.leerTodosConHistoria();
+            } catch (Exception e) {
+                throw new ServiceException("Error al obtener todos los pacientes: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Recorre todos los pacientes activos con su historia clínica (ordenados
+     * por ID) sobre un cursor de la base, sin cargarlos en memoria.
+     * IMPORTANTE: cerrar el Stream (try-with-resources) para liberar la conexión.
+     *
+     * @return stream de pacientes con historia
+     * @throws ServiceException si no se pudo abrir el cursor
+     */
+    public Stream<Paciente> streamAllConHistoria() throws ServiceException {
+        try {
+            return pacienteDao.leerTodosConHistoriaStream();
+        } catch (Exception e) {
+            throw new ServiceException("Error al leer los pacientes: " + e.getMessage(), e);
         }
-        return pacientes;
+    }
+
+    /**
+     * Métricas de la caché de búsquedas por DNI (tasa de aciertos, desalojos).
+     *
+     * @return instantánea de las métricas
+     */
+    public PacienteDniCache.Estadisticas getEstadisticasCacheDni() {
+        return cacheDni.getEstadisticas();
+    }
+
+    /**
+     * Métricas de las cachés de entidades por ID (pacientes e historias).
+     *
+     * @return instantáneas de las métricas, una por entidad
+     */
+    public List<CachedDao.Estadisticas> getEstadisticasCacheEntidades() {
+        List<CachedDao.Estadisticas> estadisticas = new ArrayList<>();
+        estadisticas.add(cachePacientes.getEstadisticas());
+        estadisticas.add(cacheHistorias.getEstadisticas());
+        return estadisticas;
     }
 
     /**
      * Busca un paciente por su DNI.
+     * Usa la caché de lectura: las búsquedas repetidas no van a la base.
      *
      * @param dni documento a buscar
      * @return paciente encontrado o null
      * @throws ServiceException si ocurre un error
      */
     public Paciente buscarPorDni(String dni) throws ServiceException {
-        if (dni == null || dni.trim().isEmpty()) {
-            throw new ServiceException("El DNI no puede estar vacío.");
-        }
-        try {
-            Paciente paciente = pacienteDao.buscarPorDni(dni.trim());
-            if (paciente != null) {
-                adjuntarHistoriaClinica(paciente);
+        return Metricas.medir("PacienteService.buscarPorDni", () -> {
+            if (dni == null || dni.trim().isEmpty()) {
+                throw new ServiceException("El DNI no puede estar vacío.");
             }
-            return paciente;
-        } catch (Exception e) {
-            throw new ServiceException("Error al buscar paciente por DNI: " + e.getMessage(), e);
-        }
+            long generacion = cacheDni.getGeneracion();
+            Paciente cacheado = cacheDni.obtener(dni);
+            if (cacheado != null) {
+                return cacheado;
+            }
+            try {
+                Paciente paciente = pacienteDao.buscarPorDniConHistoria(dni.trim());
+                // No se guarda si una escritura lo invalidó mientras se leía
+                cacheDni.guardar(paciente, generacion);
+                return paciente;
+            } catch (Exception e) {
+                throw new ServiceException("Error al buscar paciente por DNI: " + e.getMessage(), e);
+            }
+        });
     }
 
     /**
-     * Verifica y adjunta la historia clínica asociada al paciente (lazy
-     * loading).
+     * Busca pacientes por nombre y/o apellido: por prefijo ("orei" encuentra
+     * "Oreiro") y tolerando errores de tipeo ("Oreyro"). Sin distinguir
+     * mayúsculas ni tildes. Usa el índice en memoria; si todavía no se
+     * construyó, lo construye primero.
+     *
+     * @param consulta una o más palabras (todas deben coincidir)
+     * @param pagina número de página, desde 0
+     * @param tamanioPagina cantidad de pacientes por página
+     * @return pacientes de la página, de mejor a peor coincidencia
+     * @throws ServiceException si la consulta no es válida o falla la lectura
      */
-    private void adjuntarHistoriaClinica(Paciente paciente) throws ServiceException {
-        if (paciente == null || paciente.getId() == null) {
-            return;
-        }
-        try {
-            HistoriaClinica hc = historiaClinicaDao.buscarPorPacienteId(paciente.getId());
-            paciente.setHistoriaClinica(hc);
-        } catch (Exception e) {
-            throw new ServiceException("Error al cargar la historia clínica del paciente: " + e.getMessage(), e);
+    public List<Paciente> buscarPorNombre(String consulta, int pagina, int tamanioPagina) throws ServiceException {
+        return Metricas.medir("PacienteService.buscarPorNombre", () -> {
+            if (consulta == null || consulta.trim().isEmpty()) {
+                throw new ServiceException("La búsqueda no puede estar vacía.");
+            }
+            if (pagina < 0 || tamanioPagina <= 0) {
+                throw new ServiceException("Página o tamaño de página inválidos.");
+            }
+            if (!indiceNombres.estaConstruido()) {
+                construirIndiceNombres();
+            }
+            List<Long> ids = indiceNombres.buscar(consulta, (pagina + 1) * tamanioPagina);
+            if (ids.size() <= pagina * tamanioPagina) {
+                return new ArrayList<>();
+            }
+            List<Long> idsPagina = ids.subList(pagina * tamanioPagina, ids.size());
+            try {
+                // Se leen de la base en un solo viaje y se devuelven en el orden del índice
+                Map<Long, Paciente> porId = pacienteDao.leerPorIds(idsPagina);
+                List<Paciente> pacientes = new ArrayList<>(idsPagina.size());
+                for (Long id : idsPagina) {
+                    Paciente paciente = porId.get(id);
+                    if (paciente != null && !Boolean.TRUE.equals(paciente.getEliminado())) {
+                        pacientes.add(paciente);
+                    }
+                }
+                return pacientes;
+            } catch (Exception e) {
+                throw new ServiceException("Error al buscar pacientes por nombre: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * (Re)construye el índice de nombres leyendo los pacientes activos en
+     * streaming. Se llama al iniciar la aplicación.
+     *
+     * @return cantidad de pacientes indexados
+     * @throws ServiceException si falla la lectura
+     */
+    public int construirIndiceNombres() throws ServiceException {
+        return Metricas.medir("PacienteService.construirIndiceNombres", () -> {
+            try (Stream<Paciente> pacientes = pacienteDao.leerTodosStream()) {
+                return indiceNombres.construir(pacientes);
+            } catch (Exception e) {
+                throw new ServiceException("Error al construir el índice de nombres: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    // --- Variantes asíncronas (hilos virtuales, ver EjecutorAsincrono) ---
+    // Las del CRUD (getByIdAsync, getAllAsync, ...) vienen de GenericService.
+
+    public CompletableFuture<Paciente> insertarPacienteCompletoAsync(Paciente paciente) {
+        if (COMMIT_AGRUPADO) {
+            // No hace falta un hilo por llamada: el future lo completa el escritor
+            return insertarPacienteCompletoAgrupado(paciente);
         }
+        return EjecutorAsincrono.enviar(() -> insertarPacienteCompleto(paciente));
+    }
+
+    public CompletableFuture<List<Paciente>> insertarPacientesCompletosAsync(List<Paciente> pacientes) {
+        return EjecutorAsincrono.enviar(() -> insertarPacientesCompletos(pacientes));
+    }
+
+    public CompletableFuture<Paciente> buscarPorDniAsync(String dni) {
+        return EjecutorAsincrono.enviar(() -> buscarPorDni(dni));
+    }
+
+    public CompletableFuture<List<Paciente>> buscarPorNombreAsync(String consulta, int pagina, int tamanioPagina) {
+        return EjecutorAsincrono.enviar(() -> buscarPorNombre(consulta, pagina, tamanioPagina));
+    }
+
+    public CompletableFuture<Paciente> getByIdConHistoriaAsync(Long id) {
+        return EjecutorAsincrono.enviar(() -> getByIdConHistoria(id));
+    }
+
+    public CompletableFuture<Map<Long, Paciente>> getByIdsConHistoriaAsync(Collection<Long> ids) {
+        return EjecutorAsincrono.enviar(() -> getByIdsConHistoria(ids));
+    }
+
+    public CompletableFuture<List<Paciente>> getAllConHistoriaAsync() {
+        return EjecutorAsincrono.enviar(this::getAllConHistoria);
+    }
+
+    public CompletableFuture<List<Paciente>> getPaginaConHistoriaAsync(Long despuesDeId, int limite) {
+        return EjecutorAsincrono.enviar(() -> getPaginaConHistoria(despuesDeId, limite));
     }
-}
\ No newline at end of file
+}